@@ -39,6 +39,7 @@ import com.emc.ecs.metadata.dao.BillingDAO.ManagementDataType;
 import com.emc.ecs.metadata.dao.ObjectDAO;
 import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
 import com.emc.ecs.metadata.dao.elasticsearch.ElasticBillingDAO;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticClientRegistry;
 import com.emc.ecs.metadata.dao.elasticsearch.ElasticDAOConfig;
 import com.emc.ecs.metadata.dao.elasticsearch.ElasticS3ObjectDAO;
 
@@ -62,12 +63,16 @@ public class ElasticSearchCleaner {
 	private static final String ELASTIC_PORT_CONFIG_ARGUMENT        = "--elastic-port";
 	private static final String ELASTIC_CLUSTER_CONFIG_ARGUMENT     = "--elastic-cluster";
 	private static final String ES_COLLECTION_DAYS_TO_KEEP_ARGUMENT = "--collection-days-to-keep"; 
+	private static final String ELASTIC_DAILY_INDICES_ARGUMENT      = "--daily-indices";
+	private static final String ECS_DROP_NAMESPACE_ARGUMENT         = "--drop-namespace";
 		
 	private static String  elasticHosts         = "";
 	private static Integer elasticPort          = 9300;
 	private static String  elasticCluster       = "ecs-analytics";
 	private static String  cleanData            = ECS_CLEAN_ALL_DATA;
 	private static Integer collectionDaysToKeep = 7;
+	private static boolean dailyIndices         = false;
+	private static String  dropNamespace        = null;
 	
 	private final static Logger       logger      = LoggerFactory.getLogger(ElasticSearchCleaner.class);
 	private static 	     Long         docsCount = 0L;
@@ -85,7 +90,10 @@ public class ElasticSearchCleaner {
 										ECS_CLEAN_OBJECT_VERSION_DATA + "| \n" +
 										ECS_CLEAN_ALL_DATA +">] - Specify which ElasticSearch index to clean \n" +
 								"[" + ES_COLLECTION_DAYS_TO_KEEP_ARGUMENT + "<number0of-days-to-keep-in-es> - " + 
-										"Specify how many days of data to keep in ElasticSearch {Default: 7 (days)}"; 
+										"Specify how many days of data to keep in ElasticSearch {Default: 7 (days)} \n" + 
+								"[" + ELASTIC_DAILY_INDICES_ARGUMENT + "] - Drop whole daily indices instead of deleting documents \n" + 
+								"[" + ECS_DROP_NAMESPACE_ARGUMENT + " <namespace>] - Drop the indices of a namespace " + 
+										"when the collector writes one index per namespace"; 
 
 		
 		if ( args.length > 0 && args[0].contains("--help")) {
@@ -134,6 +142,15 @@ public class ElasticSearchCleaner {
 						System.err.println(ES_COLLECTION_DAYS_TO_KEEP_ARGUMENT + " requires a day shift value port value");
 						System.exit(0);
 					}
+				} else if (arg.equals(ELASTIC_DAILY_INDICES_ARGUMENT)) {
+					dailyIndices = true;
+				} else if (arg.equals(ECS_DROP_NAMESPACE_ARGUMENT)) {
+					if (i < args.length) {
+						dropNamespace = args[i++];
+					} else {
+						System.err.println(ECS_DROP_NAMESPACE_ARGUMENT + " requires a namespace value");
+						System.exit(0);
+					}
 				} else {
 					System.err.println(menuString);
 					System.exit(0);
@@ -155,7 +172,12 @@ public class ElasticSearchCleaner {
 		Date thresholdDate = new Date(epochTime - daysShift);
 		
 		
-		if(cleanData.equals(ECS_CLEAN_BILLING_DATA) ){
+		if(dropNamespace != null) {
+			
+			// drop all indices of a removed namespace
+			docsCount += dropNamespaceData(dropNamespace);
+			
+		} else if(cleanData.equals(ECS_CLEAN_BILLING_DATA) ){
 			
 			// collect billing data
 			docsCount += cleanBillingData(thresholdDate);
@@ -197,11 +219,34 @@ public class ElasticSearchCleaner {
 		
 		Long objectCollectionFinish = System.currentTimeMillis();
 		Double deltaTime = Double.valueOf((objectCollectionFinish - epochTime)) / 1000 ;
+		ElasticClientRegistry.closeAll();
+		
 		logger.info("Deleted " + docsCount + " documents");
 		logger.info("Total deletion time: " + deltaTime + " seconds");
 		
 	}
 
+	private static Long dropNamespaceData(String namespace) {
+		
+		Long deletedDocs = 0L;
+		
+		// Instantiate ElasticSearch DAOs
+		ElasticDAOConfig daoConfig = new ElasticDAOConfig();
+		daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
+		daoConfig.setPort(elasticPort);
+		daoConfig.setClusterName(elasticCluster);
+		daoConfig.setDailyIndices(dailyIndices);
+		daoConfig.setNamespaceIndices(true);
+		
+		ElasticBillingDAO billingDAO = new ElasticBillingDAO(daoConfig);
+		deletedDocs += billingDAO.purgeNamespace(namespace);
+		
+		ElasticS3ObjectDAO objectDAO = new ElasticS3ObjectDAO(daoConfig);
+		deletedDocs += objectDAO.purgeNamespace(namespace);
+		
+		return deletedDocs;
+	}
+	
 	private static Long cleanBillingData(Date thresholdDate) {
 		
 		Long deletedDocs = 0L;
@@ -211,6 +256,7 @@ public class ElasticSearchCleaner {
 		daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
 		daoConfig.setPort(elasticPort);
 		daoConfig.setClusterName(elasticCluster);
+		daoConfig.setDailyIndices(dailyIndices);
 		BillingDAO billingDAO = new ElasticBillingDAO(daoConfig);	
 
 		deletedDocs += billingDAO.purgeOldData(ManagementDataType.billing_namespace, thresholdDate);
@@ -228,6 +274,7 @@ public class ElasticSearchCleaner {
 		daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
 		daoConfig.setPort(elasticPort);
 		daoConfig.setClusterName(elasticCluster);
+		daoConfig.setDailyIndices(dailyIndices);
 		BillingDAO billingDAO = new ElasticBillingDAO(daoConfig);
 		
 		deletedDocs += billingDAO.purgeOldData(ManagementDataType.object_bucket, thresholdDate);
@@ -245,9 +292,11 @@ public class ElasticSearchCleaner {
 		daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
 		daoConfig.setPort(elasticPort);
 		daoConfig.setClusterName(elasticCluster);
+		daoConfig.setDailyIndices(dailyIndices);
 		ObjectDAO objectDAO = new ElasticS3ObjectDAO(daoConfig);
 		
 		deletedDocs += objectDAO.purgeOldData(ObjectDataType.object, thresholdDate);
+		deletedDocs += objectDAO.purgeOldData(ObjectDataType.object_changes, thresholdDate);
 
 		return deletedDocs;
 	}
@@ -262,6 +311,7 @@ public class ElasticSearchCleaner {
 		daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
 		daoConfig.setPort(elasticPort);
 		daoConfig.setClusterName(elasticCluster);
+		daoConfig.setDailyIndices(dailyIndices);
 		ObjectDAO objectDAO = new ElasticS3ObjectDAO(daoConfig);
 		
 		deletedDocs += objectDAO.purgeOldData(ObjectDataType.object_versions, thresholdDate);
@@ -52,17 +52,29 @@ import com.emc.ecs.management.entity.ObjectUserDetails;
 import com.emc.ecs.management.entity.ObjectUserSecretKeys;
 import com.emc.ecs.management.entity.ObjectUsers;
 import com.emc.ecs.management.entity.ObjectUsersRequest;
+import com.emc.ecs.metadata.dao.AsyncBillingDAO;
 import com.emc.ecs.metadata.dao.BillingDAO;
+import com.emc.ecs.metadata.dao.CompletionHandle;
 
 
 public class BillingBO {
 
+	// management calls use the server default page size unless 
+	// slow pages require requesting fewer entries
+	public static final int MGMT_MIN_PAGE_SIZE     = 100;
+	public static final int MGMT_DEFAULT_PAGE_SIZE = 1000;
+	
+	private static final String BILLING_PAGE_KEY = "management billing";
+	private static final String BUCKETS_PAGE_KEY = "management buckets";
+
 	//================================
 	// Private members
 	//================================
 	private ManagementClient client;
 	private BillingDAO       billingDAO;
+	private AsyncBillingDAO  asyncBillingDAO;
 	private AtomicLong       objectCount;
+	private PageSizeController pageSizeController;
 	
 	private final static Logger         logger = LoggerFactory.getLogger(BillingBO.class);
 	
@@ -95,6 +107,24 @@ public class BillingBO {
 	//================================
 	// Public methods
 	//================================
+	
+	/**
+	 * Adapts the page size of paginated management calls
+	 * @param pageSizeController
+	 */
+	public void setPageSizeController(PageSizeController pageSizeController) {
+		this.pageSizeController = pageSizeController;
+	}
+	
+	/**
+	 * Writes billing and bucket pages through the asynchronous datastore
+	 * so the next management page is fetched while the previous one is stored
+	 * @param asyncBillingDAO
+	 */
+	public void setAsyncBillingDAO(AsyncBillingDAO asyncBillingDAO) {
+		this.asyncBillingDAO = asyncBillingDAO;
+	}
+	
 	/**
 	 * Retrieve Object uid and secret keys	 
 	 * @return ObjectUserDetails
@@ -171,11 +201,13 @@ public class BillingBO {
 			
 			NamespaceRequest namespaceRequest = new NamespaceRequest();
 			namespaceRequest.setName(namespace.getName());
-			NamespaceBillingInfo namespaceBillingResponse = client.getNamespaceBillingInfo(namespaceRequest);
+			NamespaceBillingInfo namespaceBillingResponse = getNamespaceBillingInfo(namespaceRequest);
 			
 			if(namespaceBillingResponse == null) {
 				continue;
 			}
+			
+			namespaceRequest.setNextMarker(namespaceBillingResponse.getNextMarker());
 				
 			// add object bucket attributes
 			for(BucketBillingInfo bucketBillingInfo : namespaceBillingResponse.getBucketBillingInfo()) {
@@ -194,14 +226,11 @@ public class BillingBO {
 			}
 			
 			// Push collected info into datastore
-			if( this.billingDAO != null ) {
-				// insert something
-				billingDAO.insert(namespaceBillingResponse, collectionTime);
-			}
+			storeBillingData(namespaceBillingResponse, collectionTime);
 			
 			// collect n subsequent pages
 			while(namespaceRequest.getNextMarker() != null) {
-				namespaceBillingResponse = client.getNamespaceBillingInfo(namespaceRequest);
+				namespaceBillingResponse = getNamespaceBillingInfo(namespaceRequest);
 				
 				if( namespaceBillingResponse != null ) {
 					namespaceRequest.setNextMarker(namespaceBillingResponse.getNextMarker());
@@ -220,21 +249,53 @@ public class BillingBO {
 					}
 					
 					// Push collected info into datastore
-					if( this.billingDAO != null ) {
-						// insert something
-						billingDAO.insert(namespaceBillingResponse, collectionTime);
-					}
+					storeBillingData(namespaceBillingResponse, collectionTime);
 				} else {
 					namespaceRequest.setNextMarker(null);
 				}
 			}			
 		}	
 		
+		// wait for pages still being stored
+		flushPendingWrites();
+		
 		// peg global counter
 		this.objectCount.getAndAdd(objCounter);
 		
 	}
 
+	/**
+	 * Collects bucket billing info (object count and size) of all buckets
+	 * without storing it
+	 * @param bucketBillingMap
+	 */
+	public void getBucketBillingData( Map<NamespaceBucketKey, BucketBillingInfo> bucketBillingMap ) {
+		
+		for( Namespace namespace : getNamespaces() ) {
+			
+			NamespaceRequest namespaceRequest = new NamespaceRequest();
+			namespaceRequest.setName(namespace.getName());
+			
+			do {
+				NamespaceBillingInfo namespaceBillingResponse = getNamespaceBillingInfo(namespaceRequest);
+				
+				if( namespaceBillingResponse == null ) {
+					break;
+				}
+				
+				if( namespaceBillingResponse.getBucketBillingInfo() != null ) {
+					for( BucketBillingInfo bucketBillingInfo : namespaceBillingResponse.getBucketBillingInfo() ) {
+						bucketBillingMap.put( new NamespaceBucketKey(namespace.getName(), bucketBillingInfo.getName()), 
+											  bucketBillingInfo );
+					}
+				}
+				
+				namespaceRequest.setNextMarker(namespaceBillingResponse.getNextMarker());
+				
+			} while( namespaceRequest.getNextMarker() != null );
+		}
+	}
+	
 	/**
 	 * Collects Bucket metadata for all namespace defined on a cluster
 	 * @param objectBucketMap
@@ -285,21 +346,20 @@ public class BillingBO {
 			
 			NamespaceRequest namespaceRequest = new NamespaceRequest();
 			namespaceRequest.setName(namespace.getName());
-			ObjectBuckets objectBucketsResponse = client.getNamespaceBucketInfo(namespaceRequest);
+			ObjectBuckets objectBucketsResponse = getNamespaceBucketInfo(namespaceRequest);
 			
 			if(objectBucketsResponse == null) {
 				continue;
 			}
 			
+			namespaceRequest.setNextMarker(objectBucketsResponse.getNextMarker());
+			
 			logger.info("Collect Billing Data for namespace: " + namespace.getName());
 			
 			objCounter += (objectBucketsResponse.getObjectBucket() != null) ? objectBucketsResponse.getObjectBucket().size() : 0;
 			
 			// Push collected info into datastore
-			if( billDAO != null ) {
-				// insert something
-				billDAO.insert(objectBucketsResponse, collectionTime);
-			}
+			storeBucketData(objectBucketsResponse, collectionTime, billDAO);
 			
 			// Add to return map
 			if( objectBucketsResponse.getObjectBucket() != null && 
@@ -314,7 +374,7 @@ public class BillingBO {
 			
 			// collect n subsequent pages
 			while(namespaceRequest.getNextMarker() != null) {
-				objectBucketsResponse = client.getNamespaceBucketInfo(namespaceRequest);
+				objectBucketsResponse = getNamespaceBucketInfo(namespaceRequest);
 				
 				if( objectBucketsResponse != null ) {
 					
@@ -323,10 +383,7 @@ public class BillingBO {
 					namespaceRequest.setNextMarker(objectBucketsResponse.getNextMarker());
 					
 					// Push collected info into datastore
-					if( billDAO != null ) {
-						// insert something
-						billDAO.insert(objectBucketsResponse, collectionTime);
-					}
+					storeBucketData(objectBucketsResponse, collectionTime, billDAO);
 					
 					// Add to return map
 					if( objectBucketsResponse.getObjectBucket() != null  && 
@@ -346,10 +403,71 @@ public class BillingBO {
 			}			
 		}
 		
+		if( billDAO != null ) {
+			// wait for pages still being stored
+			flushPendingWrites();
+		}
+		
 		// peg global counter
 		this.objectCount.getAndAdd(objCounter);
 	}
 	
+	/**
+	 * Stores a billing page either asynchronously or in the current thread
+	 * @param namespaceBillingResponse
+	 * @param collectionTime
+	 */
+	private void storeBillingData( NamespaceBillingInfo namespaceBillingResponse, Date collectionTime ) {
+		
+		if( this.asyncBillingDAO != null ) {
+			// blocks only while the datastore is behind
+			asyncBillingDAO.submit(namespaceBillingResponse, collectionTime);
+		} else if( this.billingDAO != null ) {
+			billingDAO.insert(namespaceBillingResponse, collectionTime);
+		}
+	}
+	
+	/**
+	 * Stores a bucket page either asynchronously or in the current thread
+	 * @param objectBucketsResponse
+	 * @param collectionTime
+	 * @param billDAO - no page is stored when null
+	 */
+	private void storeBucketData( ObjectBuckets objectBucketsResponse, Date collectionTime, BillingDAO billDAO ) {
+		
+		if( billDAO == null ) {
+			return;
+		}
+		
+		if( this.asyncBillingDAO != null ) {
+			// blocks only while the datastore is behind
+			asyncBillingDAO.submit(objectBucketsResponse, collectionTime);
+		} else {
+			billDAO.insert(objectBucketsResponse, collectionTime);
+		}
+	}
+	
+	/**
+	 * Waits until all pages submitted to the asynchronous datastore are stored
+	 */
+	private void flushPendingWrites() {
+		
+		if( this.asyncBillingDAO == null ) {
+			return;
+		}
+		
+		CompletionHandle flushHandle = asyncBillingDAO.flush();
+		try {
+			if( !flushHandle.await() ) {
+				logger.error("Error while storing management data - message: " + 
+							 flushHandle.getFailure().getLocalizedMessage());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while storing management data");
+		}
+	}
+	
 	
 	public void shutdown() {
 		if(this.client != null) {
@@ -389,4 +507,68 @@ public class BillingBO {
 		return namespaceList;
 	}
 	
+	
+	//================================
+	// Private methods
+	//================================
+	
+	/**
+	 * Fetches a page of namespace billing info, 
+	 * adapting the page size when a controller is set
+	 * @param namespaceRequest
+	 * @return NamespaceBillingInfo
+	 */
+	private NamespaceBillingInfo getNamespaceBillingInfo( final NamespaceRequest namespaceRequest ) {
+		
+		if( pageSizeController == null ) {
+			return client.getNamespaceBillingInfo(namespaceRequest);
+		}
+		
+		return fetchManagementPage(BILLING_PAGE_KEY, new PageSizeController.PageRequest<NamespaceBillingInfo>() {
+			@Override
+			public NamespaceBillingInfo fetch(int pageSize) {
+				namespaceRequest.setLimit( (pageSize < MGMT_DEFAULT_PAGE_SIZE) ? pageSize : null );
+				return client.getNamespaceBillingInfo(namespaceRequest);
+			}
+			@Override
+			public int getCount(NamespaceBillingInfo page) {
+				return (page.getBucketBillingInfo() != null) ? page.getBucketBillingInfo().size() : 0;
+			}
+		});
+	}
+	
+	/**
+	 * Fetches a page of namespace buckets, 
+	 * adapting the page size when a controller is set
+	 * @param namespaceRequest
+	 * @return ObjectBuckets
+	 */
+	private ObjectBuckets getNamespaceBucketInfo( final NamespaceRequest namespaceRequest ) {
+		
+		if( pageSizeController == null ) {
+			return client.getNamespaceBucketInfo(namespaceRequest);
+		}
+		
+		return fetchManagementPage(BUCKETS_PAGE_KEY, new PageSizeController.PageRequest<ObjectBuckets>() {
+			@Override
+			public ObjectBuckets fetch(int pageSize) {
+				namespaceRequest.setLimit( (pageSize < MGMT_DEFAULT_PAGE_SIZE) ? pageSize : null );
+				return client.getNamespaceBucketInfo(namespaceRequest);
+			}
+			@Override
+			public int getCount(ObjectBuckets page) {
+				return (page.getObjectBucket() != null) ? page.getObjectBucket().size() : 0;
+			}
+		});
+	}
+	
+	private <T> T fetchManagementPage( String pageKey, PageSizeController.PageRequest<T> pageRequest ) {
+		try {
+			return pageSizeController.fetch(pageKey, pageRequest);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e.getLocalizedMessage(), e);
+		}
+	}
 }
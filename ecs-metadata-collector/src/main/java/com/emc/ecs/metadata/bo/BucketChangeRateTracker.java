@@ -0,0 +1,329 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.management.entity.BucketBillingInfo;
+
+
+/**
+ * Tracks how often each bucket changes across collection runs 
+ * in order to decide which buckets are due for collection.
+ * 
+ * Two change rates (changes per hour, exponentially weighted) are kept:
+ * - billing rate from object count and size deltas between runs 
+ * - listing rate from the number of changes found when the bucket was collected
+ * 
+ * A bucket is due when billing shows it changed since it was last collected,
+ * when at least one change is expected based on its rate, or when it 
+ * hasn't been collected for the maximum staleness period.
+ * State is kept in a local properties file.
+ */
+public class BucketChangeRateTracker {
+
+	// weight of the newest observation in the rate averages
+	private static final double RATE_SMOOTHING  = 0.5;
+	private static final double HOUR_MS         = TimeUnit.HOURS.toMillis(1);
+	private static final String KEY_SEPARATOR   = "/";
+	private static final String VALUE_SEPARATOR = ",";
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(BucketChangeRateTracker.class);
+	
+	private final File                     stateFile;
+	private final long                     maxStalenessMs;
+	private final Map<String, BucketState> states = new HashMap<String, BucketState>();
+	private int                            dueCount     = 0;
+	private int                            skippedCount = 0;
+	
+	//================================
+	// Constructor
+	//================================
+	public BucketChangeRateTracker( String stateFileName, long maxStalenessHours ) {
+		this.stateFile      = new File(stateFileName);
+		this.maxStalenessMs = TimeUnit.HOURS.toMillis(maxStalenessHours);
+		load();
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Records current object count and size of a bucket as reported by billing
+	 * 
+	 * @param namespace
+	 * @param bucketBillingInfo
+	 * @param time - observation time (ms)
+	 */
+	public synchronized void observeBilling( String namespace, BucketBillingInfo bucketBillingInfo, long time ) {
+		
+		BucketState state   = getState(namespace, bucketBillingInfo.getName());
+		long        objects = (bucketBillingInfo.getTotalObjects() != null) ? bucketBillingInfo.getTotalObjects() : 0L;
+		long        size    = (bucketBillingInfo.getTotalSize() != null) ? bucketBillingInfo.getTotalSize() : 0L;
+		
+		if( state.billingTime > 0 && time > state.billingTime ) {
+			// object count delta is a lower bound of the number of changes;
+			// a size only difference still counts as one change 
+			long changes = Math.abs(objects - state.billingObjects);
+			if( changes == 0 && size != state.billingSize ) {
+				changes = 1;
+			}
+			state.billingRate = smooth(state.billingRate, changes / ((time - state.billingTime) / HOUR_MS));
+		}
+		
+		state.billingObjects = objects;
+		state.billingSize    = size;
+		state.billingTime    = time;
+	}
+	
+	/**
+	 * Decides whether a bucket needs to be collected in the current run
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 * @param time - current time (ms)
+	 * @return boolean
+	 */
+	public synchronized boolean isDue( String namespace, String bucket, long time ) {
+		
+		BucketState state = states.get(toKey(namespace, bucket));
+		boolean     due   = isDue(state, time);
+		
+		if( due ) {
+			dueCount++;
+		} else {
+			skippedCount++;
+			logger.debug("Skipping namespace: " + namespace + " bucket: " + bucket + 
+						 " expected changes per hour: " + Math.max(state.billingRate, state.listingRate));
+		}
+		return due;
+	}
+	
+	/**
+	 * Records a completed collection of a bucket
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 * @param changes - number of changes found by the collection or -1 if unknown
+	 * @param time - collection time (ms)
+	 */
+	public synchronized void recordVisit( String namespace, String bucket, long changes, long time ) {
+		
+		BucketState state = getState(namespace, bucket);
+		
+		if( changes >= 0 && state.visitTime > 0 && time > state.visitTime ) {
+			state.listingRate = smooth(state.listingRate, changes / ((time - state.visitTime) / HOUR_MS));
+		}
+		
+		state.visitTime    = time;
+		state.visitObjects = state.billingObjects;
+		state.visitSize    = state.billingSize;
+	}
+	
+	/**
+	 * Persists bucket states into the state file
+	 */
+	public synchronized void save() {
+		
+		Properties properties = new Properties();
+		for( Map.Entry<String, BucketState> entry : states.entrySet() ) {
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		
+		File tmpFile = new File(stateFile.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmpFile);
+			properties.store(out, "ECS bucket change rates");
+		} catch (IOException e) {
+			logger.error("Unable to write change rate file: " + tmpFile.getPath() + " " + e.getLocalizedMessage());
+			throw new RuntimeException(e.getLocalizedMessage());
+		} finally {
+			closeQuietly(out);
+		}
+		
+		if( stateFile.exists() && !stateFile.delete() ) {
+			throw new RuntimeException("Unable to replace change rate file: " + stateFile.getPath());
+		}
+		if( !tmpFile.renameTo(stateFile) ) {
+			throw new RuntimeException("Unable to rename " + tmpFile.getPath() + " to " + stateFile.getPath());
+		}
+		
+		logger.info( "Adaptive collection: " + dueCount + " buckets collected, " + skippedCount + 
+					 " buckets skipped - state saved into " + stateFile.getPath() );
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private boolean isDue( BucketState state, long time ) {
+		
+		if( state == null || state.visitTime <= 0 ) {
+			// never collected
+			return true;
+		}
+		
+		long sinceVisit = time - state.visitTime;
+		
+		if( sinceVisit >= maxStalenessMs ) {
+			// guaranteed maximum staleness
+			return true;
+		}
+		
+		if( state.billingObjects != state.visitObjects || 
+			state.billingSize    != state.visitSize       ) {
+			// billing already shows a change
+			return true;
+		}
+		
+		// expect at least one change since last collection
+		double rate = Math.max(state.billingRate, state.listingRate);
+		return rate * (sinceVisit / HOUR_MS) >= 1.0;
+	}
+	
+	private static double smooth( double average, double observation ) {
+		return RATE_SMOOTHING * observation + (1 - RATE_SMOOTHING) * average;
+	}
+	
+	private BucketState getState( String namespace, String bucket ) {
+		String      key   = toKey(namespace, bucket);
+		BucketState state = states.get(key);
+		if( state == null ) {
+			state = new BucketState();
+			states.put(key, state);
+		}
+		return state;
+	}
+	
+	private void load() {
+		
+		if( !stateFile.exists() ) {
+			logger.info("Change rate file " + stateFile.getPath() + " doesn't exist - all buckets will be collected");
+			return;
+		}
+		
+		Properties properties = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(stateFile);
+			properties.load(in);
+		} catch (IOException e) {
+			logger.error("Unable to read change rate file: " + stateFile.getPath() + " " + e.getLocalizedMessage());
+			throw new RuntimeException(e.getLocalizedMessage());
+		} finally {
+			closeQuietly(in);
+		}
+		
+		for( String key : properties.stringPropertyNames() ) {
+			BucketState state = BucketState.parse(properties.getProperty(key));
+			if( state != null ) {
+				states.put(key, state);
+			} else {
+				logger.error("Ignoring invalid change rate entry for " + key + ": " + properties.getProperty(key));
+			}
+		}
+		
+		logger.info("Loaded change rates of " + states.size() + " buckets from " + stateFile.getPath());
+	}
+	
+	private static String toKey( String namespace, String bucket ) {
+		return namespace + KEY_SEPARATOR + bucket;
+	}
+	
+	private static void closeQuietly( Closeable closeable ) {
+		if( closeable != null ) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+	}
+	
+	//================================
+	// Private classes
+	//================================
+	private static class BucketState {
+		
+		private long   visitTime      = 0L;
+		private long   visitObjects   = 0L;
+		private long   visitSize      = 0L;
+		private long   billingTime    = 0L;
+		private long   billingObjects = 0L;
+		private long   billingSize    = 0L;
+		private double billingRate    = 0.0;
+		private double listingRate    = 0.0;
+		
+		private static BucketState parse( String value ) {
+			
+			String[] fields = value.split(VALUE_SEPARATOR);
+			if( fields.length != 8 ) {
+				return null;
+			}
+			
+			try {
+				BucketState state    = new BucketState();
+				state.visitTime      = Long.parseLong(fields[0]);
+				state.visitObjects   = Long.parseLong(fields[1]);
+				state.visitSize      = Long.parseLong(fields[2]);
+				state.billingTime    = Long.parseLong(fields[3]);
+				state.billingObjects = Long.parseLong(fields[4]);
+				state.billingSize    = Long.parseLong(fields[5]);
+				state.billingRate    = Double.parseDouble(fields[6]);
+				state.listingRate    = Double.parseDouble(fields[7]);
+				return state;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return visitTime + VALUE_SEPARATOR + visitObjects + VALUE_SEPARATOR + visitSize + VALUE_SEPARATOR + 
+				   billingTime + VALUE_SEPARATOR + billingObjects + VALUE_SEPARATOR + billingSize + VALUE_SEPARATOR + 
+				   billingRate + VALUE_SEPARATOR + listingRate;
+		}
+	}
+}
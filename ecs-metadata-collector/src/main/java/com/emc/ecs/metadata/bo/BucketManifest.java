@@ -0,0 +1,301 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+
+
+/**
+ * Read only view of the object manifest written by the previous 
+ * collection of a bucket.
+ * 
+ * The manifest file holds one fixed size record per object sorted 
+ * by key hash and is memory mapped so lookups don't need to load 
+ * it on the heap. Keys are kept in a sidecar file and only read to 
+ * confirm a hash match or to report a deleted object.
+ */
+public class BucketManifest implements Closeable {
+
+	static final long    MANIFEST_MAGIC = 0x4543534d414e4931L; // ECSMANI1
+	static final Charset UTF8           = Charset.forName("UTF-8");
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(BucketManifest.class);
+	
+	private final RandomAccessFile manifestFile;
+	private final RandomAccessFile keysFile;
+	private final ManifestRecords  records;
+	private final BitSet           matched;
+	
+	//================================
+	// Constructor
+	//================================
+	private BucketManifest( RandomAccessFile manifestFile, RandomAccessFile keysFile, int segmentShift ) throws IOException {
+		
+		this.manifestFile = manifestFile;
+		this.keysFile     = keysFile;
+		this.records      = new ManifestRecords(manifestFile.getChannel(), MapMode.READ_ONLY, segmentShift);
+		
+		if( records.size() > Integer.MAX_VALUE ) {
+			throw new IOException("Manifest has too many records: " + records.size());
+		}
+		this.matched = new BitSet((int)records.size());
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Opens an existing manifest
+	 * 
+	 * @param manifest
+	 * @param keys
+	 * @return BucketManifest or null if there is no valid manifest
+	 */
+	public static BucketManifest open( File manifest, File keys ) {
+		return open(manifest, keys, ManifestRecords.SEGMENT_SHIFT);
+	}
+	
+	/**
+	 * @param manifest
+	 * @param keys
+	 * @param segmentShift - log2 of the number of records mapped per segment
+	 * @return BucketManifest or null if there is no valid manifest
+	 */
+	static BucketManifest open( File manifest, File keys, int segmentShift ) {
+		
+		if( !manifest.exists() || !keys.exists() ) {
+			return null;
+		}
+		
+		RandomAccessFile manifestFile = null;
+		RandomAccessFile keysFile     = null;
+		try {
+			manifestFile = new RandomAccessFile(manifest, "r");
+			keysFile     = new RandomAccessFile(keys, "r");
+			
+			// header: magic | expected key file length
+			if( manifestFile.length() < ManifestRecords.HEADER_SIZE ||
+				manifestFile.readLong() != MANIFEST_MAGIC         ||
+				manifestFile.readLong() != keysFile.length()        ) {
+				logger.error("Ignoring invalid or incomplete manifest: " + manifest.getPath());
+				closeQuietly(manifestFile);
+				closeQuietly(keysFile);
+				return null;
+			}
+			
+			return new BucketManifest(manifestFile, keysFile, segmentShift);
+			
+		} catch (IOException e) {
+			logger.error("Unable to open manifest: " + manifest.getPath() + " " + e.getLocalizedMessage());
+			closeQuietly(manifestFile);
+			closeQuietly(keysFile);
+			return null;
+		}
+	}
+	
+	/**
+	 * 64 bit hash used for keys and etags
+	 * @param value
+	 * @return long
+	 */
+	public static long hash( String value ) {
+		
+		if( value == null ) {
+			return 0L;
+		}
+		
+		// FNV-1a over UTF-8 bytes
+		long hash = 0xcbf29ce484222325L;
+		for( byte b : value.getBytes(UTF8) ) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		
+		// final avalanche so similar keys spread evenly
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb93fe53a87ceL;
+		hash ^= hash >>> 33;
+		
+		return hash;
+	}
+	
+	/**
+	 * @return number of objects in the manifest
+	 */
+	public long size() {
+		return records.size();
+	}
+	
+	/**
+	 * Looks up an object key
+	 * 
+	 * @param keyHash
+	 * @param key
+	 * @return record index or -1 if not found
+	 */
+	public int find( long keyHash, String key ) {
+		
+		for( long i = records.lowerBound(keyHash); 
+			 i < records.size() && records.getLong(i, ManifestRecords.KEY_HASH_FIELD) == keyHash; 
+			 i++ ) {
+			if( key.equals(getKey((int)i)) ) {
+				return (int)i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Compares an object of the current listing with its record 
+	 * and marks the record as still present in the bucket
+	 * 
+	 * @param keyHash
+	 * @param key
+	 * @param eTagHash
+	 * @param size
+	 * @param lastModified
+	 * @return added, modified or null if the object didn't change
+	 */
+	public ChangeType match( long keyHash, String key, long eTagHash, long size, long lastModified ) {
+		
+		int index = find(keyHash, key);
+		
+		if( index < 0 ) {
+			return ChangeType.added;
+		}
+		
+		markMatched(index);
+		
+		if( getETagHash(index)     != eTagHash ||
+			getSize(index)         != size     ||
+			getLastModified(index) != lastModified ) {
+			return ChangeType.modified;
+		}
+		return null;
+	}
+	
+	/**
+	 * Marks a record as still present in the bucket
+	 * @param index
+	 */
+	public void markMatched( int index ) {
+		matched.set(index);
+	}
+	
+	/**
+	 * @param fromIndex
+	 * @return index of the next record which was not matched or -1
+	 */
+	public int nextUnmatched( int fromIndex ) {
+		int index = matched.nextClearBit(fromIndex);
+		return (index < records.size()) ? index : -1;
+	}
+	
+	public long getETagHash( int index ) {
+		return records.getLong(index, ManifestRecords.ETAG_HASH_FIELD);
+	}
+	
+	public long getSize( int index ) {
+		return records.getLong(index, ManifestRecords.SIZE_FIELD);
+	}
+	
+	public long getLastModified( int index ) {
+		return records.getLong(index, ManifestRecords.LAST_MODIFIED_FIELD);
+	}
+	
+	/**
+	 * Reads the object key of a record from the key file
+	 * @param index
+	 * @return String
+	 */
+	public String getKey( int index ) {
+		
+		long offset = records.getLong(index, ManifestRecords.KEY_OFFSET_FIELD);
+		
+		try {
+			FileChannel channel = keysFile.getChannel();
+			
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+			readFully(channel, lengthBuffer, offset);
+			
+			ByteBuffer keyBuffer = ByteBuffer.allocate(lengthBuffer.getInt(0));
+			readFully(channel, keyBuffer, offset + 4);
+			
+			return new String(keyBuffer.array(), UTF8);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	@Override
+	public void close() {
+		closeQuietly(manifestFile);
+		closeQuietly(keysFile);
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private static void readFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+		while( buffer.hasRemaining() ) {
+			int read = channel.read(buffer, position + buffer.position());
+			if( read < 0 ) {
+				throw new IOException("Unexpected end of manifest key file");
+			}
+		}
+	}
+	
+	private static void closeQuietly( Closeable closeable ) {
+		if( closeable != null ) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+	}
+}
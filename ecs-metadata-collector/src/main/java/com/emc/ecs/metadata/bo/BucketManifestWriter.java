@@ -0,0 +1,205 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes the object manifest of a bucket while its objects are listed.
+ * 
+ * Records are appended to temporary files which are sorted 
+ * in place and swapped with the previous manifest on commit.
+ */
+public class BucketManifestWriter {
+
+	private static final String NEW_FILE_SUFFIX = ".new";
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(BucketManifestWriter.class);
+	
+	private final File       manifestFile;
+	private final File       keysFile;
+	private final File       newManifestFile;
+	private final File       newKeysFile;
+	private final int        segmentShift;
+	private DataOutputStream recordStream;
+	private DataOutputStream keyStream;
+	private long             keysLength = 0L;
+	
+	//================================
+	// Constructor
+	//================================
+	public BucketManifestWriter( File manifestFile, File keysFile ) {
+		this(manifestFile, keysFile, ManifestRecords.SEGMENT_SHIFT);
+	}
+	
+	/**
+	 * @param manifestFile
+	 * @param keysFile
+	 * @param segmentShift - log2 of the number of records mapped per segment while sorting
+	 */
+	BucketManifestWriter( File manifestFile, File keysFile, int segmentShift ) {
+		
+		this.segmentShift    = segmentShift;
+		this.manifestFile    = manifestFile;
+		this.keysFile        = keysFile;
+		this.newManifestFile = new File(manifestFile.getPath() + NEW_FILE_SUFFIX);
+		this.newKeysFile     = new File(keysFile.getPath() + NEW_FILE_SUFFIX);
+		
+		try {
+			recordStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newManifestFile)));
+			keyStream    = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newKeysFile)));
+			
+			// header - key file length is filled on commit
+			recordStream.writeLong(BucketManifest.MANIFEST_MAGIC);
+			recordStream.writeLong(0L);
+		} catch (IOException e) {
+			abort();
+			throw new RuntimeException("Unable to create manifest: " + newManifestFile.getPath() + " " + e.getLocalizedMessage());
+		}
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Appends an object to the manifest
+	 * 
+	 * @param key
+	 * @param keyHash
+	 * @param eTagHash
+	 * @param size
+	 * @param lastModified
+	 */
+	public void append( String key, long keyHash, long eTagHash, long size, long lastModified ) {
+		
+		try {
+			byte[] keyBytes = key.getBytes(BucketManifest.UTF8);
+			
+			recordStream.writeLong(keyHash);
+			recordStream.writeLong(eTagHash);
+			recordStream.writeLong(size);
+			recordStream.writeLong(lastModified);
+			recordStream.writeLong(keysLength);
+			
+			keyStream.writeInt(keyBytes.length);
+			keyStream.write(keyBytes);
+			keysLength += 4 + keyBytes.length;
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write manifest: " + newManifestFile.getPath() + " " + e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Sorts the new manifest and replaces the previous one
+	 */
+	public void commit() {
+		
+		RandomAccessFile manifest = null;
+		try {
+			recordStream.close();
+			keyStream.close();
+			
+			manifest = new RandomAccessFile(newManifestFile, "rw");
+			
+			ManifestRecords records = new ManifestRecords(manifest.getChannel(), MapMode.READ_WRITE, segmentShift);
+			records.sort();
+			records.force();
+			
+			// header tells readers which key file belongs to the records
+			manifest.seek(8);
+			manifest.writeLong(keysLength);
+			manifest.close();
+			manifest = null;
+			
+			replace(newKeysFile, keysFile);
+			replace(newManifestFile, manifestFile);
+			
+		} catch (IOException e) {
+			abort();
+			throw new RuntimeException("Unable to commit manifest: " + manifestFile.getPath() + " " + e.getLocalizedMessage());
+		} finally {
+			if( manifest != null ) {
+				try {
+					manifest.close();
+				} catch (IOException e) {
+					logger.error(e.getLocalizedMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Drops the new manifest - the previous one stays in place
+	 */
+	public void abort() {
+		
+		try {
+			if( recordStream != null ) {
+				recordStream.close();
+			}
+			if( keyStream != null ) {
+				keyStream.close();
+			}
+		} catch (IOException e) {
+			logger.error(e.getLocalizedMessage());
+		}
+		
+		if( newManifestFile.exists() && !newManifestFile.delete() ) {
+			logger.error("Unable to delete " + newManifestFile.getPath());
+		}
+		if( newKeysFile.exists() && !newKeysFile.delete() ) {
+			logger.error("Unable to delete " + newKeysFile.getPath());
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private static void replace( File source, File target ) throws IOException {
+		if( target.exists() && !target.delete() ) {
+			throw new IOException("Unable to delete " + target.getPath());
+		}
+		if( !source.renameTo(target) ) {
+			throw new IOException("Unable to rename " + source.getPath() + " to " + target.getPath());
+		}
+	}
+}
@@ -26,6 +26,7 @@ SOFTWARE.
 package com.emc.ecs.metadata.bo;
 
 
+import java.util.Date;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
@@ -35,13 +36,15 @@ import com.emc.ecs.management.entity.ObjectBucket;
 import com.emc.object.s3.bean.Bucket;
 
 
-public class BucketObjectCollection implements Callable<String> {
+public class BucketObjectCollection implements Callable<String>, NamespaceTask {
 
 	
 	final static Logger logger = LoggerFactory.getLogger(BucketObjectCollection.class);
 	
 	private ObjectCollectionConfig collectionConfig;
 	private Bucket                 bucket;
+	private boolean                partiallyCollected = false;
+	private boolean                modifiedOnly       = false;
 
 	
 	//===========================
@@ -55,6 +58,12 @@ public class BucketObjectCollection implements Callable<String> {
 	}
 	
 	
+	@Override
+	public String getNamespace() {
+		return collectionConfig.getNamespace();
+	}
+	
+	
 	@Override
 	public String call() throws Exception {
 		collectObjectsPerBucket();
@@ -72,11 +81,70 @@ public class BucketObjectCollection implements Callable<String> {
 		logger.info("Collecting object for bucket: " + bucket.getName());
 		
 
+		if(collectionConfig.getManifestDirectory() != null) {
+			// only changes since last collection are stored
+			ManifestObjectsCollection manifestObjectsCollection = 
+					new ManifestObjectsCollection( collectionConfig, bucket.getName() );
+			manifestObjectsCollection.collectObjectChanges();
+			recordVisit(manifestObjectsCollection.getChangeCount());
+			return;
+		}
+		
 		ObjectBucket objectBucket = getObjectBucket();
 		
-		// Check if a search criteria was specified
-		if(collectionConfig.getQueryCriteria() != null) {
+		BucketWatermarkStore watermarkStore = collectionConfig.getWatermarkStore();
+		if(watermarkStore != null) {
+			watermarkStore.start(collectionConfig.getNamespace(), bucket.getName());
+		}
+		
+		try {
+			collectObjectsPerBucket(objectBucket);
+			
+			// pages may still be queued in the collection pipeline
+			if( !collectionConfig.flushPages(bucket.getName()) ) {
+				partiallyCollected = true;
+			}
+		} catch (RuntimeException e) {
+			if(watermarkStore != null) {
+				watermarkStore.discard(collectionConfig.getNamespace(), bucket.getName());
+			}
+			throw e;
+		}
+		
+		if(watermarkStore != null) {
+			if(partiallyCollected) {
+				// some objects may have been missed - keep the current watermark
+				watermarkStore.discard(collectionConfig.getNamespace(), bucket.getName());
+			} else {
+				// bucket fully collected - move its watermark forward
+				watermarkStore.commit(collectionConfig.getNamespace(), bucket.getName());
+			}
+		}
+		
+		// number of changes is unknown when objects are not diffed
+		if(!partiallyCollected) {
+			recordVisit(-1L);
+		}
+		
+		// objects which weren't listed anymore have been deleted
+		if(!partiallyCollected && !modifiedOnly) {
+			markDeletedObjects();
+		}
+	}
+	
+	private void collectObjectsPerBucket( ObjectBucket objectBucket ) {
+		
+		Date modifiedSince = getModifiedSince();
+		
+		if(modifiedSince != null) {
+			// incremental collection
+			modifiedOnly = true;
+			collectObjectsModifiedSince(objectBucket, modifiedSince);
+		} else if(collectionConfig.getQueryCriteria() != null) {
+			// Check if a search criteria was specified
 			queryObjects( objectBucket ); 
+			// an arbitrary criteria doesn't cover all objects
+			partiallyCollected = true;
 		} else {
 			// normal case where we list object or query them if they
 			// have any MD keys configured against them
@@ -88,7 +156,7 @@ public class BucketObjectCollection implements Callable<String> {
 
 				// Bucket has search MD keys configured
 				// need to query those objects for that bucket
-				if( !queryObjects(objectBucket) ) {
+				if( !queryAllObjects(objectBucket) ) {
 					// Something went wonky during the query operation
 					// revert to list object call
 					listObjects(objectBucket);
@@ -99,12 +167,96 @@ public class BucketObjectCollection implements Callable<String> {
 		}
 	}
 
+	private void markDeletedObjects() {
+		if(collectionConfig.getObjectDAO() != null) {
+			collectionConfig.getObjectDAO().markDeletedObjects( collectionConfig.getNamespace(), bucket.getName(), 
+																collectionConfig.getCollectionTime() );
+		}
+	}
+	
+	private void recordVisit( long changes ) {
+		if(collectionConfig.getChangeRateTracker() != null) {
+			collectionConfig.getChangeRateTracker().recordVisit( collectionConfig.getNamespace(), bucket.getName(), 
+																 changes, collectionConfig.getCollectionTime().getTime() );
+		}
+	}
+	
+	/**
+	 * Returns the date from which objects have to be collected:
+	 * the bucket watermark if there is one otherwise the 
+	 * modified since date of the collection (if any)
+	 * @return Date
+	 */
+	private Date getModifiedSince() {
+		
+		if(collectionConfig.getWatermarkStore() != null) {
+			Date watermark = collectionConfig.getWatermarkStore().getModifiedSince(collectionConfig.getNamespace(), bucket.getName());
+			if(watermark != null) {
+				return watermark;
+			}
+		}
+		return collectionConfig.getModifiedSince();
+	}
+	
+	private void collectObjectsModifiedSince( ObjectBucket objectBucket, Date modifiedSince ) {
+		
+		logger.info("Collecting objects modified since " + modifiedSince + " for bucket: " + bucket.getName());
+		
+		if( QueryObjectsCollection.hasLastModifiedSearchKey(objectBucket) ) {
+			// metadata search can return modified objects only
+			QueryObjectsCollection queryObjectsCollection = 
+					new QueryObjectsCollection( collectionConfig, objectBucket, 
+												QueryObjectsCollection.modifiedSinceCriteria(modifiedSince) );
+			queryObjectsCollection.queryObjects();
+			partiallyCollected |= !queryObjectsCollection.isCompleted();
+		} else {
+			// no search on modification time - list all keys and 
+			// only keep the modified ones
+			ListObjectsCollection listObjectsCollection = 
+					new ListObjectsCollection( collectionConfig, objectBucket, modifiedSince );
+			listObjectsCollection.collectObjectKeys();
+		}
+	}
+	
+	/**
+	 * Queries all objects of the bucket, as concurrent range
+	 * queries if the planner can partition the bucket
+	 * @param objectBucket
+	 * @return boolean - true if objects were collected
+	 */
+	private boolean queryAllObjects( ObjectBucket objectBucket ) {
+		
+		QueryPlanner queryPlanner = collectionConfig.getQueryPlanner();
+		QueryPlanner.QueryPlan queryPlan = (queryPlanner != null) ? 
+				queryPlanner.plan(objectBucket, collectionConfig.getCollectionTime()) : null;
+		
+		if( queryPlan == null ) {
+			// no suitable partition key - single query
+			return queryObjects(objectBucket);
+		}
+		
+		PartitionedQueryCollection partitionedQueryCollection = 
+				new PartitionedQueryCollection( collectionConfig, objectBucket, queryPlan );
+		
+		boolean collected = partitionedQueryCollection.queryObjects();
+		
+		// when nothing was collected objects get listed instead
+		partiallyCollected |= collected && !partitionedQueryCollection.isCompleted();
+		
+		return collected;
+	}
+	
 	private boolean queryObjects( ObjectBucket objectBucket) {
 		
 		QueryObjectsCollection queryObjectsCollection = 
 				new QueryObjectsCollection( collectionConfig, objectBucket );
 			
-		return queryObjectsCollection.queryObjects();
+		boolean collected = queryObjectsCollection.queryObjects();
+		
+		// when nothing was collected objects get listed instead
+		partiallyCollected |= collected && !queryObjectsCollection.isCompleted();
+		
+		return collected;
 	}
 
 	private void listObjects( ObjectBucket objectBucket ) {
@@ -35,7 +35,7 @@ import com.emc.ecs.management.entity.ObjectBucket;
 import com.emc.object.s3.bean.Bucket;
 
 
-public class BucketObjectVersionCollection implements Callable<String> {
+public class BucketObjectVersionCollection implements Callable<String>, NamespaceTask {
 
 	
 	final static Logger logger = LoggerFactory.getLogger(BucketObjectVersionCollection.class);
@@ -55,6 +55,12 @@ public class BucketObjectVersionCollection implements Callable<String> {
 	}
 	
 	
+	@Override
+	public String getNamespace() {
+		return collectionConfig.getNamespace();
+	}
+	
+	
 	@Override
 	public String call() throws Exception {
 		collectObjectsVersionsPerBucket();
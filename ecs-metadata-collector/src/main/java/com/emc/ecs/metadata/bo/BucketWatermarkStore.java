@@ -0,0 +1,247 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps track of the newest LastModified time collected per bucket 
+ * so subsequent runs only need to collect objects modified after it.
+ * 
+ * Marks observed during a run are kept pending and only committed 
+ * once the bucket collection completed successfully. The committed mark
+ * never goes past the time the bucket collection started: objects 
+ * modified while the bucket was listed may have been passed already. 
+ * Committed marks are persisted in a local properties file 
+ * (namespace/bucket=epoch ms).
+ */
+public class BucketWatermarkStore {
+
+	// Objects becoming visible late (in flight writes, metadata
+	// index lag) are caught by starting slightly before the mark
+	private static final long   WATERMARK_OVERLAP_MS = 5 * 60 * 1000L;
+	private static final String KEY_SEPARATOR        = "/";
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(BucketWatermarkStore.class);
+	
+	private final File              watermarkFile;
+	private final Map<String, Long> committedMarks = new HashMap<String, Long>();
+	private final Map<String, Long> pendingMarks   = new HashMap<String, Long>();
+	private final Map<String, Long> startTimes     = new HashMap<String, Long>();
+	
+	//================================
+	// Constructor
+	//================================
+	public BucketWatermarkStore( String watermarkFileName ) {
+		this.watermarkFile = new File(watermarkFileName);
+		load();
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Returns the date from which objects need to be collected 
+	 * for the bucket or null if the bucket was never collected
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 * @return Date
+	 */
+	public synchronized Date getModifiedSince( String namespace, String bucket ) {
+		Long mark = committedMarks.get(toKey(namespace, bucket));
+		if( mark == null ) {
+			return null;
+		}
+		return new Date(mark - WATERMARK_OVERLAP_MS);
+	}
+	
+	/**
+	 * Records the time the collection of a bucket starts
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 */
+	public synchronized void start( String namespace, String bucket ) {
+		startTimes.put(toKey(namespace, bucket), System.currentTimeMillis());
+	}
+	
+	/**
+	 * Records a LastModified time seen while collecting the bucket
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 * @param lastModified
+	 */
+	public synchronized void observe( String namespace, String bucket, Date lastModified ) {
+		if( lastModified == null ) {
+			return;
+		}
+		String key = toKey(namespace, bucket);
+		Long pending = pendingMarks.get(key);
+		if( pending == null || pending < lastModified.getTime() ) {
+			pendingMarks.put(key, lastModified.getTime());
+		}
+	}
+	
+	/**
+	 * Promotes the newest observed time of a successfully collected 
+	 * bucket, capped by the time its collection started
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 */
+	public synchronized void commit( String namespace, String bucket ) {
+		String key = toKey(namespace, bucket);
+		Long pending   = pendingMarks.remove(key);
+		Long startTime = startTimes.remove(key);
+		if( pending == null ) {
+			// nothing new was collected - keep the current mark
+			return;
+		}
+		if( startTime != null && startTime < pending ) {
+			// keys listed before a modification during the 
+			// collection weren't seen again
+			pending = startTime;
+		}
+		Long committed = committedMarks.get(key);
+		if( committed == null || committed < pending ) {
+			committedMarks.put(key, pending);
+		}
+	}
+	
+	/**
+	 * Drops observed times of a bucket whose collection failed
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 */
+	public synchronized void discard( String namespace, String bucket ) {
+		pendingMarks.remove(toKey(namespace, bucket));
+		startTimes.remove(toKey(namespace, bucket));
+	}
+	
+	/**
+	 * Persists committed marks into the watermark file
+	 */
+	public synchronized void save() {
+		
+		Properties properties = new Properties();
+		for( Map.Entry<String, Long> entry : committedMarks.entrySet() ) {
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		
+		// write a temporary file first so an interrupted
+		// save doesn't corrupt existing marks
+		File tmpFile = new File(watermarkFile.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(tmpFile);
+			properties.store(out, "ECS bucket collection watermarks");
+		} catch (IOException e) {
+			logger.error("Unable to write watermark file: " + tmpFile.getPath() + " " + e.getLocalizedMessage());
+			throw new RuntimeException(e.getLocalizedMessage());
+		} finally {
+			closeQuietly(out);
+		}
+		
+		if( watermarkFile.exists() && !watermarkFile.delete() ) {
+			throw new RuntimeException("Unable to replace watermark file: " + watermarkFile.getPath());
+		}
+		if( !tmpFile.renameTo(watermarkFile) ) {
+			throw new RuntimeException("Unable to rename " + tmpFile.getPath() + " to " + watermarkFile.getPath());
+		}
+		
+		logger.info("Saved " + committedMarks.size() + " bucket watermarks into " + watermarkFile.getPath());
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private void load() {
+		
+		if( !watermarkFile.exists() ) {
+			logger.info("Watermark file " + watermarkFile.getPath() + " doesn't exist - all buckets will be fully collected");
+			return;
+		}
+		
+		Properties properties = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(watermarkFile);
+			properties.load(in);
+		} catch (IOException e) {
+			logger.error("Unable to read watermark file: " + watermarkFile.getPath() + " " + e.getLocalizedMessage());
+			throw new RuntimeException(e.getLocalizedMessage());
+		} finally {
+			closeQuietly(in);
+		}
+		
+		for( String key : properties.stringPropertyNames() ) {
+			try {
+				committedMarks.put(key, Long.valueOf(properties.getProperty(key)));
+			} catch (NumberFormatException e) {
+				logger.error("Ignoring invalid watermark for " + key + ": " + properties.getProperty(key));
+			}
+		}
+		
+		logger.info("Loaded " + committedMarks.size() + " bucket watermarks from " + watermarkFile.getPath());
+	}
+	
+	private static String toKey( String namespace, String bucket ) {
+		return namespace + KEY_SEPARATOR + bucket;
+	}
+	
+	private static void closeQuietly( Closeable closeable ) {
+		if( closeable != null ) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.util.Locale;
+
+
+/**
+ * Median round-trip times measured 
+ * while probing one ECS host
+ */
+public class EndpointProbeResult implements Comparable<EndpointProbeResult> {
+
+	//================================
+	// Private members
+	//================================
+	private String  host;
+	private Long    mgmtLatency;
+	private Long    s3Latency;
+	private boolean healthy;
+	
+	//================================
+	// Constructor
+	//================================
+	public EndpointProbeResult( String  host, 
+								Long    mgmtLatency, 
+								Long    s3Latency ) {
+		
+		this.host         = host;
+		this.mgmtLatency  = mgmtLatency;
+		this.s3Latency    = s3Latency;
+		
+		// a host is only usable if both endpoints answered
+		this.healthy      = (mgmtLatency != null && s3Latency != null);
+	}
+
+	//================================
+	// Public methods
+	//================================
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return management endpoint median round-trip time in microseconds or null if unreachable
+	 */
+	public Long getMgmtLatency() {
+		return mgmtLatency;
+	}
+
+	/**
+	 * @return S3 endpoint median round-trip time in microseconds or null if unreachable
+	 */
+	public Long getS3Latency() {
+		return s3Latency;
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+	
+	/**
+	 * Score used to rank hosts - lower is better.
+	 * S3 latency weights more as object collection generates most of the traffic
+	 * @return Long
+	 */
+	public Long getScore() {
+		if(!healthy) {
+			return Long.MAX_VALUE;
+		}
+		return (3 * s3Latency) + mgmtLatency;
+	}
+
+	@Override
+	public int compareTo(EndpointProbeResult other) {
+		return getScore().compareTo(other.getScore());
+	}
+	
+	@Override
+	public String toString() {
+		return "host: " + host + 
+			   " healthy: " + healthy + 
+			   " mgmt latency: " + formatLatency(mgmtLatency) +
+			   " s3 latency: " + formatLatency(s3Latency);
+	}
+	
+	private static String formatLatency( Long latency ) {
+		return (latency != null) ? String.format(Locale.ROOT, "%.3f ms", latency / 1000.0) : "none";
+	}
+}
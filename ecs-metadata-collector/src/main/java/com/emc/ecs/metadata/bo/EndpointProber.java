@@ -0,0 +1,298 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Probes management and S3 endpoints of all configured ECS hosts
+ * and ranks them so collection traffic favors the fastest healthy nodes.
+ * 
+ * Each endpoint is sampled several times and ranked on the median 
+ * round-trip time, so a single slow or lucky sample doesn't decide 
+ * the ranking. Slower hosts are not left out: hosts are handed to the 
+ * clients fastest first and the smart clients prefer the first hosts 
+ * of their list when hosts are equally loaded.
+ */
+public class EndpointProber {
+
+	private static final Integer DEFAULT_S3_PORT          = 9020;
+	private static final Integer PROBE_TIMEOUT_MS         = 5000;
+	// round trips measured per endpoint
+	private static final Integer PROBE_SAMPLES            = 5;
+	
+	//================================
+	// Private members
+	//================================
+	private List<String>                       hosts;
+	private Integer                            mgmtPort;
+	private Integer                            s3Port;
+	private volatile List<EndpointProbeResult> ranking = new ArrayList<EndpointProbeResult>();
+	private ScheduledExecutorService           refreshExecutor;
+	
+	private final static Logger                logger = LoggerFactory.getLogger(EndpointProber.class);
+	
+	//================================
+	// Constructor
+	//================================
+	public EndpointProber( List<String> hosts, Integer mgmtPort ) {
+		this.hosts    = hosts;
+		this.mgmtPort = mgmtPort;
+		this.s3Port   = DEFAULT_S3_PORT;
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Probes all hosts concurrently and refreshes the host ranking
+	 * @return List<EndpointProbeResult> ranked fastest first
+	 */
+	public List<EndpointProbeResult> probe() {
+		
+		ExecutorService probeExecutor = Executors.newFixedThreadPool(hosts.size());
+		List<Future<EndpointProbeResult>> probeFutures = new ArrayList<Future<EndpointProbeResult>>();
+		
+		try {
+			for( final String host : hosts ) {
+				probeFutures.add(probeExecutor.submit(new Callable<EndpointProbeResult>() {
+					@Override
+					public EndpointProbeResult call() throws Exception {
+						return probeHost(host);
+					}
+				}));
+			}
+			
+			List<EndpointProbeResult> results = new ArrayList<EndpointProbeResult>();
+			for( Future<EndpointProbeResult> probeFuture : probeFutures ) {
+				try {
+					results.add(probeFuture.get());
+				} catch (InterruptedException e) {
+					logger.error(e.getLocalizedMessage());
+				} catch (ExecutionException e) {
+					logger.error(e.getLocalizedMessage());
+				}
+			}
+			
+			Collections.sort(results);
+			
+			for( EndpointProbeResult result : results ) {
+				logger.info("Endpoint probe - " + result.toString());
+			}
+			
+			this.ranking = results;
+			
+		} finally {
+			probeExecutor.shutdownNow();
+		}
+		
+		return this.ranking;
+	}
+	
+	/**
+	 * Periodically probes hosts again during long runs. The refreshed 
+	 * ranking applies to clients created after the refresh, such as 
+	 * the clients of the next collection phase.
+	 * @param intervalMinutes
+	 */
+	public synchronized void startPeriodicRefresh( long intervalMinutes ) {
+		
+		if( intervalMinutes <= 0 || refreshExecutor != null ) {
+			return;
+		}
+		
+		refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+		refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					probe();
+				} catch (Exception e) {
+					logger.error("Endpoint probe refresh failed - message: " + e.getLocalizedMessage());
+				}
+			}
+		}, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+	}
+	
+	public synchronized void shutdown() {
+		if( refreshExecutor != null ) {
+			refreshExecutor.shutdownNow();
+			refreshExecutor = null;
+		}
+	}
+	
+	/**
+	 * Returns healthy hosts ranked fastest first. If no probe 
+	 * succeeded the configured host list is returned untouched.
+	 * @return List<String>
+	 */
+	public List<String> getPreferredHosts() {
+		
+		List<String> preferredHosts = getHealthyHosts(this.ranking);
+		
+		if( preferredHosts.isEmpty() ) {
+			// nothing usable was measured
+			return hosts;
+		}
+		return preferredHosts;
+	}
+	
+	//================================
+	// Package methods
+	//================================
+	
+	/**
+	 * @param ranking - probe results ranked fastest first
+	 * @return List<String> - hosts whose endpoints both answered, in ranking order
+	 */
+	static List<String> getHealthyHosts( List<EndpointProbeResult> ranking ) {
+		
+		List<String> healthyHosts = new ArrayList<String>();
+		
+		for( EndpointProbeResult result : ranking ) {
+			if( result.isHealthy() ) {
+				healthyHosts.add(result.getHost());
+			}
+		}
+		return healthyHosts;
+	}
+	
+	/**
+	 * Median of round-trip samples. A failed sample (null) counts
+	 * as slower than any answer, so an endpoint failing most of its 
+	 * samples has no median.
+	 * @param samples - round-trip times in ns, null for failed samples
+	 * @return Long - median in microseconds or null
+	 */
+	static Long median( List<Long> samples ) {
+		
+		if( samples.isEmpty() ) {
+			return null;
+		}
+		
+		List<Long> sortedSamples = new ArrayList<Long>(samples);
+		Collections.sort(sortedSamples, new Comparator<Long>() {
+			@Override
+			public int compare( Long sample, Long otherSample ) {
+				if( sample == null || otherSample == null ) {
+					return (sample == null) ? ((otherSample == null) ? 0 : 1) : -1;
+				}
+				return sample.compareTo(otherSample);
+			}
+		});
+		
+		Long median = sortedSamples.get(sortedSamples.size() / 2);
+		return (median != null) ? TimeUnit.NANOSECONDS.toMicros(median) : null;
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	private EndpointProbeResult probeHost( String host ) {
+		
+		List<Long> mgmtSamples = new ArrayList<Long>();
+		List<Long> s3Samples   = new ArrayList<Long>();
+		
+		for( int i = 0; i < PROBE_SAMPLES; i++ ) {
+			mgmtSamples.add(probeMgmtEndpoint(host));
+			s3Samples.add(probeS3Endpoint(host));
+		}
+		
+		return new EndpointProbeResult(host, median(mgmtSamples), median(s3Samples));
+	}
+	
+	/**
+	 * @param host
+	 * @return Long - round-trip time in ns or null if unreachable
+	 */
+	private Long probeS3Endpoint( String host ) {
+		
+		HttpURLConnection connection = null;
+		long startTime = System.nanoTime();
+		
+		try {
+			// anonymous request - ECS answers with a small error
+			// document which is enough to measure the round trip
+			URL url = new URL("http", host, s3Port, "/");
+			connection = (HttpURLConnection)url.openConnection();
+			connection.setConnectTimeout(PROBE_TIMEOUT_MS);
+			connection.setReadTimeout(PROBE_TIMEOUT_MS);
+			
+			connection.getResponseCode();
+			return System.nanoTime() - startTime;
+			
+		} catch (IOException e) {
+			logger.warn("Unable to probe S3 endpoint of host: " + host + " - message: " + e.getLocalizedMessage());
+			return null;
+		} finally {
+			if( connection != null ) {
+				connection.disconnect();
+			}
+		}
+	}
+	
+	/**
+	 * @param host
+	 * @return Long - TCP connect time in ns or null if unreachable
+	 */
+	private Long probeMgmtEndpoint( String host ) {
+		
+		long startTime = System.nanoTime();
+		
+		// TCP connect time avoids the TLS handshake 
+		// and authentication cost of a management call
+		try( Socket socket = new Socket() ) {
+			socket.connect(new InetSocketAddress(host, mgmtPort), PROBE_TIMEOUT_MS);
+			return System.nanoTime() - startTime;
+		} catch (IOException e) {
+			logger.warn("Unable to probe management endpoint of host: " + host + " - message: " + e.getLocalizedMessage());
+			return null;
+		}
+	}
+}
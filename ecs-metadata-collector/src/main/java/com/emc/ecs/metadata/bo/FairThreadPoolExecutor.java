@@ -0,0 +1,90 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Fixed size thread pool that schedules collection tasks fairly 
+ * across namespaces. A namespace with a huge number of buckets
+ * no longer delays other namespaces while idle threads still pick
+ * up its work.
+ */
+public class FairThreadPoolExecutor extends ThreadPoolExecutor {
+
+	//================================
+	// Constructor
+	//================================
+	
+	/**
+	 * @param nThreads - number of collection threads
+	 * @param namespaceWeights - optional per namespace weights (default weight: 1)
+	 */
+	public FairThreadPoolExecutor( int nThreads, Map<String, Integer> namespaceWeights ) {
+		
+		super( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, 
+			   new NamespaceFairQueue(namespaceWeights) );
+	}
+	
+	//================================
+	// Protected methods
+	//================================
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		
+		// keep track of the namespace so the queue can place the task in the right lane
+		if( callable instanceof NamespaceTask ) {
+			return new NamespaceFutureTask<T>(callable, ((NamespaceTask)callable).getNamespace());
+		}
+		return super.newTaskFor(callable);
+	}
+	
+	//================================
+	// Private classes
+	//================================
+	private static class NamespaceFutureTask<T> extends FutureTask<T> implements NamespaceTask {
+
+		private String namespace;
+		
+		public NamespaceFutureTask( Callable<T> callable, String namespace ) {
+			super(callable);
+			this.namespace = namespace;
+		}
+		
+		@Override
+		public String getNamespace() {
+			return namespace;
+		}
+	}
+}
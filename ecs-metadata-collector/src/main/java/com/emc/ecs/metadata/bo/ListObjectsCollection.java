@@ -29,6 +29,8 @@ SOFTWARE.
 package com.emc.ecs.metadata.bo;
 
 
+import java.util.Date;
+import java.util.Iterator;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
@@ -36,26 +38,39 @@ import org.slf4j.LoggerFactory;
 
 import com.emc.ecs.management.entity.ObjectBucket;
 import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.S3Object;
 import com.emc.object.s3.request.ListObjectsRequest;
 
 
 public class ListObjectsCollection implements Callable<String> {
 
-	private static final Integer maxObjectPerRequest = 10000;
-	
 	//=============================
 	// Private members
 	//=============================
 	private ObjectCollectionConfig collectionConfig;
 	private ObjectBucket           objectBucket;
+	private Date                   modifiedSince;
 	private final static Logger    logger = LoggerFactory.getLogger(ListObjectsCollection.class);
 	
 	
 	public ListObjectsCollection( ObjectCollectionConfig collectionConfig,  
 								  ObjectBucket objectBucket                 ) {
 		
+		this(collectionConfig, objectBucket, null);
+	}
+	
+	/**
+	 * @param collectionConfig
+	 * @param objectBucket
+	 * @param modifiedSince - only objects modified since that date are stored (null: all objects)
+	 */
+	public ListObjectsCollection( ObjectCollectionConfig collectionConfig,  
+								  ObjectBucket objectBucket,
+								  Date modifiedSince                        ) {
+		
 		this.collectionConfig  = collectionConfig; 
 		this.objectBucket      = objectBucket; 
+		this.modifiedSince     = modifiedSince;
 	}
 	
 	
@@ -74,49 +89,42 @@ public class ListObjectsCollection implements Callable<String> {
 	public void collectObjectKeys(){
 
 		// prepare request object
-		ListObjectsRequest listObjectsRequest = new ListObjectsRequest(objectBucket.getName());
-		listObjectsRequest.setMaxKeys(maxObjectPerRequest);
+		final ListObjectsRequest listObjectsRequest = new ListObjectsRequest(objectBucket.getName());
 		listObjectsRequest.setNamespace(collectionConfig.getNamespace());
-
-		long startTime = System.currentTimeMillis();
+		
+		// page size adapts to the bucket response time
+		PageSizeController.PageRequest<ListObjectsResult> listPage = new PageSizeController.PageRequest<ListObjectsResult>() {
+			@Override
+			public ListObjectsResult fetch(int pageSize) {
+				listObjectsRequest.setMaxKeys(pageSize);
+				return collectionConfig.getS3JerseyClient().listObjects(listObjectsRequest);
+			}
+			@Override
+			public int getCount(ListObjectsResult page) {
+				return page.getObjects().size();
+			}
+		};
 
 		try{
-			// collect objects
-			ListObjectsResult listObjectsResult = collectionConfig.getS3JerseyClient().listObjects(listObjectsRequest);
-
-			long stopTime = System.currentTimeMillis();
-			Double elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
-
-			if(listObjectsResult != null) {
-
-				Long collected = (long)listObjectsResult.getObjects().size();
-
-				this.collectionConfig.getObjectCount().getAndAdd(collected);
-
-				logger.info( "Took: " + elapsedTime + " seconds to collect " +
-						collected + " objects from namespace: " + 
-						collectionConfig.getNamespace() + " bucket: " + objectBucket.getName());
-
-				// add collected entries into datastore
-				if( collectionConfig.getObjectDAO() != null) {					
-					collectionConfig.getObjectDAO().insert( listObjectsResult, 
-							collectionConfig.getNamespace(),
-							objectBucket.getName(), 
-							collectionConfig.getCollectionTime() );
-				}
-
-				// process extra pages of objects
-				while(listObjectsResult.isTruncated()) {
-
-					listObjectsRequest.setMarker(listObjectsResult.getNextMarker());
-
-					startTime = System.currentTimeMillis();
-					listObjectsResult = collectionConfig.getS3JerseyClient().listObjects(listObjectsRequest);
-					stopTime = System.currentTimeMillis();
+			ListObjectsResult listObjectsResult;
+			
+			do {
+				// wait for enough memory to hold the page before fetching it
+				long reservedMemory = collectionConfig.reservePage(collectionConfig.getPageSize(objectBucket.getName()));
+				
+				try {
+					// collect objects
+					long startTime = System.currentTimeMillis();
+					listObjectsResult = collectionConfig.fetchPage(objectBucket.getName(), listPage);
+					long stopTime = System.currentTimeMillis();
+					
+					if(listObjectsResult == null) {
+						break;
+					}
 
-					elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
+					Double elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
 
-					collected = (long)listObjectsResult.getObjects().size();
+					Long collected = filterModifiedObjects(listObjectsResult);
 					collectionConfig.getObjectCount().getAndAdd(collected);
 
 					logger.info("Took: " + elapsedTime + " seconds to collect " +
@@ -130,12 +138,51 @@ public class ListObjectsCollection implements Callable<String> {
 								objectBucket.getName(), 
 								collectionConfig.getCollectionTime() );
 					}
+					
+					// move marker to beginning of next page
+					listObjectsRequest.setMarker(listObjectsResult.getNextMarker());
+				} finally {
+					collectionConfig.releasePage(reservedMemory);
 				}
-			}
+			// process extra pages of objects
+			} while(listObjectsResult.isTruncated());
 		} catch (Exception ex) {
 			logger.error("Error occur while listing object from namespace: " + collectionConfig.getNamespace() +
 					     " Bucket: " + objectBucket.getName() + " " + ex.getLocalizedMessage() );
 			throw new RuntimeException(ex.getLocalizedMessage());
 		}
 	}
+	
+	/**
+	 * Records newest LastModified time for the bucket watermark and
+	 * removes objects not modified since the requested date. S3 listing 
+	 * can't filter on modification time so that is done client side 
+	 * to avoid re-indexing unchanged objects.
+	 * 
+	 * @param listObjectsResult
+	 * @return Long - number of objects left in the result
+	 */
+	private Long filterModifiedObjects( ListObjectsResult listObjectsResult ) {
+		
+		BucketWatermarkStore watermarkStore = collectionConfig.getWatermarkStore();
+		Iterator<S3Object> itr = listObjectsResult.getObjects().iterator();
+		
+		while( itr.hasNext() ) {
+			S3Object s3Object = itr.next();
+			
+			if( watermarkStore != null ) {
+				watermarkStore.observe( collectionConfig.getNamespace(), 
+										objectBucket.getName(), 
+										s3Object.getLastModified() );
+			}
+			
+			if( modifiedSince != null             && 
+				s3Object.getLastModified() != null && 
+				s3Object.getLastModified().before(modifiedSince) ) {
+				itr.remove();
+			}
+		}
+		
+		return (long)listObjectsResult.getObjects().size();
+	}
 }
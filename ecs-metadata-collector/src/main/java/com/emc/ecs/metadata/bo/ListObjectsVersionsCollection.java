@@ -40,7 +40,6 @@ import com.emc.object.s3.request.ListVersionsRequest;
 
 public class ListObjectsVersionsCollection implements Callable<String> {
 
-	private static final Integer maxObjectPerRequest = 10000;
 	
 	//=============================
 	// Private members
@@ -82,51 +81,42 @@ public class ListObjectsVersionsCollection implements Callable<String> {
 		
 		
 		// prepare request object
-		ListVersionsRequest listVersionsRequest = new ListVersionsRequest(objectBucket.getName());
-		listVersionsRequest.setMaxKeys(maxObjectPerRequest);
+		final ListVersionsRequest listVersionsRequest = new ListVersionsRequest(objectBucket.getName());
 		listVersionsRequest.setNamespace(collectionConfig.getNamespace());
-
-		long startTime = System.currentTimeMillis();
+		
+		// page size adapts to the bucket response time
+		PageSizeController.PageRequest<ListVersionsResult> versionsPage = new PageSizeController.PageRequest<ListVersionsResult>() {
+			@Override
+			public ListVersionsResult fetch(int pageSize) {
+				listVersionsRequest.setMaxKeys(pageSize);
+				return collectionConfig.getS3JerseyClient().listVersions(listVersionsRequest);
+			}
+			@Override
+			public int getCount(ListVersionsResult page) {
+				return page.getVersions().size();
+			}
+		};
 
 		try{
-			// collect objects
-			ListVersionsResult listVersionsResult = collectionConfig.getS3JerseyClient().listVersions(listVersionsRequest);
-			
+			ListVersionsResult listVersionsResult;
 			
+			do {
+				// wait for enough memory to hold the page before fetching it
+				long reservedMemory = collectionConfig.reservePage(collectionConfig.getPageSize(objectBucket.getName()));
+				
+				try {
+					// collect objects
+					long startTime = System.currentTimeMillis();
+					listVersionsResult = collectionConfig.fetchPage(objectBucket.getName(), versionsPage);
+					long stopTime = System.currentTimeMillis();
+					
+					if(listVersionsResult == null) {
+						break;
+					}
 
-			long stopTime = System.currentTimeMillis();
-			Double elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
-
-			if(listVersionsResult != null) {
-
-				Long collected = (long)listVersionsResult.getVersions().size();
-
-				this.collectionConfig.getObjectCount().getAndAdd(collected);
-
-				logger.info( "Took: " + elapsedTime + " seconds to collect " +
-						collected + " objects from namespace: " + 
-						collectionConfig.getNamespace() + " bucket: " + objectBucket.getName());
-
-				// add collected entries into datastore
-				if( collectionConfig.getObjectDAO() != null) {					
-					collectionConfig.getObjectDAO().insert( listVersionsResult, 
-												collectionConfig.getNamespace(),
-												objectBucket.getName(), 
-												collectionConfig.getCollectionTime() );
-				}
-
-				// process extra pages of objects
-				while(listVersionsResult.isTruncated()) {
-
-					listVersionsRequest.setVersionIdMarker(listVersionsResult.getNextVersionIdMarker());
-
-					startTime = System.currentTimeMillis();
-					listVersionsResult = collectionConfig.getS3JerseyClient().listVersions(listVersionsRequest);
-					stopTime = System.currentTimeMillis();
-
-					elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
+					Double elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
 
-					collected = (long)listVersionsResult.getVersions().size();
+					Long collected = (long)listVersionsResult.getVersions().size();
 					collectionConfig.getObjectCount().getAndAdd(collected);
 
 					logger.info("Took: " + elapsedTime + " seconds to collect " +
@@ -140,8 +130,14 @@ public class ListObjectsVersionsCollection implements Callable<String> {
 								objectBucket.getName(), 
 								collectionConfig.getCollectionTime() );
 					}
+					
+					// move marker to beginning of next page
+					listVersionsRequest.setVersionIdMarker(listVersionsResult.getNextVersionIdMarker());
+				} finally {
+					collectionConfig.releasePage(reservedMemory);
 				}
-			}
+			// process extra pages of objects
+			} while(listVersionsResult.isTruncated());
 		} catch (Exception ex) {
 			logger.error("Error occur while listing object versions from namespace: " + collectionConfig.getNamespace() +
 					     " Bucket: " + objectBucket.getName() + " " + ex.getLocalizedMessage() );
@@ -0,0 +1,261 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.request.ListObjectsRequest;
+
+
+/**
+ * Lists objects of a bucket and compares them against the manifest 
+ * of the previous collection. Only added, modified and deleted 
+ * objects are sent to the datastore.
+ */
+public class ManifestObjectsCollection implements Callable<String> {
+
+	private static final Integer maxChangesPerInsert = 10000;
+	private static final String  MANIFEST_SUFFIX     = ".manifest";
+	private static final String  KEYS_SUFFIX         = ".keys";
+	
+	//=============================
+	// Private members
+	//=============================
+	private ObjectCollectionConfig collectionConfig;
+	private String                 bucketName;
+	private long                   addedCount    = 0L;
+	private long                   modifiedCount = 0L;
+	private long                   deletedCount  = 0L;
+	private final static Logger    logger = LoggerFactory.getLogger(ManifestObjectsCollection.class);
+	
+	
+	public ManifestObjectsCollection( ObjectCollectionConfig collectionConfig,  
+								      String bucketName                         ) {
+		
+		this.collectionConfig  = collectionConfig; 
+		this.bucketName        = bucketName; 
+	}
+	
+	
+	//=============================
+	// Public methods
+	//=============================
+	@Override
+	public String call() throws Exception {
+		collectObjectChanges();
+		return "ok";
+	}
+
+	/**
+	 * @return number of added, modified and deleted objects found
+	 */
+	public long getChangeCount() {
+		return addedCount + modifiedCount + deletedCount;
+	}
+	
+	public void collectObjectChanges() {
+		
+		File manifestDirectory = new File(collectionConfig.getManifestDirectory(), collectionConfig.getNamespace());
+		if( !manifestDirectory.isDirectory() && !manifestDirectory.mkdirs() ) {
+			throw new RuntimeException("Unable to create manifest directory: " + manifestDirectory.getPath());
+		}
+		
+		File manifestFile = new File(manifestDirectory, bucketName + MANIFEST_SUFFIX);
+		File keysFile     = new File(manifestDirectory, bucketName + KEYS_SUFFIX);
+		
+		BucketManifest       previousManifest = BucketManifest.open(manifestFile, keysFile);
+		BucketManifestWriter manifestWriter   = new BucketManifestWriter(manifestFile, keysFile);
+		
+		if( previousManifest == null ) {
+			logger.info("No manifest found for namespace: " + collectionConfig.getNamespace() + 
+						" bucket: " + bucketName + " - all objects will be reported as added");
+		}
+		
+		// prepare request object
+		final ListObjectsRequest listObjectsRequest = new ListObjectsRequest(bucketName);
+		listObjectsRequest.setNamespace(collectionConfig.getNamespace());
+		
+		// page size adapts to the bucket response time
+		PageSizeController.PageRequest<ListObjectsResult> listPage = new PageSizeController.PageRequest<ListObjectsResult>() {
+			@Override
+			public ListObjectsResult fetch(int pageSize) {
+				listObjectsRequest.setMaxKeys(pageSize);
+				return collectionConfig.getS3JerseyClient().listObjects(listObjectsRequest);
+			}
+			@Override
+			public int getCount(ListObjectsResult page) {
+				return page.getObjects().size();
+			}
+		};
+		
+		long startTime = System.currentTimeMillis();
+		
+		try {
+			ListObjectsResult listObjectsResult;
+			
+			do {
+				// wait for enough memory to hold the page before fetching it
+				long reservedMemory = collectionConfig.reservePage(collectionConfig.getPageSize(bucketName));
+				
+				try {
+					listObjectsResult = collectionConfig.fetchPage(bucketName, listPage);
+					
+					if( listObjectsResult == null ) {
+						break;
+					}
+					
+					collectionConfig.getObjectCount().getAndAdd(listObjectsResult.getObjects().size());
+					
+					insertChanges( diffPage(listObjectsResult, previousManifest, manifestWriter) );
+					
+					listObjectsRequest.setMarker(listObjectsResult.getNextMarker());
+				} finally {
+					collectionConfig.releasePage(reservedMemory);
+				}
+			} while( listObjectsResult.isTruncated() );
+			
+			// whatever wasn't listed anymore has been deleted
+			if( previousManifest != null ) {
+				reportDeletedObjects(previousManifest);
+			}
+			
+			// changes may still be queued in the collection pipeline
+			if( !collectionConfig.flushPages(bucketName) ) {
+				throw new RuntimeException("Not all object changes could be stored");
+			}
+			
+			manifestWriter.commit();
+			
+		} catch (Exception ex) {
+			manifestWriter.abort();
+			logger.error("Error occur while collecting object changes from namespace: " + collectionConfig.getNamespace() +
+					     " Bucket: " + bucketName + " " + ex.getLocalizedMessage() );
+			throw new RuntimeException(ex.getLocalizedMessage());
+		} finally {
+			if( previousManifest != null ) {
+				previousManifest.close();
+			}
+		}
+		
+		Double elapsedTime = Double.valueOf(System.currentTimeMillis() - startTime) / 1000;
+		
+		logger.info( "Took: " + elapsedTime + " seconds to find " + addedCount + " added, " + 
+					 modifiedCount + " modified and " + deletedCount + " deleted objects in namespace: " + 
+					 collectionConfig.getNamespace() + " bucket: " + bucketName );
+	}
+	
+	//=============================
+	// Private methods
+	//=============================
+	
+	/**
+	 * Records listed objects in the new manifest and returns 
+	 * the ones which differ from the previous manifest
+	 * 
+	 * @param listObjectsResult
+	 * @param previousManifest
+	 * @param manifestWriter
+	 * @return List<ObjectChange>
+	 */
+	private List<ObjectChange> diffPage( ListObjectsResult    listObjectsResult, 
+										 BucketManifest       previousManifest,
+										 BucketManifestWriter manifestWriter     ) {
+		
+		List<ObjectChange> objectChanges = new ArrayList<ObjectChange>();
+		
+		for( S3Object s3Object : listObjectsResult.getObjects() ) {
+			
+			String key          = s3Object.getKey();
+			long   keyHash      = BucketManifest.hash(key);
+			long   eTagHash     = BucketManifest.hash(s3Object.getETag());
+			long   size         = (s3Object.getSize() != null) ? s3Object.getSize() : 0L;
+			long   lastModified = (s3Object.getLastModified() != null) ? s3Object.getLastModified().getTime() : 0L;
+			
+			manifestWriter.append(key, keyHash, eTagHash, size, lastModified);
+			
+			ChangeType changeType = (previousManifest != null) ? 
+						previousManifest.match(keyHash, key, eTagHash, size, lastModified) : ChangeType.added;
+			
+			if( changeType == ChangeType.added ) {
+				addedCount++;
+			} else if( changeType == ChangeType.modified ) {
+				modifiedCount++;
+			} else {
+				continue;
+			}
+			
+			objectChanges.add( new ObjectChange(changeType, key, s3Object.getETag(), 
+												s3Object.getSize(), s3Object.getLastModified()) );
+		}
+		
+		return objectChanges;
+	}
+	
+	private void reportDeletedObjects( BucketManifest previousManifest ) {
+		
+		List<ObjectChange> objectChanges = new ArrayList<ObjectChange>();
+		
+		for( int index = previousManifest.nextUnmatched(0); 
+			 index >= 0; 
+			 index = previousManifest.nextUnmatched(index + 1) ) {
+			
+			objectChanges.add( new ObjectChange(ChangeType.deleted, previousManifest.getKey(index), null,
+												previousManifest.getSize(index), 
+												new Date(previousManifest.getLastModified(index))) );
+			deletedCount++;
+			
+			if( objectChanges.size() >= maxChangesPerInsert ) {
+				insertChanges(objectChanges);
+				objectChanges = new ArrayList<ObjectChange>();
+			}
+		}
+		
+		insertChanges(objectChanges);
+	}
+	
+	private void insertChanges( List<ObjectChange> objectChanges ) {
+		
+		if( collectionConfig.getObjectDAO() != null && !objectChanges.isEmpty() ) {
+			collectionConfig.getObjectDAO().insert( objectChanges, 
+													collectionConfig.getNamespace(),
+													bucketName, 
+													collectionConfig.getCollectionTime() );
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * Fixed size manifest records memory mapped in segments 
+ * so manifests are not limited to 2GB.
+ * 
+ * Record layout (40 bytes): 
+ *   key hash | etag hash | size | last modified | key offset
+ */
+class ManifestRecords {
+
+	static final long HEADER_SIZE          = 16;
+	static final int  RECORD_SIZE          = 40;
+	static final int  KEY_HASH_FIELD       = 0;
+	static final int  ETAG_HASH_FIELD      = 8;
+	static final int  SIZE_FIELD           = 16;
+	static final int  LAST_MODIFIED_FIELD  = 24;
+	static final int  KEY_OFFSET_FIELD     = 32;
+	// 2^24 records per segment
+	static final int  SEGMENT_SHIFT        = 24;
+	
+	private static final int  FIELD_COUNT   = RECORD_SIZE / 8;
+	
+	//================================
+	// Private members
+	//================================
+	private final MappedByteBuffer[] segments;
+	private final long               recordCount;
+	private final int                segmentShift;
+	private final long               segmentMask;
+	
+	//================================
+	// Constructor
+	//================================
+	ManifestRecords( FileChannel channel, MapMode mode ) throws IOException {
+		this(channel, mode, SEGMENT_SHIFT);
+	}
+	
+	/**
+	 * @param channel
+	 * @param mode
+	 * @param segmentShift - log2 of the number of records per segment
+	 * @throws IOException
+	 */
+	ManifestRecords( FileChannel channel, MapMode mode, int segmentShift ) throws IOException {
+		
+		this.recordCount  = Math.max(0L, (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+		this.segmentShift = segmentShift;
+		this.segmentMask  = (1L << segmentShift) - 1;
+		
+		long recordsPerSegment = 1L << segmentShift;
+		int  segmentCount      = (int)((recordCount + recordsPerSegment - 1) / recordsPerSegment);
+		
+		segments = new MappedByteBuffer[segmentCount];
+		for( int i = 0; i < segmentCount; i++ ) {
+			long firstRecord = i * recordsPerSegment;
+			long records     = Math.min(recordsPerSegment, recordCount - firstRecord);
+			segments[i] = channel.map(mode, HEADER_SIZE + firstRecord * RECORD_SIZE, records * RECORD_SIZE);
+		}
+	}
+	
+	//================================
+	// Package methods
+	//================================
+	long size() {
+		return recordCount;
+	}
+	
+	long getLong( long record, int field ) {
+		return segments[(int)(record >>> segmentShift)].getLong( (int)(record & segmentMask) * RECORD_SIZE + field );
+	}
+	
+	void putLong( long record, int field, long value ) {
+		segments[(int)(record >>> segmentShift)].putLong( (int)(record & segmentMask) * RECORD_SIZE + field, value );
+	}
+	
+	/**
+	 * Returns index of the first record with a key hash 
+	 * greater or equal to the specified one
+	 * @param keyHash
+	 * @return long
+	 */
+	long lowerBound( long keyHash ) {
+		long low  = 0;
+		long high = recordCount;
+		while( low < high ) {
+			long middle = (low + high) >>> 1;
+			if( getLong(middle, KEY_HASH_FIELD) < keyHash ) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Sorts records in place by key hash
+	 */
+	void sort() {
+		sort(0, recordCount - 1);
+	}
+	
+	void force() {
+		for( MappedByteBuffer segment : segments ) {
+			segment.force();
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	// Quicksort recursing on the smaller partition only 
+	// so stack depth stays logarithmic
+	private void sort( long low, long high ) {
+		
+		while( low < high ) {
+			
+			long pivot = medianOfThree( getLong(low, KEY_HASH_FIELD),
+										getLong((low + high) >>> 1, KEY_HASH_FIELD),
+										getLong(high, KEY_HASH_FIELD) );
+			long i = low;
+			long j = high;
+			
+			while( i <= j ) {
+				while( getLong(i, KEY_HASH_FIELD) < pivot ) {
+					i++;
+				}
+				while( getLong(j, KEY_HASH_FIELD) > pivot ) {
+					j--;
+				}
+				if( i <= j ) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			
+			if( j - low < high - i ) {
+				sort(low, j);
+				low = i;
+			} else {
+				sort(i, high);
+				high = j;
+			}
+		}
+	}
+	
+	private void swap( long a, long b ) {
+		if( a == b ) {
+			return;
+		}
+		for( int field = 0; field < FIELD_COUNT * 8; field += 8 ) {
+			long value = getLong(a, field);
+			putLong(a, field, getLong(b, field));
+			putLong(b, field, value);
+		}
+	}
+	
+	private static long medianOfThree( long a, long b, long c ) {
+		if( a < b ) {
+			return (b < c) ? b : ((a < c) ? c : a);
+		}
+		return (a < c) ? a : ((b < c) ? c : b);
+	}
+}
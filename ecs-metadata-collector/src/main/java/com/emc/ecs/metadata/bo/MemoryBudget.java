@@ -0,0 +1,144 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.bo;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Process wide budget of memory held by in flight result pages.
+ * 
+ * A collection task reserves the estimated size of a page (including
+ * the bulk request built from it) before fetching it and releases 
+ * it once the page has been stored. When the budget is exhausted 
+ * new page fetches block until other tasks release their pages, 
+ * so the number of collection threads no longer drives heap usage.
+ */
+public class MemoryBudget {
+
+	// Estimated heap used per listed object: the parsed S3 entry 
+	// plus its serialized document in the bulk request
+	public  static final long   ESTIMATED_BYTES_PER_OBJECT = 2048L;
+	// Share of the maximum heap available to in flight pages
+	private static final double DEFAULT_HEAP_FRACTION      = 0.5;
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+	
+	private final long capacity;
+	private long       reserved     = 0L;
+	private long       peakReserved = 0L;
+	private long       waitCount    = 0L;
+	
+	//================================
+	// Constructor
+	//================================
+	public MemoryBudget( long capacity ) {
+		if( capacity <= 0 ) {
+			throw new IllegalArgumentException("Memory budget must be greater than 0");
+		}
+		this.capacity = capacity;
+		logger.info("Memory budget for in flight pages: " + (capacity / (1024 * 1024)) + " MB");
+	}
+	
+	/**
+	 * Creates a budget sized from the maximum heap of the JVM
+	 * @return MemoryBudget
+	 */
+	public static MemoryBudget fromMaxHeap() {
+		return new MemoryBudget((long)(Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION));
+	}
+	
+	/**
+	 * Returns the estimated size of a page of objects
+	 * @param objectCount - number of objects requested
+	 * @return long
+	 */
+	public static long estimatePage( int objectCount ) {
+		return objectCount * ESTIMATED_BYTES_PER_OBJECT;
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Reserves memory, waiting until enough of the budget was released.
+	 * A reservation larger than the whole budget is capped so it can 
+	 * still proceed once nothing else is in flight.
+	 * 
+	 * @param bytes - estimated size
+	 * @return long - reserved size to hand back to release()
+	 * @throws InterruptedException
+	 */
+	public synchronized long acquire( long bytes ) throws InterruptedException {
+		
+		long granted = Math.min(bytes, capacity);
+		
+		if( reserved + granted > capacity ) {
+			waitCount++;
+			logger.debug("Memory budget exhausted, waiting for " + granted + " bytes (" + reserved + " reserved)");
+			while( reserved + granted > capacity ) {
+				wait();
+			}
+		}
+		
+		reserved += granted;
+		peakReserved = Math.max(peakReserved, reserved);
+		
+		return granted;
+	}
+	
+	/**
+	 * Returns memory previously reserved with acquire()
+	 * @param bytes - value returned by acquire()
+	 */
+	public synchronized void release( long bytes ) {
+		reserved = Math.max(0L, reserved - bytes);
+		notifyAll();
+	}
+	
+	public long getCapacity() {
+		return capacity;
+	}
+	
+	public synchronized long getReserved() {
+		return reserved;
+	}
+	
+	/**
+	 * Logs how much of the budget was used and 
+	 * how often page fetches had to wait
+	 */
+	public synchronized void logUsage() {
+		logger.info("Memory budget peak usage: " + (peakReserved / (1024 * 1024)) + " MB of " + 
+					(capacity / (1024 * 1024)) + " MB, " + waitCount + " page fetches waited for memory");
+	}
+}
@@ -0,0 +1,323 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Unbounded work queue interleaving tasks of different namespaces.
+ * 
+ * Each namespace gets its own lane. Lanes are served in round-robin
+ * order and a lane may hand out up to <weight> tasks in a row before
+ * the next lane gets its turn. Tasks which are not namespace aware
+ * share a default lane.
+ */
+public class NamespaceFairQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private static final String  DEFAULT_LANE   = "";
+	private static final Integer DEFAULT_WEIGHT = 1;
+	
+	//================================
+	// Private members
+	//================================
+	private final Map<String, Integer>         weights;
+	private final Map<String, Deque<Runnable>> lanes       = new HashMap<String, Deque<Runnable>>();
+	private final LinkedList<String>           activeLanes = new LinkedList<String>();
+	private final ReentrantLock                lock        = new ReentrantLock();
+	private final Condition                    notEmpty    = lock.newCondition();
+	private       int                          remainingCredit = 0;
+	private       int                          count           = 0;
+	
+	//================================
+	// Constructor
+	//================================
+	public NamespaceFairQueue( Map<String, Integer> weights ) {
+		this.weights = (weights != null) ? weights : new HashMap<String, Integer>();
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	@Override
+	public boolean offer(Runnable runnable) {
+		
+		if(runnable == null) {
+			throw new NullPointerException();
+		}
+		
+		lock.lock();
+		try {
+			String lane = laneOf(runnable);
+			Deque<Runnable> laneQueue = lanes.get(lane);
+			if( laneQueue == null ) {
+				laneQueue = new ArrayDeque<Runnable>();
+				lanes.put(lane, laneQueue);
+				activeLanes.addLast(lane);
+			}
+			laneQueue.addLast(runnable);
+			count++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void put(Runnable runnable) throws InterruptedException {
+		offer(runnable);
+	}
+
+	@Override
+	public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+		return offer(runnable);
+	}
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return (count > 0) ? dequeue() : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while( count == 0 ) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while( count == 0 ) {
+				if( nanos <= 0 ) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			return (count > 0) ? lanes.get(activeLanes.getFirst()).peekFirst() : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+	
+	@Override
+	public boolean remove(Object object) {
+		
+		if( !(object instanceof Runnable) ) {
+			return false;
+		}
+		
+		lock.lock();
+		try {
+			String lane = laneOf((Runnable)object);
+			Deque<Runnable> laneQueue = lanes.get(lane);
+			if( laneQueue == null || !laneQueue.remove(object) ) {
+				return false;
+			}
+			count--;
+			if( laneQueue.isEmpty() ) {
+				if( lane.equals(activeLanes.peekFirst()) ) {
+					remainingCredit = 0;
+				}
+				lanes.remove(lane);
+				activeLanes.remove(lane);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+		lock.lock();
+		try {
+			int drained = 0;
+			while( count > 0 && drained < maxElements ) {
+				collection.add(dequeue());
+				drained++;
+			}
+			return drained;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns an iterator over a snapshot of queued tasks
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		
+		final List<Runnable> snapshot = new ArrayList<Runnable>();
+		
+		lock.lock();
+		try {
+			for( String lane : activeLanes ) {
+				snapshot.addAll(lanes.get(lane));
+			}
+		} finally {
+			lock.unlock();
+		}
+		
+		final Iterator<Runnable> snapshotIterator = snapshot.iterator();
+		
+		return new Iterator<Runnable>() {
+			
+			private Runnable lastReturned;
+			
+			@Override
+			public boolean hasNext() {
+				return snapshotIterator.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				lastReturned = snapshotIterator.next();
+				return lastReturned;
+			}
+
+			@Override
+			public void remove() {
+				if( lastReturned == null ) {
+					throw new IllegalStateException();
+				}
+				NamespaceFairQueue.this.remove(lastReturned);
+				lastReturned = null;
+			}
+		};
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	/**
+	 * Takes the next task - lock must be held and queue not empty
+	 * @return Runnable
+	 */
+	private Runnable dequeue() {
+		
+		String lane = activeLanes.getFirst();
+		
+		if( remainingCredit <= 0 ) {
+			// lane starts a new turn
+			remainingCredit = weightOf(lane);
+		}
+		
+		Deque<Runnable> laneQueue = lanes.get(lane);
+		Runnable runnable = laneQueue.pollFirst();
+		count--;
+		remainingCredit--;
+		
+		if( laneQueue.isEmpty() ) {
+			// lane has no more work
+			lanes.remove(lane);
+			activeLanes.removeFirst();
+			remainingCredit = 0;
+		} else if( remainingCredit <= 0 ) {
+			// turn is over - move lane to the back of the line
+			activeLanes.addLast(activeLanes.removeFirst());
+		}
+		
+		return runnable;
+	}
+	
+	private String laneOf( Runnable runnable ) {
+		if( runnable instanceof NamespaceTask ) {
+			String namespace = ((NamespaceTask)runnable).getNamespace();
+			return (namespace != null) ? namespace : DEFAULT_LANE;
+		}
+		return DEFAULT_LANE;
+	}
+	
+	private int weightOf( String lane ) {
+		Integer weight = weights.get(lane);
+		if( weight == null || weight < 1 ) {
+			return DEFAULT_WEIGHT;
+		}
+		return weight;
+	}
+}
@@ -40,7 +40,7 @@ import com.emc.object.s3.request.ListBucketsRequest;
 
 
 
-public class NamespaceObjectCollection implements Callable<String> {
+public class NamespaceObjectCollection implements Callable<String>, NamespaceTask {
 	
 	//===========================
 	// Private members
@@ -58,6 +58,12 @@ public class NamespaceObjectCollection implements Callable<String> {
 	}
 	
 	
+	@Override
+	public String getNamespace() {
+		return collectionConfig.getNamespace();
+	}
+	
+	
 	@Override
 	public String call() throws Exception {
 		collectObjects();
@@ -87,6 +93,13 @@ public class NamespaceObjectCollection implements Callable<String> {
 
 		for( Bucket bucket : bucketList ) {
 			
+			// adaptive collection only visits buckets which are due
+			if( collectionConfig.getChangeRateTracker() != null &&
+				!collectionConfig.getChangeRateTracker().isDue( collectionConfig.getNamespace(), bucket.getName(),
+																collectionConfig.getCollectionTime().getTime() ) ) {
+				continue;
+			}
+			
 			BucketObjectCollection bucketObjectCollection = 
 					new BucketObjectCollection( collectionConfig, bucket );
 			
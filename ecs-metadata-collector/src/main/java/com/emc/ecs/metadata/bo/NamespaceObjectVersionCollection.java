@@ -41,7 +41,7 @@ import com.emc.object.s3.request.ListBucketsRequest;
 
 
 
-public class NamespaceObjectVersionCollection implements Callable<String> {
+public class NamespaceObjectVersionCollection implements Callable<String>, NamespaceTask {
 	
 	//===========================
 	// Private members
@@ -59,6 +59,12 @@ public class NamespaceObjectVersionCollection implements Callable<String> {
 	}
 	
 	
+	@Override
+	public String getNamespace() {
+		return collectionConfig.getNamespace();
+	}
+	
+	
 	@Override
 	public String call() throws Exception {
 		collectObjectsVersions();
@@ -42,6 +42,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.emc.ecs.management.entity.BucketBillingInfo;
 import com.emc.ecs.management.entity.ObjectBucket;
 import com.emc.ecs.management.entity.ObjectUserDetails;
 import com.emc.ecs.metadata.dao.ObjectDAO;
@@ -62,6 +63,14 @@ public class ObjectBO {
 	private ThreadPoolExecutor 			threadPoolExecutor;
 	private Queue<Future<?>>     		futures;
 	private AtomicLong           		objectCount;
+	private BucketWatermarkStore        watermarkStore;
+	private Date                        modifiedSince;
+	private String                      manifestDirectory;
+	private BucketChangeRateTracker     changeRateTracker;
+	private MemoryBudget                memoryBudget;
+	private PageSizeController          pageSizeController;
+	private QueryPlanner                queryPlanner;
+	private S3HttpTransport             s3HttpTransport;
 	
 	private final static Logger         logger = LoggerFactory.getLogger(ObjectBO.class);
 
@@ -97,6 +106,74 @@ public class ObjectBO {
 		return futures;
 	}
 	
+	/**
+	 * Enables incremental collection based on per bucket watermarks
+	 * @param watermarkStore
+	 */
+	public void setWatermarkStore(BucketWatermarkStore watermarkStore) {
+		this.watermarkStore = watermarkStore;
+	}
+	
+	/**
+	 * Restricts collection to objects modified since the specified date
+	 * for buckets which don't have a watermark yet
+	 * @param modifiedSince
+	 */
+	public void setModifiedSince(Date modifiedSince) {
+		this.modifiedSince = modifiedSince;
+	}
+	
+	/**
+	 * Enables change collection - object manifests are kept 
+	 * in the specified directory and only changes are stored
+	 * @param manifestDirectory
+	 */
+	public void setManifestDirectory(String manifestDirectory) {
+		this.manifestDirectory = manifestDirectory;
+	}
+	
+	/**
+	 * Enables adaptive collection - only buckets due 
+	 * according to their change rate are collected
+	 * @param changeRateTracker
+	 */
+	public void setChangeRateTracker(BucketChangeRateTracker changeRateTracker) {
+		this.changeRateTracker = changeRateTracker;
+	}
+	
+	/**
+	 * Limits memory held by in flight result pages
+	 * @param memoryBudget
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * Adapts the number of objects requested per page of each bucket
+	 * @param pageSizeController
+	 */
+	public void setPageSizeController(PageSizeController pageSizeController) {
+		this.pageSizeController = pageSizeController;
+	}
+	
+	/**
+	 * Splits bucket queries into concurrent range queries
+	 * @param queryPlanner
+	 */
+	public void setQueryPlanner(QueryPlanner queryPlanner) {
+		this.queryPlanner = queryPlanner;
+	}
+	
+	/**
+	 * Creates S3 clients on a pooled keep-alive transport.
+	 * Clients are then destroyed by the transport shutdown.
+	 * @param s3HttpTransport
+	 */
+	public void setS3HttpTransport(S3HttpTransport s3HttpTransport) {
+		this.s3HttpTransport = s3HttpTransport;
+	}
+	
 	public void collectObjectData(Date collectionTime) {
 
 		collectObjectData(collectionTime, null);
@@ -111,6 +188,16 @@ public class ObjectBO {
 		// Collect bucket details
 		Map<NamespaceBucketKey, ObjectBucket> objectBucketMap = new HashMap<>();
 		billingBO.getObjectBukcetData(objectBucketMap);
+		
+		// feed current bucket usage to the change rate tracker
+		if( changeRateTracker != null ) {
+			Map<NamespaceBucketKey, BucketBillingInfo> bucketBillingMap = new HashMap<>();
+			billingBO.getBucketBillingData(bucketBillingMap);
+			
+			for( Map.Entry<NamespaceBucketKey, BucketBillingInfo> entry : bucketBillingMap.entrySet() ) {
+				changeRateTracker.observeBilling( entry.getKey().getNamespace(), entry.getValue(), collectionTime.getTime() );
+			}
+		}
 
 		Map<String, S3JerseyClient> s3ObjectClientMap = null;
 		
@@ -144,6 +231,13 @@ public class ObjectBO {
 																						 threadPoolExecutor,
 																						 futures, 
 																						 queryCriteria );
+					collectionConfig.setWatermarkStore(watermarkStore);
+					collectionConfig.setModifiedSince(modifiedSince);
+					collectionConfig.setManifestDirectory(manifestDirectory);
+					collectionConfig.setChangeRateTracker(changeRateTracker);
+					collectionConfig.setQueryPlanner(queryPlanner);
+					collectionConfig.setMemoryBudget(memoryBudget);
+					collectionConfig.setPageSizeController(pageSizeController);
 					
 					NamespaceObjectCollection namespaceObjectCollection = 
 							new NamespaceObjectCollection( collectionConfig );
@@ -168,7 +262,8 @@ public class ObjectBO {
 			
 		} finally {
 			// ensure to clean up S3 jersey clients
-			if(s3ObjectClientMap != null ) {
+			// (pooled transport clients are destroyed once collection completed)
+			if(s3ObjectClientMap != null && s3HttpTransport == null ) {
 				for( S3JerseyClient s3JerseyClient : s3ObjectClientMap.values() ) {
 					s3JerseyClient.destroy();
 				}
@@ -219,6 +314,8 @@ public class ObjectBO {
 																						  futures, 
 																						  null // no criteria required here
 																						  );
+					collectionConfig.setMemoryBudget(memoryBudget);
+					collectionConfig.setPageSizeController(pageSizeController);
 					
 					NamespaceObjectVersionCollection namespaceObjectVersionCollection = 
 							new NamespaceObjectVersionCollection( collectionConfig );
@@ -242,7 +339,8 @@ public class ObjectBO {
 			
 		} finally {
 			// ensure to clean up S3 jersey clients
-			if(s3ObjectClientMap != null ) {
+			// (pooled transport clients are destroyed once collection completed)
+			if(s3ObjectClientMap != null && s3HttpTransport == null ) {
 				for( S3JerseyClient s3JerseyClient : s3ObjectClientMap.values() ) {
 					s3JerseyClient.destroy();
 				}
@@ -268,7 +366,7 @@ public class ObjectBO {
 			}
 
 			// Create object client user
-			Vdc vdc = new Vdc((String [])this.ecsObjectHosts.toArray());	
+			Vdc vdc = new Vdc(this.ecsObjectHosts.toArray(new String[this.ecsObjectHosts.size()]));	
 			S3Config s3config = new S3Config(Protocol.HTTP, vdc);			
 
 			// in all cases, you need to provide your credentials
@@ -276,8 +374,14 @@ public class ObjectBO {
 				.withSecretKey(objectUserDetails.getSecretKeys().getSecretKey1());
 
 			s3config.setSmartClient(true);
-			URLConnectionClientHandler urlHandler = new URLConnectionClientHandler();
-			S3JerseyClient s3JerseyClient = new S3JerseyClient(s3config, urlHandler);
+			
+			S3JerseyClient s3JerseyClient;
+			if( s3HttpTransport != null ) {
+				s3JerseyClient = s3HttpTransport.createS3Client(s3config);
+			} else {
+				URLConnectionClientHandler urlHandler = new URLConnectionClientHandler();
+				s3JerseyClient = new S3JerseyClient(s3config, urlHandler);
+			}
 			
 			s3JerseyClientList.put(objectUserDetails.getObjectUser().getUserId().toString(), s3JerseyClient);
 		}
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import com.emc.ecs.management.entity.ObjectBucket;
 import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.ecs.metadata.pipeline.BucketPageSink;
 import com.emc.object.s3.jersey.S3JerseyClient;
 
 public class ObjectCollectionConfig {
@@ -51,6 +52,13 @@ public class ObjectCollectionConfig {
 	private ThreadPoolExecutor 					  threadPoolExecutor;
 	private Queue<Future<?>>     				  futures;
 	private String 								  queryCriteria;
+	private Date                                  modifiedSince;
+	private BucketWatermarkStore                  watermarkStore;
+	private String                                manifestDirectory;
+	private BucketChangeRateTracker               changeRateTracker;
+	private MemoryBudget                          memoryBudget;
+	private PageSizeController                    pageSizeController;
+	private QueryPlanner                          queryPlanner;
 	
 	
 
@@ -161,4 +169,147 @@ public class ObjectCollectionConfig {
 	public void setQueryCriteria(String queryCriteria) {
 		this.queryCriteria = queryCriteria;
 	}
+
+	public Date getModifiedSince() {
+		return modifiedSince;
+	}
+
+	public void setModifiedSince(Date modifiedSince) {
+		this.modifiedSince = modifiedSince;
+	}
+
+	public BucketWatermarkStore getWatermarkStore() {
+		return watermarkStore;
+	}
+
+	public void setWatermarkStore(BucketWatermarkStore watermarkStore) {
+		this.watermarkStore = watermarkStore;
+	}
+
+	public String getManifestDirectory() {
+		return manifestDirectory;
+	}
+
+	public void setManifestDirectory(String manifestDirectory) {
+		this.manifestDirectory = manifestDirectory;
+	}
+
+	public BucketChangeRateTracker getChangeRateTracker() {
+		return changeRateTracker;
+	}
+
+	public void setChangeRateTracker(BucketChangeRateTracker changeRateTracker) {
+		this.changeRateTracker = changeRateTracker;
+	}
+
+	public MemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * Reserves memory for a page of objects, waiting if the 
+	 * memory budget is exhausted (no-op without budget)
+	 * @param objectCount - number of objects requested in the page
+	 * @return long - reserved bytes to hand back to releasePage()
+	 */
+	public long reservePage(int objectCount) {
+		if(memoryBudget == null) {
+			return 0L;
+		}
+		try {
+			return memoryBudget.acquire(MemoryBudget.estimatePage(objectCount));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for memory budget");
+		}
+	}
+	
+	/**
+	 * Hands back memory reserved for a page once the page is stored. 
+	 * Pages written in the background (pipeline or asynchronous DAO) 
+	 * keep their reservation until the sink wrote them, including 
+	 * the bulk request built from them. Must be called by the thread 
+	 * which inserted the page.
+	 * @param reservedBytes - value returned by reservePage()
+	 */
+	public void releasePage(final long reservedBytes) {
+		if(memoryBudget == null) {
+			return;
+		}
+		
+		if(objectDAO instanceof BucketPageSink) {
+			((BucketPageSink)objectDAO).onPageWritten(new Runnable() {
+				@Override
+				public void run() {
+					memoryBudget.release(reservedBytes);
+				}
+			});
+			return;
+		}
+		memoryBudget.release(reservedBytes);
+	}
+
+	public QueryPlanner getQueryPlanner() {
+		return queryPlanner;
+	}
+
+	public void setQueryPlanner(QueryPlanner queryPlanner) {
+		this.queryPlanner = queryPlanner;
+	}
+
+	public PageSizeController getPageSizeController() {
+		return pageSizeController;
+	}
+
+	public void setPageSizeController(PageSizeController pageSizeController) {
+		this.pageSizeController = pageSizeController;
+	}
+	
+	/**
+	 * Returns the number of objects to request in the next page of a bucket
+	 * @param bucketName
+	 * @return int
+	 */
+	public int getPageSize(String bucketName) {
+		if(pageSizeController == null) {
+			return PageSizeController.DEFAULT_MAX_PAGE_SIZE;
+		}
+		return pageSizeController.getPageSize(getPageKey(bucketName));
+	}
+	
+	/**
+	 * Fetches the next page of a bucket listing, adapting 
+	 * the page size of the bucket when a controller is set
+	 * @param bucketName
+	 * @param pageRequest
+	 * @return T
+	 * @throws Exception
+	 */
+	public <T> T fetchPage(String bucketName, PageSizeController.PageRequest<T> pageRequest) throws Exception {
+		if(pageSizeController == null) {
+			return pageRequest.fetch(PageSizeController.DEFAULT_MAX_PAGE_SIZE);
+		}
+		return pageSizeController.fetch(getPageKey(bucketName), pageRequest);
+	}
+	
+	private String getPageKey(String bucketName) {
+		return namespace + "/" + bucketName;
+	}
+
+	/**
+	 * Waits until all pages of a bucket have been stored 
+	 * when pages are written asynchronously (pipeline or asynchronous DAO)
+	 * @param bucketName
+	 * @return boolean - false if any page of the bucket failed to be stored
+	 */
+	public boolean flushPages(String bucketName) {
+		if(objectDAO instanceof BucketPageSink) {
+			return ((BucketPageSink)objectDAO).flush(namespace, bucketName);
+		}
+		return true;
+	}
 }
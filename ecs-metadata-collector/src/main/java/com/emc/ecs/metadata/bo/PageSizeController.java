@@ -0,0 +1,224 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Adapts the number of entries requested per page for each paginated 
+ * listing (bucket, management call...) based on how long pages take.
+ * 
+ * Page size starts at the maximum. A page slower than the target time 
+ * makes the next one proportionally smaller (at most halved). A full page 
+ * returned well within the target time makes the next one bigger by a 
+ * fixed step. A page which times out is retried with half the size until 
+ * the minimum is reached.
+ */
+public class PageSizeController {
+
+	public static final int  DEFAULT_MIN_PAGE_SIZE      = 500;
+	public static final int  DEFAULT_MAX_PAGE_SIZE      = 10000;
+	public static final long DEFAULT_TARGET_PAGE_MILLIS = 10000L;
+	
+	// number of increase steps to go from minimum to maximum size
+	private static final int INCREASE_STEPS = 10;
+	
+	/**
+	 * Fetches one page of a listing
+	 */
+	public interface PageRequest<T> {
+		
+		/**
+		 * @param pageSize - maximum number of entries to return
+		 * @return T - page or null if there is nothing to return
+		 * @throws Exception
+		 */
+		T fetch( int pageSize ) throws Exception;
+		
+		/**
+		 * @param page
+		 * @return int - number of entries in the page
+		 */
+		int getCount( T page );
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(PageSizeController.class);
+	
+	private final int                  minPageSize;
+	private final int                  maxPageSize;
+	private final long                 targetPageMillis;
+	private final int                  increaseStep;
+	private final Map<String, Integer> pageSizes = new HashMap<String, Integer>();
+	
+	//================================
+	// Constructor
+	//================================
+	public PageSizeController() {
+		this(DEFAULT_MIN_PAGE_SIZE, DEFAULT_MAX_PAGE_SIZE, DEFAULT_TARGET_PAGE_MILLIS);
+	}
+	
+	public PageSizeController( int minPageSize, int maxPageSize, long targetPageMillis ) {
+		
+		if( minPageSize < 1 || maxPageSize < minPageSize ) {
+			throw new IllegalArgumentException("Invalid page size bounds: " + minPageSize + " - " + maxPageSize);
+		}
+		
+		this.minPageSize      = minPageSize;
+		this.maxPageSize      = maxPageSize;
+		this.targetPageMillis = targetPageMillis;
+		this.increaseStep     = Math.max(1, (maxPageSize - minPageSize) / INCREASE_STEPS);
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Returns the page size to request next for a listing
+	 * @param key - listing identifier
+	 * @return int
+	 */
+	public synchronized int getPageSize( String key ) {
+		Integer pageSize = pageSizes.get(key);
+		return (pageSize != null) ? pageSize : maxPageSize;
+	}
+	
+	/**
+	 * Fetches a page with the current page size of the listing and 
+	 * adapts the size for the next page. Timed out pages are retried
+	 * with a smaller size.
+	 * 
+	 * @param key - listing identifier
+	 * @param pageRequest
+	 * @return T - fetched page
+	 * @throws Exception
+	 */
+	public <T> T fetch( String key, PageRequest<T> pageRequest ) throws Exception {
+		
+		while(true) {
+			int pageSize = getPageSize(key);
+			
+			long startTime = System.currentTimeMillis();
+			T page;
+			
+			try {
+				page = pageRequest.fetch(pageSize);
+			} catch (Exception ex) {
+				if( !isTimeout(ex) || !decrease(key, pageSize, pageSize / 2) ) {
+					throw ex;
+				}
+				logger.info("Page of " + pageSize + " entries timed out for: " + key + 
+							" - retrying with " + getPageSize(key) + " entries");
+				continue;
+			}
+			
+			if( page != null ) {
+				recordPage(key, pageSize, pageRequest.getCount(page), System.currentTimeMillis() - startTime);
+			}
+			
+			return page;
+		}
+	}
+	
+	/**
+	 * Adapts the page size of a listing after a page was received
+	 * 
+	 * @param key - listing identifier
+	 * @param requested - requested page size
+	 * @param returned - number of entries returned
+	 * @param elapsedMillis - time taken by the page
+	 */
+	public void recordPage( String key, int requested, int returned, long elapsedMillis ) {
+		
+		if( elapsedMillis > targetPageMillis ) {
+			// shrink proportionally to the overshoot, halve at most
+			int targetSize = (int)(requested * targetPageMillis / elapsedMillis);
+			decrease(key, requested, Math.max(requested / 2, targetSize));
+			
+		} else if( returned >= requested && elapsedMillis < targetPageMillis / 2 ) {
+			// only full pages tell whether a bigger page would be faster
+			increase(key, requested);
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private synchronized boolean decrease( String key, int requested, int newPageSize ) {
+		
+		newPageSize = Math.max(minPageSize, newPageSize);
+		if( newPageSize >= requested ) {
+			return false;
+		}
+		
+		// another page of the same listing may have reduced it already
+		if( newPageSize < getPageSize(key) ) {
+			pageSizes.put(key, newPageSize);
+			logger.debug("Page size decreased to " + newPageSize + " for: " + key);
+		}
+		return true;
+	}
+	
+	private synchronized void increase( String key, int requested ) {
+		
+		int pageSize = getPageSize(key);
+		
+		// page requested before another page of the same listing reduced the size
+		if( requested > pageSize ) {
+			return;
+		}
+		
+		int newPageSize = Math.min(maxPageSize, requested + increaseStep);
+		
+		if( newPageSize > pageSize ) {
+			pageSizes.put(key, newPageSize);
+			logger.debug("Page size increased to " + newPageSize + " for: " + key);
+		}
+	}
+	
+	private static boolean isTimeout( Throwable ex ) {
+		
+		for( Throwable cause = ex; cause != null; cause = cause.getCause() ) {
+			if( cause instanceof SocketTimeoutException ) {
+				return true;
+			}
+			if( cause.getCause() == cause ) {
+				break;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.management.entity.ObjectBucket;
+
+
+/**
+ * Queries all objects of a bucket by running the range 
+ * partitions of a query plan concurrently on the thread pool.
+ * 
+ * Partitions still waiting in the pool queue when the bucket task 
+ * needs their result are run in the bucket task thread, so waiting 
+ * for partitions never holds a pool thread while work is queued.
+ */
+public class PartitionedQueryCollection {
+
+	//=============================
+	// Private members
+	//=============================
+	private final static Logger logger = LoggerFactory.getLogger(PartitionedQueryCollection.class);
+	
+	private ObjectCollectionConfig  collectionConfig;
+	private ObjectBucket            objectBucket;
+	private QueryPlanner.QueryPlan  queryPlan;
+	private boolean                 completed = false;
+	
+	
+	public PartitionedQueryCollection( ObjectCollectionConfig collectionConfig,  
+									   ObjectBucket           objectBucket,
+									   QueryPlanner.QueryPlan queryPlan         ) {
+		
+		this.collectionConfig = collectionConfig;
+		this.objectBucket     = objectBucket;
+		this.queryPlan        = queryPlan;
+	}
+	
+	//=============================
+	// Public methods
+	//=============================
+	
+	/**
+	 * @return true if all pages of all partitions were collected
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+	
+	/**
+	 * Runs all partition queries
+	 * @return boolean - true if any object was collected
+	 */
+	public boolean queryObjects() {
+		
+		logger.info("Querying namespace: " + collectionConfig.getNamespace() + " bucket: " + objectBucket.getName() + 
+					" in " + queryPlan.getCriteria().size() + " partitions on " + queryPlan.getPartitionKey());
+		
+		List<PartitionTask> partitionTasks = new ArrayList<PartitionTask>();
+		
+		for( String criteria : queryPlan.getCriteria() ) {
+			
+			PartitionTask partitionTask = new PartitionTask( 
+					new QueryObjectsCollection(collectionConfig, objectBucket, criteria, queryPlan.getAttributes()) );
+			partitionTasks.add(partitionTask);
+			
+			try {
+				collectionConfig.getThreadPoolExecutor().execute(partitionTask);
+			} catch (RejectedExecutionException e) {
+				// will run in the current thread while waiting for it
+				logger.debug("Thread pool didn't accept query partition - running in current thread");
+			}
+		}
+		
+		boolean collected = false;
+		boolean allCompleted = true;
+		
+		for( PartitionTask partitionTask : partitionTasks ) {
+			
+			// no-op if a pool thread already started the partition
+			partitionTask.run();
+			
+			try {
+				collected |= partitionTask.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for query partitions");
+			} catch (ExecutionException e) {
+				logger.error("Error while querying partition of namespace: " + collectionConfig.getNamespace() + 
+							 " bucket: " + objectBucket.getName() + " " + e.getCause());
+				allCompleted = false;
+				continue;
+			}
+			
+			allCompleted &= partitionTask.isQueryCompleted();
+		}
+		
+		completed = allCompleted;
+		
+		return collected;
+	}
+	
+	
+	//=============================
+	// Private classes
+	//=============================
+	private class PartitionTask extends FutureTask<Boolean> implements NamespaceTask {
+		
+		private final QueryObjectsCollection queryObjectsCollection;
+		
+		public PartitionTask( final QueryObjectsCollection queryObjectsCollection ) {
+			super(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return queryObjectsCollection.queryObjects();
+				}
+			});
+			this.queryObjectsCollection = queryObjectsCollection;
+		}
+		
+		@Override
+		public String getNamespace() {
+			return collectionConfig.getNamespace();
+		}
+		
+		public boolean isQueryCompleted() {
+			return queryObjectsCollection.isCompleted();
+		}
+	}
+}
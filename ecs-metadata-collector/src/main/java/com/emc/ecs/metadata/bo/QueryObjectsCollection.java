@@ -27,8 +27,13 @@ SOFTWARE.
 
 package com.emc.ecs.metadata.bo;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.TimeZone;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
@@ -36,13 +41,18 @@ import org.slf4j.LoggerFactory;
 
 import com.emc.ecs.management.entity.Metadata;
 import com.emc.ecs.management.entity.ObjectBucket;
+import com.emc.object.s3.bean.QueryMetadata;
+import com.emc.object.s3.bean.QueryObject;
 import com.emc.object.s3.bean.QueryObjectsResult;
 import com.emc.object.s3.request.QueryObjectsRequest;
 
 
 public class QueryObjectsCollection implements Callable<String> {
 
-	private static final Integer maxObjectPerRequest = 10000;
+	// system metadata returned by ECS holding the modification time (epoch ms)
+	private static final String  MTIME_KEY           = "mtime";
+	private static final String  LAST_MODIFIED_MD_KEY = "LastModified";
+	private static final String  DATA_DATE_PATTERN   = "yyyy-MM-dd'T'HH:mm:ss'Z'";
 	//private static final String  SIZE_KEY            = "Size";
 	//private static final String  LAST_MODIFIED_KEY   = "LastModified";
 	
@@ -51,15 +61,72 @@ public class QueryObjectsCollection implements Callable<String> {
 	//=============================
 	private ObjectCollectionConfig collectionConfig;
 	private ObjectBucket           objectBucket;
+	private String                 queryCriteria;
+	private List<String>           attributes;
+	private boolean                completed = false;
 	private final static Logger    logger = LoggerFactory.getLogger(QueryObjectsCollection.class);
 	
 	
 	public QueryObjectsCollection( ObjectCollectionConfig collectionConfig,  
 								  ObjectBucket objectBucket                 ) {
 		
+		this(collectionConfig, objectBucket, collectionConfig.getQueryCriteria());
+	}
+	
+	/**
+	 * @param collectionConfig
+	 * @param objectBucket
+	 * @param queryCriteria - bucket specific query criteria 
+	 */
+	public QueryObjectsCollection( ObjectCollectionConfig collectionConfig,  
+								  ObjectBucket objectBucket,
+								  String queryCriteria                      ) {
+		
+		this(collectionConfig, objectBucket, queryCriteria, null);
+	}
+	
+	/**
+	 * @param collectionConfig
+	 * @param objectBucket
+	 * @param queryCriteria - bucket specific query criteria 
+	 * @param attributes - metadata to return (null: all search keys of the bucket)
+	 */
+	public QueryObjectsCollection( ObjectCollectionConfig collectionConfig,  
+								  ObjectBucket objectBucket,
+								  String queryCriteria,
+								  List<String> attributes                   ) {
 		
 		this.collectionConfig  = collectionConfig; 
 		this.objectBucket      = objectBucket; 
+		this.queryCriteria     = queryCriteria;
+		this.attributes        = attributes;
+	}
+	
+	/**
+	 * Creates a criteria returning objects modified since the specified date
+	 * @param modifiedSince
+	 * @return String
+	 */
+	public static String modifiedSinceCriteria( Date modifiedSince ) {
+		return "( " + LAST_MODIFIED_MD_KEY + " >= '" + newDateFormat().format(modifiedSince) + "' )";
+	}
+	
+	/**
+	 * Checks whether objects of the bucket can be queried by modification time
+	 * @param objectBucket
+	 * @return boolean
+	 */
+	public static boolean hasLastModifiedSearchKey( ObjectBucket objectBucket ) {
+		
+		if( objectBucket == null || objectBucket.getSearchMetadata() == null ) {
+			return false;
+		}
+		for( Metadata metadata : objectBucket.getSearchMetadata() ) {
+			if( LAST_MODIFIED_MD_KEY.equals(metadata.getName()) ) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	
@@ -72,10 +139,15 @@ public class QueryObjectsCollection implements Callable<String> {
 		return "ok";
 	}
 
+	/**
+	 * @return true if all result pages of the last query were collected
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+	
 	public boolean queryObjects(){
 		
-		String queryCriteria = collectionConfig.getQueryCriteria();
-		
 		// create request
 		QueryObjectsRequest queryRequest;
 		
@@ -97,72 +169,70 @@ public class QueryObjectsCollection implements Callable<String> {
 		}
 		
 		Long bucketObjectCount = 0L;
-		long startTime = System.currentTimeMillis();
+		
+		// page size adapts to the bucket response time
+		final QueryObjectsRequest pageQueryRequest = queryRequest;
+		PageSizeController.PageRequest<QueryObjectsResult> queryPage = new PageSizeController.PageRequest<QueryObjectsResult>() {
+			@Override
+			public QueryObjectsResult fetch(int pageSize) {
+				pageQueryRequest.setMaxKeys(pageSize);
+				return collectionConfig.getS3JerseyClient().queryObjects(pageQueryRequest);
+			}
+			@Override
+			public int getCount(QueryObjectsResult page) {
+				return page.getObjects().size();
+			}
+		};
 		
 		// Query Objects
 		try {
-			QueryObjectsResult queryResult = collectionConfig.getS3JerseyClient().queryObjects(queryRequest);
-
-
-			long stopTime = System.currentTimeMillis();
+			QueryObjectsResult queryResult;
 			
-			Double elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
-
-			if(queryResult != null) {
-
-				Long collected = (long)queryResult.getObjects().size();
+			do {
+				// wait for enough memory to hold the page before fetching it
+				long reservedMemory = collectionConfig.reservePage(collectionConfig.getPageSize(objectBucket.getName()));
 				
-				// increase local counter
-				bucketObjectCount += collected;
-
-				// Increase central counter
-				this.collectionConfig.getObjectCount().getAndAdd(collected);
-
-				logger.info("Took: " + elapsedTime + " seconds to query " +
-						collected + " objects from namespace: " + 
-						collectionConfig.getNamespace() + " bucket: " + queryResult.getBucketName());
-
-				if(collectionConfig.getObjectDAO() != null) {					
-					collectionConfig.getObjectDAO().insert( queryResult, 
-															 	 collectionConfig.getNamespace(),
-															 	 queryResult.getBucketName(), 
-															 	 collectionConfig.getCollectionTime() );
-				}
-
-				// extra pages to collect
-				while(queryResult.isTruncated()) {
-
-					// Move marker to beginning of next batch
-					queryRequest.setMarker(queryResult.getNextMarker());		
-
-					startTime = System.currentTimeMillis();
-
-					queryResult = this.collectionConfig.getS3JerseyClient().queryObjects(queryRequest);
-
-					stopTime = System.currentTimeMillis();
-
-					elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
+				try {
+					long startTime = System.currentTimeMillis();
+					queryResult = collectionConfig.fetchPage(objectBucket.getName(), queryPage);
+					long stopTime = System.currentTimeMillis();
+					
+					if(queryResult == null) {
+						break;
+					}
+					
+					Double elapsedTime = Double.valueOf(stopTime - startTime) / 1000;
 
-					collected = (long)queryResult.getObjects().size();
+					Long collected = (long)queryResult.getObjects().size();
 					
 					// increase local counter
 					bucketObjectCount += collected;
-					
+
 					// Increase central counter
 					collectionConfig.getObjectCount().getAndAdd(collected);
 
 					logger.info("Took: " + elapsedTime + " seconds to query " +
-							     collected + " objects from namespace: " + 
-							     this.collectionConfig.getNamespace() + " bucket: " + queryResult.getBucketName());
+							collected + " objects from namespace: " + 
+							collectionConfig.getNamespace() + " bucket: " + queryResult.getBucketName());
 
-					if(this.collectionConfig.getObjectDAO() != null) {					
-						this.collectionConfig.getObjectDAO().insert( queryResult, 
-																 	 collectionConfig.getNamespace(),
-																 	 queryResult.getBucketName(), 
-																 	 collectionConfig.getCollectionTime() );
+					observeLastModified(queryResult);
+					
+					if(collectionConfig.getObjectDAO() != null) {					
+						collectionConfig.getObjectDAO().insert( queryResult, 
+																collectionConfig.getNamespace(),
+																queryResult.getBucketName(), 
+																collectionConfig.getCollectionTime() );
 					}
-				}				
-			}
+					
+					// Move marker to beginning of next batch
+					queryRequest.setMarker(queryResult.getNextMarker());
+				} finally {
+					collectionConfig.releasePage(reservedMemory);
+				}
+			// extra pages to collect
+			} while(queryResult.isTruncated());
+			
+			completed = true;
 		} catch (Exception ex) {
 			
 			// known issue ECs returns this error when a bucket has MD keys but has not objects
@@ -253,7 +323,6 @@ public class QueryObjectsCollection implements Callable<String> {
 		
 		queryRequest.withQuery( queryString.toString() );
 		queryRequest.withAttributes( attributeList );
-		queryRequest.setMaxKeys( maxObjectPerRequest );
 		queryRequest.setNamespace( collectionConfig.getNamespace() );
 		
 		logger.info("QueryObject Collection for Namespace: " + collectionConfig.getNamespace() + " Bucket: " + objectBucket.getName() );
@@ -305,8 +374,7 @@ public class QueryObjectsCollection implements Callable<String> {
 		
 		
 		queryRequest.withQuery( queryString.toString() );
-		queryRequest.withAttributes( attributeList );
-		queryRequest.setMaxKeys( maxObjectPerRequest );
+		queryRequest.withAttributes( (attributes != null) ? attributes : attributeList );
 		queryRequest.setNamespace( collectionConfig.getNamespace() );
 		
 		logger.info("QueryObject Collection for Namespace: " + collectionConfig.getNamespace() + " Bucket: " + objectBucket.getName() );
@@ -316,4 +384,47 @@ public class QueryObjectsCollection implements Callable<String> {
 		return queryRequest;
 	}
 	
+	
+	/**
+	 * Records newest modification time of queried objects
+	 * for the bucket watermark
+	 * 
+	 * @param queryResult
+	 */
+	private void observeLastModified( QueryObjectsResult queryResult ) {
+		
+		BucketWatermarkStore watermarkStore = collectionConfig.getWatermarkStore();
+		if( watermarkStore == null ) {
+			return;
+		}
+		
+		SimpleDateFormat dateFormat = newDateFormat();
+		
+		for( QueryObject queryObject : queryResult.getObjects() ) {
+			if( queryObject.getQueryMds() == null ) {
+				continue;
+			}
+			for( QueryMetadata metadata : queryObject.getQueryMds() ) {
+				for( Entry<String, String> entry : metadata.getMdMap().entrySet() ) {
+					try {
+						if( MTIME_KEY.equals(entry.getKey()) ) {
+							watermarkStore.observe( collectionConfig.getNamespace(), objectBucket.getName(), 
+													new Date(Long.valueOf(entry.getValue())) );
+						} else if( LAST_MODIFIED_MD_KEY.equals(entry.getKey()) ) {
+							watermarkStore.observe( collectionConfig.getNamespace(), objectBucket.getName(), 
+													dateFormat.parse(entry.getValue()) );
+						}
+					} catch (NumberFormatException | ParseException e) {
+						logger.debug("Unable to parse modification time: " + entry.getValue());
+					}
+				}
+			}
+		}
+	}
+	
+	static SimpleDateFormat newDateFormat() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat(DATA_DATE_PATTERN);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return dateFormat;
+	}
 }
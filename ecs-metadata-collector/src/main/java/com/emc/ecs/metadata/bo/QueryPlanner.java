@@ -0,0 +1,228 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.emc.ecs.management.entity.Metadata;
+import com.emc.ecs.management.entity.ObjectBucket;
+
+
+/**
+ * Plans metadata search queries of a bucket as a set of 
+ * disjoint range queries which can run concurrently.
+ * 
+ * Only system metadata keys present on every object are used to 
+ * partition (LastModified, CreateTime then Size) so the union of 
+ * the ranges returns every object of the bucket. The first and last 
+ * ranges are open ended so values outside of the estimated domain 
+ * are still covered.
+ */
+public class QueryPlanner {
+
+	public static final int DEFAULT_PARTITION_COUNT = 4;
+	
+	// partition keys in order of preference
+	private static final List<String> PARTITION_KEYS = Arrays.asList("LastModified", "CreateTime", "Size");
+	private static final String       SYSTEM_MD_TYPE = "System";
+	private static final String       SIZE_KEY       = "Size";
+	
+	// Size ranges are spread geometrically between 1 KB and 1 GB
+	private static final int MIN_SIZE_BITS = 10;
+	private static final int MAX_SIZE_BITS = 30;
+	
+	// time domain used when bucket creation time is unknown
+	private static final long DEFAULT_TIME_DOMAIN_MS = TimeUnit.MILLISECONDS.convert(365, TimeUnit.DAYS);
+	
+	
+	/**
+	 * Queries to run for a bucket 
+	 */
+	public static class QueryPlan {
+		
+		private final String       partitionKey;
+		private final List<String> criteria;
+		private final List<String> attributes;
+		
+		public QueryPlan( String partitionKey, List<String> criteria, List<String> attributes ) {
+			this.partitionKey = partitionKey;
+			this.criteria     = criteria;
+			this.attributes   = attributes;
+		}
+		
+		public String getPartitionKey() {
+			return partitionKey;
+		}
+		
+		/**
+		 * @return List<String> - one disjoint query criteria per partition 
+		 */
+		public List<String> getCriteria() {
+			return criteria;
+		}
+		
+		/**
+		 * @return List<String> - metadata to return in addition to the partition key 
+		 */
+		public List<String> getAttributes() {
+			return attributes;
+		}
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final int partitionCount;
+	
+	//================================
+	// Constructor
+	//================================
+	public QueryPlanner( int partitionCount ) {
+		if( partitionCount < 1 ) {
+			throw new IllegalArgumentException("Number of query partitions must be greater than 0");
+		}
+		this.partitionCount = partitionCount;
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Plans the queries returning all objects of a bucket
+	 * 
+	 * @param objectBucket
+	 * @param collectionTime - upper bound of time ranges
+	 * @return QueryPlan - null if no search key can partition the bucket
+	 */
+	public QueryPlan plan( ObjectBucket objectBucket, Date collectionTime ) {
+		
+		if( objectBucket == null || objectBucket.getSearchMetadata() == null ) {
+			return null;
+		}
+		
+		Metadata partitionMetadata = selectPartitionKey(objectBucket.getSearchMetadata());
+		
+		if( partitionMetadata == null ) {
+			return null;
+		}
+		
+		String partitionKey = partitionMetadata.getName();
+		
+		List<String> criteria;
+		if( SIZE_KEY.equals(partitionKey) ) {
+			criteria = sizeRanges(partitionKey);
+		} else {
+			criteria = timeRanges(partitionKey, objectBucket.getCreationTime(), collectionTime);
+		}
+		
+		// partition key value is returned as part of the query
+		// only the other keys need to be requested
+		Set<String> attributes = new LinkedHashSet<String>();
+		for( Metadata metadata : objectBucket.getSearchMetadata() ) {
+			if( metadata.getName() != null        && 
+			   !metadata.getName().isEmpty()      &&
+			   !metadata.getName().equals(partitionKey) ) {
+				attributes.add(metadata.getName());
+			}
+		}
+		
+		return new QueryPlan(partitionKey, criteria, new ArrayList<String>(attributes));
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private static Metadata selectPartitionKey( List<Metadata> searchMetadata ) {
+		
+		for( String partitionKey : PARTITION_KEYS ) {
+			for( Metadata metadata : searchMetadata ) {
+				if( partitionKey.equals(metadata.getName()) &&
+					(metadata.getType() == null || SYSTEM_MD_TYPE.equalsIgnoreCase(metadata.getType())) ) {
+					return metadata;
+				}
+			}
+		}
+		return null;
+	}
+	
+	private List<String> timeRanges( String key, Date from, Date to ) {
+		
+		long end   = to.getTime();
+		long start = (from != null && from.getTime() < end) ? from.getTime() : end - DEFAULT_TIME_DOMAIN_MS;
+		
+		SimpleDateFormat dateFormat = QueryObjectsCollection.newDateFormat();
+		
+		List<String> bounds = new ArrayList<String>();
+		for( int i = 1; i < partitionCount; i++ ) {
+			bounds.add( "'" + dateFormat.format(new Date(start + (end - start) * i / partitionCount)) + "'" );
+		}
+		return ranges(key, bounds);
+	}
+	
+	private List<String> sizeRanges( String key ) {
+		
+		List<String> bounds = new ArrayList<String>();
+		for( int i = 1; i < partitionCount; i++ ) {
+			int bits = MIN_SIZE_BITS + (MAX_SIZE_BITS - MIN_SIZE_BITS) * (i - 1) / Math.max(1, partitionCount - 2);
+			bounds.add( String.valueOf(1L << bits) );
+		}
+		return ranges(key, bounds);
+	}
+	
+	/**
+	 * Creates criteria of consecutive ranges: below the first bound, 
+	 * between each bound and at or above the last bound
+	 */
+	private static List<String> ranges( String key, List<String> rangeBounds ) {
+		
+		// small domains can produce the same bound twice
+		List<String> bounds   = new ArrayList<String>(new LinkedHashSet<String>(rangeBounds));
+		List<String> criteria = new ArrayList<String>();
+		
+		if( bounds.isEmpty() ) {
+			// single partition - any value
+			criteria.add( "( " + key + " >= " + (SIZE_KEY.equals(key) ? "0" : "'1970-01-01T00:00:00Z'") + " )" );
+			return criteria;
+		}
+		
+		criteria.add( "( " + key + " < " + bounds.get(0) + " )" );
+		for( int i = 1; i < bounds.size(); i++ ) {
+			criteria.add( "( " + key + " >= " + bounds.get(i - 1) + " and " + key + " < " + bounds.get(i) + " )" );
+		}
+		criteria.add( "( " + key + " >= " + bounds.get(bounds.size() - 1) + " )" );
+		
+		return criteria;
+	}
+}
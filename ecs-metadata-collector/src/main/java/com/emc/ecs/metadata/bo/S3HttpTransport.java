@@ -0,0 +1,178 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.bo;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.object.s3.S3Config;
+import com.emc.object.s3.jersey.S3JerseyClient;
+import com.sun.jersey.client.apache4.ApacheHttpClient4Handler;
+
+
+/**
+ * Pooled keep-alive HTTP transport shared by the S3 clients.
+ * 
+ * All S3 clients created by the transport go through the same 
+ * connection pool so connections to each ECS node are reused across 
+ * pages, buckets and object users. Responses are requested gzip 
+ * compressed (list and query pages are large XML documents).
+ * 
+ * Connections stay open for the whole collection. Clients are only 
+ * destroyed by shutdown() once all collection tasks have completed.
+ */
+public class S3HttpTransport {
+
+	public static final int  DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+	public static final int  DEFAULT_CONNECT_TIMEOUT_MS       = 15000;
+	public static final int  DEFAULT_SOCKET_TIMEOUT_MS        = 120000;
+	// idle time before a connection is closed when ECS doesn't specify it
+	public static final long DEFAULT_KEEP_ALIVE_MS            = 60000L;
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(S3HttpTransport.class);
+	
+	private final CloseableHttpClient  httpClient;
+	private final List<S3JerseyClient> s3Clients = new ArrayList<S3JerseyClient>();
+	
+	//================================
+	// Constructor
+	//================================
+	/**
+	 * @param hostCount - number of ECS nodes
+	 * @param maxConnectionsPerHost - maximum number of pooled connections per ECS node
+	 * @param connectTimeoutMs
+	 * @param socketTimeoutMs - maximum time waiting for response data
+	 * @param compression - request gzip compressed responses
+	 */
+	public S3HttpTransport( int     hostCount,
+							int     maxConnectionsPerHost, 
+							int     connectTimeoutMs,
+							int     socketTimeoutMs,
+							boolean compression          ) {
+		
+		httpClient = newHttpClient(hostCount, maxConnectionsPerHost, connectTimeoutMs, socketTimeoutMs, compression);
+		
+		logger.info("Pooled S3 transport: " + maxConnectionsPerHost + " connections per host, socket timeout: " + 
+					socketTimeoutMs + " ms, compression: " + compression);
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Creates an S3 client using the pooled connections
+	 * @param s3Config
+	 * @return S3JerseyClient
+	 */
+	public synchronized S3JerseyClient createS3Client( S3Config s3Config ) {
+		
+		S3JerseyClient s3JerseyClient = new S3JerseyClient( s3Config, 
+															new ApacheHttpClient4Handler(httpClient, null, false) );
+		s3Clients.add(s3JerseyClient);
+		
+		return s3JerseyClient;
+	}
+	
+	/**
+	 * Destroys all created S3 clients and closes pooled connections
+	 */
+	public synchronized void shutdown() {
+		
+		for( S3JerseyClient s3JerseyClient : s3Clients ) {
+			s3JerseyClient.destroy();
+		}
+		s3Clients.clear();
+		
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			logger.error("Unable to close pooled S3 connections: " + e.getLocalizedMessage());
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	/**
+	 * jersey-apache-client4 1.19 configures requests through 
+	 * HttpClient.getParams(), which only the 4.1-style client backs. 
+	 * Its classes are deprecated since httpclient 4.3 but still 
+	 * supported, so they are only referenced here.
+	 */
+	@SuppressWarnings("deprecation")
+	private static CloseableHttpClient newHttpClient( int     hostCount,
+													  int     maxConnectionsPerHost, 
+													  int     connectTimeoutMs,
+													  int     socketTimeoutMs,
+													  boolean compression          ) {
+		
+		org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager connectionManager = 
+				new org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager();
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		connectionManager.setMaxTotal(maxConnectionsPerHost * Math.max(1, hostCount));
+		
+		org.apache.http.impl.client.DefaultHttpClient httpClient = 
+				new org.apache.http.impl.client.DefaultHttpClient(connectionManager);
+		
+		org.apache.http.params.HttpParams httpParams = httpClient.getParams();
+		org.apache.http.params.HttpConnectionParams.setConnectionTimeout(httpParams, connectTimeoutMs);
+		org.apache.http.params.HttpConnectionParams.setSoTimeout(httpParams, socketTimeoutMs);
+		org.apache.http.params.HttpConnectionParams.setStaleCheckingEnabled(httpParams, true);
+		org.apache.http.params.HttpConnectionParams.setTcpNoDelay(httpParams, true);
+		
+		// keep connections open as long as ECS allows it
+		httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long keepAlive = super.getKeepAliveDuration(response, context);
+				return (keepAlive > 0) ? keepAlive : DEFAULT_KEEP_ALIVE_MS;
+			}
+		});
+		
+		if( compression ) {
+			httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+			httpClient.addResponseInterceptor(new ResponseContentEncoding());
+		}
+		
+		return httpClient;
+	}
+}
@@ -34,28 +34,51 @@ package com.emc.ecs.metadata.client;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.elasticsearch.common.xcontent.XContentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.emc.ecs.metadata.bo.BillingBO;
+import com.emc.ecs.metadata.bo.BucketChangeRateTracker;
+import com.emc.ecs.metadata.bo.BucketWatermarkStore;
+import com.emc.ecs.metadata.bo.EndpointProber;
+import com.emc.ecs.metadata.bo.FairThreadPoolExecutor;
+import com.emc.ecs.metadata.bo.MemoryBudget;
+import com.emc.ecs.metadata.bo.PageSizeController;
+import com.emc.ecs.metadata.bo.QueryPlanner;
+import com.emc.ecs.metadata.bo.S3HttpTransport;
 import com.emc.ecs.metadata.bo.ObjectBO;
+import com.emc.ecs.metadata.dao.AsyncBillingDAO;
+import com.emc.ecs.metadata.dao.AsyncBillingDAOAdapter;
+import com.emc.ecs.metadata.dao.AsyncObjectDAO;
 import com.emc.ecs.metadata.dao.BillingDAO;
 import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.ecs.metadata.dao.elasticsearch.BulkIndexer;
+import com.emc.ecs.metadata.dao.elasticsearch.BulkLoadSettings;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticClientRegistry;
+import com.emc.ecs.metadata.dao.elasticsearch.DeadLetterFile;
 import com.emc.ecs.metadata.dao.elasticsearch.ElasticBillingDAO;
 import com.emc.ecs.metadata.dao.elasticsearch.ElasticDAOConfig;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticDAOConfig.MappingProfile;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticHttpBillingDAO;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticHttpClient;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticHttpS3ObjectDAO;
 import com.emc.ecs.metadata.dao.elasticsearch.ElasticS3ObjectDAO;
 import com.emc.ecs.metadata.dao.file.FileBillingDAO;
 import com.emc.ecs.metadata.dao.file.FileObjectDAO;
+import com.emc.ecs.metadata.pipeline.AsyncObjectDAOAdapter;
+import com.emc.ecs.metadata.pipeline.PipelinedObjectDAO;
 
 
 /**
@@ -66,6 +89,7 @@ public class MetadataCollectorClient {
 	
 	
 	private static final Integer DEFAULT_ECS_MGMT_PORT = 4443;
+	private static final Integer DEFAULT_ELASTIC_TRANSPORT_PORT = 9300;
 	private static final String  ECS_COLLECT_BILLING_DATA = "billing";
 	private static final String  ECS_COLLECT_BUCKET_DATA = "bucket";
 	private static final String  ECS_COLLECT_OBJECT_DATA = "object";
@@ -78,10 +102,45 @@ public class MetadataCollectorClient {
 	private static final String ECS_MGMT_PORT_CONFIG_ARGUMENT                = "--ecs-mgmt-port";
 	private static final String ECS_COLLECT_DATA_CONFIG_ARGUMENT             = "--collect-data";
 	private static final String ECS_COLLECT_MODIFIED_OBJECT_CONFIG_ARGUMENT  = "--collect-only-modified-objects";
+	private static final String ECS_HOST_PROBE_CONFIG_ARGUMENT               = "--ecs-host-probe";
+	private static final String ECS_HOST_PROBE_REFRESH_CONFIG_ARGUMENT       = "--ecs-host-probe-refresh";
+	private static final String ECS_NAMESPACE_WEIGHTS_CONFIG_ARGUMENT        = "--namespace-weights";
+	private static final String ECS_WATERMARK_FILE_CONFIG_ARGUMENT           = "--watermark-file";
+	private static final String ECS_COLLECT_OBJECT_CHANGES_CONFIG_ARGUMENT   = "--collect-object-changes";
+	private static final String ELASTIC_INDEX_CHANGES_ONLY_CONFIG_ARGUMENT   = "--index-changes-only";
+	private static final String ELASTIC_DAILY_INDICES_CONFIG_ARGUMENT        = "--daily-indices";
+	private static final String ELASTIC_NAMESPACE_INDICES_CONFIG_ARGUMENT    = "--namespace-indices";
+	private static final String ELASTIC_NAMESPACE_GROUPS_CONFIG_ARGUMENT     = "--namespace-index-groups";
+	private static final String ELASTIC_BULK_LOAD_MODE_CONFIG_ARGUMENT       = "--bulk-load-mode";
+	private static final String ECS_ADAPTIVE_COLLECTION_CONFIG_ARGUMENT      = "--adaptive-collection";
+	private static final String ECS_MAX_STALENESS_HOURS_CONFIG_ARGUMENT      = "--max-staleness-hours";
+	private static final String ECS_COLLECTION_THREADS_CONFIG_ARGUMENT       = "--collection-threads";
+	private static final String ECS_MEMORY_BUDGET_CONFIG_ARGUMENT            = "--memory-budget-mb";
+	private static final String ECS_MIN_PAGE_SIZE_CONFIG_ARGUMENT            = "--min-page-size";
+	private static final String ECS_MAX_PAGE_SIZE_CONFIG_ARGUMENT            = "--max-page-size";
+	private static final String ECS_PAGE_TARGET_SECONDS_CONFIG_ARGUMENT      = "--page-target-seconds";
+	private static final String ECS_QUERY_PARTITIONS_CONFIG_ARGUMENT         = "--query-partitions";
+	private static final String ECS_S3_CONNECTION_POOL_CONFIG_ARGUMENT       = "--s3-connection-pool";
+	private static final String ECS_S3_SOCKET_TIMEOUT_CONFIG_ARGUMENT        = "--s3-socket-timeout-seconds";
+	private static final String ECS_S3_NO_COMPRESSION_CONFIG_ARGUMENT        = "--s3-no-compression";
+	private static final String PIPELINE_CONFIG_ARGUMENT                     = "--pipeline";
+	private static final String PIPELINE_SINK_WRITERS_CONFIG_ARGUMENT        = "--pipeline-sink-writers";
+	private static final String ASYNC_SINK_CONFIG_ARGUMENT                   = "--async-sink";
 	
 	private static final String ELASTIC_HOSTS_CONFIG_ARGUMENT                = "--elastic-hosts";
 	private static final String ELASTIC_PORT_CONFIG_ARGUMENT                 = "--elastic-port";
 	private static final String ELASTIC_CLUSTER_CONFIG_ARGUMENT              = "--elastic-cluster"; 
+	private static final String ELASTIC_BULK_ACTIONS_CONFIG_ARGUMENT         = "--elastic-bulk-actions";
+	private static final String ELASTIC_BULK_SIZE_MB_CONFIG_ARGUMENT         = "--elastic-bulk-size-mb";
+	private static final String ELASTIC_BULK_CONCURRENCY_CONFIG_ARGUMENT     = "--elastic-bulk-concurrency";
+	private static final String ELASTIC_DEAD_LETTER_FILE_CONFIG_ARGUMENT     = "--dead-letter-file";
+	private static final String ELASTIC_REPLAY_DEAD_LETTERS_CONFIG_ARGUMENT  = "--replay-dead-letters";
+	private static final String ELASTIC_ENCODING_CONFIG_ARGUMENT             = "--elastic-encoding";
+	private static final String ELASTIC_HTTP_CONFIG_ARGUMENT                 = "--elastic-http";
+	private static final String ELASTIC_HTTP_COMPRESSION_CONFIG_ARGUMENT     = "--elastic-http-compression";
+	private static final String ELASTIC_MAPPING_PROFILE_CONFIG_ARGUMENT      = "--elastic-mapping-profile";
+	private static final String ELASTIC_KEY_PATH_DEPTH_CONFIG_ARGUMENT       = "--key-path-depth";
+	private static final String ELASTIC_OBJECT_CURRENT_STATE_CONFIG_ARGUMENT = "--object-current-state";
 	
 	private static final String ECS_OBJECT_LAST_MODIFIED_MD_KEY  = "LastModified";
 	
@@ -97,9 +156,44 @@ public class MetadataCollectorClient {
 			"[" + ECS_MGMT_ACCESS_KEY_CONFIG_ARGUMENT + " <admin-username>]" +
 			"[" + ECS_MGMT_SECRET_KEY_CONFIG_ARGUMENT + "<admin-password>]" +
 			"[" + ECS_MGMT_PORT_CONFIG_ARGUMENT + "<mgmt-port {default: 4443}>]" +
+			"[" + ECS_HOST_PROBE_CONFIG_ARGUMENT + "]" +
+			"[" + ECS_HOST_PROBE_REFRESH_CONFIG_ARGUMENT + " <probe refresh interval in minutes>]" +
+			"[" + ECS_NAMESPACE_WEIGHTS_CONFIG_ARGUMENT + " <ns1:weight,ns2:weight>]" +
+			"[" + ECS_WATERMARK_FILE_CONFIG_ARGUMENT + " <watermark-file>]" +
+			"[" + ECS_COLLECT_OBJECT_CHANGES_CONFIG_ARGUMENT + " <manifest-directory>]" +
+			"[" + ECS_ADAPTIVE_COLLECTION_CONFIG_ARGUMENT + " <state-file>]" +
+			"[" + ECS_MAX_STALENESS_HOURS_CONFIG_ARGUMENT + " <hours {default: 24}>]" +
+			"[" + ECS_COLLECTION_THREADS_CONFIG_ARGUMENT + " <thread count {default: number of cpus}>]" +
+			"[" + ECS_MEMORY_BUDGET_CONFIG_ARGUMENT + " <MB {default: half of max heap}>]" +
+			"[" + ECS_MIN_PAGE_SIZE_CONFIG_ARGUMENT + " <objects {default: 500}>]" +
+			"[" + ECS_MAX_PAGE_SIZE_CONFIG_ARGUMENT + " <objects {default: 10000}>]" +
+			"[" + ECS_PAGE_TARGET_SECONDS_CONFIG_ARGUMENT + " <seconds {default: 10}>]" +
+			"[" + ECS_QUERY_PARTITIONS_CONFIG_ARGUMENT + " <count {default: 4}>]" +
+			"[" + ECS_S3_CONNECTION_POOL_CONFIG_ARGUMENT + " <max connections per host>]" +
+			"[" + ECS_S3_SOCKET_TIMEOUT_CONFIG_ARGUMENT + " <seconds {default: 120}>]" +
+			"[" + ECS_S3_NO_COMPRESSION_CONFIG_ARGUMENT + "]" +
+			"[" + PIPELINE_CONFIG_ARGUMENT + "]" +
+			"[" + PIPELINE_SINK_WRITERS_CONFIG_ARGUMENT + " <count {default: datastore bulk concurrency or 2}>]" +
+			"[" + ASYNC_SINK_CONFIG_ARGUMENT + "]" +
 			"[" + ELASTIC_HOSTS_CONFIG_ARGUMENT + " <host1,host2>] " +
-			"[" + ELASTIC_PORT_CONFIG_ARGUMENT + "<elastic-port {default: 9300}>]" +
+			"[" + ELASTIC_PORT_CONFIG_ARGUMENT + "<elastic-port {default: 9300, 9200 with " + ELASTIC_HTTP_CONFIG_ARGUMENT + "}>]" +
 			"[" + ELASTIC_CLUSTER_CONFIG_ARGUMENT + "<elastic-cluster>]" +
+			"[" + ELASTIC_BULK_ACTIONS_CONFIG_ARGUMENT + " <documents {default: 5000}>]" +
+			"[" + ELASTIC_BULK_SIZE_MB_CONFIG_ARGUMENT + " <MB {default: 10}>]" +
+			"[" + ELASTIC_BULK_CONCURRENCY_CONFIG_ARGUMENT + " <count {default: 4}>]" +
+			"[" + ELASTIC_DEAD_LETTER_FILE_CONFIG_ARGUMENT + " <file {default: " + DeadLetterFile.DEFAULT_FILE_NAME + "}>]" +
+			"[" + ELASTIC_REPLAY_DEAD_LETTERS_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_ENCODING_CONFIG_ARGUMENT + " <json|smile|cbor {default: json}>]" +
+			"[" + ELASTIC_HTTP_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_HTTP_COMPRESSION_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_MAPPING_PROFILE_CONFIG_ARGUMENT + " <standard|lean {default: standard}>]" +
+			"[" + ELASTIC_KEY_PATH_DEPTH_CONFIG_ARGUMENT + " <folder levels {default: 0}>]" +
+			"[" + ELASTIC_OBJECT_CURRENT_STATE_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_INDEX_CHANGES_ONLY_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_DAILY_INDICES_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_NAMESPACE_INDICES_CONFIG_ARGUMENT + "]" +
+			"[" + ELASTIC_NAMESPACE_GROUPS_CONFIG_ARGUMENT + " <ns1:group,ns2:group>]" +
+			"[" + ELASTIC_BULK_LOAD_MODE_CONFIG_ARGUMENT + "]" +
 			"[" + ECS_COLLECT_MODIFIED_OBJECT_CONFIG_ARGUMENT + "<number of days>" + " | " +
 			ECS_COLLECT_DATA_CONFIG_ARGUMENT + " <" + 
 			ECS_COLLECT_BILLING_DATA + "|" + 
@@ -112,18 +206,63 @@ public class MetadataCollectorClient {
 	private static String  ecsMgmtAccessKey                  = "";
 	private static String  ecsMgmtSecretKey                  = "";
 	private static String  elasticHosts                      = "";
-	private static Integer elasticPort                       = 9300;
+	private static Integer elasticPort                       = null;
 	private static String  elasticCluster                    = "ecs-analytics";
 	private static Integer ecsMgmtPort                       = DEFAULT_ECS_MGMT_PORT;
 	private static String  collectData                       = ECS_COLLECT_ALL_DATA;
 	private static Integer relativeDayShift                  = 0;
 	private static Integer objectModifiedSinceNoOfDays       = 0;
 	private static boolean relativeObjectModifiedSinceOption = false;
+	private static boolean ecsHostProbe                      = false;
+	private static Integer ecsHostProbeRefreshMinutes        = 0;
+	private static EndpointProber endpointProber             = null;
+	private static Map<String, Integer> namespaceWeights     = new HashMap<String, Integer>();
+	private static String  watermarkFile                     = null;
+	private static BucketWatermarkStore watermarkStore       = null;
+	private static String  manifestDirectory                 = null;
+	private static boolean indexChangesOnly                  = false;
+	private static boolean dailyIndices                      = false;
+	private static boolean namespaceIndices                  = false;
+	private static Map<String, String> namespaceIndexGroups  = new HashMap<String, String>();
+	private static boolean bulkLoadMode                      = false;
+	private static Integer elasticBulkActions                = BulkIndexer.DEFAULT_MAX_ACTIONS;
+	private static Integer elasticBulkSizeMb                 = BulkIndexer.DEFAULT_MAX_SIZE_MB;
+	private static Integer elasticBulkConcurrency            = BulkIndexer.DEFAULT_CONCURRENT_BULKS;
+	private static String  deadLetterFile                    = DeadLetterFile.DEFAULT_FILE_NAME;
+	private static boolean replayDeadLetters                 = false;
+	private static XContentType elasticEncoding              = XContentType.JSON;
+	private static boolean elasticHttp                       = false;
+	private static boolean elasticHttpCompression            = false;
+	private static MappingProfile elasticMappingProfile      = MappingProfile.standard;
+	private static Integer keyPathDepth                      = 0;
+	private static boolean objectCurrentState                = false;
+	private static String  adaptiveCollectionFile            = null;
+	private static Integer maxStalenessHours                 = 24;
+	private static BucketChangeRateTracker changeRateTracker = null;
+	private static Integer collectionThreads                 = Runtime.getRuntime().availableProcessors();
+	private static Long    memoryBudgetMB                    = null;
+	private static MemoryBudget memoryBudget                 = null;
+	private static Integer minPageSize                       = PageSizeController.DEFAULT_MIN_PAGE_SIZE;
+	private static Integer maxPageSize                       = PageSizeController.DEFAULT_MAX_PAGE_SIZE;
+	private static Long    pageTargetMillis                  = PageSizeController.DEFAULT_TARGET_PAGE_MILLIS;
+	private static PageSizeController pageSizeController     = null;
+	private static PageSizeController mgmtPageSizeController = null;
+	private static Integer queryPartitions                   = QueryPlanner.DEFAULT_PARTITION_COUNT;
+	private static QueryPlanner queryPlanner                 = null;
+	private static Integer s3MaxConnectionsPerHost           = null;
+	private static Integer s3SocketTimeoutSeconds            = S3HttpTransport.DEFAULT_SOCKET_TIMEOUT_MS / 1000;
+	private static boolean s3Compression                     = true;
+	private static S3HttpTransport s3HttpTransport           = null;
+	private static boolean pipeline                          = false;
+	private static Integer pipelineSinkWriters               = null;
+	private static PipelinedObjectDAO pipelinedObjectDAO     = null;
+	private static boolean asyncSink                         = false;
+	private static AsyncObjectDAOAdapter asyncObjectDAO      = null;
 	
 	
 	private final static Logger       logger             = LoggerFactory.getLogger(MetadataCollectorClient.class);
 	
-	private static ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	private static ThreadPoolExecutor threadPoolExecutor = null;
 	private static Queue<Future<?>>   futures            = new ConcurrentLinkedQueue<Future<?>>();
 	private static AtomicLong         objectCount        = new AtomicLong(0L);
 	
@@ -132,6 +271,55 @@ public class MetadataCollectorClient {
 		// handle passed in arguments
 		handleArguments(args);
 		
+		if( replayDeadLetters ) {
+			replayDeadLetters();
+			return;
+		}
+		
+		// interleave collection work across namespaces
+		threadPoolExecutor = new FairThreadPoolExecutor(collectionThreads, namespaceWeights);
+		
+		// bound memory held by in flight pages whatever the number of threads
+		memoryBudget = (memoryBudgetMB != null) ? new MemoryBudget(memoryBudgetMB * 1024 * 1024) : 
+												  MemoryBudget.fromMaxHeap();
+		
+		// page sizes adapt to response times of buckets and management calls
+		pageSizeController     = new PageSizeController(minPageSize, maxPageSize, pageTargetMillis);
+		mgmtPageSizeController = new PageSizeController(BillingBO.MGMT_MIN_PAGE_SIZE, 
+														BillingBO.MGMT_DEFAULT_PAGE_SIZE, 
+														pageTargetMillis);
+		
+		// split bucket queries into concurrent range queries
+		if( queryPartitions > 1 ) {
+			queryPlanner = new QueryPlanner(queryPartitions);
+		}
+		
+		// reuse S3 connections across pages and buckets
+		if( s3MaxConnectionsPerHost != null ) {
+			s3HttpTransport = new S3HttpTransport( ecsHosts.split(",").length,
+												   s3MaxConnectionsPerHost, 
+												   S3HttpTransport.DEFAULT_CONNECT_TIMEOUT_MS,
+												   s3SocketTimeoutSeconds * 1000,
+												   s3Compression );
+		}
+		
+		// load per bucket watermarks for incremental object collection
+		if( watermarkFile != null ) {
+			watermarkStore = new BucketWatermarkStore(watermarkFile);
+		}
+		
+		// load bucket change rates to only collect buckets which are due
+		if( adaptiveCollectionFile != null ) {
+			changeRateTracker = new BucketChangeRateTracker(adaptiveCollectionFile, maxStalenessHours);
+		}
+		
+		// rank ECS hosts before generating any traffic
+		if( ecsHostProbe ) {
+			endpointProber = new EndpointProber(Arrays.asList(ecsHosts.split(",")), ecsMgmtPort);
+			endpointProber.probe();
+			endpointProber.startPeriodicRefresh(ecsHostProbeRefreshMinutes);
+		}
+		
 		// grab current to timestamp in order
 		// to label collected data with time
 		Date collectionTime = new Date(System.currentTimeMillis());
@@ -218,6 +406,39 @@ public class MetadataCollectorClient {
 			}
 		} while(!termination);
 		
+		if( endpointProber != null ) {
+			endpointProber.shutdown();
+		}
+		
+		// write pages left in the pipeline
+		if( pipelinedObjectDAO != null ) {
+			pipelinedObjectDAO.shutdown();
+		}
+		if( asyncObjectDAO != null ) {
+			asyncObjectDAO.close();
+		}
+		
+		// all buckets are processed - persist their watermarks
+		if( watermarkStore != null ) {
+			watermarkStore.save();
+		}
+		
+		if( changeRateTracker != null ) {
+			changeRateTracker.save();
+		}
+		
+		memoryBudget.logUsage();
+		
+		if( !elasticHosts.isEmpty() ) {
+			// indices get refreshed and replicated again
+			BulkLoadSettings.restoreAll();
+			BulkIndexer.logFailureSummary();
+			ElasticClientRegistry.closeAll();
+		}
+		
+		if( s3HttpTransport != null ) {
+			s3HttpTransport.shutdown();
+		}
 		
 	}
 
@@ -267,6 +488,144 @@ public class MetadataCollectorClient {
 						System.err.println(ECS_MGMT_PORT_CONFIG_ARGUMENT + " requires a mgmt port value");
 						System.exit(0);
 					}
+				} else if (arg.equals(ECS_HOST_PROBE_CONFIG_ARGUMENT)) {
+					ecsHostProbe = true;
+				} else if (arg.equals(ECS_HOST_PROBE_REFRESH_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						ecsHostProbeRefreshMinutes = Integer.valueOf(args[i++]);
+						if (ecsHostProbeRefreshMinutes < 1) {
+							System.err.println(ECS_HOST_PROBE_REFRESH_CONFIG_ARGUMENT + " requires an interval greater than 0");
+							System.exit(0);
+						}
+						ecsHostProbe = true;
+					} else {
+						System.err.println(ECS_HOST_PROBE_REFRESH_CONFIG_ARGUMENT + " requires a refresh interval value in minutes");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_NAMESPACE_WEIGHTS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						namespaceWeights = parseNamespaceWeights(args[i++]);
+					} else {
+						System.err.println(ECS_NAMESPACE_WEIGHTS_CONFIG_ARGUMENT + " requires namespace weight value(s)");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_COLLECTION_THREADS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						collectionThreads = Integer.valueOf(args[i++]);
+						if (collectionThreads < 1) {
+							System.err.println(ECS_COLLECTION_THREADS_CONFIG_ARGUMENT + " requires a thread count greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ECS_COLLECTION_THREADS_CONFIG_ARGUMENT + " requires a thread count value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_MEMORY_BUDGET_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						memoryBudgetMB = Long.valueOf(args[i++]);
+						if (memoryBudgetMB < 1) {
+							System.err.println(ECS_MEMORY_BUDGET_CONFIG_ARGUMENT + " requires a value greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ECS_MEMORY_BUDGET_CONFIG_ARGUMENT + " requires a MB value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_MIN_PAGE_SIZE_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						minPageSize = Integer.valueOf(args[i++]);
+					} else {
+						System.err.println(ECS_MIN_PAGE_SIZE_CONFIG_ARGUMENT + " requires a number of objects value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_MAX_PAGE_SIZE_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						maxPageSize = Integer.valueOf(args[i++]);
+					} else {
+						System.err.println(ECS_MAX_PAGE_SIZE_CONFIG_ARGUMENT + " requires a number of objects value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_PAGE_TARGET_SECONDS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						pageTargetMillis = Long.valueOf(args[i++]) * 1000;
+					} else {
+						System.err.println(ECS_PAGE_TARGET_SECONDS_CONFIG_ARGUMENT + " requires a number of seconds value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_QUERY_PARTITIONS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						queryPartitions = Integer.valueOf(args[i++]);
+						if (queryPartitions < 1) {
+							System.err.println(ECS_QUERY_PARTITIONS_CONFIG_ARGUMENT + " requires a count greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ECS_QUERY_PARTITIONS_CONFIG_ARGUMENT + " requires a count value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_S3_CONNECTION_POOL_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						s3MaxConnectionsPerHost = Integer.valueOf(args[i++]);
+						if (s3MaxConnectionsPerHost < 1) {
+							System.err.println(ECS_S3_CONNECTION_POOL_CONFIG_ARGUMENT + " requires a value greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ECS_S3_CONNECTION_POOL_CONFIG_ARGUMENT + " requires a max connections per host value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_S3_SOCKET_TIMEOUT_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						s3SocketTimeoutSeconds = Integer.valueOf(args[i++]);
+					} else {
+						System.err.println(ECS_S3_SOCKET_TIMEOUT_CONFIG_ARGUMENT + " requires a number of seconds value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_S3_NO_COMPRESSION_CONFIG_ARGUMENT)) {
+					s3Compression = false;
+				} else if (arg.equals(PIPELINE_CONFIG_ARGUMENT)) {
+					pipeline = true;
+				} else if (arg.equals(ASYNC_SINK_CONFIG_ARGUMENT)) {
+					asyncSink = true;
+				} else if (arg.equals(PIPELINE_SINK_WRITERS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						pipelineSinkWriters = Integer.valueOf(args[i++]);
+						if (pipelineSinkWriters < 1) {
+							System.err.println(PIPELINE_SINK_WRITERS_CONFIG_ARGUMENT + " requires a count greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(PIPELINE_SINK_WRITERS_CONFIG_ARGUMENT + " requires a count value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_WATERMARK_FILE_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						watermarkFile = args[i++];
+					} else {
+						System.err.println(ECS_WATERMARK_FILE_CONFIG_ARGUMENT + " requires a file name value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_COLLECT_OBJECT_CHANGES_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						manifestDirectory = args[i++];
+					} else {
+						System.err.println(ECS_COLLECT_OBJECT_CHANGES_CONFIG_ARGUMENT + " requires a manifest directory value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_ADAPTIVE_COLLECTION_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						adaptiveCollectionFile = args[i++];
+					} else {
+						System.err.println(ECS_ADAPTIVE_COLLECTION_CONFIG_ARGUMENT + " requires a state file value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ECS_MAX_STALENESS_HOURS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						maxStalenessHours = Integer.valueOf(args[i++]);
+					} else {
+						System.err.println(ECS_MAX_STALENESS_HOURS_CONFIG_ARGUMENT + " requires a number of hours value");
+						System.exit(0);
+					}
 				} else if (arg.equals(ECS_COLLECT_MODIFIED_OBJECT_CONFIG_ARGUMENT)) {
 					if (i < args.length) {
 						relativeObjectModifiedSinceOption = true;
@@ -304,6 +663,114 @@ public class MetadataCollectorClient {
 						System.err.println( ELASTIC_CLUSTER_CONFIG_ARGUMENT + " requires a cluster value");
 						System.exit(0);
 					}
+				} else if (arg.equals(ELASTIC_INDEX_CHANGES_ONLY_CONFIG_ARGUMENT)) {
+					indexChangesOnly = true;
+				} else if (arg.equals(ELASTIC_DAILY_INDICES_CONFIG_ARGUMENT)) {
+					dailyIndices = true;
+				} else if (arg.equals(ELASTIC_NAMESPACE_INDICES_CONFIG_ARGUMENT)) {
+					namespaceIndices = true;
+				} else if (arg.equals(ELASTIC_BULK_LOAD_MODE_CONFIG_ARGUMENT)) {
+					bulkLoadMode = true;
+				} else if (arg.equals(ELASTIC_NAMESPACE_GROUPS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						namespaceIndexGroups = parseNamespaceIndexGroups(args[i++]);
+						namespaceIndices = true;
+					} else {
+						System.err.println(ELASTIC_NAMESPACE_GROUPS_CONFIG_ARGUMENT + " requires namespace group value(s)");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_DEAD_LETTER_FILE_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						deadLetterFile = args[i++];
+					} else {
+						System.err.println(ELASTIC_DEAD_LETTER_FILE_CONFIG_ARGUMENT + " requires a file name value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_REPLAY_DEAD_LETTERS_CONFIG_ARGUMENT)) {
+					replayDeadLetters = true;
+				} else if (arg.equals(ELASTIC_ENCODING_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						String encoding = args[i++];
+						if (encoding.equalsIgnoreCase(XContentType.JSON.shortName())) {
+							elasticEncoding = XContentType.JSON;
+						} else if (encoding.equalsIgnoreCase(XContentType.SMILE.shortName())) {
+							elasticEncoding = XContentType.SMILE;
+						} else if (encoding.equalsIgnoreCase(XContentType.CBOR.shortName())) {
+							elasticEncoding = XContentType.CBOR;
+						} else {
+							System.err.println(ELASTIC_ENCODING_CONFIG_ARGUMENT + " requires json, smile or cbor");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ELASTIC_ENCODING_CONFIG_ARGUMENT + " requires an encoding value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_HTTP_CONFIG_ARGUMENT)) {
+					elasticHttp = true;
+				} else if (arg.equals(ELASTIC_HTTP_COMPRESSION_CONFIG_ARGUMENT)) {
+					elasticHttpCompression = true;
+				} else if (arg.equals(ELASTIC_MAPPING_PROFILE_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						String profile = args[i++];
+						if (profile.equalsIgnoreCase(MappingProfile.standard.name())) {
+							elasticMappingProfile = MappingProfile.standard;
+						} else if (profile.equalsIgnoreCase(MappingProfile.lean.name())) {
+							elasticMappingProfile = MappingProfile.lean;
+						} else {
+							System.err.println(ELASTIC_MAPPING_PROFILE_CONFIG_ARGUMENT + " requires standard or lean");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ELASTIC_MAPPING_PROFILE_CONFIG_ARGUMENT + " requires a profile value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_KEY_PATH_DEPTH_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						keyPathDepth = Integer.valueOf(args[i++]);
+						if (keyPathDepth < 0 || keyPathDepth > ElasticS3ObjectDAO.MAX_KEY_PATH_DEPTH) {
+							System.err.println(ELASTIC_KEY_PATH_DEPTH_CONFIG_ARGUMENT + " requires a depth between 0 and " + 
+											   ElasticS3ObjectDAO.MAX_KEY_PATH_DEPTH);
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ELASTIC_KEY_PATH_DEPTH_CONFIG_ARGUMENT + " requires a depth value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_OBJECT_CURRENT_STATE_CONFIG_ARGUMENT)) {
+					objectCurrentState = true;
+				} else if (arg.equals(ELASTIC_BULK_ACTIONS_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						elasticBulkActions = Integer.valueOf(args[i++]);
+						if (elasticBulkActions < 1) {
+							System.err.println(ELASTIC_BULK_ACTIONS_CONFIG_ARGUMENT + " requires a document count greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ELASTIC_BULK_ACTIONS_CONFIG_ARGUMENT + " requires a document count value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_BULK_SIZE_MB_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						elasticBulkSizeMb = Integer.valueOf(args[i++]);
+						if (elasticBulkSizeMb < 1) {
+							System.err.println(ELASTIC_BULK_SIZE_MB_CONFIG_ARGUMENT + " requires a size greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ELASTIC_BULK_SIZE_MB_CONFIG_ARGUMENT + " requires a size value");
+						System.exit(0);
+					}
+				} else if (arg.equals(ELASTIC_BULK_CONCURRENCY_CONFIG_ARGUMENT)) {
+					if (i < args.length) {
+						elasticBulkConcurrency = Integer.valueOf(args[i++]);
+						if (elasticBulkConcurrency < 1) {
+							System.err.println(ELASTIC_BULK_CONCURRENCY_CONFIG_ARGUMENT + " requires a count greater than 0");
+							System.exit(0);
+						}
+					} else {
+						System.err.println(ELASTIC_BULK_CONCURRENCY_CONFIG_ARGUMENT + " requires a count value");
+						System.exit(0);
+					}
 				} else if (arg.equals(ECS_COLLECTION_DAY_SHIFT_ARGUMENT)) {
 					if (i < args.length) {
 						relativeDayShift = Integer.valueOf(args[i++]);
@@ -317,6 +784,25 @@ public class MetadataCollectorClient {
 				} 
 			}                
 		}
+		
+		// buckets with a watermark are only collected for modified 
+		// objects so deleted objects would never be flagged
+		if(objectCurrentState && watermarkFile != null) {
+			System.err.println(ELASTIC_OBJECT_CURRENT_STATE_CONFIG_ARGUMENT + " can't be used with " + 
+							   ECS_WATERMARK_FILE_CONFIG_ARGUMENT);
+			System.exit(0);
+		}
+		
+		// the REST API client only writes the single index of each data type
+		if(elasticHttp && (dailyIndices || namespaceIndices || !namespaceIndexGroups.isEmpty() || bulkLoadMode || 
+						   indexChangesOnly || elasticEncoding != XContentType.JSON || objectCurrentState)) {
+			System.err.println(ELASTIC_HTTP_CONFIG_ARGUMENT + " can't be used with " + 
+							   ELASTIC_DAILY_INDICES_CONFIG_ARGUMENT + ", " + ELASTIC_NAMESPACE_INDICES_CONFIG_ARGUMENT + ", " + 
+							   ELASTIC_NAMESPACE_GROUPS_CONFIG_ARGUMENT + ", " + ELASTIC_BULK_LOAD_MODE_CONFIG_ARGUMENT + ", " + 
+							   ELASTIC_INDEX_CHANGES_ONLY_CONFIG_ARGUMENT + ", " + ELASTIC_OBJECT_CURRENT_STATE_CONFIG_ARGUMENT + 
+							   " or a binary " + ELASTIC_ENCODING_CONFIG_ARGUMENT);
+			System.exit(0);
+		}
 
 		// Check hosts
 		if(ecsHosts.isEmpty()) {	
@@ -340,6 +826,63 @@ public class MetadataCollectorClient {
 		}
 	}
 	
+	/**
+	 * Returns ECS hosts to be used by clients. When host probing
+	 * is enabled healthy hosts are returned fastest first
+	 * @return List<String>
+	 */
+	private static List<String> getEcsHosts() {
+		if( endpointProber != null ) {
+			return endpointProber.getPreferredHosts();
+		}
+		return Arrays.asList(ecsHosts.split(","));
+	}
+	
+	/**
+	 * Parses namespace weights specified as ns1:weight,ns2:weight
+	 * @param value
+	 * @return Map<String, Integer>
+	 */
+	private static Map<String, Integer> parseNamespaceWeights(String value) {
+		
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		
+		for( String entry : value.split(",") ) {
+			String[] parts = entry.split(":");
+			if( parts.length != 2 ) {
+				System.err.println(ECS_NAMESPACE_WEIGHTS_CONFIG_ARGUMENT + " expects <namespace>:<weight> pairs - invalid value: " + entry);
+				System.exit(0);
+			}
+			try {
+				weights.put(parts[0].trim(), Integer.valueOf(parts[1].trim()));
+			} catch (NumberFormatException e) {
+				System.err.println(ECS_NAMESPACE_WEIGHTS_CONFIG_ARGUMENT + " requires integer weights - invalid value: " + entry);
+				System.exit(0);
+			}
+		}
+		return weights;
+	}
+	
+	/**
+	 * Parses namespace index groups specified as ns1:group,ns2:group
+	 * @param value
+	 * @return Map<String, String>
+	 */
+	private static Map<String, String> parseNamespaceIndexGroups(String value) {
+		
+		Map<String, String> groups = new HashMap<String, String>();
+		
+		for( String entry : value.split(",") ) {
+			String[] parts = entry.split(":");
+			if( parts.length != 2 || parts[1].trim().isEmpty() ) {
+				System.err.println(ELASTIC_NAMESPACE_GROUPS_CONFIG_ARGUMENT + " expects <namespace>:<group> pairs - invalid value: " + entry);
+				System.exit(0);
+			}
+			groups.put(parts[0].trim(), parts[1].trim());
+		}
+		return groups;
+	}
+	
 	/**
 	 * Collects Billing data
 	 * 
@@ -351,12 +894,8 @@ public class MetadataCollectorClient {
 		
 		if(!elasticHosts.isEmpty()) {
 			
-			// Instantiate file DAO
-			ElasticDAOConfig daoConfig = new ElasticDAOConfig();
-			daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
-			daoConfig.setPort(elasticPort);
-			daoConfig.setClusterName(elasticCluster);
-			billingDAO = new ElasticBillingDAO(daoConfig);
+			// Instantiate ElasticSearch DAO
+			billingDAO = newElasticBillingDAO();
 		} else {
 			// Instantiate file DAO
 			billingDAO = new FileBillingDAO(null);
@@ -365,14 +904,22 @@ public class MetadataCollectorClient {
 		// instantiate billing BO
 		BillingBO billingBO = new BillingBO( ecsMgmtAccessKey, 
 											 ecsMgmtSecretKey,
-											 Arrays.asList(ecsHosts.split(",")),
+											 getEcsHosts(),
 											 ecsMgmtPort,
 											 billingDAO,
 											 objectCount );
+		billingBO.setPageSizeController(mgmtPageSizeController);
+		
+		AsyncBillingDAO asyncBillingDAO = asyncBillingDAO(billingDAO);
+		billingBO.setAsyncBillingDAO(asyncBillingDAO);
 		
 		// Start collection
 		billingBO.collectBillingData(collectionTime);
 		
+		if( asyncBillingDAO != null ) {
+			asyncBillingDAO.close();
+		}
+		
 		billingBO.shutdown();
 	}
 	
@@ -387,12 +934,8 @@ public class MetadataCollectorClient {
 		
 		if(!elasticHosts.isEmpty()) {
 			
-			// Instantiate file DAO
-			ElasticDAOConfig daoConfig = new ElasticDAOConfig();
-			daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
-			daoConfig.setPort(elasticPort);
-			daoConfig.setClusterName(elasticCluster);
-			billingDAO = new ElasticBillingDAO(daoConfig);
+			// Instantiate ElasticSearch DAO
+			billingDAO = newElasticBillingDAO();
 		} else {
 			// Instantiate file DAO
 			billingDAO = new FileBillingDAO(null);
@@ -402,19 +945,39 @@ public class MetadataCollectorClient {
 		BillingBO billingBO = new BillingBO( ecsMgmtAccessKey, 
 											 ecsMgmtSecretKey,
 											
-											 Arrays.asList(ecsHosts.split(",")),
+											 getEcsHosts(),
 											 ecsMgmtPort,
 											 billingDAO,
 											 objectCount );
+		billingBO.setPageSizeController(mgmtPageSizeController);
 		
-		
+		AsyncBillingDAO asyncBillingDAO = asyncBillingDAO(billingDAO);
+		billingBO.setAsyncBillingDAO(asyncBillingDAO);
 		
 		// Start collection
 		billingBO.collectObjectBukcetData(collectionTime);
 		
+		if( asyncBillingDAO != null ) {
+			asyncBillingDAO.close();
+		}
+		
 		billingBO.shutdown();
 	}
 	
+	/**
+	 * Wraps the billing DAO when asynchronous writes are requested
+	 * 
+	 * @param billingDAO
+	 * @return AsyncBillingDAO - null if pages are stored by collection threads
+	 */
+	private static AsyncBillingDAO asyncBillingDAO(BillingDAO billingDAO) {
+		
+		if(!asyncSink) {
+			return null;
+		}
+		return new AsyncBillingDAOAdapter(billingDAO, AsyncBillingDAOAdapter.DEFAULT_CAPACITY);
+	}
+	
 	/**
 	 * Collects object data
 	 * 
@@ -422,7 +985,7 @@ public class MetadataCollectorClient {
 	 */
 	private static void collectObjectData(Date collectionTime) {
 		
-		List<String> hosts = Arrays.asList(ecsHosts.split(","));
+		List<String> hosts = getEcsHosts();
 		
 		
 		// instantiate billing BO
@@ -432,24 +995,31 @@ public class MetadataCollectorClient {
 											 ecsMgmtPort,
 											 null,        // dao is not required in this case
 											 objectCount );  
+		billingBO.setPageSizeController(mgmtPageSizeController);
 		
 		// Instantiate DAO
 		ObjectDAO objectDAO = null;
 		if(!elasticHosts.isEmpty()) {
 			
 			// Instantiate ElasticSearch DAO
-			ElasticDAOConfig daoConfig = new ElasticDAOConfig();
-			daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
-			daoConfig.setPort(elasticPort);
-			daoConfig.setClusterName(elasticCluster);
-			objectDAO = new ElasticS3ObjectDAO(daoConfig);
+			objectDAO = newElasticObjectDAO();
 		} else {
 			// Instantiate file DAO
 			objectDAO = new FileObjectDAO();
 		}
 		
+		// let the sink pace page fetching
+		objectDAO = pipelineObjectDAO(objectDAO);
+		
 		
 		ObjectBO objectBO = new ObjectBO(billingBO, hosts, objectDAO, threadPoolExecutor, futures, objectCount );
+		objectBO.setWatermarkStore(watermarkStore);
+		objectBO.setMemoryBudget(memoryBudget);
+		objectBO.setPageSizeController(pageSizeController);
+		objectBO.setS3HttpTransport(s3HttpTransport);
+		objectBO.setQueryPlanner(queryPlanner);
+		objectBO.setManifestDirectory(manifestDirectory);
+		objectBO.setChangeRateTracker(changeRateTracker);
 		
 		// Start collection
 		objectBO.collectObjectData(collectionTime);
@@ -457,6 +1027,123 @@ public class MetadataCollectorClient {
 		objectBO.shutdown();
 	}
 	
+	/**
+	 * Sends documents Elasticsearch refused during previous runs again
+	 */
+	private static void replayDeadLetters() {
+		
+		if( elasticHosts.isEmpty() ) {
+			System.err.println(ELASTIC_REPLAY_DEAD_LETTERS_CONFIG_ARGUMENT + " requires " + 
+							   ELASTIC_HOSTS_CONFIG_ARGUMENT + " to be specified");
+			System.exit(0);
+		}
+		
+		if( elasticHttp ) {
+			ElasticHttpS3ObjectDAO objectDAO = new ElasticHttpS3ObjectDAO(newElasticDAOConfig());
+			try {
+				objectDAO.replayDeadLetters(deadLetterFile);
+			} finally {
+				objectDAO.close();
+			}
+		} else {
+			ElasticS3ObjectDAO objectDAO = new ElasticS3ObjectDAO(newElasticDAOConfig());
+			try {
+				objectDAO.replayDeadLetters(deadLetterFile);
+			} finally {
+				objectDAO.close();
+			}
+		}
+		
+		BulkIndexer.logFailureSummary();
+	}
+	
+	/**
+	 * @return ElasticDAOConfig - Elasticsearch configuration from the command line
+	 */
+	private static ElasticDAOConfig newElasticDAOConfig() {
+		
+		ElasticDAOConfig daoConfig = new ElasticDAOConfig();
+		daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
+		if( elasticPort != null ) {
+			daoConfig.setPort(elasticPort);
+		} else {
+			daoConfig.setPort(elasticHttp ? ElasticHttpClient.DEFAULT_PORT : DEFAULT_ELASTIC_TRANSPORT_PORT);
+		}
+		daoConfig.setClusterName(elasticCluster);
+		daoConfig.setIndexChangesOnly(indexChangesOnly);
+		daoConfig.setDailyIndices(dailyIndices);
+		daoConfig.setNamespaceIndices(namespaceIndices);
+		daoConfig.setNamespaceIndexGroups(namespaceIndexGroups);
+		daoConfig.setBulkLoadMode(bulkLoadMode);
+		daoConfig.setBulkActions(elasticBulkActions);
+		daoConfig.setBulkSizeMb(elasticBulkSizeMb);
+		daoConfig.setBulkConcurrency(elasticBulkConcurrency);
+		daoConfig.setDeadLetterFile(deadLetterFile);
+		daoConfig.setDocumentEncoding(elasticEncoding);
+		daoConfig.setHttp(elasticHttp);
+		daoConfig.setHttpCompression(elasticHttpCompression);
+		daoConfig.setMappingProfile(elasticMappingProfile);
+		daoConfig.setKeyPathDepth(keyPathDepth);
+		daoConfig.setObjectCurrentState(objectCurrentState);
+		return daoConfig;
+	}
+	
+	/**
+	 * @return BillingDAO - Elasticsearch DAO using the transport protocol or the REST API
+	 */
+	private static BillingDAO newElasticBillingDAO() {
+		
+		ElasticDAOConfig daoConfig = newElasticDAOConfig();
+		
+		if( daoConfig.getHttp() ) {
+			return new ElasticHttpBillingDAO(daoConfig);
+		}
+		return new ElasticBillingDAO(daoConfig);
+	}
+	
+	/**
+	 * @return ObjectDAO - Elasticsearch DAO using the transport protocol or the REST API
+	 */
+	private static ObjectDAO newElasticObjectDAO() {
+		
+		ElasticDAOConfig daoConfig = newElasticDAOConfig();
+		
+		if( daoConfig.getHttp() ) {
+			return new ElasticHttpS3ObjectDAO(daoConfig);
+		}
+		return new ElasticS3ObjectDAO(daoConfig);
+	}
+	
+	/**
+	 * Routes object pages through the asynchronous DAO contract 
+	 * or the collection pipeline when enabled
+	 * 
+	 * @param objectDAO
+	 * @return ObjectDAO
+	 */
+	private static ObjectDAO pipelineObjectDAO(ObjectDAO objectDAO) {
+		
+		if(asyncSink) {
+			if(objectDAO instanceof AsyncObjectDAO) {
+				// the DAO writes in the background - no pipeline needed
+				asyncObjectDAO = new AsyncObjectDAOAdapter((AsyncObjectDAO)objectDAO);
+				return asyncObjectDAO;
+			}
+			logger.info("Datastore doesn't support asynchronous writes - " + ASYNC_SINK_CONFIG_ARGUMENT + " is ignored");
+		}
+		
+		if(!pipeline) {
+			return objectDAO;
+		}
+		
+		if(pipelineSinkWriters != null) {
+			pipelinedObjectDAO = new PipelinedObjectDAO(objectDAO, pipelineSinkWriters);
+		} else {
+			pipelinedObjectDAO = new PipelinedObjectDAO(objectDAO);
+		}
+		return pipelinedObjectDAO;
+	}
+	
 	/**
 	 * Collect only objects modified since a certain date
 	 * 
@@ -465,7 +1152,7 @@ public class MetadataCollectorClient {
 	 */
 	private static void collectObjectDataModifiedSinceDate(Date collectionTime, Integer numberOfDays) {
 		
-		List<String> hosts = Arrays.asList(ecsHosts.split(","));
+		List<String> hosts = getEcsHosts();
 		
 		
 		// instantiate billing BO
@@ -475,22 +1162,22 @@ public class MetadataCollectorClient {
 											 ecsMgmtPort,
 											 null,         // dao is not required in this case
 											 objectCount );  
+		billingBO.setPageSizeController(mgmtPageSizeController);
 		
 		// Instantiate DAO
 		ObjectDAO objectDAO = null;
 		if(!elasticHosts.isEmpty()) {
 			
 			// Instantiate ElasticSearch DAO
-			ElasticDAOConfig daoConfig = new ElasticDAOConfig();
-			daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
-			daoConfig.setPort(elasticPort);
-			daoConfig.setClusterName(elasticCluster);
-			objectDAO = new ElasticS3ObjectDAO(daoConfig);
+			objectDAO = newElasticObjectDAO();
 		} else {
 			// Instantiate file DAO
 			objectDAO = new FileObjectDAO();
 		}
 		
+		// let the sink pace page fetching
+		objectDAO = pipelineObjectDAO(objectDAO);
+		
 		
 		ObjectBO objectBO = new ObjectBO(billingBO, hosts, objectDAO, threadPoolExecutor, futures, objectCount );
 		
@@ -501,6 +1188,14 @@ public class MetadataCollectorClient {
 		String yesterdayDateTime = DATA_DATE_FORMAT.format( sinceDate );
 		String queryCriteria = "( " + ECS_OBJECT_LAST_MODIFIED_MD_KEY + " >= '" + yesterdayDateTime + "' )";
 		
+		// buckets without a watermark are collected from since date
+		objectBO.setWatermarkStore(watermarkStore);
+		objectBO.setMemoryBudget(memoryBudget);
+		objectBO.setPageSizeController(pageSizeController);
+		objectBO.setS3HttpTransport(s3HttpTransport);
+		objectBO.setModifiedSince(sinceDate);
+		objectBO.setChangeRateTracker(changeRateTracker);
+		
 		// Start collection
 		objectBO.collectObjectData(collectionTime, queryCriteria);
 		
@@ -514,7 +1209,7 @@ public class MetadataCollectorClient {
 	 */
 	private static void collectObjectVersionData(Date collectionTime) {
 		
-		List<String> hosts = Arrays.asList(ecsHosts.split(","));
+		List<String> hosts = getEcsHosts();
 		
 		
 		// instantiate billing BO
@@ -524,24 +1219,27 @@ public class MetadataCollectorClient {
 											 ecsMgmtPort,
 											 null,         // dao is not required in this case
 											 objectCount );
+		billingBO.setPageSizeController(mgmtPageSizeController);
 		
 		// Instantiate DAO
 		ObjectDAO objectDAO = null;
 		if(!elasticHosts.isEmpty()) {
 			
 			// Instantiate ElasticSearch DAO
-			ElasticDAOConfig daoConfig = new ElasticDAOConfig();
-			daoConfig.setHosts(Arrays.asList(elasticHosts.split(",")));
-			daoConfig.setPort(elasticPort);
-			daoConfig.setClusterName(elasticCluster);
-			objectDAO = new ElasticS3ObjectDAO(daoConfig);
+			objectDAO = newElasticObjectDAO();
 		} else {
 			// Instantiate file DAO
 			objectDAO = new FileObjectDAO();
 		}
 		
+		// let the sink pace page fetching
+		objectDAO = pipelineObjectDAO(objectDAO);
+		
 		
 		ObjectBO objectBO = new ObjectBO(billingBO, hosts, objectDAO, threadPoolExecutor, futures, objectCount );
+		objectBO.setMemoryBudget(memoryBudget);
+		objectBO.setPageSizeController(pageSizeController);
+		objectBO.setS3HttpTransport(s3HttpTransport);
 		
 		// Start collection
 		objectBO.collectObjectVersionData(collectionTime);
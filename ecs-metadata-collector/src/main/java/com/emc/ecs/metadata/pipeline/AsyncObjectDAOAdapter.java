@@ -0,0 +1,207 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.pipeline;
+
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.AsyncObjectDAO;
+import com.emc.ecs.metadata.dao.CompletionHandle;
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.ecs.metadata.dao.ObjectRecord;
+import com.emc.ecs.metadata.dao.ObjectRecords;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.ListVersionsResult;
+import com.emc.object.s3.bean.QueryObjectsResult;
+
+
+/**
+ * Lets collection tasks write to an asynchronous DAO.
+ * 
+ * Fetched pages are converted into normalized records and submitted 
+ * without waiting for the write, collection tasks only block when 
+ * the DAO has no capacity left. Completion handles are kept per 
+ * bucket until the bucket gets flushed.
+ */
+public class AsyncObjectDAOAdapter implements ObjectDAO, BucketPageSink {
+
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(AsyncObjectDAOAdapter.class);
+	
+	private final AsyncObjectDAO                      asyncObjectDAO;
+	private final Map<String, List<CompletionHandle>> bucketHandles = new HashMap<String, List<CompletionHandle>>();
+	
+	// page last submitted by each collection thread
+	private final ThreadLocal<CompletionHandle>       lastHandle    = new ThreadLocal<CompletionHandle>();
+	
+	//================================
+	// Constructor
+	//================================
+	public AsyncObjectDAOAdapter( AsyncObjectDAO asyncObjectDAO ) {
+		this.asyncObjectDAO = asyncObjectDAO;
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	@Override
+	public void insert( ListObjectsResult listObjectsResult, String namespace,
+						String bucketName, Date collectionTime ) {
+		submit( namespace, bucketName, 
+				ObjectRecords.fromListObjects(listObjectsResult, namespace, bucketName, collectionTime) );
+	}
+
+	@Override
+	public void insert( QueryObjectsResult queryObjectsResult, String namespace,
+						String bucketName, Date collectionTime ) {
+		submit( namespace, bucketName, 
+				ObjectRecords.fromQueryObjects(queryObjectsResult, namespace, bucketName, collectionTime) );
+	}
+
+	@Override
+	public void insert( ListVersionsResult listVersionsResult, String namespace,
+						String bucketName, Date collectionTime ) {
+		submit( namespace, bucketName, 
+				ObjectRecords.fromListVersions(listVersionsResult, namespace, bucketName, collectionTime) );
+	}
+
+	@Override
+	public void insert( List<ObjectChange> objectChanges, String namespace,
+						String bucketName, Date collectionTime ) {
+		submit( namespace, bucketName, 
+				ObjectRecords.fromObjectChanges(objectChanges, namespace, bucketName, collectionTime) );
+	}
+
+	@Override
+	public Long purgeOldData( ObjectDataType type, Date collectionTime ) {
+		return asyncObjectDAO.purgeOldData(type, collectionTime);
+	}
+	
+	@Override
+	public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime ) {
+		return asyncObjectDAO.markDeletedObjects(namespace, bucketName, collectionTime);
+	}
+	
+	@Override
+	public boolean flush( String namespace, String bucketName ) {
+		
+		String bucketKey = getBucketKey(namespace, bucketName);
+		List<CompletionHandle> handles;
+		
+		synchronized (bucketHandles) {
+			handles = bucketHandles.remove(bucketKey);
+		}
+		
+		if( handles == null ) {
+			return true;
+		}
+		
+		try {
+			return CompletionHandle.all(handles).await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for pages of bucket: " + bucketKey);
+		}
+	}
+	
+	@Override
+	public void onPageWritten( Runnable callback ) {
+		
+		CompletionHandle handle = lastHandle.get();
+		lastHandle.remove();
+		
+		if( handle == null ) {
+			callback.run();
+			return;
+		}
+		handle.onComplete(callback);
+	}
+	
+	/**
+	 * Writes remaining records and closes the asynchronous DAO
+	 */
+	public void close() {
+		asyncObjectDAO.close();
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private void submit( String namespace, String bucketName, List<ObjectRecord> objectRecords ) {
+		
+		if( objectRecords.isEmpty() ) {
+			return;
+		}
+		
+		final String bucketKey = getBucketKey(namespace, bucketName);
+		final CompletionHandle handle = asyncObjectDAO.submit(objectRecords);
+		lastHandle.set(handle);
+		
+		synchronized (bucketHandles) {
+			List<CompletionHandle> handles = bucketHandles.get(bucketKey);
+			if( handles == null ) {
+				handles = new ArrayList<CompletionHandle>();
+				bucketHandles.put(bucketKey, handles);
+			}
+			handles.add(handle);
+		}
+		
+		handle.onComplete(new Runnable() {
+			@Override
+			public void run() {
+				if( !handle.isSuccess() ) {
+					// failures are kept until the bucket gets flushed
+					logger.error("Error while writing page of bucket: " + bucketKey + " " + 
+								 handle.getFailure().getLocalizedMessage());
+					return;
+				}
+				synchronized (bucketHandles) {
+					List<CompletionHandle> handles = bucketHandles.get(bucketKey);
+					if( handles != null ) {
+						handles.remove(handle);
+						if( handles.isEmpty() ) {
+							bucketHandles.remove(bucketKey);
+						}
+					}
+				}
+			}
+		});
+	}
+	
+	private static String getBucketKey( String namespace, String bucketName ) {
+		return namespace + "/" + bucketName;
+	}
+}
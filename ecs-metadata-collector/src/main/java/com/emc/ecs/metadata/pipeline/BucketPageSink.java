@@ -0,0 +1,55 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.pipeline;
+
+
+/**
+ * Object DAO writing pages in the background.
+ * 
+ * Collection tasks flush the pages of a bucket before committing 
+ * per bucket state (watermarks, manifests).
+ */
+public interface BucketPageSink {
+
+	/**
+	 * Waits until all pages submitted for a bucket have been written
+	 * 
+	 * @param namespace
+	 * @param bucketName
+	 * @return boolean - true if all pages were written successfully
+	 */
+	public boolean flush( String namespace, String bucketName );
+	
+	/**
+	 * Calls the callback once the page last submitted by the calling 
+	 * thread has been written or failed, right away if the thread 
+	 * submitted no page since its previous call. 
+	 * The callback runs in the thread completing the page.
+	 * 
+	 * @param callback
+	 */
+	public void onPageWritten( Runnable callback );
+}
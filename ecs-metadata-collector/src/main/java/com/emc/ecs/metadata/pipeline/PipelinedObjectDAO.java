@@ -0,0 +1,399 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.pipeline;
+
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.AsyncObjectDAO;
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.ListVersionsResult;
+import com.emc.object.s3.bean.QueryObjectsResult;
+
+
+/**
+ * Decouples page fetching from page indexing.
+ * 
+ * Collection tasks hand fetched pages to this DAO which queues them 
+ * in a bounded channel drained by a small set of sink writers calling 
+ * the actual DAO. When the sink can't keep up the channel fills and 
+ * inserts block, so fetching is paced by the indexing rate instead 
+ * of by the size of the collection thread pool.
+ * 
+ * Pages are written asynchronously: collection tasks call flush() 
+ * before committing per bucket state (watermarks, manifests) to 
+ * make sure all pages of the bucket were stored.
+ */
+public class PipelinedObjectDAO implements ObjectDAO, BucketPageSink {
+
+	public static final int DEFAULT_SINK_WRITERS = 2;
+	
+	// pages waiting per writer - small to keep pages flowing rather than piling up
+	private static final int  PAGES_PER_WRITER = 2;
+	private static final long POLL_TIMEOUT_MS  = 1000L;
+	
+	
+	/**
+	 * Page waiting to be written to the sink
+	 */
+	private abstract static class PendingPage {
+		
+		private final String   bucketKey;
+		
+		// guarded by the page
+		private boolean        written   = false;
+		private List<Runnable> callbacks = new ArrayList<Runnable>();
+		
+		PendingPage( String namespace, String bucketName ) {
+			this.bucketKey = getBucketKey(namespace, bucketName);
+		}
+		
+		abstract void write();
+	}
+	
+	/**
+	 * Pages of a bucket not yet written
+	 */
+	private static class BucketProgress {
+		private int     pending = 0;
+		private boolean failed  = false;
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(PipelinedObjectDAO.class);
+	
+	private final ObjectDAO                   objectDAO;
+	private final BlockingQueue<PendingPage>  pages;
+	private final List<Thread>                sinkWriters    = new ArrayList<Thread>();
+	private final Map<String, BucketProgress> bucketProgress = new HashMap<String, BucketProgress>();
+	private final ThreadLocal<PendingPage>    lastPage       = new ThreadLocal<PendingPage>();
+	private volatile boolean                  closed         = false;
+	
+	// time fetchers waited on the sink and sink writers waited on fetchers
+	private final AtomicLong pagesWritten         = new AtomicLong(0L);
+	private final AtomicLong fetcherWaitMillis    = new AtomicLong(0L);
+	private final AtomicLong sinkWriterIdleMillis = new AtomicLong(0L);
+	
+	//================================
+	// Constructors
+	//================================
+	/**
+	 * Sizes the sink writers from the number of bulk requests an 
+	 * asynchronous DAO can have in flight, so each writer can keep 
+	 * a request going. Other DAOs get DEFAULT_SINK_WRITERS.
+	 * 
+	 * @param objectDAO - DAO pages are written to
+	 */
+	public PipelinedObjectDAO( ObjectDAO objectDAO ) {
+		this(objectDAO, getSinkWriterCount(objectDAO));
+	}
+	
+	/**
+	 * @param objectDAO - DAO pages are written to
+	 * @param sinkWriterCount - number of threads writing pages
+	 */
+	public PipelinedObjectDAO( ObjectDAO objectDAO, int sinkWriterCount ) {
+		
+		this.objectDAO = objectDAO;
+		this.pages     = new ArrayBlockingQueue<PendingPage>(sinkWriterCount * PAGES_PER_WRITER);
+		
+		for( int i = 0; i < sinkWriterCount; i++ ) {
+			Thread sinkWriter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writePages();
+				}
+			}, "sink-writer-" + i);
+			sinkWriter.setDaemon(true);
+			sinkWriter.start();
+			sinkWriters.add(sinkWriter);
+		}
+		
+		logger.info("Collection pipeline started with " + sinkWriterCount + " sink writers");
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	@Override
+	public void insert( final ListObjectsResult listObjectsResult, final String namespace,
+						final String bucketName, final Date collectionTime ) {
+		
+		submit(new PendingPage(namespace, bucketName) {
+			@Override
+			void write() {
+				objectDAO.insert(listObjectsResult, namespace, bucketName, collectionTime);
+			}
+		});
+	}
+
+	@Override
+	public void insert( final QueryObjectsResult queryObjectsResult, final String namespace,
+						final String bucketName, final Date collectionTime ) {
+		
+		submit(new PendingPage(namespace, bucketName) {
+			@Override
+			void write() {
+				objectDAO.insert(queryObjectsResult, namespace, bucketName, collectionTime);
+			}
+		});
+	}
+
+	@Override
+	public void insert( final ListVersionsResult listVersionsResult, final String namespace,
+						final String bucketName, final Date collectionTime ) {
+		
+		submit(new PendingPage(namespace, bucketName) {
+			@Override
+			void write() {
+				objectDAO.insert(listVersionsResult, namespace, bucketName, collectionTime);
+			}
+		});
+	}
+
+	@Override
+	public void insert( final List<ObjectChange> objectChanges, final String namespace,
+						final String bucketName, final Date collectionTime ) {
+		
+		submit(new PendingPage(namespace, bucketName) {
+			@Override
+			void write() {
+				objectDAO.insert(objectChanges, namespace, bucketName, collectionTime);
+			}
+		});
+	}
+
+	@Override
+	public Long purgeOldData( ObjectDataType type, Date collectionTime ) {
+		return objectDAO.purgeOldData(type, collectionTime);
+	}
+	
+	@Override
+	public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime ) {
+		return objectDAO.markDeletedObjects(namespace, bucketName, collectionTime);
+	}
+	
+	/**
+	 * Waits until all pages queued for a bucket have been written
+	 * 
+	 * @param namespace
+	 * @param bucketName
+	 * @return boolean - true if all pages were written successfully
+	 */
+	@Override
+	public boolean flush( String namespace, String bucketName ) {
+		
+		String bucketKey = getBucketKey(namespace, bucketName);
+		
+		synchronized (bucketProgress) {
+			BucketProgress progress = bucketProgress.get(bucketKey);
+			if( progress == null ) {
+				return true;
+			}
+			
+			try {
+				while( progress.pending > 0 ) {
+					bucketProgress.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for pages of bucket: " + bucketKey);
+			}
+			
+			bucketProgress.remove(bucketKey);
+			return !progress.failed;
+		}
+	}
+	
+	@Override
+	public void onPageWritten( Runnable callback ) {
+		
+		PendingPage pendingPage = lastPage.get();
+		lastPage.remove();
+		
+		if( pendingPage != null ) {
+			synchronized (pendingPage) {
+				if( !pendingPage.written ) {
+					pendingPage.callbacks.add(callback);
+					return;
+				}
+			}
+		}
+		callback.run();
+	}
+	
+	/**
+	 * Writes remaining pages and stops sink writers
+	 */
+	public void shutdown() {
+		
+		closed = true;
+		
+		for( Thread sinkWriter : sinkWriters ) {
+			try {
+				sinkWriter.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		
+		// a fetcher waiting on the sink means indexing is the slowest stage
+		logger.info("Collection pipeline wrote " + pagesWritten.get() + " pages - fetchers waited " + 
+					(fetcherWaitMillis.get() / 1000) + " s for the sink, sink writers waited " + 
+					(sinkWriterIdleMillis.get() / 1000) + " s for pages");
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private void submit( PendingPage pendingPage ) {
+		
+		synchronized (bucketProgress) {
+			BucketProgress progress = bucketProgress.get(pendingPage.bucketKey);
+			if( progress == null ) {
+				progress = new BucketProgress();
+				bucketProgress.put(pendingPage.bucketKey, progress);
+			}
+			progress.pending++;
+		}
+		lastPage.set(pendingPage);
+		
+		if( closed ) {
+			// no sink writer left
+			write(pendingPage);
+			return;
+		}
+		
+		long startTime = System.currentTimeMillis();
+		try {
+			// blocks while the sink is behind
+			pages.put(pendingPage);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			completed(pendingPage, false);
+			throw new RuntimeException("Interrupted while waiting for the sink");
+		}
+		fetcherWaitMillis.addAndGet(System.currentTimeMillis() - startTime);
+	}
+	
+	private void writePages() {
+		
+		while( true ) {
+			long startTime = System.currentTimeMillis();
+			PendingPage pendingPage;
+			
+			try {
+				pendingPage = pages.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			
+			if( pendingPage == null ) {
+				if( closed && pages.isEmpty() ) {
+					return;
+				}
+				sinkWriterIdleMillis.addAndGet(System.currentTimeMillis() - startTime);
+				continue;
+			}
+			
+			sinkWriterIdleMillis.addAndGet(System.currentTimeMillis() - startTime);
+			write(pendingPage);
+		}
+	}
+	
+	private void write( PendingPage pendingPage ) {
+		
+		boolean success = false;
+		try {
+			pendingPage.write();
+			pagesWritten.incrementAndGet();
+			success = true;
+		} catch (RuntimeException e) {
+			logger.error("Error while writing page of bucket: " + pendingPage.bucketKey + " " + e.getLocalizedMessage());
+		} finally {
+			completed(pendingPage, success);
+		}
+	}
+	
+	private void completed( PendingPage pendingPage, boolean success ) {
+		
+		List<Runnable> callbacks;
+		
+		synchronized (pendingPage) {
+			pendingPage.written = true;
+			callbacks = pendingPage.callbacks;
+			pendingPage.callbacks = null;
+		}
+		
+		// memory of the page is handed back before waking up flush()
+		for( Runnable callback : callbacks ) {
+			callback.run();
+		}
+		
+		synchronized (bucketProgress) {
+			BucketProgress progress = bucketProgress.get(pendingPage.bucketKey);
+			if( progress != null ) {
+				progress.pending--;
+				progress.failed |= !success;
+				
+				// failures are kept until the bucket gets flushed
+				if( progress.pending == 0 && !progress.failed ) {
+					bucketProgress.remove(pendingPage.bucketKey);
+				}
+			}
+			bucketProgress.notifyAll();
+		}
+	}
+	
+	private static int getSinkWriterCount( ObjectDAO objectDAO ) {
+		
+		if( objectDAO instanceof AsyncObjectDAO ) {
+			// nothing is in flight yet so all the capacity is available
+			return Math.max(1, ((AsyncObjectDAO)objectDAO).getAvailableCapacity());
+		}
+		return DEFAULT_SINK_WRITERS;
+	}
+	
+	private static String getBucketKey( String namespace, String bucketName ) {
+		return namespace + "/" + bucketName;
+	}
+}
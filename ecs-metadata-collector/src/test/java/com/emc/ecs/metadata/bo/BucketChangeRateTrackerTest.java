@@ -0,0 +1,92 @@
+package com.emc.ecs.metadata.bo;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Assert;
+
+import com.emc.ecs.management.entity.BucketBillingInfo;
+
+public class BucketChangeRateTrackerTest {
+	
+	private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+	
+	// 2016-10-17T00:00:00Z
+	private static final long START = 1476662400000L;
+	
+	private File stateFile;
+	
+	
+	@Before
+	public void setUp() throws Exception {
+		stateFile = File.createTempFile("change-rates", ".properties");
+		stateFile.delete();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		stateFile.delete();
+	}
+	
+	@Test
+	public void testUnchangedBucketSkipped() throws Exception {
+		
+		BucketChangeRateTracker tracker = new BucketChangeRateTracker(stateFile.getPath(), 24);
+		
+		tracker.observeBilling("ns1", billing("bucket", 100L, 1000L), START);
+		Assert.assertTrue( "bucket never collected not due", tracker.isDue("ns1", "bucket", START) );
+		
+		tracker.recordVisit("ns1", "bucket", -1L, START);
+		tracker.observeBilling("ns1", billing("bucket", 100L, 1000L), START + HOUR_MS);
+		
+		Assert.assertFalse( "unchanged bucket due", tracker.isDue("ns1", "bucket", START + HOUR_MS) );
+		// maximum staleness
+		Assert.assertTrue( "stale bucket not due", tracker.isDue("ns1", "bucket", START + 24 * HOUR_MS) );
+	}
+	
+	@Test
+	public void testBillingChangeMakesBucketDue() throws Exception {
+		
+		BucketChangeRateTracker tracker = new BucketChangeRateTracker(stateFile.getPath(), 24);
+		
+		tracker.observeBilling("ns1", billing("bucket", 100L, 1000L), START);
+		tracker.recordVisit("ns1", "bucket", -1L, START);
+		
+		// same object count but a different size
+		tracker.observeBilling("ns1", billing("bucket", 100L, 2000L), START + HOUR_MS);
+		
+		Assert.assertTrue( "changed bucket not due", tracker.isDue("ns1", "bucket", START + HOUR_MS) );
+	}
+	
+	@Test
+	public void testListingRate() throws Exception {
+		
+		BucketChangeRateTracker tracker = new BucketChangeRateTracker(stateFile.getPath(), 24);
+		
+		tracker.recordVisit("ns1", "bucket", -1L, START);
+		// 4 changes in 2 hours, half weighted: 1 change per hour expected
+		tracker.recordVisit("ns1", "bucket", 4L, START + 2 * HOUR_MS);
+		
+		Assert.assertFalse( "bucket due before a change is expected", tracker.isDue("ns1", "bucket", START + 2 * HOUR_MS + HOUR_MS / 2) );
+		Assert.assertTrue( "bucket not due once a change is expected", tracker.isDue("ns1", "bucket", START + 3 * HOUR_MS) );
+		
+		tracker.save();
+		
+		BucketChangeRateTracker loadedTracker = new BucketChangeRateTracker(stateFile.getPath(), 24);
+		Assert.assertFalse( "saved rate is not matching", loadedTracker.isDue("ns1", "bucket", START + 2 * HOUR_MS + HOUR_MS / 2) );
+		Assert.assertTrue( "saved rate is not matching", loadedTracker.isDue("ns1", "bucket", START + 3 * HOUR_MS) );
+		Assert.assertTrue( "unknown bucket not due", loadedTracker.isDue("ns1", "bucket2", START + 3 * HOUR_MS) );
+	}
+	
+	private static BucketBillingInfo billing( String bucket, Long objects, Long size ) {
+		
+		BucketBillingInfo billingInfo = new BucketBillingInfo();
+		billingInfo.setName(bucket);
+		billingInfo.setTotalObjects(objects);
+		billingInfo.setTotalSize(size);
+		return billingInfo;
+	}
+}
@@ -0,0 +1,184 @@
+package com.emc.ecs.metadata.bo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.Assert;
+import org.junit.rules.TemporaryFolder;
+
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+
+public class BucketManifestTest {
+
+	// 8 records per segment so small manifests span several segments
+	private static final int SEGMENT_SHIFT = 3;
+	private static final int OBJECT_COUNT  = 50;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	
+	@Test
+	public void testDiffAcrossSegments() throws Exception {
+		
+		File manifestFile = folder.newFile("bucket.manifest");
+		File keysFile     = folder.newFile("bucket.keys");
+		
+		BucketManifestWriter writer = new BucketManifestWriter(manifestFile, keysFile, SEGMENT_SHIFT);
+		for( int i = 0; i < OBJECT_COUNT; i++ ) {
+			append(writer, "dir/key-" + i, "etag-" + i, i, 1000L + i);
+		}
+		writer.commit();
+		
+		Set<String> removed = new HashSet<String>(Arrays.asList("dir/key-3", "dir/key-17", "dir/key-40"));
+		
+		Set<String> added    = new TreeSet<String>();
+		Set<String> modified = new TreeSet<String>();
+		
+		BucketManifest manifest = BucketManifest.open(manifestFile, keysFile, SEGMENT_SHIFT);
+		Assert.assertNotNull( "manifest was not opened", manifest );
+		try {
+			Assert.assertEquals( "size is not matching", OBJECT_COUNT, manifest.size() );
+			
+			writer = new BucketManifestWriter(manifestFile, keysFile, SEGMENT_SHIFT);
+			
+			for( int i = 0; i < OBJECT_COUNT; i++ ) {
+				String key = "dir/key-" + i;
+				if( removed.contains(key) ) {
+					continue;
+				}
+				String eTag         = (i == 8)  ? "etag-changed" : "etag-" + i;
+				long   size         = (i == 25) ? 1234L : i;
+				long   lastModified = (i == 31) ? 5000L : 1000L + i;
+				
+				diff(manifest, writer, key, eTag, size, lastModified, added, modified);
+			}
+			diff(manifest, writer, "dir/new-1", "etag-new-1", 1L, 6000L, added, modified);
+			diff(manifest, writer, "dir/new-2", "etag-new-2", 2L, 6000L, added, modified);
+			
+			Assert.assertEquals( "added keys are not matching", "[dir/new-1, dir/new-2]", added.toString() );
+			Assert.assertEquals( "modified keys are not matching", "[dir/key-25, dir/key-31, dir/key-8]", modified.toString() );
+			Assert.assertEquals( "deleted keys are not matching", "[dir/key-17, dir/key-3, dir/key-40]", unmatched(manifest).toString() );
+		} finally {
+			manifest.close();
+		}
+		writer.commit();
+		
+		// listing again without changes
+		manifest = BucketManifest.open(manifestFile, keysFile, SEGMENT_SHIFT);
+		try {
+			Assert.assertEquals( "size is not matching", OBJECT_COUNT - removed.size() + 2, manifest.size() );
+			
+			for( int i = 0; i < OBJECT_COUNT; i++ ) {
+				String key = "dir/key-" + i;
+				if( removed.contains(key) ) {
+					continue;
+				}
+				String eTag         = (i == 8)  ? "etag-changed" : "etag-" + i;
+				long   size         = (i == 25) ? 1234L : i;
+				long   lastModified = (i == 31) ? 5000L : 1000L + i;
+				
+				Assert.assertNull( "object is not unchanged " + key, match(manifest, key, eTag, size, lastModified) );
+			}
+			Assert.assertNull( "object is not unchanged", match(manifest, "dir/new-1", "etag-new-1", 1L, 6000L) );
+			Assert.assertNull( "object is not unchanged", match(manifest, "dir/new-2", "etag-new-2", 2L, 6000L) );
+			Assert.assertTrue( "objects were deleted", unmatched(manifest).isEmpty() );
+		} finally {
+			manifest.close();
+		}
+	}
+	
+	@Test
+	public void testHashCollisions() throws Exception {
+		
+		File manifestFile = folder.newFile("bucket.manifest");
+		File keysFile     = folder.newFile("bucket.keys");
+		
+		// 2 records per segment so colliding records span segments
+		BucketManifestWriter writer = new BucketManifestWriter(manifestFile, keysFile, 1);
+		for( int i = 0; i < 10; i++ ) {
+			writer.append("other-" + i, BucketManifest.hash("other-" + i), 0L, 0L, 0L);
+		}
+		writer.append("a", 42L, 1L, 0L, 0L);
+		writer.append("b", 42L, 2L, 0L, 0L);
+		writer.append("c", 42L, 3L, 0L, 0L);
+		writer.commit();
+		
+		BucketManifest manifest = BucketManifest.open(manifestFile, keysFile, 1);
+		try {
+			for( String key : new String[] { "a", "b", "c" } ) {
+				int index = manifest.find(42L, key);
+				Assert.assertTrue( "key was not found " + key, index >= 0 );
+				Assert.assertEquals( "key is not matching", key, manifest.getKey(index) );
+			}
+			Assert.assertEquals( "key was found", -1, manifest.find(42L, "d") );
+			
+			Assert.assertEquals( "change is not matching", ChangeType.modified, manifest.match(42L, "b", 5L, 0L, 0L) );
+			Assert.assertEquals( "change is not matching", ChangeType.added, manifest.match(42L, "d", 2L, 0L, 0L) );
+			Assert.assertTrue( "colliding keys were not kept", unmatched(manifest).containsAll(Arrays.asList("a", "c")) );
+			Assert.assertFalse( "matched key was reported", unmatched(manifest).contains("b") );
+		} finally {
+			manifest.close();
+		}
+	}
+	
+	@Test
+	public void testIncompleteManifest() throws Exception {
+		
+		File manifestFile = folder.newFile("bucket.manifest");
+		File keysFile     = folder.newFile("bucket.keys");
+		
+		BucketManifestWriter writer = new BucketManifestWriter(manifestFile, keysFile, SEGMENT_SHIFT);
+		append(writer, "key", "etag", 1L, 1L);
+		writer.commit();
+		
+		// key file of another run
+		FileOutputStream keysStream = new FileOutputStream(keysFile, true);
+		try {
+			keysStream.write(new byte[] { 0, 0, 0, 1, 'x' });
+		} finally {
+			keysStream.close();
+		}
+		
+		Assert.assertNull( "incomplete manifest was opened", BucketManifest.open(manifestFile, keysFile, SEGMENT_SHIFT) );
+		Assert.assertNull( "missing manifest was opened", 
+						   BucketManifest.open(new File(folder.getRoot(), "missing"), keysFile, SEGMENT_SHIFT) );
+	}
+	
+	private static void append( BucketManifestWriter writer, String key, String eTag, long size, long lastModified ) {
+		writer.append(key, BucketManifest.hash(key), BucketManifest.hash(eTag), size, lastModified);
+	}
+	
+	private static ChangeType match( BucketManifest manifest, String key, String eTag, long size, long lastModified ) {
+		return manifest.match(BucketManifest.hash(key), key, BucketManifest.hash(eTag), size, lastModified);
+	}
+	
+	private static void diff( BucketManifest manifest, BucketManifestWriter writer, 
+							  String key, String eTag, long size, long lastModified,
+							  Set<String> added, Set<String> modified ) {
+		
+		append(writer, key, eTag, size, lastModified);
+		
+		ChangeType changeType = match(manifest, key, eTag, size, lastModified);
+		if( changeType == ChangeType.added ) {
+			added.add(key);
+		} else if( changeType == ChangeType.modified ) {
+			modified.add(key);
+		}
+	}
+	
+	private static Set<String> unmatched( BucketManifest manifest ) {
+		
+		Set<String> keys = new TreeSet<String>();
+		for( int index = manifest.nextUnmatched(0); index >= 0; index = manifest.nextUnmatched(index + 1) ) {
+			keys.add(manifest.getKey(index));
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,91 @@
+package com.emc.ecs.metadata.bo;
+
+import java.io.File;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Assert;
+
+public class BucketWatermarkStoreTest {
+	
+	private static final long OVERLAP_MS = 5 * 60 * 1000L;
+	
+	// 2016-10-17T00:00:00Z
+	private static final long MODIFIED = 1476662400000L;
+	
+	private File watermarkFile;
+	
+	
+	@Before
+	public void setUp() throws Exception {
+		watermarkFile = File.createTempFile("watermarks", ".properties");
+		watermarkFile.delete();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		watermarkFile.delete();
+	}
+	
+	@Test
+	public void testCommittedMarksSaved() throws Exception {
+		
+		BucketWatermarkStore store = new BucketWatermarkStore(watermarkFile.getPath());
+		
+		Assert.assertNull( "bucket never collected has a mark", store.getModifiedSince("ns1", "bucket") );
+		
+		store.observe("ns1", "bucket", new Date(MODIFIED));
+		store.observe("ns1", "bucket", new Date(MODIFIED - 1000L));
+		store.observe("ns1", "bucket", null);
+		
+		Assert.assertNull( "mark visible before commit", store.getModifiedSince("ns1", "bucket") );
+		
+		store.commit("ns1", "bucket");
+		
+		Assert.assertEquals( "mark is not matching", new Date(MODIFIED - OVERLAP_MS), store.getModifiedSince("ns1", "bucket") );
+		
+		store.save();
+		
+		BucketWatermarkStore loadedStore = new BucketWatermarkStore(watermarkFile.getPath());
+		Assert.assertEquals( "saved mark is not matching", new Date(MODIFIED - OVERLAP_MS), loadedStore.getModifiedSince("ns1", "bucket") );
+		Assert.assertNull( "other namespace has a mark", loadedStore.getModifiedSince("ns2", "bucket") );
+	}
+	
+	@Test
+	public void testFailedCollectionKeepsMark() throws Exception {
+		
+		BucketWatermarkStore store = new BucketWatermarkStore(watermarkFile.getPath());
+		
+		store.observe("ns1", "bucket", new Date(MODIFIED));
+		store.commit("ns1", "bucket");
+		
+		store.observe("ns1", "bucket", new Date(MODIFIED + 1000L));
+		store.discard("ns1", "bucket");
+		store.commit("ns1", "bucket");
+		
+		Assert.assertEquals( "discarded mark committed", new Date(MODIFIED - OVERLAP_MS), store.getModifiedSince("ns1", "bucket") );
+		
+		// marks never go back
+		store.observe("ns1", "bucket", new Date(MODIFIED - 1000L));
+		store.commit("ns1", "bucket");
+		
+		Assert.assertEquals( "older mark committed", new Date(MODIFIED - OVERLAP_MS), store.getModifiedSince("ns1", "bucket") );
+	}
+	
+	@Test
+	public void testMarkCappedAtStartTime() throws Exception {
+		
+		BucketWatermarkStore store = new BucketWatermarkStore(watermarkFile.getPath());
+		
+		long startTime = System.currentTimeMillis();
+		store.start("ns1", "bucket");
+		// modified while the bucket was listed
+		store.observe("ns1", "bucket", new Date(startTime + 60000L));
+		store.commit("ns1", "bucket");
+		
+		long mark = store.getModifiedSince("ns1", "bucket").getTime() + OVERLAP_MS;
+		Assert.assertTrue( "mark not capped at start time: " + mark, mark >= startTime && mark < startTime + 60000L );
+	}
+}
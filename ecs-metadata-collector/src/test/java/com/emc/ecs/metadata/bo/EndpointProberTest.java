@@ -0,0 +1,47 @@
+package com.emc.ecs.metadata.bo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+public class EndpointProberTest {
+	
+	@Test
+	public void testMedianIgnoresOutliers() throws Exception {
+		
+		// round trips in ns
+		Assert.assertEquals( "median is not matching", Long.valueOf(2000L), 
+							 EndpointProber.median(Arrays.asList(2100000L, 900000000L, 1900000L, 2000000L, 1000L)) );
+		
+		// failed samples count as the slowest
+		Assert.assertEquals( "median with failures is not matching", Long.valueOf(3000L), 
+							 EndpointProber.median(Arrays.asList(null, 1000000L, 3000000L, null, 2000000L)) );
+	}
+	
+	@Test
+	public void testMostlyFailedEndpointUnhealthy() throws Exception {
+		
+		Long median = EndpointProber.median(Arrays.asList(null, 1000000L, null, null, 2000000L));
+		
+		Assert.assertNull( "median is not matching", median );
+		Assert.assertFalse( "host is healthy", new EndpointProbeResult("host1", 100L, median).isHealthy() );
+	}
+	
+	@Test
+	public void testSlowHostsKept() throws Exception {
+		
+		List<EndpointProbeResult> ranking = new ArrayList<EndpointProbeResult>();
+		ranking.add(new EndpointProbeResult("slow", 5000L, 90000L));
+		ranking.add(new EndpointProbeResult("down", null, 400L));
+		ranking.add(new EndpointProbeResult("fast", 300L, 400L));
+		ranking.add(new EndpointProbeResult("medium", 300L, 1200L));
+		Collections.sort(ranking);
+		
+		Assert.assertEquals( "hosts are not matching", Arrays.asList("fast", "medium", "slow"), 
+							 EndpointProber.getHealthyHosts(ranking) );
+	}
+}
@@ -0,0 +1,62 @@
+package com.emc.ecs.metadata.bo;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+public class MemoryBudgetTest {
+	
+	@Test
+	public void testAcquireWaitsForRelease() throws Exception {
+		
+		final MemoryBudget budget = new MemoryBudget(1000L);
+		
+		long first = budget.acquire(600L);
+		Assert.assertEquals( "reserved size is not matching", 600L, first );
+		
+		final AtomicLong     second   = new AtomicLong(-1L);
+		final CountDownLatch acquired = new CountDownLatch(1);
+		
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					second.set(budget.acquire(600L));
+					acquired.countDown();
+				} catch (InterruptedException e) {
+					// test failed
+				}
+			}
+		};
+		thread.start();
+		
+		Assert.assertFalse( "budget exceeded", acquired.await(200, TimeUnit.MILLISECONDS) );
+		Assert.assertEquals( "reserved size is not matching", 600L, budget.getReserved() );
+		
+		budget.release(first);
+		
+		Assert.assertTrue( "waiting reservation not granted", acquired.await(10, TimeUnit.SECONDS) );
+		Assert.assertEquals( "reserved size is not matching", 600L, budget.getReserved() );
+		
+		budget.release(second.get());
+		Assert.assertEquals( "budget not released", 0L, budget.getReserved() );
+	}
+	
+	@Test
+	public void testLargeReservationCapped() throws Exception {
+		
+		MemoryBudget budget = new MemoryBudget(1000L);
+		
+		long granted = budget.acquire(5000L);
+		
+		Assert.assertEquals( "reservation not capped", 1000L, granted );
+		
+		budget.release(granted);
+		Assert.assertEquals( "budget not released", 0L, budget.getReserved() );
+		Assert.assertEquals( "page estimate is not matching",
+							 1000L * MemoryBudget.ESTIMATED_BYTES_PER_OBJECT, MemoryBudget.estimatePage(1000) );
+	}
+}
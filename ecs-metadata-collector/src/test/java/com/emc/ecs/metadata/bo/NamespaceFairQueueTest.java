@@ -0,0 +1,149 @@
+package com.emc.ecs.metadata.bo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+public class NamespaceFairQueueTest {
+
+	/**
+	 * Task recording the namespace it was queued for
+	 */
+	private static class Task implements Runnable, NamespaceTask {
+		
+		private final String namespace;
+		private final String name;
+		
+		Task( String namespace, String name ) {
+			this.namespace = namespace;
+			this.name      = name;
+		}
+		
+		@Override
+		public String getNamespace() {
+			return namespace;
+		}
+		
+		@Override
+		public void run() {
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	/**
+	 * Task which isn't namespace aware
+	 */
+	private static class PlainTask implements Runnable {
+		
+		private final String name;
+		
+		PlainTask( String name ) {
+			this.name = name;
+		}
+		
+		@Override
+		public void run() {
+		}
+		
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+	
+	
+	@Test
+	public void testWeightedRoundRobin() throws Exception {
+		
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		weights.put("ns1", 2);
+		
+		NamespaceFairQueue queue = new NamespaceFairQueue(weights);
+		
+		for( int i = 1; i <= 5; i++ ) {
+			queue.offer(new Task("ns1", "a" + i));
+		}
+		for( int i = 1; i <= 3; i++ ) {
+			queue.offer(new Task("ns2", "b" + i));
+		}
+		
+		Assert.assertEquals( "size is not matching", 8, queue.size() );
+		Assert.assertEquals( "order is not matching", "[a1, a2, b1, a3, a4, b2, a5, b3]", drain(queue) );
+		Assert.assertNull( "queue is not empty", queue.poll() );
+	}
+	
+	@Test
+	public void testDefaultLane() throws Exception {
+		
+		NamespaceFairQueue queue = new NamespaceFairQueue(null);
+		
+		queue.offer(new PlainTask("p1"));
+		queue.offer(new PlainTask("p2"));
+		queue.offer(new Task(null, "p3"));
+		queue.offer(new Task("ns1", "a1"));
+		queue.offer(new Task("ns1", "a2"));
+		
+		// tasks without namespace share one lane of weight 1
+		Assert.assertEquals( "order is not matching", "[p1, a1, p2, a2, p3]", drain(queue) );
+	}
+	
+	@Test
+	public void testLaneAddedDuringTurn() throws Exception {
+		
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		weights.put("ns1", 3);
+		
+		NamespaceFairQueue queue = new NamespaceFairQueue(weights);
+		
+		for( int i = 1; i <= 4; i++ ) {
+			queue.offer(new Task("ns1", "a" + i));
+		}
+		
+		Assert.assertEquals( "task is not matching", "a1", queue.poll().toString() );
+		
+		// new lane waits for the end of the current turn
+		queue.offer(new Task("ns2", "b1"));
+		
+		Assert.assertEquals( "order is not matching", "[a2, a3, b1, a4]", drain(queue) );
+	}
+	
+	@Test
+	public void testRemoveEndsTurn() throws Exception {
+		
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		weights.put("ns1", 3);
+		weights.put("ns2", 2);
+		
+		NamespaceFairQueue queue = new NamespaceFairQueue(weights);
+		
+		Task a2 = new Task("ns1", "a2");
+		queue.offer(new Task("ns1", "a1"));
+		queue.offer(a2);
+		queue.offer(new Task("ns2", "b1"));
+		queue.offer(new Task("ns2", "b2"));
+		queue.offer(new Task("ns2", "b3"));
+		
+		Assert.assertEquals( "task is not matching", "a1", queue.poll().toString() );
+		Assert.assertTrue( "task was not removed", queue.remove(a2) );
+		Assert.assertFalse( "task was removed twice", queue.remove(a2) );
+		
+		// ns2 gets a full turn, its credit isn't left over from ns1
+		queue.offer(new Task("ns1", "a3"));
+		Assert.assertEquals( "order is not matching", "[b1, b2, a3, b3]", drain(queue) );
+	}
+	
+	private static String drain( NamespaceFairQueue queue ) {
+		
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		queue.drainTo(tasks);
+		return tasks.toString();
+	}
+}
@@ -0,0 +1,167 @@
+package com.emc.ecs.metadata.bo;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+public class PageSizeControllerTest {
+
+	private static final int  MIN_PAGE_SIZE      = 100;
+	private static final int  MAX_PAGE_SIZE      = 1000;
+	private static final long TARGET_PAGE_MILLIS = 1000L;
+	
+	/**
+	 * Page request timing out above a page size
+	 */
+	private static class TimingOutRequest implements PageSizeController.PageRequest<Integer> {
+		
+		private final int           maxPageSize;
+		private final List<Integer> requestedSizes = new ArrayList<Integer>();
+		
+		TimingOutRequest( int maxPageSize ) {
+			this.maxPageSize = maxPageSize;
+		}
+		
+		@Override
+		public Integer fetch( int pageSize ) throws Exception {
+			requestedSizes.add(pageSize);
+			if( pageSize > maxPageSize ) {
+				throw new RuntimeException(new SocketTimeoutException("Read timed out"));
+			}
+			return pageSize;
+		}
+		
+		@Override
+		public int getCount( Integer page ) {
+			return page;
+		}
+	}
+	
+	
+	@Test
+	public void testSlowPagesDecrease() throws Exception {
+		
+		PageSizeController controller = new PageSizeController(MIN_PAGE_SIZE, MAX_PAGE_SIZE, TARGET_PAGE_MILLIS);
+		
+		Assert.assertEquals( "initial size is not matching", MAX_PAGE_SIZE, controller.getPageSize("a") );
+		
+		// proportional to the overshoot
+		controller.recordPage("a", 1000, 1000, 2000L);
+		Assert.assertEquals( "size is not matching", 500, controller.getPageSize("a") );
+		
+		controller.recordPage("a", 500, 500, 1250L);
+		Assert.assertEquals( "size is not matching", 400, controller.getPageSize("a") );
+		
+		// halved at most
+		controller.recordPage("a", 400, 400, 10000L);
+		Assert.assertEquals( "size is not matching", 200, controller.getPageSize("a") );
+		
+		// never below the minimum
+		controller.recordPage("a", 200, 200, 10000L);
+		controller.recordPage("a", 100, 100, 10000L);
+		Assert.assertEquals( "size is not matching", MIN_PAGE_SIZE, controller.getPageSize("a") );
+		
+		// other listings are not affected
+		Assert.assertEquals( "size is not matching", MAX_PAGE_SIZE, controller.getPageSize("b") );
+	}
+	
+	@Test
+	public void testFastFullPagesIncrease() throws Exception {
+		
+		PageSizeController controller = new PageSizeController(MIN_PAGE_SIZE, MAX_PAGE_SIZE, TARGET_PAGE_MILLIS);
+		
+		controller.recordPage("a", 1000, 1000, 100000L);
+		Assert.assertEquals( "size is not matching", 500, controller.getPageSize("a") );
+		
+		// partial pages and pages above half the target time keep the size
+		controller.recordPage("a", 500, 20, 10L);
+		controller.recordPage("a", 500, 500, 600L);
+		Assert.assertEquals( "size is not matching", 500, controller.getPageSize("a") );
+		
+		// one step is a tenth of the range
+		controller.recordPage("a", 500, 500, 10L);
+		Assert.assertEquals( "size is not matching", 590, controller.getPageSize("a") );
+		
+		for( int i = 0; i < 10; i++ ) {
+			int pageSize = controller.getPageSize("a");
+			controller.recordPage("a", pageSize, pageSize, 10L);
+		}
+		Assert.assertEquals( "size is not matching", MAX_PAGE_SIZE, controller.getPageSize("a") );
+	}
+	
+	@Test
+	public void testConcurrentPagesKeepSmallestSize() throws Exception {
+		
+		PageSizeController controller = new PageSizeController(MIN_PAGE_SIZE, MAX_PAGE_SIZE, TARGET_PAGE_MILLIS);
+		
+		controller.recordPage("a", 1000, 1000, 5000L);
+		Assert.assertEquals( "size is not matching", 500, controller.getPageSize("a") );
+		
+		// slow page requested before the decrease doesn't grow the size back
+		controller.recordPage("a", 1000, 1000, 1250L);
+		Assert.assertEquals( "size is not matching", 500, controller.getPageSize("a") );
+		
+		// fast page requested before the decrease doesn't grow it either
+		controller.recordPage("a", 1000, 1000, 10L);
+		Assert.assertEquals( "size is not matching", 500, controller.getPageSize("a") );
+	}
+	
+	@Test
+	public void testTimeoutRetriesSmallerPage() throws Exception {
+		
+		PageSizeController controller = new PageSizeController(MIN_PAGE_SIZE, MAX_PAGE_SIZE, TARGET_PAGE_MILLIS);
+		TimingOutRequest   request    = new TimingOutRequest(300);
+		
+		Assert.assertEquals( "page is not matching", Integer.valueOf(250), controller.fetch("a", request) );
+		Assert.assertEquals( "requested sizes are not matching", "[1000, 500, 250]", request.requestedSizes.toString() );
+		
+		// fast full page
+		Assert.assertEquals( "size is not matching", 340, controller.getPageSize("a") );
+	}
+	
+	@Test
+	public void testTimeoutAtMinimumFails() throws Exception {
+		
+		PageSizeController controller = new PageSizeController(MIN_PAGE_SIZE, MAX_PAGE_SIZE, TARGET_PAGE_MILLIS);
+		TimingOutRequest   request    = new TimingOutRequest(50);
+		
+		try {
+			controller.fetch("a", request);
+			Assert.fail("timeout was not reported");
+		} catch (RuntimeException e) {
+			Assert.assertTrue( "cause is not matching", e.getCause() instanceof SocketTimeoutException );
+		}
+		Assert.assertEquals( "requested sizes are not matching", "[1000, 500, 250, 125, 100]", request.requestedSizes.toString() );
+	}
+	
+	@Test
+	public void testOtherFailuresAreNotRetried() throws Exception {
+		
+		PageSizeController controller = new PageSizeController(MIN_PAGE_SIZE, MAX_PAGE_SIZE, TARGET_PAGE_MILLIS);
+		
+		final List<Integer> requestedSizes = new ArrayList<Integer>();
+		
+		try {
+			controller.fetch("a", new PageSizeController.PageRequest<Integer>() {
+				@Override
+				public Integer fetch( int pageSize ) throws Exception {
+					requestedSizes.add(pageSize);
+					throw new IOException("Connection reset");
+				}
+				@Override
+				public int getCount( Integer page ) {
+					return page;
+				}
+			});
+			Assert.fail("failure was not reported");
+		} catch (IOException e) {
+			Assert.assertEquals( "message is not matching", "Connection reset", e.getMessage() );
+		}
+		Assert.assertEquals( "requested sizes are not matching", "[1000]", requestedSizes.toString() );
+		Assert.assertEquals( "size is not matching", MAX_PAGE_SIZE, controller.getPageSize("a") );
+	}
+}
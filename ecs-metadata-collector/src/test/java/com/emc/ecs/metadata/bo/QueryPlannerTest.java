@@ -0,0 +1,210 @@
+package com.emc.ecs.metadata.bo;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import com.emc.ecs.management.entity.Metadata;
+import com.emc.ecs.management.entity.ObjectBucket;
+
+public class QueryPlannerTest {
+
+	private static final Pattern BELOW   = Pattern.compile("\\( (\\w+) < ([^ ]+) \\)");
+	private static final Pattern BETWEEN = Pattern.compile("\\( (\\w+) >= ([^ ]+) and \\1 < ([^ ]+) \\)");
+	private static final Pattern ABOVE   = Pattern.compile("\\( (\\w+) >= ([^ ]+) \\)");
+	
+	private static final long DAY_MS = 24L * 3600L * 1000L;
+	
+	
+	@Test
+	public void testTimeRanges() throws Exception {
+		
+		SimpleDateFormat dateFormat = QueryObjectsCollection.newDateFormat();
+		
+		Date creationTime   = dateFormat.parse("2016-01-01T00:00:00Z");
+		Date collectionTime = dateFormat.parse("2016-10-17T12:00:00Z");
+		
+		for( int partitionCount = 1; partitionCount <= 8; partitionCount++ ) {
+			
+			QueryPlanner.QueryPlan plan = new QueryPlanner(partitionCount).plan( bucket(creationTime, "LastModified", "Size"), 
+																				  collectionTime );
+			
+			Assert.assertEquals( "partition key is not matching", "LastModified", plan.getPartitionKey() );
+			Assert.assertEquals( "number of ranges is not matching", partitionCount, plan.getCriteria().size() );
+			
+			List<String> values = new ArrayList<String>();
+			for( long time = creationTime.getTime() - 400L * DAY_MS; time < collectionTime.getTime() + 400L * DAY_MS; time += DAY_MS / 3 ) {
+				values.add( "'" + dateFormat.format(new Date(time)) + "'" );
+			}
+			values.add("'1970-01-01T00:00:00Z'");
+			values.addAll(bounds(plan.getCriteria()));
+			
+			assertDisjointAndCovering(plan.getCriteria(), values);
+		}
+	}
+	
+	@Test
+	public void testSmallTimeDomain() throws Exception {
+		
+		SimpleDateFormat dateFormat = QueryObjectsCollection.newDateFormat();
+		
+		Date creationTime   = new Date(dateFormat.parse("2016-10-17T12:00:00Z").getTime() + 100L);
+		Date collectionTime = new Date(creationTime.getTime() + 1500L);
+		
+		QueryPlanner.QueryPlan plan = new QueryPlanner(8).plan(bucket(creationTime, "CreateTime"), collectionTime);
+		
+		// bounds rounded to the second are merged
+		Assert.assertEquals( "partition key is not matching", "CreateTime", plan.getPartitionKey() );
+		Assert.assertEquals( "ranges were not merged", 3, plan.getCriteria().size() );
+		
+		List<String> values = new ArrayList<String>();
+		for( long time = creationTime.getTime() - 5000L; time < collectionTime.getTime() + 5000L; time += 250L ) {
+			values.add( "'" + dateFormat.format(new Date(time)) + "'" );
+		}
+		values.addAll(bounds(plan.getCriteria()));
+		
+		assertDisjointAndCovering(plan.getCriteria(), values);
+	}
+	
+	@Test
+	public void testUnknownCreationTime() throws Exception {
+		
+		Date collectionTime = new Date();
+		
+		QueryPlanner.QueryPlan plan = new QueryPlanner(4).plan(bucket(null, "LastModified"), collectionTime);
+		
+		Assert.assertEquals( "number of ranges is not matching", 4, plan.getCriteria().size() );
+		
+		SimpleDateFormat dateFormat = QueryObjectsCollection.newDateFormat();
+		
+		List<String> values = new ArrayList<String>();
+		for( long time = collectionTime.getTime() - 800L * DAY_MS; time < collectionTime.getTime() + 10L * DAY_MS; time += DAY_MS ) {
+			values.add( "'" + dateFormat.format(new Date(time)) + "'" );
+		}
+		assertDisjointAndCovering(plan.getCriteria(), values);
+	}
+	
+	@Test
+	public void testSizeRanges() throws Exception {
+		
+		for( int partitionCount = 1; partitionCount <= 8; partitionCount++ ) {
+			
+			QueryPlanner.QueryPlan plan = new QueryPlanner(partitionCount).plan(bucket(null, "Size", "ContentType"), new Date());
+			
+			Assert.assertEquals( "partition key is not matching", "Size", plan.getPartitionKey() );
+			Assert.assertEquals( "number of ranges is not matching", partitionCount, plan.getCriteria().size() );
+			Assert.assertEquals( "attributes are not matching", Arrays.asList("ContentType"), plan.getAttributes() );
+			
+			List<String> values = new ArrayList<String>();
+			for( int bits = 0; bits < 63; bits++ ) {
+				values.add(String.valueOf((1L << bits) - 1));
+				values.add(String.valueOf(1L << bits));
+				values.add(String.valueOf((1L << bits) + 1));
+			}
+			values.add(String.valueOf(Long.MAX_VALUE));
+			
+			assertDisjointAndCovering(plan.getCriteria(), values);
+		}
+	}
+	
+	@Test
+	public void testPartitionKeySelection() throws Exception {
+		
+		QueryPlanner planner = new QueryPlanner(4);
+		
+		QueryPlanner.QueryPlan plan = planner.plan(bucket(null, "Size", "CreateTime", "LastModified"), new Date());
+		Assert.assertEquals( "partition key is not matching", "LastModified", plan.getPartitionKey() );
+		Assert.assertEquals( "attributes are not matching", Arrays.asList("Size", "CreateTime"), plan.getAttributes() );
+		
+		// user metadata may be missing on some objects
+		ObjectBucket userMetadataBucket = bucket(null, "ContentType");
+		Metadata userSize = new Metadata();
+		userSize.setName("Size");
+		userSize.setType("User");
+		userMetadataBucket.getSearchMetadata().add(userSize);
+		
+		Assert.assertNull( "user metadata was used", planner.plan(userMetadataBucket, new Date()) );
+		Assert.assertNull( "bucket without search was planned", planner.plan(new ObjectBucket(), new Date()) );
+	}
+	
+	private static ObjectBucket bucket( Date creationTime, String... systemKeys ) {
+		
+		List<Metadata> searchMetadata = new ArrayList<Metadata>();
+		for( String key : systemKeys ) {
+			Metadata metadata = new Metadata();
+			metadata.setName(key);
+			metadata.setType("System");
+			searchMetadata.add(metadata);
+		}
+		
+		ObjectBucket objectBucket = new ObjectBucket();
+		objectBucket.setCreationTime(creationTime);
+		objectBucket.setSearchMetadata(searchMetadata);
+		return objectBucket;
+	}
+	
+	/**
+	 * Each value has to match exactly one range
+	 */
+	private static void assertDisjointAndCovering( List<String> criteria, List<String> values ) {
+		
+		for( String value : values ) {
+			int matches = 0;
+			for( String criterion : criteria ) {
+				if( matches(criterion, value) ) {
+					matches++;
+				}
+			}
+			Assert.assertEquals( "value " + value + " matches " + matches + " ranges of " + criteria, 1, matches );
+		}
+	}
+	
+	private static boolean matches( String criterion, String value ) {
+		
+		Matcher matcher = BETWEEN.matcher(criterion);
+		if( matcher.matches() ) {
+			return compare(value, matcher.group(2)) >= 0 && compare(value, matcher.group(3)) < 0;
+		}
+		matcher = BELOW.matcher(criterion);
+		if( matcher.matches() ) {
+			return compare(value, matcher.group(2)) < 0;
+		}
+		matcher = ABOVE.matcher(criterion);
+		if( matcher.matches() ) {
+			return compare(value, matcher.group(2)) >= 0;
+		}
+		throw new IllegalArgumentException("Unexpected criteria: " + criterion);
+	}
+	
+	/**
+	 * Quoted values are fixed width UTC dates which sort as strings
+	 */
+	private static int compare( String value, String bound ) {
+		if( bound.startsWith("'") ) {
+			return value.compareTo(bound);
+		}
+		return Long.valueOf(value).compareTo(Long.valueOf(bound));
+	}
+	
+	private static List<String> bounds( List<String> criteria ) {
+		
+		List<String> bounds = new ArrayList<String>();
+		for( String criterion : criteria ) {
+			Matcher matcher = BETWEEN.matcher(criterion);
+			if( matcher.matches() ) {
+				bounds.add(matcher.group(2));
+				bounds.add(matcher.group(3));
+			} else if( (matcher = BELOW.matcher(criterion)).matches() || (matcher = ABOVE.matcher(criterion)).matches() ) {
+				bounds.add(matcher.group(2));
+			}
+		}
+		return bounds;
+	}
+}
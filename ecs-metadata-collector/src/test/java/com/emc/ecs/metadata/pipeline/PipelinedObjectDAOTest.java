@@ -0,0 +1,111 @@
+package com.emc.ecs.metadata.pipeline;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.ListVersionsResult;
+import com.emc.object.s3.bean.QueryObjectsResult;
+
+public class PipelinedObjectDAOTest {
+	
+	/**
+	 * DAO holding pages of the slow bucket until released
+	 */
+	private static class GatedObjectDAO implements ObjectDAO {
+		
+		private final CountDownLatch gate = new CountDownLatch(1);
+		
+		@Override
+		public void insert( ListObjectsResult listObjectsResult, String namespace,
+							String bucketName, Date collectionTime ) {
+			if( bucketName.equals("slow") ) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		
+		@Override
+		public void insert( QueryObjectsResult queryObjectsResult, String namespace,
+							String bucketName, Date collectionTime ) {
+		}
+		
+		@Override
+		public void insert( ListVersionsResult listVersionsResult, String namespace,
+							String bucketName, Date collectionTime ) {
+		}
+		
+		@Override
+		public void insert( List<ObjectChange> objectChanges, String namespace,
+							String bucketName, Date collectionTime ) {
+		}
+		
+		@Override
+		public Long purgeOldData( ObjectDataType type, Date collectionTime ) {
+			return 0L;
+		}
+		
+		@Override
+		public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime ) {
+			return 0L;
+		}
+	}
+	
+	@Test
+	public void testPageWrittenCallbackPerPage() throws Exception {
+		
+		GatedObjectDAO objectDAO = new GatedObjectDAO();
+		PipelinedObjectDAO pipeline = new PipelinedObjectDAO(objectDAO, 2);
+		
+		final CountDownLatch slowWritten = new CountDownLatch(1);
+		final CountDownLatch fastWritten = new CountDownLatch(1);
+		
+		try {
+			pipeline.insert(new ListObjectsResult(), "ns1", "slow", new Date());
+			pipeline.onPageWritten(new Runnable() {
+				@Override
+				public void run() {
+					slowWritten.countDown();
+				}
+			});
+			
+			pipeline.insert(new ListObjectsResult(), "ns1", "fast", new Date());
+			pipeline.onPageWritten(new Runnable() {
+				@Override
+				public void run() {
+					fastWritten.countDown();
+				}
+			});
+			
+			Assert.assertTrue( "written page waits for other pages", fastWritten.await(10, TimeUnit.SECONDS) );
+			Assert.assertEquals( "pending page reported as written", 1L, slowWritten.getCount() );
+			
+			// no page submitted since the last call
+			final CountDownLatch noPage = new CountDownLatch(1);
+			pipeline.onPageWritten(new Runnable() {
+				@Override
+				public void run() {
+					noPage.countDown();
+				}
+			});
+			Assert.assertEquals( "callback without page not run right away", 0L, noPage.getCount() );
+		} finally {
+			objectDAO.gate.countDown();
+		}
+		
+		Assert.assertTrue( "slow page not written", pipeline.flush("ns1", "slow") );
+		Assert.assertEquals( "callback of slow page not run", 0L, slowWritten.getCount() );
+		
+		pipeline.shutdown();
+	}
+}
@@ -0,0 +1,81 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.Date;
+
+import com.emc.ecs.management.entity.NamespaceBillingInfo;
+import com.emc.ecs.management.entity.ObjectBuckets;
+import com.emc.ecs.metadata.dao.BillingDAO.ManagementDataType;
+
+
+/**
+ * Asynchronous management datastore.
+ * 
+ * Same contract as AsyncObjectDAO for billing and bucket data: 
+ * writes complete in the background and submit() blocks while 
+ * no capacity is left.
+ */
+public interface AsyncBillingDAO {
+
+	/**
+	 * Submits billing namespace info for writing
+	 * @param billingData
+	 * @param collectionTime
+	 * @return CompletionHandle - completes once the data is stored
+	 */
+	public CompletionHandle submit( NamespaceBillingInfo billingData, Date collectionTime );
+	
+	/**
+	 * Submits bucket info for writing
+	 * @param objectBuckets
+	 * @param collectionTime
+	 * @return CompletionHandle - completes once the data is stored
+	 */
+	public CompletionHandle submit( ObjectBuckets objectBuckets, Date collectionTime );
+	
+	/**
+	 * @return number of submissions which can be made without blocking
+	 */
+	public int getAvailableCapacity();
+	
+	/**
+	 * @return CompletionHandle - completes once all data submitted so far is stored
+	 */
+	public CompletionHandle flush();
+	
+	/**
+	 * Purge date collected before a certain date
+	 * @param type
+	 * @param collectionTime
+	 */
+	public Long purgeOldData( ManagementDataType type, Date collectionTime );
+	
+	/**
+	 * Writes pending data and releases datastore resources
+	 */
+	public void close();
+}
@@ -0,0 +1,209 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.management.entity.NamespaceBillingInfo;
+import com.emc.ecs.management.entity.ObjectBuckets;
+import com.emc.ecs.metadata.dao.BillingDAO.ManagementDataType;
+
+
+/**
+ * Exposes a synchronous BillingDAO through the asynchronous contract.
+ * 
+ * Submissions are queued in a bounded queue and written in order 
+ * by a single writer thread.
+ */
+public class AsyncBillingDAOAdapter implements AsyncBillingDAO {
+
+	public static final int DEFAULT_CAPACITY = 4;
+	
+	private static final long POLL_TIMEOUT_MS = 1000L;
+	
+	/**
+	 * Write waiting in the queue
+	 */
+	private abstract static class PendingWrite {
+		
+		final CompletionHandle handle = new CompletionHandle();
+		
+		abstract void write();
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger logger = LoggerFactory.getLogger(AsyncBillingDAOAdapter.class);
+	
+	private final BillingDAO                  billingDAO;
+	private final BlockingQueue<PendingWrite> pendingWrites;
+	private final List<CompletionHandle>      pendingHandles = new ArrayList<CompletionHandle>();
+	private final Thread                      writer;
+	private volatile boolean                  closed = false;
+	
+	//================================
+	// Constructor
+	//================================
+	/**
+	 * @param billingDAO - DAO data is written to
+	 * @param capacity - number of submissions queued before submit() blocks
+	 */
+	public AsyncBillingDAOAdapter( BillingDAO billingDAO, int capacity ) {
+		
+		this.billingDAO    = billingDAO;
+		this.pendingWrites = new ArrayBlockingQueue<PendingWrite>(capacity);
+		
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeData();
+			}
+		}, "billing-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	@Override
+	public CompletionHandle submit( final NamespaceBillingInfo billingData, final Date collectionTime ) {
+		return submit(new PendingWrite() {
+			@Override
+			void write() {
+				billingDAO.insert(billingData, collectionTime);
+			}
+		});
+	}
+
+	@Override
+	public CompletionHandle submit( final ObjectBuckets objectBuckets, final Date collectionTime ) {
+		return submit(new PendingWrite() {
+			@Override
+			void write() {
+				billingDAO.insert(objectBuckets, collectionTime);
+			}
+		});
+	}
+
+	@Override
+	public int getAvailableCapacity() {
+		return pendingWrites.remainingCapacity();
+	}
+
+	@Override
+	public CompletionHandle flush() {
+		synchronized (pendingHandles) {
+			return CompletionHandle.all(pendingHandles);
+		}
+	}
+
+	@Override
+	public Long purgeOldData( ManagementDataType type, Date collectionTime ) {
+		return billingDAO.purgeOldData(type, collectionTime);
+	}
+
+	@Override
+	public void close() {
+		
+		closed = true;
+		
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private CompletionHandle submit( final PendingWrite pendingWrite ) {
+		
+		if( closed ) {
+			throw new IllegalStateException("Billing datastore is closed");
+		}
+		
+		synchronized (pendingHandles) {
+			pendingHandles.add(pendingWrite.handle);
+		}
+		
+		pendingWrite.handle.onComplete(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (pendingHandles) {
+					pendingHandles.remove(pendingWrite.handle);
+				}
+			}
+		});
+		
+		try {
+			// blocks while the datastore is behind
+			pendingWrites.put(pendingWrite);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pendingWrite.handle.fail(e);
+		}
+		return pendingWrite.handle;
+	}
+	
+	private void writeData() {
+		
+		while( true ) {
+			PendingWrite pendingWrite;
+			
+			try {
+				pendingWrite = pendingWrites.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			
+			if( pendingWrite == null ) {
+				if( closed && pendingWrites.isEmpty() ) {
+					return;
+				}
+				continue;
+			}
+			
+			try {
+				pendingWrite.write();
+				pendingWrite.handle.complete();
+			} catch (RuntimeException e) {
+				logger.error("Error while writing billing data " + e.getLocalizedMessage());
+				pendingWrite.handle.fail(e);
+			}
+		}
+	}
+}
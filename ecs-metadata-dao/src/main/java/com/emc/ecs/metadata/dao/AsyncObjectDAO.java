@@ -0,0 +1,87 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
+
+
+/**
+ * Asynchronous object datastore.
+ * 
+ * Batches of normalized records are submitted and written in the 
+ * background, the returned handle completes once the batch is stored. 
+ * Implementations bound the amount of data in flight: submit() blocks 
+ * while no capacity is left so callers are paced by the datastore.
+ */
+public interface AsyncObjectDAO {
+
+	/**
+	 * Submits a batch of records for writing
+	 * 
+	 * @param objectRecords
+	 * @return CompletionHandle - completes once the batch is stored
+	 */
+	public CompletionHandle submit( List<ObjectRecord> objectRecords );
+	
+	/**
+	 * @return number of batches which can be submitted without blocking
+	 */
+	public int getAvailableCapacity();
+	
+	/**
+	 * @return CompletionHandle - completes once all batches submitted so far are stored
+	 */
+	public CompletionHandle flush();
+	
+	/**
+	 * Purges object data collected before a certain date
+	 * 
+	 * @param type
+	 * @param collectionTime
+	 * @return Long
+	 */
+	public Long purgeOldData( ObjectDataType type, Date collectionTime );
+	
+	/**
+	 * Flags objects of a bucket which weren't collected anymore as
+	 * deleted. Only called once all objects of the bucket collected 
+	 * at that time were stored.
+	 * 
+	 * @param namespace
+	 * @param bucketName
+	 * @param collectionTime
+	 * @return Long - number of objects flagged as deleted
+	 */
+	public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime );
+	
+	/**
+	 * Writes pending batches and releases datastore resources
+	 */
+	public void close();
+}
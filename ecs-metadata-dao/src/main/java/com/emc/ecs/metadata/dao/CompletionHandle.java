@@ -0,0 +1,196 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Completion of an asynchronous write. 
+ * 
+ * A handle is completed exactly once, either successfully or with a 
+ * failure. Callers can wait for it or register listeners which are 
+ * called in the thread completing the handle (or immediately when 
+ * the handle is already completed).
+ */
+public class CompletionHandle {
+
+	//========================
+	// Private members
+	//========================
+	private final CountDownLatch   done      = new CountDownLatch(1);
+	private final List<Runnable>   listeners = new ArrayList<Runnable>();
+	private volatile Throwable     failure;
+	
+	
+	//========================
+	// Public methods
+	//========================
+	
+	/**
+	 * @return CompletionHandle - handle already completed successfully
+	 */
+	public static CompletionHandle completed() {
+		CompletionHandle handle = new CompletionHandle();
+		handle.complete();
+		return handle;
+	}
+	
+	/**
+	 * @param failure
+	 * @return CompletionHandle - handle already completed with a failure
+	 */
+	public static CompletionHandle failed( Throwable failure ) {
+		CompletionHandle handle = new CompletionHandle();
+		handle.fail(failure);
+		return handle;
+	}
+	
+	/**
+	 * Returns a handle completing once all handles are completed.
+	 * It fails with the first failure found, if any.
+	 * 
+	 * @param handles
+	 * @return CompletionHandle
+	 */
+	public static CompletionHandle all( List<CompletionHandle> handles ) {
+		
+		final CompletionHandle allHandle = new CompletionHandle();
+		
+		if( handles.isEmpty() ) {
+			allHandle.complete();
+			return allHandle;
+		}
+		
+		final List<CompletionHandle> pendingHandles = new ArrayList<CompletionHandle>(handles);
+		final AtomicInteger          remaining      = new AtomicInteger(pendingHandles.size());
+		
+		for( CompletionHandle handle : pendingHandles ) {
+			handle.onComplete(new Runnable() {
+				@Override
+				public void run() {
+					if( remaining.decrementAndGet() == 0 ) {
+						for( CompletionHandle pendingHandle : pendingHandles ) {
+							if( !pendingHandle.isSuccess() ) {
+								allHandle.fail(pendingHandle.getFailure());
+								return;
+							}
+						}
+						allHandle.complete();
+					}
+				}
+			});
+		}
+		
+		return allHandle;
+	}
+	
+	public void complete() {
+		finish(null);
+	}
+	
+	public void fail( Throwable failure ) {
+		finish( (failure != null) ? failure : new RuntimeException("Unknown failure") );
+	}
+	
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+	
+	/**
+	 * @return true if completed without failure
+	 */
+	public boolean isSuccess() {
+		return isDone() && failure == null;
+	}
+	
+	public Throwable getFailure() {
+		return failure;
+	}
+	
+	/**
+	 * Waits for completion
+	 * @return boolean - true if completed without failure
+	 * @throws InterruptedException
+	 */
+	public boolean await() throws InterruptedException {
+		done.await();
+		return failure == null;
+	}
+	
+	/**
+	 * Waits for completion up to the specified time
+	 * @param timeout
+	 * @param unit
+	 * @return boolean - true if completed without failure within the time
+	 * @throws InterruptedException
+	 */
+	public boolean await( long timeout, TimeUnit unit ) throws InterruptedException {
+		return done.await(timeout, unit) && failure == null;
+	}
+	
+	/**
+	 * Registers a listener called once the handle is completed
+	 * @param listener
+	 */
+	public void onComplete( Runnable listener ) {
+		synchronized (listeners) {
+			if( !isDone() ) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+	
+	//========================
+	// Private methods
+	//========================
+	private void finish( Throwable failure ) {
+		
+		List<Runnable> toNotify;
+		
+		synchronized (listeners) {
+			if( isDone() ) {
+				// completed already
+				return;
+			}
+			this.failure = failure;
+			done.countDown();
+			
+			toNotify = new ArrayList<Runnable>(listeners);
+			listeners.clear();
+		}
+		
+		for( Runnable listener : toNotify ) {
+			listener.run();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.Date;
+
+
+/**
+ * Describes an object which was added, modified or deleted 
+ * in a bucket between two collections
+ */
+public class ObjectChange {
+
+	public enum ChangeType {
+		added,
+		modified,
+		deleted
+	};
+	
+	//========================
+	// Private members
+	//========================
+	private ChangeType changeType;
+	private String     key;
+	private String     eTag;
+	private Long       size;
+	private Date       lastModified;
+	
+	
+	public ObjectChange( ChangeType changeType, String key, String eTag, Long size, Date lastModified ) {
+		this.changeType   = changeType;
+		this.key          = key;
+		this.eTag         = eTag;
+		this.size         = size;
+		this.lastModified = lastModified;
+	}
+
+	//========================
+	// Public methods
+	//========================
+	public ChangeType getChangeType() {
+		return changeType;
+	}
+
+	public void setChangeType(ChangeType changeType) {
+		this.changeType = changeType;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return ETag of the object (null for deleted objects)
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+
+	/**
+	 * @return current size or last known size for deleted objects
+	 */
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	/**
+	 * @return current or last known modification time for deleted objects
+	 */
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(Date lastModified) {
+		this.lastModified = lastModified;
+	}
+}
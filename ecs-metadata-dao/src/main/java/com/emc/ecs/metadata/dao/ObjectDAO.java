@@ -28,6 +28,7 @@ SOFTWARE.
 package com.emc.ecs.metadata.dao;
 
 import java.util.Date;
+import java.util.List;
 
 import com.emc.object.s3.bean.ListObjectsResult;
 import com.emc.object.s3.bean.ListVersionsResult;
@@ -37,7 +38,8 @@ public interface ObjectDAO {
 
 	public enum ObjectDataType {
 		object,
-		object_versions
+		object_versions,
+		object_changes
 	};
 	
 	/**
@@ -72,6 +74,18 @@ public interface ObjectDAO {
 						String name, Date collectionTime);
 	
 	
+	/**
+	 * Inserts object change records into datastore
+	 * 
+	 * @param objectChanges
+	 * @param namespace
+	 * @param bucketName
+	 * @param collectionTime
+	 */
+	public void insert( List<ObjectChange> objectChanges, String namespace,
+						String bucketName, Date collectionTime);
+	
+	
 	/**
 	 * Purges object data collected before a certain date
 	 * 
@@ -82,4 +96,17 @@ public interface ObjectDAO {
 	public Long purgeOldData( ObjectDataType type, Date collectionTime);
 	
 	
+	/**
+	 * Flags objects of a bucket which weren't collected anymore as
+	 * deleted. Only called once all objects of the bucket collected 
+	 * at that time were stored.
+	 * 
+	 * @param namespace
+	 * @param bucketName
+	 * @param collectionTime
+	 * @return Long - number of objects flagged as deleted
+	 */
+	public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime );
+	
+	
 }
@@ -0,0 +1,213 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.Date;
+import java.util.Map;
+
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
+
+
+/**
+ * Normalized object record handed to asynchronous sinks.
+ * 
+ * A record describes an object, an object version (or delete marker) 
+ * or an object change independently of the ECS SDK bean it was 
+ * collected from. Fields which don't apply to the record type are null.
+ */
+public class ObjectRecord {
+
+	//========================
+	// Private members
+	//========================
+	private ObjectDataType      type;
+	private String              namespace;
+	private String              bucket;
+	private String              key;
+	private String              eTag;
+	private Long                size;
+	private Date                lastModified;
+	private String              ownerId;
+	private String              ownerName;
+	private String              versionId;
+	private Boolean             latest;
+	private boolean             deleteMarker = false;
+	private ChangeType          changeType;
+	private Map<String, String> metadata;
+	private Date                collectionTime;
+	
+	
+	public ObjectRecord( ObjectDataType type, String namespace, String bucket, 
+						 String key, Date collectionTime ) {
+		this.type           = type;
+		this.namespace      = namespace;
+		this.bucket         = bucket;
+		this.key            = key;
+		this.collectionTime = collectionTime;
+	}
+
+	//========================
+	// Public methods
+	//========================
+	/**
+	 * @return kind of data the record belongs to
+	 */
+	public ObjectDataType getType() {
+		return type;
+	}
+
+	public void setType(ObjectDataType type) {
+		this.type = type;
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	public void setNamespace(String namespace) {
+		this.namespace = namespace;
+	}
+
+	public String getBucket() {
+		return bucket;
+	}
+
+	public void setBucket(String bucket) {
+		this.bucket = bucket;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * @return ETag of the object (object id for queried objects)
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+
+	public Long getSize() {
+		return size;
+	}
+
+	public void setSize(Long size) {
+		this.size = size;
+	}
+
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(Date lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	public String getOwnerId() {
+		return ownerId;
+	}
+
+	public void setOwnerId(String ownerId) {
+		this.ownerId = ownerId;
+	}
+
+	public String getOwnerName() {
+		return ownerName;
+	}
+
+	public void setOwnerName(String ownerName) {
+		this.ownerName = ownerName;
+	}
+
+	public String getVersionId() {
+		return versionId;
+	}
+
+	public void setVersionId(String versionId) {
+		this.versionId = versionId;
+	}
+
+	/**
+	 * @return whether the version is the latest one (versions only)
+	 */
+	public Boolean getLatest() {
+		return latest;
+	}
+
+	public void setLatest(Boolean latest) {
+		this.latest = latest;
+	}
+
+	/**
+	 * @return true if the version is a delete marker
+	 */
+	public boolean isDeleteMarker() {
+		return deleteMarker;
+	}
+
+	public void setDeleteMarker(boolean deleteMarker) {
+		this.deleteMarker = deleteMarker;
+	}
+
+	/**
+	 * @return kind of change (object changes only)
+	 */
+	public ChangeType getChangeType() {
+		return changeType;
+	}
+
+	public void setChangeType(ChangeType changeType) {
+		this.changeType = changeType;
+	}
+
+	/**
+	 * @return user metadata returned by metadata search (may be null)
+	 */
+	public Map<String, String> getMetadata() {
+		return metadata;
+	}
+
+	public void setMetadata(Map<String, String> metadata) {
+		this.metadata = metadata;
+	}
+
+	public Date getCollectionTime() {
+		return collectionTime;
+	}
+
+	public void setCollectionTime(Date collectionTime) {
+		this.collectionTime = collectionTime;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
+import com.emc.object.s3.bean.AbstractVersion;
+import com.emc.object.s3.bean.CanonicalUser;
+import com.emc.object.s3.bean.DeleteMarker;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.ListVersionsResult;
+import com.emc.object.s3.bean.QueryMetadata;
+import com.emc.object.s3.bean.QueryObject;
+import com.emc.object.s3.bean.QueryObjectsResult;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.bean.Version;
+
+
+/**
+ * Converts ECS SDK result beans into normalized object records
+ */
+public class ObjectRecords {
+
+	private ObjectRecords() {
+	}
+	
+	//========================
+	// Public methods
+	//========================
+	public static List<ObjectRecord> fromListObjects( ListObjectsResult listObjectsResult, String namespace,
+													  String bucketName, Date collectionTime ) {
+		
+		List<ObjectRecord> records = new ArrayList<ObjectRecord>();
+		
+		if( listObjectsResult == null || listObjectsResult.getObjects() == null ) {
+			return records;
+		}
+		
+		for( S3Object s3Object : listObjectsResult.getObjects() ) {
+			ObjectRecord record = new ObjectRecord(ObjectDataType.object, namespace, bucketName, 
+												   s3Object.getKey(), collectionTime);
+			record.setETag(s3Object.getETag());
+			record.setSize(s3Object.getSize());
+			record.setLastModified(s3Object.getLastModified());
+			setOwner(record, s3Object.getOwner());
+			records.add(record);
+		}
+		return records;
+	}
+	
+	public static List<ObjectRecord> fromQueryObjects( QueryObjectsResult queryObjectsResult, String namespace,
+													   String bucketName, Date collectionTime ) {
+		
+		List<ObjectRecord> records = new ArrayList<ObjectRecord>();
+		
+		if( queryObjectsResult == null || queryObjectsResult.getObjects() == null ) {
+			return records;
+		}
+		
+		for( QueryObject queryObject : queryObjectsResult.getObjects() ) {
+			ObjectRecord record = new ObjectRecord(ObjectDataType.object, namespace, bucketName, 
+												   queryObject.getObjectName(), collectionTime);
+			record.setETag(queryObject.getObjectId());
+			
+			// search metadata (system and user keys)
+			if( queryObject.getQueryMds() != null ) {
+				Map<String, String> metadata = new HashMap<String, String>();
+				for( QueryMetadata queryMetadata : queryObject.getQueryMds() ) {
+					if( queryMetadata.getMdMap() != null ) {
+						metadata.putAll(queryMetadata.getMdMap());
+					}
+				}
+				record.setMetadata(metadata);
+			}
+			records.add(record);
+		}
+		return records;
+	}
+	
+	public static List<ObjectRecord> fromListVersions( ListVersionsResult listVersionsResult, String namespace,
+													   String bucketName, Date collectionTime ) {
+		
+		List<ObjectRecord> records = new ArrayList<ObjectRecord>();
+		
+		if( listVersionsResult == null || listVersionsResult.getVersions() == null ) {
+			return records;
+		}
+		
+		for( AbstractVersion abstractVersion : listVersionsResult.getVersions() ) {
+			ObjectRecord record = new ObjectRecord(ObjectDataType.object_versions, namespace, bucketName, 
+												   abstractVersion.getKey(), collectionTime);
+			record.setVersionId(abstractVersion.getVersionId());
+			record.setLatest(abstractVersion.isLatest());
+			record.setLastModified(abstractVersion.getLastModified());
+			setOwner(record, abstractVersion.getOwner());
+			
+			if( abstractVersion instanceof Version ) {
+				record.setETag(((Version)abstractVersion).getETag());
+				record.setSize(((Version)abstractVersion).getSize());
+			} else if( abstractVersion instanceof DeleteMarker ) {
+				record.setDeleteMarker(true);
+			}
+			records.add(record);
+		}
+		return records;
+	}
+	
+	public static List<ObjectRecord> fromObjectChanges( List<ObjectChange> objectChanges, String namespace,
+														String bucketName, Date collectionTime ) {
+		
+		List<ObjectRecord> records = new ArrayList<ObjectRecord>();
+		
+		if( objectChanges == null ) {
+			return records;
+		}
+		
+		for( ObjectChange objectChange : objectChanges ) {
+			ObjectRecord record = new ObjectRecord(ObjectDataType.object_changes, namespace, bucketName, 
+												   objectChange.getKey(), collectionTime);
+			record.setChangeType(objectChange.getChangeType());
+			record.setETag(objectChange.getETag());
+			record.setSize(objectChange.getSize());
+			record.setLastModified(objectChange.getLastModified());
+			records.add(record);
+		}
+		return records;
+	}
+	
+	//========================
+	// Private methods
+	//========================
+	private static void setOwner( ObjectRecord record, CanonicalUser owner ) {
+		if( owner != null ) {
+			record.setOwnerId(owner.getId());
+			record.setOwnerName(owner.getDisplayName());
+		}
+	}
+}
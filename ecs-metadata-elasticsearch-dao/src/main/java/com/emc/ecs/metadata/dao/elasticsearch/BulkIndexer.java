@@ -0,0 +1,724 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.CompletionHandle;
+
+
+/**
+ * Asynchronous bulk engine shared by the Elasticsearch DAOs.
+ * 
+ * Documents added by all threads, whatever their index, are coalesced 
+ * into bulk requests which are sent once they reach the action count 
+ * or byte size limit, or when the flush interval elapsed. A limited 
+ * number of bulk requests are in flight at once: adding documents 
+ * blocks while all of them are pending. Bulk requests sent by the 
+ * flush scheduler (expired bulk requests and retries) wait in a queue 
+ * instead, so the scheduler never blocks.
+ * 
+ * The action count limit adapts to the observed latency: it shrinks 
+ * when bulk requests take longer than the target latency and grows 
+ * back when full bulk requests are fast.
+ * 
+ * Documents rejected because Elasticsearch is saturated (429) are 
+ * retried with exponential backoff. Documents failing permanently 
+ * are written to the dead letter file.
+ * 
+ * Volume and throughput of the documents sent are logged on close 
+ * along with their encoding, to compare JSON and binary sources.
+ * 
+ * Bulk requests are sent through the transport client or the HTTP 
+ * client, see BulkClient.
+ */
+public class BulkIndexer {
+
+	public  final static int  DEFAULT_MAX_ACTIONS        = 5000;
+	public  final static int  DEFAULT_MAX_SIZE_MB        = 10;
+	public  final static int  DEFAULT_CONCURRENT_BULKS   = 4;
+	public  final static long DEFAULT_FLUSH_INTERVAL_MS  = 1000L;
+	public  final static long DEFAULT_TARGET_LATENCY_MS  = 2000L;
+	
+	private final static int  MIN_ACTIONS                = 100;
+	private final static int  INITIAL_ACTIONS            = 1000;
+	private final static int  MAX_RETRIES                = 5;
+	private final static long INITIAL_BACKOFF_MS         = 500L;
+	
+	// documents retried, dead lettered or lost by all indexers of the run
+	private final static AtomicLong RETRIED_DOCUMENTS      = new AtomicLong(0L);
+	private final static AtomicLong DEAD_LETTER_DOCUMENTS  = new AtomicLong(0L);
+	private final static AtomicLong LOST_DOCUMENTS         = new AtomicLong(0L);
+	
+	
+	/**
+	 * Sends bulk requests asynchronously
+	 */
+	public interface BulkClient {
+		
+		/**
+		 * @param request
+		 * @param listener - notified with the response of each document or the failure of the request
+		 */
+		public void bulk( BulkRequest request, ActionListener<BulkResponse> listener );
+	}
+	
+	/**
+	 * Documents added together. Completes once all of them were 
+	 * sent, with the response of each document in the order they 
+	 * were added. Fails if any document failed to be indexed.
+	 */
+	public static class Submission extends CompletionHandle {
+		
+		private final BulkItemResponse[] items;
+		private int                      remaining;
+		private Throwable                firstFailure;
+		
+		Submission( int size ) {
+			this.items     = new BulkItemResponse[size];
+			this.remaining = size;
+		}
+		
+		/**
+		 * @return BulkItemResponse[] - response per document (null entries when the bulk request failed)
+		 */
+		public BulkItemResponse[] getItems() {
+			return items;
+		}
+		
+		/**
+		 * @param offset - position of the document in the submission
+		 * @param item - response of the document (null if the bulk request failed)
+		 * @param failure - failure of the bulk request (null if it was sent)
+		 * @return true if the submission is completed
+		 */
+		private boolean itemDone( int offset, BulkItemResponse item, Throwable failure ) {
+			
+			boolean done;
+			
+			synchronized (this) {
+				items[offset] = item;
+				
+				if( firstFailure == null ) {
+					if( failure != null ) {
+						firstFailure = failure;
+					} else if( item != null && item.isFailed() ) {
+						firstFailure = new RuntimeException(item.getFailureMessage());
+					}
+				}
+				remaining--;
+				done = (remaining == 0);
+			}
+			
+			if( done ) {
+				if( firstFailure == null ) {
+					complete();
+				} else {
+					fail(firstFailure);
+				}
+			}
+			return done;
+		}
+	}
+	
+	/**
+	 * Part of a submission included in a bulk request
+	 */
+	private static class Segment {
+		
+		private final Submission submission;
+		private final int        offset;
+		private final int        bulkOffset;
+		private final int        attempt;
+		private int              count = 0;
+		
+		Segment( Submission submission, int offset, int bulkOffset, int attempt ) {
+			this.submission = submission;
+			this.offset     = offset;
+			this.bulkOffset = bulkOffset;
+			this.attempt    = attempt;
+		}
+	}
+	
+	/**
+	 * Document waiting to be retried
+	 */
+	private static class RetryItem {
+		
+		private final Submission       submission;
+		private final int              offset;
+		private final ActionRequest<?> request;
+		private final int              attempt;
+		
+		RetryItem( Submission submission, int offset, ActionRequest<?> request, int attempt ) {
+			this.submission = submission;
+			this.offset     = offset;
+			this.request    = request;
+			this.attempt    = attempt;
+		}
+	}
+	
+	/**
+	 * Bulk request being filled
+	 */
+	private static class PendingBulk {
+		
+		private final BulkRequest   request   = new BulkRequest();
+		private final List<Segment> segments  = new ArrayList<Segment>();
+		private final long          startTime = System.currentTimeMillis();
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger LOGGER = LoggerFactory.getLogger(BulkIndexer.class);
+	
+	private final BulkClient               bulkClient;
+	private final int                      maxActionsLimit;
+	private final long                     maxBytes;
+	private final int                      concurrentBulks;
+	private final long                     flushIntervalMs;
+	private final long                     targetLatencyMs;
+	private final Semaphore                inFlightBulks;
+	private final DeadLetterFile           deadLetterFile;
+	private final XContentType             documentEncoding;
+	private final Set<Submission>          pendingSubmissions = new HashSet<Submission>();
+	private final Queue<PendingBulk>       waitingBulks       = new ConcurrentLinkedQueue<PendingBulk>();
+	private final ScheduledExecutorService flushScheduler;
+	private final Object                   lock               = new Object();
+	private PendingBulk                    currentBulk        = null;
+	private volatile int                   maxActions;
+	
+	private final AtomicLong bulksSent   = new AtomicLong(0L);
+	private final AtomicLong actionsSent = new AtomicLong(0L);
+	private final AtomicLong bulkMillis  = new AtomicLong(0L);
+	private final AtomicLong bytesSent   = new AtomicLong(0L);
+	private final AtomicLong firstSend   = new AtomicLong(0L);
+	private final AtomicLong lastReply   = new AtomicLong(0L);
+	
+	//================================
+	// Constructor
+	//================================
+	/**
+	 * @param bulkClient - client bulk requests are sent with
+	 * @param maxActions - maximum number of documents per bulk request
+	 * @param maxBytes - maximum size of a bulk request
+	 * @param concurrentBulks - number of bulk requests in flight at once
+	 * @param flushIntervalMs - maximum time documents wait before being sent
+	 * @param targetLatencyMs - bulk request latency the action count adapts to
+	 * @param deadLetterFile - file permanently failing documents are written to (may be null)
+	 * @param documentEncoding - encoding of the document sources, only reported
+	 */
+	public BulkIndexer( BulkClient bulkClient, int maxActions, long maxBytes, int concurrentBulks, 
+						long flushIntervalMs, long targetLatencyMs, DeadLetterFile deadLetterFile,
+						XContentType documentEncoding ) {
+		
+		this.bulkClient      = bulkClient;
+		this.maxActionsLimit = Math.max(maxActions, MIN_ACTIONS);
+		this.maxBytes        = maxBytes;
+		this.concurrentBulks = concurrentBulks;
+		this.flushIntervalMs = flushIntervalMs;
+		this.targetLatencyMs = targetLatencyMs;
+		this.inFlightBulks   = new Semaphore(concurrentBulks);
+		this.deadLetterFile  = deadLetterFile;
+		this.documentEncoding = documentEncoding;
+		this.maxActions      = Math.min(INITIAL_ACTIONS, this.maxActionsLimit);
+		
+		this.flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "bulk-indexer-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		this.flushScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flushExpired();
+			}
+		}, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @param elasticClient - transport client
+	 * @param config
+	 * @return BulkIndexer configured from the DAO configuration
+	 */
+	public static BulkIndexer create( final Client elasticClient, ElasticDAOConfig config ) {
+		return create(new BulkClient() {
+			@Override
+			public void bulk(BulkRequest request, ActionListener<BulkResponse> listener) {
+				elasticClient.bulk(request, listener);
+			}
+		}, config);
+	}
+	
+	/**
+	 * @param bulkClient
+	 * @param config
+	 * @return BulkIndexer configured from the DAO configuration
+	 */
+	public static BulkIndexer create( BulkClient bulkClient, ElasticDAOConfig config ) {
+		return new BulkIndexer( bulkClient, 
+								config.getBulkActions(), 
+								config.getBulkSizeMb() * 1024L * 1024L, 
+								config.getBulkConcurrency(),
+								config.getBulkFlushIntervalMs(), 
+								DEFAULT_TARGET_LATENCY_MS,
+								(config.getDeadLetterFile() != null) ? new DeadLetterFile(config.getDeadLetterFile()) : null,
+								config.getDocumentEncoding() );
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Adds documents to the bulk requests being filled.
+	 * Blocks while the maximum number of bulk requests are in flight.
+	 * 
+	 * @param requests
+	 * @return Submission - completes once all documents were sent
+	 */
+	public Submission add( List<? extends ActionRequest<?>> requests ) {
+		
+		Submission submission = new Submission(requests.size());
+		
+		if( requests.isEmpty() ) {
+			submission.complete();
+			return submission;
+		}
+		
+		synchronized (pendingSubmissions) {
+			pendingSubmissions.add(submission);
+		}
+		
+		List<PendingBulk> fullBulks = new ArrayList<PendingBulk>();
+		
+		synchronized (lock) {
+			Segment segment = null;
+			
+			for( int i = 0; i < requests.size(); i++ ) {
+				
+				if( currentBulk == null ) {
+					currentBulk = new PendingBulk();
+					segment     = null;
+				}
+				if( segment == null ) {
+					segment = new Segment(submission, i, currentBulk.request.numberOfActions(), 0);
+					currentBulk.segments.add(segment);
+				}
+				
+				currentBulk.request.add(requests.get(i));
+				segment.count++;
+				
+				if( currentBulk.request.numberOfActions() >= maxActions || 
+					currentBulk.request.estimatedSizeInBytes() >= maxBytes ) {
+					fullBulks.add(currentBulk);
+					currentBulk = null;
+				}
+			}
+		}
+		
+		// send outside of the lock so other threads keep filling bulk requests
+		for( PendingBulk fullBulk : fullBulks ) {
+			send(fullBulk);
+		}
+		
+		return submission;
+	}
+	
+	/**
+	 * Sends the bulk request being filled
+	 * 
+	 * @return CompletionHandle - completes once all documents added so far were sent
+	 */
+	public CompletionHandle flush() {
+		
+		PendingBulk pendingBulk;
+		synchronized (lock) {
+			pendingBulk = currentBulk;
+			currentBulk = null;
+		}
+		if( pendingBulk != null ) {
+			send(pendingBulk);
+		}
+		
+		synchronized (pendingSubmissions) {
+			return CompletionHandle.all(new ArrayList<CompletionHandle>(pendingSubmissions));
+		}
+	}
+	
+	/**
+	 * @return number of bulk requests which can be sent without waiting
+	 */
+	public int getAvailableCapacity() {
+		return inFlightBulks.availablePermits();
+	}
+	
+	/**
+	 * Sends remaining documents, waits for pending bulk requests 
+	 * and stops the flush scheduler
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return boolean - true if all documents were indexed
+	 */
+	public boolean close( long timeout, TimeUnit unit ) {
+		
+		boolean indexed = false;
+		try {
+			// retries are scheduled - keep the scheduler running until everything was sent
+			indexed = flush().await(timeout, unit);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		flushScheduler.shutdownNow();
+		
+		long bulks     = bulksSent.get();
+		long documents = actionsSent.get();
+		long bytes     = bytesSent.get();
+		// wall time documents were being sent, whatever the number of concurrent bulk requests
+		long sendMillis = Math.max(1L, lastReply.get() - firstSend.get());
+		
+		LOGGER.info( "Sent " + bulks + " bulk requests with " + documents + " documents to Elasticsearch - " + 
+					 "average latency: " + ((bulks > 0) ? bulkMillis.get() / bulks : 0) + " ms, " +
+					 "final bulk size: " + maxActions + " documents" );
+		LOGGER.info( "Sent " + (bytes / 1024) + " KB of " + documentEncoding.shortName() + " documents " + 
+					 "(" + ((documents > 0) ? bytes / documents : 0) + " bytes per document) - " + 
+					 "throughput: " + ((bulks > 0) ? documents * 1000 / sendMillis : 0) + " documents/s, " + 
+					 ((bulks > 0) ? bytes * 1000 / 1024 / sendMillis : 0) + " KB/s" );
+		
+		return indexed;
+	}
+	
+	/**
+	 * Logs documents which had to be retried or could not be indexed 
+	 * by any indexer of the run
+	 */
+	public static void logFailureSummary() {
+		
+		LOGGER.info( "Elasticsearch rejected documents retried: " + RETRIED_DOCUMENTS.get() + 
+					 ", documents written to dead letter file: " + DEAD_LETTER_DOCUMENTS.get() + 
+					 ", documents lost: " + LOST_DOCUMENTS.get() );
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private void flushExpired() {
+		
+		PendingBulk pendingBulk = null;
+		synchronized (lock) {
+			if( currentBulk != null && 
+				System.currentTimeMillis() - currentBulk.startTime >= flushIntervalMs ) {
+				pendingBulk = currentBulk;
+				currentBulk = null;
+			}
+		}
+		if( pendingBulk != null ) {
+			sendLater(pendingBulk);
+		}
+	}
+	
+	private void send( PendingBulk pendingBulk ) {
+		
+		try {
+			// blocks while too many bulk requests are in flight
+			inFlightBulks.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			completed(pendingBulk, null, e);
+			return;
+		}
+		
+		sendAcquired(pendingBulk);
+	}
+	
+	/**
+	 * Sends the bulk request if one can be in flight, queues it 
+	 * until a bulk request completes otherwise. Used by the flush 
+	 * scheduler thread which must not block.
+	 * 
+	 * @param pendingBulk
+	 */
+	private void sendLater( PendingBulk pendingBulk ) {
+		waitingBulks.add(pendingBulk);
+		sendWaitingBulks();
+	}
+	
+	private void sendWaitingBulks() {
+		
+		while( !waitingBulks.isEmpty() && inFlightBulks.tryAcquire() ) {
+			PendingBulk pendingBulk = waitingBulks.poll();
+			if( pendingBulk == null ) {
+				// taken by another thread
+				inFlightBulks.release();
+				continue;
+			}
+			sendAcquired(pendingBulk);
+		}
+	}
+	
+	private void releaseBulk() {
+		inFlightBulks.release();
+		sendWaitingBulks();
+	}
+	
+	private void sendAcquired( final PendingBulk pendingBulk ) {
+		
+		final long startTime = System.currentTimeMillis();
+		firstSend.compareAndSet(0L, startTime);
+		
+		try {
+			bulkClient.bulk(pendingBulk.request, new ActionListener<BulkResponse>() {
+				
+				@Override
+				public void onResponse( BulkResponse bulkResponse ) {
+					
+					releaseBulk();
+					
+					long latency = System.currentTimeMillis() - startTime;
+					
+					LOGGER.info( "Took " + latency + " ms to index [" + bulkResponse.getItems().length + 
+								 "] items in Elasticsearch" );
+					
+					
+					recordLatency(pendingBulk.request.numberOfActions(), pendingBulk.request.estimatedSizeInBytes(), latency);
+					completed(pendingBulk, bulkResponse.getItems(), null);
+				}
+				
+				@Override
+				public void onFailure( Throwable e ) {
+					releaseBulk();
+					LOGGER.error( "Error while sending bulk request to Elasticsearch " + e.getLocalizedMessage() );
+					completed(pendingBulk, null, e);
+				}
+			});
+		} catch (RuntimeException e) {
+			releaseBulk();
+			completed(pendingBulk, null, e);
+		}
+	}
+	
+	/**
+	 * Completes the documents of a bulk request. Rejected documents 
+	 * are scheduled for a retry, permanently failing ones are written 
+	 * to the dead letter file.
+	 * 
+	 * @param pendingBulk
+	 * @param items - responses of the bulk request (null if it failed)
+	 * @param failure - null on success
+	 */
+	private void completed( PendingBulk pendingBulk, BulkItemResponse[] items, Throwable failure ) {
+		
+		boolean bulkRejected = (failure != null) && 
+							   (ExceptionsHelper.unwrapCause(failure) instanceof EsRejectedExecutionException);
+		
+		@SuppressWarnings("rawtypes")
+		List<ActionRequest>           requests     = pendingBulk.request.requests();
+		boolean[]                     retried      = new boolean[requests.size()];
+		Map<Integer, List<RetryItem>> retryItems   = new TreeMap<Integer, List<RetryItem>>();
+		List<ActionRequest<?>>        deadRequests = new ArrayList<ActionRequest<?>>();
+		List<String>                  deadFailures = new ArrayList<String>();
+		
+		for( Segment segment : pendingBulk.segments ) {
+			for( int i = 0; i < segment.count; i++ ) {
+				
+				ActionRequest<?> request = requests.get(segment.bulkOffset + i);
+				BulkItemResponse item    = (items != null) ? items[segment.bulkOffset + i] : null;
+				
+				if( failure == null && !item.isFailed() ) {
+					continue;
+				}
+				
+				boolean rejected = (item != null) ? item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS : bulkRejected;
+				
+				if( rejected && segment.attempt < MAX_RETRIES ) {
+					// retried documents are grouped by attempt as they share the same backoff
+					List<RetryItem> attemptItems = retryItems.get(segment.attempt + 1);
+					if( attemptItems == null ) {
+						attemptItems = new ArrayList<RetryItem>();
+						retryItems.put(segment.attempt + 1, attemptItems);
+					}
+					attemptItems.add(new RetryItem(segment.submission, segment.offset + i, request, segment.attempt + 1));
+					retried[segment.bulkOffset + i] = true;
+				} else {
+					deadRequests.add(request);
+					deadFailures.add( (item != null) ? item.getFailureMessage() : String.valueOf(failure) );
+				}
+			}
+		}
+		
+		// dead letters are written before submissions complete so nothing is lost on shutdown
+		if( !deadRequests.isEmpty() ) {
+			deadLetter(deadRequests, deadFailures);
+		}
+		
+		for( Segment segment : pendingBulk.segments ) {
+			for( int i = 0; i < segment.count; i++ ) {
+				
+				BulkItemResponse item = (items != null) ? items[segment.bulkOffset + i] : null;
+				
+				if( retried[segment.bulkOffset + i] ) {
+					continue;
+				}
+				
+				if( segment.submission.itemDone(segment.offset + i, item, failure) ) {
+					synchronized (pendingSubmissions) {
+						pendingSubmissions.remove(segment.submission);
+					}
+				}
+			}
+		}
+		
+		for( List<RetryItem> attemptItems : retryItems.values() ) {
+			scheduleRetry(attemptItems);
+		}
+	}
+	
+	/**
+	 * Adds rejected documents back to the bulk request being filled 
+	 * after a backoff growing with the number of attempts
+	 * 
+	 * @param retryItems
+	 */
+	private void scheduleRetry( final List<RetryItem> retryItems ) {
+		
+		RETRIED_DOCUMENTS.addAndGet(retryItems.size());
+		
+		int  attempt = retryItems.get(0).attempt;
+		long backoff = INITIAL_BACKOFF_MS << (attempt - 1);
+		
+		LOGGER.info( "Elasticsearch rejected " + retryItems.size() + " documents - retry " + attempt + 
+					 " in " + backoff + " ms" );
+		
+		Runnable retry = new Runnable() {
+			@Override
+			public void run() {
+				List<PendingBulk> fullBulks = new ArrayList<PendingBulk>();
+				
+				synchronized (lock) {
+					for( RetryItem retryItem : retryItems ) {
+						if( currentBulk == null ) {
+							currentBulk = new PendingBulk();
+						}
+						Segment segment = new Segment( retryItem.submission, retryItem.offset, 
+													   currentBulk.request.numberOfActions(), retryItem.attempt );
+						segment.count = 1;
+						currentBulk.segments.add(segment);
+						currentBulk.request.add(retryItem.request);
+						
+						if( currentBulk.request.numberOfActions() >= maxActions ) {
+							fullBulks.add(currentBulk);
+							currentBulk = null;
+						}
+					}
+				}
+				
+				for( PendingBulk fullBulk : fullBulks ) {
+					sendLater(fullBulk);
+				}
+			}
+		};
+		
+		try {
+			flushScheduler.schedule(retry, backoff, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// indexer closed - send right away
+			retry.run();
+		}
+	}
+	
+	private void deadLetter( List<ActionRequest<?>> requests, List<String> failures ) {
+		
+		int written = (deadLetterFile != null) ? deadLetterFile.write(requests, failures) : 0;
+		
+		DEAD_LETTER_DOCUMENTS.addAndGet(written);
+		LOST_DOCUMENTS.addAndGet(requests.size() - written);
+		
+		LOGGER.error( requests.size() + " documents could not be indexed in Elasticsearch, " + written + 
+					  " written to dead letter file - first failure: " + failures.get(0) );
+	}
+	
+	/**
+	 * Shrinks bulk requests proportionally when slower than the target 
+	 * latency (at most by half) and grows them when full bulk requests 
+	 * take less than half of the target latency
+	 * 
+	 * @param actions
+	 * @param bytes - size of the bulk request
+	 * @param latency
+	 */
+	private void recordLatency( int actions, long bytes, long latency ) {
+		
+		bulksSent.incrementAndGet();
+		actionsSent.addAndGet(actions);
+		bulkMillis.addAndGet(latency);
+		bytesSent.addAndGet(bytes);
+		lastReply.set(System.currentTimeMillis());
+		
+		synchronized (lock) {
+			if( latency > targetLatencyMs ) {
+				int reduced = (int)Math.max(maxActions / 2, (maxActions * targetLatencyMs) / latency);
+				maxActions = Math.max(MIN_ACTIONS, reduced);
+			} else if( latency < targetLatencyMs / 2 && actions >= maxActions ) {
+				maxActions = Math.min(maxActionsLimit, maxActions + Math.max(MIN_ACTIONS, maxActionsLimit / 10));
+			}
+		}
+	}
+}
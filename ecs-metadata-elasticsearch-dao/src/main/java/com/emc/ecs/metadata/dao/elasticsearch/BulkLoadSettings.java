@@ -0,0 +1,344 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Bulk load mode: while a collection runs, the indices written to 
+ * are not refreshed and not replicated. Their original settings are 
+ * restored (and the indices refreshed) at the end of the run or when 
+ * the JVM shuts down.
+ * 
+ * Original settings are kept in a state file until they were restored 
+ * so that the next run restores indices left tuned by a run which 
+ * was killed. A run locks the state file for its whole duration: a 
+ * run which can't get the lock overlaps with another one and leaves 
+ * bulk load mode to that run. Indices already in bulk load mode but 
+ * not tuned by the run are left untouched as their original settings 
+ * are unknown.
+ */
+public class BulkLoadSettings {
+
+	public  final static String DEFAULT_STATE_FILE      = "ecs-bulk-load.state";
+	
+	private final static String REFRESH_INTERVAL        = "index.refresh_interval";
+	private final static String NUMBER_OF_REPLICAS      = "index.number_of_replicas";
+	private final static String BULK_REFRESH_INTERVAL   = "-1";
+	private final static String BULK_NUMBER_OF_REPLICAS = "0";
+	private final static String DEFAULT_REFRESH_INTERVAL = "1s";
+	private final static String LOCK_SUFFIX             = ".lock";
+	
+	// DAOs of a run share the state file
+	private final static Object                 STATE_LOCK = new Object();
+	private final static List<BulkLoadSettings> INSTANCES  = new ArrayList<BulkLoadSettings>();
+	// original refresh interval and number of replicas per index tuned by the run
+	private final static Map<String, String[]>  ORIGINAL_SETTINGS = new HashMap<String, String[]>();
+	private static boolean                      staleSettingsRestored = false;
+	// held until the JVM exits, null when another run holds it
+	private static FileLock                     stateFileLock         = null;
+	private static Thread                       shutdownHook          = null;
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger LOGGER = LoggerFactory.getLogger(BulkLoadSettings.class);
+	
+	private final Client        elasticClient;
+	private final File          stateFile;
+	// indices restored through this client
+	private final List<String>  tunedIndices = new ArrayList<String>();
+	
+	//================================
+	// Constructor
+	//================================
+	public BulkLoadSettings( Client elasticClient, String stateFile ) {
+		
+		this.elasticClient = elasticClient;
+		this.stateFile     = new File(stateFile);
+		
+		synchronized (STATE_LOCK) {
+			if( !staleSettingsRestored ) {
+				if( lockStateFile() ) {
+					// a previous run may have been killed before it restored its indices
+					restoreStaleSettings();
+				}
+				staleSettingsRestored = true;
+			}
+			
+			INSTANCES.add(this);
+			
+			if( shutdownHook == null ) {
+				shutdownHook = new Thread("bulk-load-restore") {
+					@Override
+					public void run() {
+						restoreAll();
+					}
+				};
+				Runtime.getRuntime().addShutdownHook(shutdownHook);
+			}
+		}
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Disables refresh and replicas of indices, their original
+	 * settings being saved first
+	 * 
+	 * @param indexNames
+	 */
+	public void tune( String... indexNames ) {
+		
+		synchronized (STATE_LOCK) {
+			
+			if( stateFileLock == null ) {
+				// another run owns bulk load mode
+				return;
+			}
+			
+			List<String> newIndices = new ArrayList<String>();
+			for( String indexName : indexNames ) {
+				// an index may already be tuned by another DAO of the run
+				if( !ORIGINAL_SETTINGS.containsKey(indexName) ) {
+					newIndices.add(indexName);
+				}
+			}
+			
+			if( newIndices.isEmpty() ) {
+				return;
+			}
+			
+			GetSettingsResponse settingsResponse = elasticClient.admin().indices()
+					.prepareGetSettings(newIndices.toArray(new String[newIndices.size()])).get();
+			
+			Properties state = loadState();
+			
+			List<String> tunedNewIndices = new ArrayList<String>();
+			
+			for( String indexName : newIndices ) {
+				String refreshInterval  = settingsResponse.getSetting(indexName, REFRESH_INTERVAL);
+				String numberOfReplicas = settingsResponse.getSetting(indexName, NUMBER_OF_REPLICAS);
+				
+				if( BULK_REFRESH_INTERVAL.equals(refreshInterval) ) {
+					// saving bulk values as originals would leave the index tuned for good
+					LOGGER.warn("Index " + indexName + " is already in bulk load mode but wasn't tuned by this run - " + 
+								"its settings are left untouched");
+					continue;
+				}
+				
+				String[] original = new String[] { (refreshInterval != null) ? refreshInterval : DEFAULT_REFRESH_INTERVAL,
+												   numberOfReplicas };
+				
+				// saved before the index is touched
+				ORIGINAL_SETTINGS.put(indexName, original);
+				tunedIndices.add(indexName);
+				tunedNewIndices.add(indexName);
+				state.setProperty(indexName + "." + REFRESH_INTERVAL, original[0]);
+				if( original[1] != null ) {
+					state.setProperty(indexName + "." + NUMBER_OF_REPLICAS, original[1]);
+				}
+			}
+			saveState(state);
+			
+			for( String indexName : tunedNewIndices ) {
+				updateSettings(indexName, BULK_REFRESH_INTERVAL, BULK_NUMBER_OF_REPLICAS);
+				LOGGER.info("Bulk load mode enabled on index " + indexName + " (original refresh interval: " + 
+							ORIGINAL_SETTINGS.get(indexName)[0] + " replicas: " + ORIGINAL_SETTINGS.get(indexName)[1] + ")");
+			}
+		}
+	}
+	
+	/**
+	 * Restores the original settings of the tuned indices and refreshes them
+	 */
+	public void restore() {
+		
+		synchronized (STATE_LOCK) {
+			
+			if( tunedIndices.isEmpty() ) {
+				return;
+			}
+			
+			Properties state = loadState();
+			
+			for( String indexName : tunedIndices ) {
+				String[] original = ORIGINAL_SETTINGS.remove(indexName);
+				try {
+					updateSettings(indexName, original[0], original[1]);
+					elasticClient.admin().indices().prepareRefresh(indexName).get();
+					
+					state.remove(indexName + "." + REFRESH_INTERVAL);
+					state.remove(indexName + "." + NUMBER_OF_REPLICAS);
+					
+					LOGGER.info("Bulk load mode disabled on index " + indexName);
+				} catch (IndexNotFoundException e) {
+					// dropped in the meantime
+					state.remove(indexName + "." + REFRESH_INTERVAL);
+					state.remove(indexName + "." + NUMBER_OF_REPLICAS);
+				} catch (ElasticsearchException e) {
+					// kept in the state file for the next run
+					LOGGER.error("Unable to restore settings of index " + indexName + ": " + e.getLocalizedMessage());
+				}
+			}
+			
+			tunedIndices.clear();
+			saveState(state);
+		}
+	}
+	
+	/**
+	 * Restores the indices tuned by all DAOs of the run
+	 */
+	public static void restoreAll() {
+		
+		synchronized (STATE_LOCK) {
+			for( BulkLoadSettings instance : INSTANCES ) {
+				instance.restore();
+			}
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	/**
+	 * Locks the state file for the rest of the run. The OS releases 
+	 * the lock when the JVM exits, so a lock held by someone else 
+	 * belongs to a run still in progress.
+	 * 
+	 * @return boolean - true if the lock was acquired
+	 */
+	private boolean lockStateFile() {
+		
+		File lockFile = new File(stateFile.getPath() + LOCK_SUFFIX);
+		
+		try {
+			FileChannel lockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+			stateFileLock = lockChannel.tryLock();
+			
+			if( stateFileLock == null ) {
+				lockChannel.close();
+				LOGGER.warn("Bulk load state file " + stateFile.getPath() + " is used by another run - " + 
+							"bulk load mode is disabled for this run");
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to lock bulk load state file " + lockFile.getPath() + 
+									   " " + e.getLocalizedMessage());
+		}
+	}
+	
+	private void restoreStaleSettings() {
+		
+		Properties state = loadState();
+		
+		for( String key : state.stringPropertyNames() ) {
+			
+			if( !key.endsWith("." + REFRESH_INTERVAL) ) {
+				continue;
+			}
+			
+			String indexName = key.substring(0, key.length() - REFRESH_INTERVAL.length() - 1);
+			
+			// restored like indices tuned by this run
+			ORIGINAL_SETTINGS.put( indexName, new String[] { state.getProperty(key), 
+											  state.getProperty(indexName + "." + NUMBER_OF_REPLICAS) } );
+			tunedIndices.add(indexName);
+			LOGGER.info("Restoring settings of index " + indexName + " left in bulk load mode by a previous run");
+		}
+		
+		restore();
+	}
+	
+	private void updateSettings( String indexName, String refreshInterval, String numberOfReplicas ) {
+		
+		Settings.Builder settings = Settings.settingsBuilder().put(REFRESH_INTERVAL, refreshInterval);
+		if( numberOfReplicas != null ) {
+			settings.put(NUMBER_OF_REPLICAS, numberOfReplicas);
+		}
+		elasticClient.admin().indices().prepareUpdateSettings(indexName).setSettings(settings).get();
+	}
+	
+	private Properties loadState() {
+		
+		Properties state = new Properties();
+		
+		if( stateFile.exists() ) {
+			try( InputStream input = new FileInputStream(stateFile) ) {
+				state.load(input);
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to read bulk load state file " + stateFile.getPath() + 
+										   " " + e.getLocalizedMessage());
+			}
+		}
+		return state;
+	}
+	
+	private void saveState( Properties state ) {
+		
+		if( state.isEmpty() ) {
+			if( stateFile.exists() && !stateFile.delete() ) {
+				LOGGER.error("Unable to delete bulk load state file " + stateFile.getPath());
+			}
+			return;
+		}
+		
+		try( OutputStream output = new FileOutputStream(stateFile) ) {
+			state.store(output, "Original settings of indices in bulk load mode");
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write bulk load state file " + stateFile.getPath() + 
+									   " " + e.getLocalizedMessage());
+		}
+	}
+}
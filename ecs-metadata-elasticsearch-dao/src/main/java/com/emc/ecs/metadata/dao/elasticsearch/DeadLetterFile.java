@@ -0,0 +1,321 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Local file holding documents Elasticsearch permanently refused 
+ * (mapping errors, exhausted retries...). 
+ * 
+ * One JSON document per line with the target index, type, id, the 
+ * failure and the document source, so documents can be replayed 
+ * once the cause was fixed. Updates additionally hold the update 
+ * action, their upsert document and the doc as upsert flag.
+ */
+public class DeadLetterFile {
+
+	public  final static String DEFAULT_FILE_NAME = "ecs-dead-letters.ndjson";
+	
+	private final static String INDEX_TAG         = "index";
+	private final static String TYPE_TAG          = "type";
+	private final static String ID_TAG            = "id";
+	private final static String FAILURE_TAG       = "failure";
+	private final static String SOURCE_TAG        = "source";
+	private final static String ACTION_TAG        = "action";
+	private final static String UPSERT_TAG        = "upsert";
+	private final static String DOC_AS_UPSERT_TAG = "doc_as_upsert";
+	private final static String UPDATE_ACTION     = "update";
+	private final static String REPLAY_SUFFIX     = ".replaying";
+	private final static int    REPLAY_BATCH_SIZE = 1000;
+	private final static Charset UTF8             = Charset.forName("UTF-8");
+	
+	// DAOs of a run may share the same file
+	private final static Object WRITE_LOCK = new Object();
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger LOGGER = LoggerFactory.getLogger(DeadLetterFile.class);
+	
+	private final File file;
+	
+	//================================
+	// Constructor
+	//================================
+	public DeadLetterFile( String fileName ) {
+		this.file = new File(fileName);
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Appends failed documents to the file
+	 * 
+	 * @param requests
+	 * @param failures - failure message per request
+	 * @return number of documents written
+	 */
+	public int write( List<ActionRequest<?>> requests, List<String> failures ) {
+		
+		int written = 0;
+		
+		synchronized (WRITE_LOCK) {
+			try( Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), UTF8) ) {
+				
+				for( int i = 0; i < requests.size(); i++ ) {
+					
+					XContentBuilder builder = toEntry(requests.get(i), failures.get(i));
+					
+					if( builder == null ) {
+						LOGGER.error("Unable to keep failed " + requests.get(i).getClass().getSimpleName() + 
+									 " in dead letter file: " + failures.get(i));
+						continue;
+					}
+					
+					writer.write(builder.string());
+					writer.write('\n');
+					written++;
+				}
+			} catch (IOException e) {
+				LOGGER.error("Unable to write dead letter file: " + file.getPath() + " " + e.getLocalizedMessage());
+			}
+		}
+		
+		return written;
+	}
+	
+	/**
+	 * Sends documents of the file again. The file is renamed while 
+	 * it is replayed, documents failing again are written to a new 
+	 * dead letter file. Documents left by an interrupted replay are
+	 * replayed along with the file.
+	 * 
+	 * @param bulkIndexer
+	 * @return number of documents indexed
+	 */
+	public long replay( BulkIndexer bulkIndexer ) {
+		
+		File replayFile = new File(file.getPath() + REPLAY_SUFFIX);
+		
+		if( replayFile.isFile() ) {
+			// a previous replay didn't complete - its documents must not be overwritten
+			LOGGER.warn("Replaying documents left by an interrupted replay: " + replayFile.getPath());
+			if( file.isFile() ) {
+				append(file, replayFile);
+			}
+		} else if( !file.isFile() ) {
+			LOGGER.info("No dead letter file found: " + file.getPath());
+			return 0L;
+		} else if( !file.renameTo(replayFile) ) {
+			throw new RuntimeException("Unable to rename dead letter file: " + file.getPath());
+		}
+		
+		long indexed = 0L;
+		long failed  = 0L;
+		
+		try( BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(replayFile), UTF8)) ) {
+			
+			List<ActionRequest<?>> requests = new ArrayList<ActionRequest<?>>();
+			String line;
+			
+			while( (line = reader.readLine()) != null ) {
+				
+				if( line.trim().isEmpty() ) {
+					continue;
+				}
+				
+				requests.add(parse(line));
+				
+				if( requests.size() >= REPLAY_BATCH_SIZE ) {
+					long sent = send(bulkIndexer, requests);
+					indexed  += sent;
+					failed   += requests.size() - sent;
+					requests  = new ArrayList<ActionRequest<?>>();
+				}
+			}
+			
+			long sent = send(bulkIndexer, requests);
+			indexed  += sent;
+			failed   += requests.size() - sent;
+			
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read dead letter file: " + replayFile.getPath() + " " + e.getLocalizedMessage());
+		}
+		
+		if( !replayFile.delete() ) {
+			LOGGER.error("Unable to delete replayed dead letter file: " + replayFile.getPath());
+		}
+		
+		LOGGER.info("Replayed " + (indexed + failed) + " documents from dead letter file: " + file.getPath() + 
+					" - " + indexed + " indexed, " + failed + " failed again");
+		
+		return indexed;
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	/**
+	 * Moves the content of a file at the end of another one
+	 */
+	private static void append( File source, File target ) {
+		
+		try( FileInputStream in = new FileInputStream(source); 
+			 FileOutputStream out = new FileOutputStream(target, true) ) {
+			
+			byte[] buffer = new byte[8192];
+			int    read;
+			while( (read = in.read(buffer)) > 0 ) {
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to append dead letter file: " + source.getPath() + " to: " + 
+									   target.getPath() + " " + e.getLocalizedMessage());
+		}
+		
+		if( !source.delete() ) {
+			throw new RuntimeException("Unable to delete dead letter file: " + source.getPath());
+		}
+	}
+	
+	/**
+	 * @return XContentBuilder - line of a failed request, null if the request can't be kept
+	 */
+	private static XContentBuilder toEntry( ActionRequest<?> request, String failure ) throws IOException {
+		
+		if( request instanceof IndexRequest ) {
+			IndexRequest indexRequest = (IndexRequest)request;
+			
+			return XContentFactory.jsonBuilder()
+					.startObject()
+						.field(INDEX_TAG, indexRequest.index())
+						.field(TYPE_TAG, indexRequest.type())
+						.field(ID_TAG, indexRequest.id())
+						.field(FAILURE_TAG, failure)
+						.rawField(SOURCE_TAG, indexRequest.source())
+					.endObject();
+		}
+		
+		if( request instanceof UpdateRequest && ((UpdateRequest)request).doc() != null ) {
+			// scripted updates aren't used by the DAOs
+			UpdateRequest updateRequest = (UpdateRequest)request;
+			
+			XContentBuilder builder = XContentFactory.jsonBuilder()
+					.startObject()
+						.field(ACTION_TAG, UPDATE_ACTION)
+						.field(INDEX_TAG, updateRequest.index())
+						.field(TYPE_TAG, updateRequest.type())
+						.field(ID_TAG, updateRequest.id())
+						.field(FAILURE_TAG, failure)
+						.rawField(SOURCE_TAG, updateRequest.doc().source())
+						.field(DOC_AS_UPSERT_TAG, updateRequest.docAsUpsert());
+			
+			if( updateRequest.upsertRequest() != null ) {
+				builder.rawField(UPSERT_TAG, updateRequest.upsertRequest().source());
+			}
+			return builder.endObject();
+		}
+		
+		return null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static ActionRequest<?> parse( String line ) {
+		
+		Map<String, Object> entry = XContentHelper.convertToMap(new BytesArray(line), false).v2();
+		
+		if( UPDATE_ACTION.equals(entry.get(ACTION_TAG)) ) {
+			UpdateRequest request = new UpdateRequest( (String)entry.get(INDEX_TAG), (String)entry.get(TYPE_TAG), 
+													   (String)entry.get(ID_TAG) );
+			request.doc( (Map<String, Object>)entry.get(SOURCE_TAG) );
+			request.docAsUpsert( Boolean.TRUE.equals(entry.get(DOC_AS_UPSERT_TAG)) );
+			if( entry.get(UPSERT_TAG) != null ) {
+				request.upsert( (Map<String, Object>)entry.get(UPSERT_TAG) );
+			}
+			return request;
+		}
+		
+		// entries without action are documents to index
+		IndexRequest request = new IndexRequest( (String)entry.get(INDEX_TAG), (String)entry.get(TYPE_TAG), 
+												 (String)entry.get(ID_TAG) );
+		request.source( (Map<String, Object>)entry.get(SOURCE_TAG) );
+		return request;
+	}
+	
+	private static long send( BulkIndexer bulkIndexer, List<ActionRequest<?>> requests ) {
+		
+		if( requests.isEmpty() ) {
+			return 0L;
+		}
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(requests);
+		
+		try {
+			submission.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while replaying dead letter file");
+		}
+		
+		long indexed = 0L;
+		for( int i = 0; i < submission.getItems().length; i++ ) {
+			if( submission.getItems()[i] != null && !submission.getItems()[i].isFailed() ) {
+				indexed++;
+			}
+		}
+		return indexed;
+	}
+}
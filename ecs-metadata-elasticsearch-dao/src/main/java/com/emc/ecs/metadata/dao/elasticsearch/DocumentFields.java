@@ -0,0 +1,152 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import com.emc.ecs.metadata.dao.elasticsearch.JsonDocumentWriter.FieldName;
+
+
+/**
+ * Fields of a document being written, either into an XContentBuilder 
+ * (any encoding) or straight as JSON by a JsonDocumentWriter.
+ * 
+ * Documents list their fields once against this class so both 
+ * ways of writing them produce the same document.
+ */
+abstract class DocumentFields {
+
+	//================================
+	// Factory methods
+	//================================
+	static DocumentFields of( final XContentBuilder builder ) {
+		return new DocumentFields() {
+			
+			@Override
+			DocumentFields field( FieldName name, String value ) {
+				try {
+					builder.field(name.getName(), value);
+				} catch (IOException e) {
+					throw new RuntimeException(e.getLocalizedMessage());
+				}
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( String name, String value ) {
+				try {
+					builder.field(name, value);
+				} catch (IOException e) {
+					throw new RuntimeException(e.getLocalizedMessage());
+				}
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( FieldName name, Long value ) {
+				try {
+					builder.field(name.getName(), value);
+				} catch (IOException e) {
+					throw new RuntimeException(e.getLocalizedMessage());
+				}
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( FieldName name, Boolean value ) {
+				try {
+					builder.field(name.getName(), value);
+				} catch (IOException e) {
+					throw new RuntimeException(e.getLocalizedMessage());
+				}
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( FieldName name, Date value ) {
+				try {
+					builder.field(name.getName(), value);
+				} catch (IOException e) {
+					throw new RuntimeException(e.getLocalizedMessage());
+				}
+				return this;
+			}
+		};
+	}
+	
+	static DocumentFields of( final JsonDocumentWriter writer ) {
+		return new DocumentFields() {
+			
+			@Override
+			DocumentFields field( FieldName name, String value ) {
+				writer.field(name, value);
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( String name, String value ) {
+				writer.field(name, value);
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( FieldName name, Long value ) {
+				writer.field(name, value);
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( FieldName name, Boolean value ) {
+				writer.field(name, value);
+				return this;
+			}
+			
+			@Override
+			DocumentFields field( FieldName name, Date value ) {
+				writer.field(name, value);
+				return this;
+			}
+		};
+	}
+	
+	//================================
+	// Fields
+	//================================
+	abstract DocumentFields field( FieldName name, String value );
+	
+	// dynamic fields (custom metadata)
+	abstract DocumentFields field( String name, String value );
+	
+	abstract DocumentFields field( FieldName name, Long value );
+	
+	abstract DocumentFields field( FieldName name, Boolean value );
+	
+	abstract DocumentFields field( FieldName name, Date value );
+}
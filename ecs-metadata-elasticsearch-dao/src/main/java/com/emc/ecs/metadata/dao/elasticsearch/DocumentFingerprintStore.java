@@ -0,0 +1,478 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Keeps a fingerprint of the last indexed version of management
+ * documents (namespace billing, bucket billing, buckets) so unchanged
+ * documents don't need to be indexed again on every collection.
+ * 
+ * Fingerprints live in their own index, one document per entity.
+ * Unchanged entities only get their last_seen time updated. A full
+ * copy is still indexed once a day so purging old collections never
+ * removes the only copy of an entity. Collections run once a day or 
+ * less often therefore index every document, only more frequent 
+ * collections save indexing.
+ * 
+ * The cleaner removes fingerprints of entities not seen since its 
+ * threshold, and those of namespaces it drops.
+ */
+public class DocumentFingerprintStore {
+
+	public  final static String FINGERPRINT_INDEX_NAME = "ecs-document-fingerprint";
+	public  final static String FINGERPRINT_INDEX_TYPE = "fingerprint";
+	public  final static String FINGERPRINT_TAG        = "fingerprint";
+	public  final static String DOCUMENT_INDEX_TAG     = "document_index";
+	public  final static String LAST_INDEXED_TAG       = "last_indexed";
+	public  final static String LAST_SEEN_TAG          = "last_seen";
+	public  final static String NAMESPACE_TAG          = "namespace";
+	
+	// not relative to the collection schedule: the cleaner 
+	// threshold is set in days so a daily copy is always kept
+	private final static long   FULL_DOCUMENT_INTERVAL = TimeUnit.DAYS.toMillis(1);
+	private final static int    LOAD_BATCH_SIZE        = 5000;
+	
+	//=========================
+	// Private members
+	//=========================
+	private final static Logger LOGGER = LoggerFactory.getLogger(DocumentFingerprintStore.class);
+	
+	private final TransportClient         elasticClient;
+	private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<String, Fingerprint>();
+	
+	//=========================
+	// Constructor
+	//=========================
+	public DocumentFingerprintStore( TransportClient elasticClient ) {
+		this.elasticClient = elasticClient;
+		if( !ElasticClientRegistry.isBootstrapped(elasticClient, FINGERPRINT_INDEX_NAME) ) {
+			initFingerprintIndex();
+			ElasticClientRegistry.setBootstrapped(elasticClient, FINGERPRINT_INDEX_NAME);
+		}
+		loadFingerprints();
+	}
+	
+	//=========================
+	// Public static methods
+	//=========================
+	
+	/**
+	 * Deletes fingerprints of documents of an index whose entity
+	 * was not seen since the threshold date. The documents they
+	 * stand for are purged along with the old collections.
+	 * 
+	 * @param elasticClient
+	 * @param indexName - index the documents belong to
+	 * @param thresholdDate
+	 * @return number of fingerprints deleted
+	 */
+	public static long purgeOldFingerprints( Client elasticClient, String indexName, Date thresholdDate ) {
+		
+		QueryBuilder query = QueryBuilders.boolQuery()
+				.filter(QueryBuilders.termQuery(DOCUMENT_INDEX_TAG, indexName))
+				.filter(QueryBuilders.rangeQuery(LAST_SEEN_TAG).lt(thresholdDate.getTime()));
+		
+		return purgeFingerprints(elasticClient, query, "of index " + indexName + " not seen since " + thresholdDate);
+	}
+	
+	/**
+	 * Deletes fingerprints of all documents of a namespace
+	 * 
+	 * @param elasticClient
+	 * @param namespace
+	 * @return number of fingerprints deleted
+	 */
+	public static long purgeNamespace( Client elasticClient, String namespace ) {
+		
+		QueryBuilder query = QueryBuilders.boolQuery()
+				.filter(QueryBuilders.termQuery(NAMESPACE_TAG, namespace));
+		
+		return purgeFingerprints(elasticClient, query, "of namespace " + namespace);
+	}
+	
+	//=========================
+	// Public methods
+	//=========================
+	
+	/**
+	 * Starts tracking documents of one bulk insert
+	 * @param collectionTime
+	 * @return Batch
+	 */
+	public Batch newBatch( Date collectionTime ) {
+		return new Batch(collectionTime);
+	}
+	
+	/**
+	 * Computes fingerprint of a document 
+	 * @param source - document without collection time
+	 * @return String
+	 */
+	public static String fingerprint( XContentBuilder source ) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(source.bytes().toBytes());
+			
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for( byte b : hash ) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	//=========================
+	// Public classes
+	//=========================
+	
+	/**
+	 * Documents of one bulk insert. Documents reported as changed 
+	 * must be added to the bulk request in the same order.
+	 */
+	public class Batch {
+		
+		private final Date         collectionTime;
+		private final List<String> changedIds      = new ArrayList<String>();
+		private final List<String> changedIndices  = new ArrayList<String>();
+		private final List<String> changedSpaces   = new ArrayList<String>();
+		private final List<String> changedPrints   = new ArrayList<String>();
+		private final List<String> unchangedIds    = new ArrayList<String>();
+		
+		private Batch( Date collectionTime ) {
+			this.collectionTime = collectionTime;
+		}
+		
+		/**
+		 * Checks whether a document needs to be indexed
+		 * 
+		 * @param indexName - index the document belongs to
+		 * @param namespace - namespace of the entity
+		 * @param documentKey - natural key of the entity within the index
+		 * @param fingerprintSource - document without collection time
+		 * @return boolean
+		 */
+		public boolean isChanged( String indexName, String namespace, String documentKey, XContentBuilder fingerprintSource ) {
+			
+			String      id          = indexName + ":" + documentKey;
+			String      print       = fingerprint(fingerprintSource);
+			Fingerprint fingerprint = fingerprints.get(id);
+			
+			if( fingerprint != null &&
+				fingerprint.value.equals(print) &&
+				collectionTime.getTime() - fingerprint.lastIndexed < FULL_DOCUMENT_INTERVAL ) {
+				unchangedIds.add(id);
+				return false;
+			}
+			
+			changedIds.add(id);
+			changedIndices.add(indexName);
+			changedSpaces.add(namespace);
+			changedPrints.add(print);
+			return true;
+		}
+		
+		/**
+		 * Records fingerprints of successfully indexed documents
+		 * and heartbeats of unchanged documents
+		 * 
+		 * @param items - response per changed document (null if nothing changed)
+		 */
+		public void commit( BulkItemResponse[] items ) {
+			
+			BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+			List<String>       committedIds   = new ArrayList<String>();
+			List<Fingerprint>  committed      = new ArrayList<Fingerprint>();
+			
+			try {
+				for( int i = 0; i < changedIds.size(); i++ ) {
+					
+					if( items == null || items[i] == null || items[i].isFailed() ) {
+						// keep previous fingerprint so the document gets indexed next time
+						continue;
+					}
+					
+					requestBuilder.add( elasticClient.prepareIndex(FINGERPRINT_INDEX_NAME, FINGERPRINT_INDEX_TYPE, changedIds.get(i))
+							.setSource( XContentFactory.jsonBuilder()
+									.startObject()
+										.field(FINGERPRINT_TAG, changedPrints.get(i))
+										.field(DOCUMENT_INDEX_TAG, changedIndices.get(i))
+										.field(NAMESPACE_TAG, changedSpaces.get(i))
+										.field(LAST_INDEXED_TAG, collectionTime)
+										.field(LAST_SEEN_TAG, collectionTime)
+									.endObject() ) );
+					
+					committedIds.add(changedIds.get(i));
+					committed.add(new Fingerprint(changedPrints.get(i), collectionTime.getTime()));
+				}
+				
+				for( String id : unchangedIds ) {
+					requestBuilder.add( elasticClient.prepareUpdate(FINGERPRINT_INDEX_NAME, FINGERPRINT_INDEX_TYPE, id)
+							.setDoc( XContentFactory.jsonBuilder()
+									.startObject()
+										.field(LAST_SEEN_TAG, collectionTime)
+									.endObject() ) );
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e.getLocalizedMessage());
+			}
+			
+			if( requestBuilder.numberOfActions() == 0 ) {
+				return;
+			}
+			
+			BulkResponse fingerprintResponse = requestBuilder.execute().actionGet();
+			
+			// only trust fingerprints which were stored
+			for( int i = 0; i < committedIds.size(); i++ ) {
+				if( !fingerprintResponse.getItems()[i].isFailed() ) {
+					fingerprints.put(committedIds.get(i), committed.get(i));
+				}
+			}
+			
+			LOGGER.info( "Indexed " + committedIds.size() + " changed documents, " + unchangedIds.size() + 
+						 " unchanged documents only got a heartbeat in index: " + FINGERPRINT_INDEX_NAME );
+			
+			if( fingerprintResponse.hasFailures() ) {
+				LOGGER.error( "Failure(s) occured while updating items in Elasticsearch index: " + FINGERPRINT_INDEX_NAME + 
+							  " " + fingerprintResponse.buildFailureMessage() );
+			}
+		}
+	}
+	
+	//=========================
+	// Private methods
+	//=========================
+	private void loadFingerprints() {
+		
+		SearchResponse searchResponse = elasticClient.prepareSearch(FINGERPRINT_INDEX_NAME)
+				.setTypes(FINGERPRINT_INDEX_TYPE)
+				.setQuery(QueryBuilders.matchAllQuery())
+				.setScroll(new TimeValue(60000))
+				.setSize(LOAD_BATCH_SIZE)
+				.execute().actionGet();
+		
+		try {
+			while( searchResponse.getHits().getHits().length > 0 ) {
+				
+				for( SearchHit searchHit : searchResponse.getHits().getHits() ) {
+					Map<String, Object> source = searchHit.getSource();
+					Object value       = source.get(FINGERPRINT_TAG);
+					Object lastIndexed = source.get(LAST_INDEXED_TAG);
+					
+					if( value != null && lastIndexed != null ) {
+						fingerprints.put( searchHit.getId(), 
+										  new Fingerprint(value.toString(), parseTime(lastIndexed)) );
+					}
+				}
+				
+				searchResponse = elasticClient.prepareSearchScroll(searchResponse.getScrollId())
+						.setScroll(new TimeValue(60000))
+						.execute().actionGet();
+			}
+		} finally {
+			clearScroll(elasticClient, searchResponse.getScrollId());
+		}
+		
+		LOGGER.info("Loaded " + fingerprints.size() + " document fingerprints from index: " + FINGERPRINT_INDEX_NAME);
+	}
+	
+	private static long purgeFingerprints( Client elasticClient, QueryBuilder query, String description ) {
+		
+		if( !elasticClient.admin().indices()
+				.exists(new IndicesExistsRequest(FINGERPRINT_INDEX_NAME)).actionGet().isExists() ) {
+			// changes only indexing was never used
+			return 0L;
+		}
+		
+		SearchResponse searchResponse = elasticClient.prepareSearch(FINGERPRINT_INDEX_NAME)
+				.setTypes(FINGERPRINT_INDEX_TYPE)
+				.setQuery(query)
+				.setNoFields()
+				.setScroll(new TimeValue(60000))
+				.setSize(LOAD_BATCH_SIZE)
+				.execute().actionGet();
+		
+		long deleted = 0L;
+		
+		try {
+			while( searchResponse.getHits().getHits().length > 0 ) {
+				
+				BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+				for( SearchHit searchHit : searchResponse.getHits().getHits() ) {
+					requestBuilder.add(elasticClient.prepareDelete(FINGERPRINT_INDEX_NAME, FINGERPRINT_INDEX_TYPE, searchHit.getId()));
+				}
+				
+				BulkResponse bulkResponse = requestBuilder.execute().actionGet();
+				for( BulkItemResponse item : bulkResponse.getItems() ) {
+					if( !item.isFailed() ) {
+						deleted++;
+					}
+				}
+				if( bulkResponse.hasFailures() ) {
+					LOGGER.error( "Failure(s) occured while deleting items in Elasticsearch index: " + FINGERPRINT_INDEX_NAME + 
+								  " " + bulkResponse.buildFailureMessage() );
+				}
+				
+				searchResponse = elasticClient.prepareSearchScroll(searchResponse.getScrollId())
+						.setScroll(new TimeValue(60000))
+						.execute().actionGet();
+			}
+		} finally {
+			clearScroll(elasticClient, searchResponse.getScrollId());
+		}
+		
+		LOGGER.info("Deleted " + deleted + " document fingerprints " + description + " from index: " + FINGERPRINT_INDEX_NAME);
+		
+		return deleted;
+	}
+	
+	private static void clearScroll( Client elasticClient, String scrollId ) {
+		if( scrollId == null ) {
+			return;
+		}
+		try {
+			elasticClient.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
+		} catch (RuntimeException e) {
+			// the scroll expires on its own
+			LOGGER.warn("Unable to clear scroll of index: " + FINGERPRINT_INDEX_NAME + " " + e.getLocalizedMessage());
+		}
+	}
+	
+	static long parseTime( Object value ) {
+		if( value instanceof Number ) {
+			return ((Number)value).longValue();
+		}
+		try {
+			return DatatypeConverter.parseDateTime(value.toString()).getTimeInMillis();
+		} catch (IllegalArgumentException e) {
+			// unknown format - document will be fully indexed again
+			return 0L;
+		}
+	}
+	
+	private void initFingerprintIndex() {
+		
+		if (!elasticClient
+				.admin()
+				.indices()
+				.exists(new IndicesExistsRequest(FINGERPRINT_INDEX_NAME))
+				.actionGet()
+				.isExists()) {
+			elasticClient.admin().indices().create(new CreateIndexRequest(FINGERPRINT_INDEX_NAME)).actionGet();	
+		}
+		
+		// mapping is put on existing indices too so fields added since get mapped
+		
+		try {
+			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
+			    .preparePutMapping(FINGERPRINT_INDEX_NAME)
+			    .setType(FINGERPRINT_INDEX_TYPE)
+			    .setSource(XContentFactory.jsonBuilder().prettyPrint()
+			                .startObject()
+			                    .startObject(FINGERPRINT_INDEX_TYPE)
+			                        .startObject("properties")
+			                            .startObject( FINGERPRINT_TAG ).field("type", "string")
+			                            	.field("index", ElasticBillingDAO.NOT_ANALYZED_INDEX).endObject()
+			                            .startObject( DOCUMENT_INDEX_TAG ).field("type", "string")
+			                            	.field("index", ElasticBillingDAO.NOT_ANALYZED_INDEX).endObject()
+			                            .startObject( NAMESPACE_TAG ).field("type", "string")
+			                            	.field("index", ElasticBillingDAO.NOT_ANALYZED_INDEX).endObject()
+			                            .startObject( LAST_INDEXED_TAG ).field("type", "date")
+			                            	.field("format", "strict_date_optional_time||epoch_millis").endObject()
+			                            .startObject( LAST_SEEN_TAG ).field("type", "date")
+			                            	.field("format", "strict_date_optional_time||epoch_millis").endObject()
+			                        .endObject()
+			                    .endObject()
+			                .endObject())
+			    .execute().actionGet();
+
+			if (putMappingResponse.isAcknowledged()) {
+				LOGGER.info("Index Mapping Updated: " + FINGERPRINT_INDEX_NAME);
+			} else {
+				LOGGER.error("Index {} did not exist. " + 
+						"While attempting to create the index from stored ElasticSearch " +
+						"Templates we were unable to get an acknowledgement.", FINGERPRINT_INDEX_NAME);
+				LOGGER.error("Error Message: {}", putMappingResponse.toString());
+				throw new RuntimeException("Unable to create index " + FINGERPRINT_INDEX_NAME);
+			}
+			
+		} catch (IOException e) {
+			throw new RuntimeException( "Unable to create index " + 
+					FINGERPRINT_INDEX_NAME +
+					" " + e.getMessage()           );  
+		}
+	}
+	
+	//=========================
+	// Private classes
+	//=========================
+	private static class Fingerprint {
+		
+		private final String value;
+		private final long   lastIndexed;
+		
+		private Fingerprint( String value, long lastIndexed ) {
+			this.value       = value;
+			this.lastIndexed = lastIndexed;
+		}
+	}
+}
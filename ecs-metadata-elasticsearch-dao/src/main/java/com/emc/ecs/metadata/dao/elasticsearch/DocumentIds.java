@@ -0,0 +1,133 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+
+/**
+ * Derives document ids from the natural key of the collected entity 
+ * and the collection time. Indexing the same entity again for the 
+ * same collection (retries, resumed or overlapping runs) overwrites 
+ * the document instead of duplicating it.
+ */
+public class DocumentIds {
+
+	private final static Charset UTF8      = Charset.forName("UTF-8");
+	private final static byte    SEPARATOR = 0;
+	
+	private DocumentIds() {
+	}
+	
+	//=========================
+	// Public methods
+	//=========================
+	
+	/**
+	 * @param namespace
+	 * @param bucket
+	 * @param key
+	 * @param collectionTime
+	 * @return id of an object document
+	 */
+	public static String objectId( String namespace, String bucket, String key, Date collectionTime ) {
+		return hash(collectionTime, namespace, bucket, key);
+	}
+	
+	/**
+	 * @param namespace
+	 * @param bucket
+	 * @param key
+	 * @return id of the current state document of an object, 
+	 * shared by all collections
+	 */
+	public static String currentObjectId( String namespace, String bucket, String key ) {
+		return hash(null, namespace, bucket, key);
+	}
+	
+	/**
+	 * @param namespace
+	 * @param bucket
+	 * @param key
+	 * @param versionId
+	 * @param collectionTime
+	 * @return id of an object version document
+	 */
+	public static String versionId( String namespace, String bucket, String key, String versionId, Date collectionTime ) {
+		return hash(collectionTime, namespace, bucket, key, versionId);
+	}
+	
+	/**
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return id of a bucket document
+	 */
+	public static String bucketId( String namespace, String bucket, Date collectionTime ) {
+		return hash(collectionTime, namespace, bucket);
+	}
+	
+	/**
+	 * @param namespace
+	 * @param collectionTime
+	 * @return id of a namespace document
+	 */
+	public static String namespaceId( String namespace, Date collectionTime ) {
+		return hash(collectionTime, namespace);
+	}
+	
+	//=========================
+	// Private methods
+	//=========================
+	private static String hash( Date collectionTime, String... parts ) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			
+			for( String part : parts ) {
+				if( part != null ) {
+					digest.update(part.getBytes(UTF8));
+				}
+				// keeps ("ab", "c") and ("a", "bc") apart
+				digest.update(SEPARATOR);
+			}
+			digest.update(Long.toString((collectionTime != null) ? collectionTime.getTime() : 0L).getBytes(UTF8));
+			
+			byte[] hash = digest.digest();
+			
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for( byte b : hash ) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+}
@@ -29,30 +29,30 @@ package com.emc.ecs.metadata.dao.elasticsearch;
 
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.settings.Settings.Builder;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -70,8 +70,6 @@ import com.emc.ecs.metadata.dao.BillingDAO;
 
 public class ElasticBillingDAO implements BillingDAO {
 
-	private final static String CLIENT_SNIFFING_CONFIG       = "client.transport.sniff";
-	private final static String CLIENT_CLUSTER_NAME_CONFIG   = "cluster.name";
 	public  final static String BILLING_NAMESPACE_INDEX_NAME = "ecs-billing-namespace";
 	public  final static String BILLING_BUCKET_INDEX_NAME    = "ecs-billing-bucket";
 	public  final static String BILLING_NAMESPACE_INDEX_TYPE = "namespace-info";
@@ -87,6 +85,11 @@ public class ElasticBillingDAO implements BillingDAO {
 	// Private members
 	//=======================
 	private TransportClient elasticClient;
+	private DocumentFingerprintStore fingerprintStore;
+	private BulkIndexer     bulkIndexer;
+	private PartitionedIndices partitionedIndices;
+	private BulkLoadSettings   bulkLoadSettings;
+	private XContentType       documentEncoding;
 	private static Logger LOGGER = LoggerFactory.getLogger(ElasticBillingDAO.class);
 	
 	private static final String            OLD_DATA_DATE_PATTERN = "yyyy-MM-dd";
@@ -97,40 +100,49 @@ public class ElasticBillingDAO implements BillingDAO {
 	//========================
 	public ElasticBillingDAO(ElasticDAOConfig config) {
 		
-		try {
-			
-			Builder builder = Settings.settingsBuilder();
-			
-			// Check for new hosts within the cluster
-			builder.put(CLIENT_SNIFFING_CONFIG, true);
-			
-			// specify cluster name
-			if( config.getClusterName() != null ) {
-				builder.put(CLIENT_CLUSTER_NAME_CONFIG, config.getClusterName());
-			}
+		// DAOs of the same cluster share their client
+		elasticClient = ElasticClientRegistry.acquire(config);
+		
+		// documents of all collection threads share bulk requests
+		bulkIndexer = BulkIndexer.create(elasticClient, config);
+		
+		// JSON or binary document sources
+		documentEncoding = config.getDocumentEncoding();
+		
+		// indices are neither refreshed nor replicated during the run
+		if( config.getBulkLoadMode() ) {
+			bulkLoadSettings = new BulkLoadSettings(elasticClient, config.getBulkLoadStateFile());
+		}
+		
+		// init indexes
+		
+		if( PartitionedIndices.isPartitioned(config) ) {
+			// partition indices are created when first written to
+			partitionedIndices = new PartitionedIndices(elasticClient, new PartitionedIndices.IndexInitializer() {
+				@Override
+				public void initIndex(String alias, String indexName) {
+					initManagementIndex(alias, indexName);
+					if( bulkLoadSettings != null ) {
+						bulkLoadSettings.tune(indexName);
+					}
+				}
+			}, config);
+		} else {
+			initManagementIndex(BILLING_NAMESPACE_INDEX_NAME, BILLING_NAMESPACE_INDEX_NAME);
 			
-			Settings settings = builder.build();
+			initManagementIndex(BILLING_BUCKET_INDEX_NAME, BILLING_BUCKET_INDEX_NAME);
 			
-			// create client
-			elasticClient = TransportClient.builder().settings(settings).build();
+			initManagementIndex(OBJECT_BUCKET_INDEX_NAME, OBJECT_BUCKET_INDEX_NAME);
 			
-			// add hosts
-			for( String elasticHost : config.getHosts()) {
-				elasticClient.addTransportAddress(
-						new InetSocketTransportAddress(InetAddress.getByName(elasticHost), config.getPort()));				
+			if( bulkLoadSettings != null ) {
+				bulkLoadSettings.tune(BILLING_NAMESPACE_INDEX_NAME, BILLING_BUCKET_INDEX_NAME, OBJECT_BUCKET_INDEX_NAME);
 			}
-			
-			// init indexes
-			
-			initBillingNamespaceIndex();
-			
-			initBillingBucketIndex();
-			
-			initObjectBucketIndex();
-			
-		} catch (UnknownHostException e) {
-			throw new RuntimeException("Unable to initialize Eleasticsearch client " + e.getLocalizedMessage() );
-		}				
+		}
+		
+		// only index documents which changed since last collection
+		if( config.getIndexChangesOnly() ) {
+			fingerprintStore = new DocumentFingerprintStore(elasticClient);
+		}
 	}
 
 	//========================
@@ -141,41 +153,36 @@ public class ElasticBillingDAO implements BillingDAO {
 	 */
 	@Override
 	public void insert( NamespaceBillingInfo billingData, Date collectionTime ) {
-				
-		// Generate JSON for namespace billing info
-		XContentBuilder namespaceBuilder = toJsonFormat(billingData, collectionTime);				
-		elasticClient.prepareIndex(BILLING_NAMESPACE_INDEX_NAME, BILLING_NAMESPACE_INDEX_TYPE).setSource(namespaceBuilder).get();
 		
-		if( billingData.getBucketBillingInfo() == null ||
-			billingData.getBucketBillingInfo().isEmpty()   ) {
-			
-			// nothing to insert
+		if( fingerprintStore != null ) {
+			insertChanges(billingData, collectionTime);
 			return;
 		}
-
-		BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
-
+				
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
 		// Generate JSON for namespace billing info
-		for(BucketBillingInfo bucketBillingInfo : billingData.getBucketBillingInfo()) {
-			XContentBuilder bucketBuilder = toJsonFormat(bucketBillingInfo, collectionTime);			
-
-			IndexRequestBuilder request = elasticClient.prepareIndex()
-					.setIndex(BILLING_BUCKET_INDEX_NAME)
-					.setType(BILLING_BUCKET_INDEX_TYPE)
-					.setSource(bucketBuilder);
-			requestBuilder.add(request);
-		}
-
-		BulkResponse bulkResponse = requestBuilder.execute().actionGet();
-		int items = bulkResponse.getItems().length;
-		LOGGER.info( "Took " + bulkResponse.getTookInMillis() + " ms to index [" + items + "] items in Elasticsearch" + "index: " + 
-				BILLING_NAMESPACE_INDEX_NAME + " index type: " +  BILLING_NAMESPACE_INDEX_TYPE ); 
-
-		if( bulkResponse.hasFailures() ) {
-			LOGGER.error( "Failures occured while items in Elasticsearch " + "index: " + 
-					BILLING_NAMESPACE_INDEX_NAME + " index type: " +  BILLING_NAMESPACE_INDEX_TYPE );
+		XContentBuilder namespaceBuilder = toJsonFormat(billingData, collectionTime, newSourceBuilder());				
+		requests.add( elasticClient.prepareIndex(getWriteIndex(BILLING_NAMESPACE_INDEX_NAME, billingData.getNamespace(), collectionTime), BILLING_NAMESPACE_INDEX_TYPE)
+								.setId(DocumentIds.namespaceId(billingData.getNamespace(), collectionTime))
+								.setSource(namespaceBuilder).request() );
+		
+		if( billingData.getBucketBillingInfo() != null ) {
+			
+			// Generate JSON for bucket billing info
+			for(BucketBillingInfo bucketBillingInfo : billingData.getBucketBillingInfo()) {
+				XContentBuilder bucketBuilder = toJsonFormat(bucketBillingInfo, collectionTime, newSourceBuilder());			
+	
+				IndexRequestBuilder request = elasticClient.prepareIndex()
+						.setIndex(getWriteIndex(BILLING_BUCKET_INDEX_NAME, bucketBillingInfo.getNamespace(), collectionTime))
+						.setType(BILLING_BUCKET_INDEX_TYPE)
+						.setId(DocumentIds.bucketId(bucketBillingInfo.getNamespace(), bucketBillingInfo.getName(), collectionTime))
+						.setSource(bucketBuilder);
+				requests.add(request.request());
+			}
 		}
 		
+		index(requests, BILLING_NAMESPACE_INDEX_NAME);
 	}
 
 	/**
@@ -192,28 +199,26 @@ public class ElasticBillingDAO implements BillingDAO {
 			return;
 		}
 		
-		BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+		if( fingerprintStore != null ) {
+			insertChanges(objectBuckets, collectionTime);
+			return;
+		}
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
 		
 		// Generate JSON for object buckets info
 		for( ObjectBucket objectBucket : objectBuckets.getObjectBucket() ) {
-			XContentBuilder objectBucketBuilder = toJsonFormat(objectBucket, collectionTime);
+			XContentBuilder objectBucketBuilder = toJsonFormat(objectBucket, collectionTime, newSourceBuilder());
 			
 			IndexRequestBuilder request = elasticClient.prepareIndex()
-	                .setIndex(OBJECT_BUCKET_INDEX_NAME)
+	                .setIndex(getWriteIndex(OBJECT_BUCKET_INDEX_NAME, objectBucket.getNamespace(), collectionTime))
 	                .setType(OBJECT_BUCKET_INDEX_TYPE)
+	                .setId(DocumentIds.bucketId(objectBucket.getNamespace(), objectBucket.getName(), collectionTime))
 	                .setSource(objectBucketBuilder);
-			requestBuilder.add(request);
+			requests.add(request.request());
 		}
 		
-		BulkResponse bulkResponse = requestBuilder.execute().actionGet();
-	    int items = bulkResponse.getItems().length;
-		LOGGER.info( "Took " + bulkResponse.getTookInMillis() + " ms to index [" + items + "] items in ElasticSearch" + "index: " + 
-				    OBJECT_BUCKET_INDEX_NAME + " index type: " +  OBJECT_BUCKET_INDEX_TYPE ); 
-	    
-		if( bulkResponse.hasFailures() ) {
-			LOGGER.error( "Failures occured while items in ElasticSearch " + "index: " + 
-							OBJECT_BUCKET_INDEX_NAME + " index type: " +  OBJECT_BUCKET_INDEX_TYPE );
-		}
+		index(requests, OBJECT_BUCKET_INDEX_NAME);
 	}
 	
 	/**
@@ -225,12 +230,15 @@ public class ElasticBillingDAO implements BillingDAO {
 		switch(type) {
 		  case billing_bucket:
 			// Purge old Billing Bucket entries
+			DocumentFingerprintStore.purgeOldFingerprints(elasticClient, BILLING_BUCKET_INDEX_NAME, thresholdDate);
 			return purgeIndex(thresholdDate, BILLING_BUCKET_INDEX_NAME, BILLING_BUCKET_INDEX_TYPE);
 		case billing_namespace:
 			// Purge old Billing Namespace entries 
+			DocumentFingerprintStore.purgeOldFingerprints(elasticClient, BILLING_NAMESPACE_INDEX_NAME, thresholdDate);
 			return purgeIndex(thresholdDate, BILLING_NAMESPACE_INDEX_NAME, BILLING_NAMESPACE_INDEX_TYPE);
 		case object_bucket:
 			// Purge old Object Bucket entries
+			DocumentFingerprintStore.purgeOldFingerprints(elasticClient, OBJECT_BUCKET_INDEX_NAME, thresholdDate);
 			return purgeIndex(thresholdDate, OBJECT_BUCKET_INDEX_NAME, OBJECT_BUCKET_INDEX_TYPE);
 		default:
 			return 0L;
@@ -238,33 +246,237 @@ public class ElasticBillingDAO implements BillingDAO {
 	}
 	
 	
+	/**
+	 * Drops the namespace, bucket billing and bucket indices of 
+	 * a namespace when indices are partitioned per namespace, 
+	 * along with the document fingerprints of the namespace
+	 * 
+	 * @param namespace
+	 * @return number of documents dropped
+	 */
+	public Long purgeNamespace( String namespace ) {
+		
+		Long deletedDocs = 0L;
+		
+		deletedDocs += PartitionedIndices.dropNamespace(elasticClient, BILLING_NAMESPACE_INDEX_NAME, namespace);
+		deletedDocs += PartitionedIndices.dropNamespace(elasticClient, BILLING_BUCKET_INDEX_NAME, namespace);
+		deletedDocs += PartitionedIndices.dropNamespace(elasticClient, OBJECT_BUCKET_INDEX_NAME, namespace);
+		
+		DocumentFingerprintStore.purgeNamespace(elasticClient, namespace);
+		
+		return deletedDocs;
+	}
+	
+	
 	//=======================
 	// Private methods
 	//=======================
 	
+	//===========================
+	// Change only methods
+	//===========================
+	
+	/**
+	 * Indexes namespace and bucket billing documents which changed
+	 * since they were last indexed
+	 * 
+	 * @param billingData
+	 * @param collectionTime
+	 */
+	private void insertChanges( NamespaceBillingInfo billingData, Date collectionTime ) {
+		
+		DocumentFingerprintStore.Batch batch = fingerprintStore.newBatch(collectionTime);
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
+		if( batch.isChanged(BILLING_NAMESPACE_INDEX_NAME, billingData.getNamespace(), billingData.getNamespace(), toJsonFormat(billingData, null)) ) {
+			requests.add( elasticClient.prepareIndex(getWriteIndex(BILLING_NAMESPACE_INDEX_NAME, billingData.getNamespace(), collectionTime), BILLING_NAMESPACE_INDEX_TYPE)
+									.setId(DocumentIds.namespaceId(billingData.getNamespace(), collectionTime))
+									.setSource(toJsonFormat(billingData, collectionTime, newSourceBuilder())).request() );
+		}
+		
+		if( billingData.getBucketBillingInfo() != null ) {
+			for(BucketBillingInfo bucketBillingInfo : billingData.getBucketBillingInfo()) {
+				
+				String documentKey = bucketBillingInfo.getNamespace() + "/" + bucketBillingInfo.getName();
+				
+				if( batch.isChanged(BILLING_BUCKET_INDEX_NAME, bucketBillingInfo.getNamespace(), documentKey, toJsonFormat(bucketBillingInfo, null)) ) {
+					requests.add( elasticClient.prepareIndex(getWriteIndex(BILLING_BUCKET_INDEX_NAME, bucketBillingInfo.getNamespace(), collectionTime), BILLING_BUCKET_INDEX_TYPE)
+											.setId(DocumentIds.bucketId(bucketBillingInfo.getNamespace(), bucketBillingInfo.getName(), collectionTime))
+											.setSource(toJsonFormat(bucketBillingInfo, collectionTime, newSourceBuilder())).request() );
+				}
+			}
+		}
+		
+		executeChanges(requests, batch, BILLING_BUCKET_INDEX_NAME);
+	}
+	
+	/**
+	 * Indexes bucket documents which changed since they were last indexed
+	 * 
+	 * @param objectBuckets
+	 * @param collectionTime
+	 */
+	private void insertChanges( ObjectBuckets objectBuckets, Date collectionTime ) {
+		
+		DocumentFingerprintStore.Batch batch = fingerprintStore.newBatch(collectionTime);
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
+		for( ObjectBucket objectBucket : objectBuckets.getObjectBucket() ) {
+			
+			String documentKey = objectBucket.getNamespace() + "/" + objectBucket.getName();
+			
+			if( batch.isChanged(OBJECT_BUCKET_INDEX_NAME, objectBucket.getNamespace(), documentKey, toJsonFormat(objectBucket, null)) ) {
+				requests.add( elasticClient.prepareIndex(getWriteIndex(OBJECT_BUCKET_INDEX_NAME, objectBucket.getNamespace(), collectionTime), OBJECT_BUCKET_INDEX_TYPE)
+										.setId(DocumentIds.bucketId(objectBucket.getNamespace(), objectBucket.getName(), collectionTime))
+										.setSource(toJsonFormat(objectBucket, collectionTime, newSourceBuilder())).request() );
+			}
+		}
+		
+		executeChanges(requests, batch, OBJECT_BUCKET_INDEX_NAME);
+	}
+	
+	/**
+	 * @return builder of a document source in the configured encoding
+	 */
+	private XContentBuilder newSourceBuilder() {
+		try {
+			return XContentFactory.contentBuilder(documentEncoding);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	private void executeChanges( List<IndexRequest> requests, DocumentFingerprintStore.Batch batch, String indexName ) {
+		
+		BulkItemResponse[] items = null;
+		
+		if( !requests.isEmpty() ) {
+			items = index(requests, indexName);
+			LOGGER.info( "Indexed [" + requests.size() + "] changed items in Elasticsearch index: " + indexName ); 
+		}
+		
+		batch.commit(items);
+	}
+	
+	/**
+	 * Indexes documents through the bulk indexer and waits until they were sent
+	 * 
+	 * @param requests
+	 * @param indexName
+	 * @return BulkItemResponse[] - response per document
+	 */
+	private BulkItemResponse[] index( List<IndexRequest> requests, String indexName ) {
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(requests);
+		
+		try {
+			submission.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while indexing items in Elasticsearch index: " + indexName);
+		}
+		
+		if( !submission.isSuccess() ) {
+			for( BulkItemResponse item : submission.getItems() ) {
+				if( item == null ) {
+					// bulk request itself failed
+					throw new RuntimeException( "Unable to index items in Elasticsearch index: " + indexName + " " + 
+												submission.getFailure().getLocalizedMessage() );
+				}
+			}
+			LOGGER.error( "Failures occured while indexing items in Elasticsearch index: " + indexName + " " + 
+						  submission.getFailure().getLocalizedMessage() );
+		}
+		
+		return submission.getItems();
+	}
+	
+	/**
+	 * Creates an index of a data type along with its mapping,
+	 * once per process and cluster
+	 * 
+	 * @param alias
+	 * @param indexName
+	 */
+	private void initManagementIndex( String alias, String indexName ) {
+		
+		if( ElasticClientRegistry.isBootstrapped(elasticClient, indexName) ) {
+			return;
+		}
+		
+		if( BILLING_NAMESPACE_INDEX_NAME.equals(alias) ) {
+			initBillingNamespaceIndex(indexName);
+		} else if( BILLING_BUCKET_INDEX_NAME.equals(alias) ) {
+			initBillingBucketIndex(indexName);
+		} else {
+			initObjectBucketIndex(indexName);
+		}
+		
+		ElasticClientRegistry.setBootstrapped(elasticClient, indexName);
+	}
+	
+	/**
+	 * @param indexName - index or alias of the data type
+	 * @param namespace
+	 * @param collectionTime
+	 * @return index documents of the namespace collected at that time are written to
+	 */
+	private String getWriteIndex( String indexName, String namespace, Date collectionTime ) {
+		return (partitionedIndices != null) ? 
+				partitionedIndices.getWriteIndex(indexName, namespace, collectionTime) : indexName;
+	}
+	
 	//===========================
 	// Billing namespace methods
 	//===========================
 	
-	private void initBillingNamespaceIndex() {
+	private void initBillingNamespaceIndex( String indexName ) {
 		
 		if (elasticClient
 				.admin()
 				.indices()
-				.exists(new IndicesExistsRequest(BILLING_NAMESPACE_INDEX_NAME))
+				.exists(new IndicesExistsRequest(indexName))
 				.actionGet()
 				.isExists()) {
 			// Index already exists no need to re-create it
 			return;
 		}
 
-		elasticClient.admin().indices().create(new CreateIndexRequest(BILLING_NAMESPACE_INDEX_NAME)).actionGet();	
+		elasticClient.admin().indices().create(new CreateIndexRequest(indexName)).actionGet();	
 		
 		try {
 			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
-			    .preparePutMapping(BILLING_NAMESPACE_INDEX_NAME)
+			    .preparePutMapping(indexName)
 			    .setType(BILLING_NAMESPACE_INDEX_TYPE)
-			    .setSource(XContentFactory.jsonBuilder().prettyPrint()
+			    .setSource(billingNamespaceMapping())
+			    .execute().actionGet();
+			
+			if (putMappingResponse.isAcknowledged()) {
+	            LOGGER.info("Index Created: " + indexName);
+	        } else {
+	            LOGGER.error("Index {" + indexName + "} did not exist. " + 
+	                         "While attempting to create the index in ElasticSearch " +
+	            		     "Templates we were unable to get an acknowledgement.", indexName);
+	            LOGGER.error("Error Message: {}", putMappingResponse.toString());
+	            throw new RuntimeException("Unable to create index " + indexName);
+	        }			
+			
+		} catch (IOException e) {
+			 throw new RuntimeException( "Unable to create index " + 
+					 					 indexName +
+					 					 " " + e.getMessage()           );  
+		}
+		
+	}
+	
+	/**
+	 * Mapping of the namespace billing type, shared with the HTTP DAO
+	 * 
+	 * @return XContentBuilder
+	 * @throws IOException
+	 */
+	static XContentBuilder billingNamespaceMapping() throws IOException {
+		return XContentFactory.jsonBuilder().prettyPrint()
 			                .startObject()
 			                    .startObject(BILLING_NAMESPACE_INDEX_TYPE)
 			                        .startObject("properties")
@@ -279,7 +491,7 @@ public class ElasticBillingDAO implements BillingDAO {
 			                            .startObject( COLLECTION_TIME ).field("type", "date")
 			                            	.field("format", "strict_date_optional_time||epoch_millis").endObject() 
 			                        .endObject()
-			                        
+
 								// =================================
 							    // Dynamic fields won't be analyzed
 							    // =================================	
@@ -293,28 +505,10 @@ public class ElasticBillingDAO implements BillingDAO {
 									    .endObject()
 								   .endObject()
 							    .endArray()
-							    
-			                        
+
+
 			                    .endObject()
-			                .endObject())
-			    .execute().actionGet();
-			
-			if (putMappingResponse.isAcknowledged()) {
-	            LOGGER.info("Index Created: " + BILLING_NAMESPACE_INDEX_NAME);
-	        } else {
-	            LOGGER.error("Index {" + BILLING_NAMESPACE_INDEX_NAME + "} did not exist. " + 
-	                         "While attempting to create the index in ElasticSearch " +
-	            		     "Templates we were unable to get an acknowledgement.", BILLING_NAMESPACE_INDEX_NAME);
-	            LOGGER.error("Error Message: {}", putMappingResponse.toString());
-	            throw new RuntimeException("Unable to create index " + BILLING_NAMESPACE_INDEX_NAME);
-	        }			
-			
-		} catch (IOException e) {
-			 throw new RuntimeException( "Unable to create index " + 
-					 					 BILLING_NAMESPACE_INDEX_NAME +
-					 					 " " + e.getMessage()           );  
-		}
-		
+			                .endObject();
 	}
 	
 	private static XContentBuilder toJsonFormat( NamespaceBillingInfo billingInfo, 
@@ -333,6 +527,7 @@ public class ElasticBillingDAO implements BillingDAO {
 					.field(NamespaceBillingInfo.TOTAL_OBJECTS_TAG, billingInfo.getTotalObjects())
 					.field(NamespaceBillingInfo.NAMESPACE_TAG, billingInfo.getNamespace())	
 					.field(NamespaceBillingInfo.NAMESPACE_TAG + ANALYZED_TAG, billingInfo.getNamespace())
+					.field(NamespaceBillingInfo.SAMPLE_TIME_TAG, billingInfo.getSampleTime())
 					.field(COLLECTION_TIME, collectionTime)
 					.endObject();
 
@@ -358,93 +553,103 @@ public class ElasticBillingDAO implements BillingDAO {
 	// Billing bucket methods
 	//=======================
 	
-	private void initBillingBucketIndex() {
+	private void initBillingBucketIndex( String indexName ) {
 		
 		if (elasticClient
 				.admin()
 				.indices()
-				.exists(new IndicesExistsRequest(BILLING_BUCKET_INDEX_NAME))
+				.exists(new IndicesExistsRequest(indexName))
 				.actionGet()
 				.isExists()) {
 			// Index already exists no need to re-create it
 			return;
 		}
 
-		elasticClient.admin().indices().create(new CreateIndexRequest(BILLING_BUCKET_INDEX_NAME)).actionGet();	
+		elasticClient.admin().indices().create(new CreateIndexRequest(indexName)).actionGet();	
 		
 		
 		
 		try {
 			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
-			    .preparePutMapping(BILLING_BUCKET_INDEX_NAME)
+			    .preparePutMapping(indexName)
 			    .setType(BILLING_BUCKET_INDEX_TYPE)
-			    .setSource(XContentFactory.jsonBuilder().prettyPrint()
-			                .startObject()
-			                    .startObject(BILLING_BUCKET_INDEX_TYPE)
-			                        .startObject("properties")
-			                            // NAME Not Analyzed
-			                            .startObject( BucketBillingInfo.NAME_TAG ).field("type", "string")
-			                            	.field("index", NOT_ANALYZED_INDEX).endObject()
-			                            // NAME Analyzed
-			                            .startObject( BucketBillingInfo.NAME_TAG + ANALYZED_TAG ).field("type", "string")
-			                            	.field("index", ANALYZED_INDEX).endObject()
-			                            // NAMESPACE Not Analyzed
-			                            .startObject( BucketBillingInfo.NAMESPACE_TAG ).field("type", "string")
-			                            	.field("index", NOT_ANALYZED_INDEX).endObject()   
-			                            // TOTAL OBJECTS
-			                            .startObject( BucketBillingInfo.TOTAL_OBJECTS_TAG ).field("type", "long").endObject()
-			                            // TOTAL SIZE
-			                            .startObject( BucketBillingInfo.TOTAL_SIZE_TAG ).field("type", "long").endObject()
-			                            // TOTAL SIZE UNIT Not Analyzed
-			                            .startObject( BucketBillingInfo.TOTAL_SIZE_UNIT_TAG ).field("type", "string")
-		                            		.field("index", NOT_ANALYZED_INDEX).endObject() 
-		                            	// VPOOL ID Not Analyzed
-		                            	.startObject( BucketBillingInfo.VPOOL_ID_TAG ).field("type", "string")
-	                            			.field("index", NOT_ANALYZED_INDEX).endObject()
-	                            		// API_TYPE
-	                            		.startObject( BucketBillingInfo.API_TYPE ).field("type", "string")
-	                            			.field("index", NOT_ANALYZED_INDEX).endObject()
-	                            		// COLLECTION TIME
-			                            .startObject( COLLECTION_TIME ).field("type", "date")
-			                            	.field("format", "strict_date_optional_time||epoch_millis").endObject() 
-			                        .endObject()
-			                        
-								// =================================
-							    // Dynamic fields won't be analyzed
-							    // =================================	
-								.startArray("dynamic_templates")
-								   .startObject()
-								  		.startObject("notanalyzed")
-								  			.field("match", "*")
-								  			.field("match_mapping_type", "string")
-										   .startObject( "mapping" ).field("type", "string")
-											  .field("index", NOT_ANALYZED_INDEX).endObject()
-									    .endObject()
-								   .endObject()
-							    .endArray()
-			                        
-			                    .endObject()
-			                .endObject())
+			    .setSource(billingBucketMapping())
 			    .execute().actionGet();
 			
 			if (putMappingResponse.isAcknowledged()) {
-	            LOGGER.info("Index Created: " + BILLING_BUCKET_INDEX_NAME);
+	            LOGGER.info("Index Created: " + indexName);
 	        } else {
 	            LOGGER.error("Index {} did not exist. " + 
 	                         "While attempting to create the index from stored ElasticSearch " +
-	            		     "Templates we were unable to get an acknowledgement.", BILLING_BUCKET_INDEX_NAME);
+	            		     "Templates we were unable to get an acknowledgement.", indexName);
 	            LOGGER.error("Error Message: {}", putMappingResponse.toString());
-	            throw new RuntimeException("Unable to create index " + BILLING_BUCKET_INDEX_NAME);
+	            throw new RuntimeException("Unable to create index " + indexName);
 	        }			
 			
 		} catch (IOException e) {
 			 throw new RuntimeException( "Unable to create index " + 
-					 					 BILLING_BUCKET_INDEX_NAME +
+					 					 indexName +
 					 					 " " + e.getMessage()           );  
 		}
 		
 	}
 	
+	/**
+	 * Mapping of the bucket billing type, shared with the HTTP DAO
+	 * 
+	 * @return XContentBuilder
+	 * @throws IOException
+	 */
+	static XContentBuilder billingBucketMapping() throws IOException {
+		return XContentFactory.jsonBuilder().prettyPrint()
+					                .startObject()
+					                    .startObject(BILLING_BUCKET_INDEX_TYPE)
+					                        .startObject("properties")
+					                            // NAME Not Analyzed
+					                            .startObject( BucketBillingInfo.NAME_TAG ).field("type", "string")
+					                            	.field("index", NOT_ANALYZED_INDEX).endObject()
+					                            // NAME Analyzed
+					                            .startObject( BucketBillingInfo.NAME_TAG + ANALYZED_TAG ).field("type", "string")
+					                            	.field("index", ANALYZED_INDEX).endObject()
+					                            // NAMESPACE Not Analyzed
+					                            .startObject( BucketBillingInfo.NAMESPACE_TAG ).field("type", "string")
+					                            	.field("index", NOT_ANALYZED_INDEX).endObject()   
+					                            // TOTAL OBJECTS
+					                            .startObject( BucketBillingInfo.TOTAL_OBJECTS_TAG ).field("type", "long").endObject()
+					                            // TOTAL SIZE
+					                            .startObject( BucketBillingInfo.TOTAL_SIZE_TAG ).field("type", "long").endObject()
+					                            // TOTAL SIZE UNIT Not Analyzed
+					                            .startObject( BucketBillingInfo.TOTAL_SIZE_UNIT_TAG ).field("type", "string")
+				                            		.field("index", NOT_ANALYZED_INDEX).endObject() 
+				                            	// VPOOL ID Not Analyzed
+				                            	.startObject( BucketBillingInfo.VPOOL_ID_TAG ).field("type", "string")
+			                            			.field("index", NOT_ANALYZED_INDEX).endObject()
+			                            		// API_TYPE
+			                            		.startObject( BucketBillingInfo.API_TYPE ).field("type", "string")
+			                            			.field("index", NOT_ANALYZED_INDEX).endObject()
+			                            		// COLLECTION TIME
+					                            .startObject( COLLECTION_TIME ).field("type", "date")
+					                            	.field("format", "strict_date_optional_time||epoch_millis").endObject() 
+					                        .endObject()
+
+										// =================================
+									    // Dynamic fields won't be analyzed
+									    // =================================	
+										.startArray("dynamic_templates")
+										   .startObject()
+										  		.startObject("notanalyzed")
+										  			.field("match", "*")
+										  			.field("match_mapping_type", "string")
+												   .startObject( "mapping" ).field("type", "string")
+													  .field("index", NOT_ANALYZED_INDEX).endObject()
+											    .endObject()
+										   .endObject()
+									    .endArray()
+
+					                    .endObject()
+					                .endObject();
+	}
+	
 	
 	private static XContentBuilder toJsonFormat(BucketBillingInfo bucketInfo, 
 			Date collectionTime,
@@ -465,6 +670,7 @@ public class ElasticBillingDAO implements BillingDAO {
 					.field(BucketBillingInfo.TOTAL_SIZE_UNIT_TAG, bucketInfo.getTotalSizeUnit())
 					.field(BucketBillingInfo.VPOOL_ID_TAG, bucketInfo.getVpoolId())
 					.field(BucketBillingInfo.API_TYPE, bucketInfo.getApiType())
+					.field(BucketBillingInfo.SAMPLE_TIME_TAG, bucketInfo.getSampleTime())
 					.field(COLLECTION_TIME, collectionTime)
 					.endObject();
 
@@ -477,7 +683,7 @@ public class ElasticBillingDAO implements BillingDAO {
 	}
 
 
-	private static XContentBuilder toJsonFormat( BucketBillingInfo bucketInfo, Date collectionTime ) {						
+	static XContentBuilder toJsonFormat( BucketBillingInfo bucketInfo, Date collectionTime ) {						
 		return toJsonFormat(bucketInfo, collectionTime, null);
 	}
 	
@@ -486,146 +692,156 @@ public class ElasticBillingDAO implements BillingDAO {
 	// Object bucket methods
 	//======================
 	
-	private void initObjectBucketIndex() {
+	private void initObjectBucketIndex( String indexName ) {
 		
 		if (elasticClient
 				.admin()
 				.indices()
-				.exists(new IndicesExistsRequest(OBJECT_BUCKET_INDEX_NAME))
+				.exists(new IndicesExistsRequest(indexName))
 				.actionGet()
 				.isExists()) {
 			// Index already exists no need to re-create it
 			return;
 		}
 
-		elasticClient.admin().indices().create(new CreateIndexRequest(OBJECT_BUCKET_INDEX_NAME)).actionGet();	
+		elasticClient.admin().indices().create(new CreateIndexRequest(indexName)).actionGet();	
 		
 		
 		
 		try {
 			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
-					.preparePutMapping(OBJECT_BUCKET_INDEX_NAME)
+					.preparePutMapping(indexName)
 					.setType(OBJECT_BUCKET_INDEX_TYPE)
-					.setSource(XContentFactory.jsonBuilder().prettyPrint()
-							.startObject()
-							.startObject(OBJECT_BUCKET_INDEX_TYPE)
-								.startObject("properties")
-									// CREATED_TAG
-									.startObject(ObjectBucket.CREATED_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// SOFT_QUOTA_TAG
-									.startObject(ObjectBucket.SOFT_QUOTA_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject() 
-									// FS_ACCESS_ENABLED_TAG
-									.startObject(ObjectBucket.FS_ACCESS_ENABLED_TAG).field("type", "boolean").endObject()
-									// LOCKED_TAG
-									.startObject(ObjectBucket.LOCKED_TAG).field("type", "boolean").endObject()
-									// V_POOL_TAG
-									.startObject(ObjectBucket.V_POOL_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// NAMESPACE_TAG
-									.startObject(ObjectBucket.NAMESPACE_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// OWNER_TAG
-									.startObject(ObjectBucket.OWNER_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// IS_STALE_ALLOWED_TAG
-									.startObject(ObjectBucket.IS_STALE_ALLOWED_TAG).field("type", "boolean").endObject()
-									// IS_ENCRYPTION_ENABLED_TAG
-									.startObject(ObjectBucket.IS_ENCRYPTION_ENABLED_TAG).field("type", "boolean").endObject()
-									// DEFAULT_RETENTION_TAG
-									.startObject(ObjectBucket.DEFAULT_RETENTION_TAG).field("type", "long").endObject()
-									// BLOCK_SIZE_TAG
-									.startObject(ObjectBucket.BLOCK_SIZE_TAG).field("type", "long").endObject()
-									// NOTIFICATION_SIZE_TAG
-									.startObject(ObjectBucket.NOTIFICATION_SIZE_TAG).field("type", "long").endObject()
-									// API_TYPE_TAG
-									.startObject(ObjectBucket.API_TYPE_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// RETENTION_TAG
-									.startObject(ObjectBucket.RETENTION_TAG).field("type", "long").endObject()
-									// DEFAULT_GROUP_FILE_READ_PERMISSION_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_FILE_READ_PERMISSION_TAG).field("type", "boolean").endObject()
-									// DEFAULT_GROUP_FILE_WRITE_PERMISSION_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_FILE_WRITE_PERMISSION_TAG).field("type", "boolean").endObject()
-									// DEFAULT_GROUP_FILE_EXECUTE_PERMISSION_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_FILE_EXECUTE_PERMISSION_TAG).field("type", "boolean").endObject()
-									// DEFAULT_GROUP_DIR_READ_PERMISSION_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_DIR_READ_PERMISSION_TAG).field("type", "boolean").endObject()
-									// DEFAULT_GROUP_DIR_EXECUTE_PERMISSION_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_DIR_WRITE_PERMISSION_TAG).field("type", "boolean").endObject()
-									// DEFAULT_GROUP_DIR_EXECUTE_PERMISSION_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_DIR_EXECUTE_PERMISSION_TAG).field("type", "boolean").endObject()
-									// DEFAULT_GROUP_TAG
-									.startObject(ObjectBucket.DEFAULT_GROUP_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()		
-									// NAME_TAG
-									.startObject(ObjectBucket.NAME_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// NAME_TAG Analyzed
-									.startObject(ObjectBucket.NAME_TAG + ANALYZED_TAG).field("type", "string")
-										.field("index", ANALYZED_INDEX).endObject()
-									// ID_TAG
-									.startObject(ObjectBucket.ID_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// LINK_TAG
-									.startObject(ObjectBucket.LINK_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()	
-									// CREATION_TIME_TAG
-									.startObject(ObjectBucket.CREATION_TIME_TAG).field("type", "date")
-										.field("format", "strict_date_optional_time||epoch_millis").endObject()
-									// INACTIVE_TAG
-									.startObject(ObjectBucket.INACTIVE_TAG).field("type", "boolean").endObject()
-									// GLOBAL_TAG
-									.startObject(ObjectBucket.GLOBAL_TAG).field("type", "boolean").endObject()
-									// REMOTE_TAG
-									.startObject(ObjectBucket.REMOTE_TAG).field("type", "boolean").endObject()
-									// VDC_TAG
-									.startObject(ObjectBucket.VDC_TAG).field("type", "string")
-										.field("index", NOT_ANALYZED_INDEX).endObject()
-									// INTERNAL_TAG
-									.startObject(ObjectBucket.INTERNAL_TAG).field("type", "boolean").endObject()
-									// CREATED_TAG
-									.startObject(COLLECTION_TIME).field("type", "date")
-										.field("format", "strict_date_optional_time||epoch_millis").endObject()
-								.endObject()
-								
-								// =================================
-							    // Dynamic fields won't be analyzed
-							    // =================================	
-								.startArray("dynamic_templates")
-								   .startObject()
-								  		.startObject("notanalyzed")
-								  			.field("match", "*")
-								  			.field("match_mapping_type", "string")
-										   .startObject( "mapping" ).field("type", "string")
-											  .field("index", NOT_ANALYZED_INDEX).endObject()
-									    .endObject()
-								   .endObject()
-							    .endArray()
-							    
-							.endObject()
-						.endObject())
+					.setSource(objectBucketMapping())
 					.execute().actionGet();
 
 			if (putMappingResponse.isAcknowledged()) {
-	            LOGGER.info("Index Created: " + OBJECT_BUCKET_INDEX_NAME);
+	            LOGGER.info("Index Created: " + indexName);
 	        } else {
 	            LOGGER.error("Index {} did not exist. " + 
 	                         "While attempting to create the index from stored ElasticSearch " +
-	            		     "Templates we were unable to get an acknowledgement.", OBJECT_BUCKET_INDEX_NAME);
+	            		     "Templates we were unable to get an acknowledgement.", indexName);
 	            LOGGER.error("Error Message: {}", putMappingResponse.toString());
-	            throw new RuntimeException("Unable to create index " + OBJECT_BUCKET_INDEX_NAME);
+	            throw new RuntimeException("Unable to create index " + indexName);
 	        }			
 			
 		} catch (IOException e) {
 			 throw new RuntimeException( "Unable to create index " + 
-					 					 BILLING_BUCKET_INDEX_NAME +
+					 					 indexName +
 					 					 " " + e.getMessage()           );  
 		}
 		
 	}
 	
+	/**
+	 * Mapping of the bucket type, shared with the HTTP DAO
+	 * 
+	 * @return XContentBuilder
+	 * @throws IOException
+	 */
+	static XContentBuilder objectBucketMapping() throws IOException {
+		return XContentFactory.jsonBuilder().prettyPrint()
+				.startObject()
+				.startObject(OBJECT_BUCKET_INDEX_TYPE)
+					.startObject("properties")
+						// CREATED_TAG
+						.startObject(ObjectBucket.CREATED_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// SOFT_QUOTA_TAG
+						.startObject(ObjectBucket.SOFT_QUOTA_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject() 
+						// FS_ACCESS_ENABLED_TAG
+						.startObject(ObjectBucket.FS_ACCESS_ENABLED_TAG).field("type", "boolean").endObject()
+						// LOCKED_TAG
+						.startObject(ObjectBucket.LOCKED_TAG).field("type", "boolean").endObject()
+						// V_POOL_TAG
+						.startObject(ObjectBucket.V_POOL_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// NAMESPACE_TAG
+						.startObject(ObjectBucket.NAMESPACE_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// OWNER_TAG
+						.startObject(ObjectBucket.OWNER_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// IS_STALE_ALLOWED_TAG
+						.startObject(ObjectBucket.IS_STALE_ALLOWED_TAG).field("type", "boolean").endObject()
+						// IS_ENCRYPTION_ENABLED_TAG
+						.startObject(ObjectBucket.IS_ENCRYPTION_ENABLED_TAG).field("type", "boolean").endObject()
+						// DEFAULT_RETENTION_TAG
+						.startObject(ObjectBucket.DEFAULT_RETENTION_TAG).field("type", "long").endObject()
+						// BLOCK_SIZE_TAG
+						.startObject(ObjectBucket.BLOCK_SIZE_TAG).field("type", "long").endObject()
+						// NOTIFICATION_SIZE_TAG
+						.startObject(ObjectBucket.NOTIFICATION_SIZE_TAG).field("type", "long").endObject()
+						// API_TYPE_TAG
+						.startObject(ObjectBucket.API_TYPE_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// RETENTION_TAG
+						.startObject(ObjectBucket.RETENTION_TAG).field("type", "long").endObject()
+						// DEFAULT_GROUP_FILE_READ_PERMISSION_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_FILE_READ_PERMISSION_TAG).field("type", "boolean").endObject()
+						// DEFAULT_GROUP_FILE_WRITE_PERMISSION_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_FILE_WRITE_PERMISSION_TAG).field("type", "boolean").endObject()
+						// DEFAULT_GROUP_FILE_EXECUTE_PERMISSION_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_FILE_EXECUTE_PERMISSION_TAG).field("type", "boolean").endObject()
+						// DEFAULT_GROUP_DIR_READ_PERMISSION_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_DIR_READ_PERMISSION_TAG).field("type", "boolean").endObject()
+						// DEFAULT_GROUP_DIR_EXECUTE_PERMISSION_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_DIR_WRITE_PERMISSION_TAG).field("type", "boolean").endObject()
+						// DEFAULT_GROUP_DIR_EXECUTE_PERMISSION_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_DIR_EXECUTE_PERMISSION_TAG).field("type", "boolean").endObject()
+						// DEFAULT_GROUP_TAG
+						.startObject(ObjectBucket.DEFAULT_GROUP_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()		
+						// NAME_TAG
+						.startObject(ObjectBucket.NAME_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// NAME_TAG Analyzed
+						.startObject(ObjectBucket.NAME_TAG + ANALYZED_TAG).field("type", "string")
+							.field("index", ANALYZED_INDEX).endObject()
+						// ID_TAG
+						.startObject(ObjectBucket.ID_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// LINK_TAG
+						.startObject(ObjectBucket.LINK_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()	
+						// CREATION_TIME_TAG
+						.startObject(ObjectBucket.CREATION_TIME_TAG).field("type", "date")
+							.field("format", "strict_date_optional_time||epoch_millis").endObject()
+						// INACTIVE_TAG
+						.startObject(ObjectBucket.INACTIVE_TAG).field("type", "boolean").endObject()
+						// GLOBAL_TAG
+						.startObject(ObjectBucket.GLOBAL_TAG).field("type", "boolean").endObject()
+						// REMOTE_TAG
+						.startObject(ObjectBucket.REMOTE_TAG).field("type", "boolean").endObject()
+						// VDC_TAG
+						.startObject(ObjectBucket.VDC_TAG).field("type", "string")
+							.field("index", NOT_ANALYZED_INDEX).endObject()
+						// INTERNAL_TAG
+						.startObject(ObjectBucket.INTERNAL_TAG).field("type", "boolean").endObject()
+						// CREATED_TAG
+						.startObject(COLLECTION_TIME).field("type", "date")
+							.field("format", "strict_date_optional_time||epoch_millis").endObject()
+					.endObject()
+
+					// =================================
+				    // Dynamic fields won't be analyzed
+				    // =================================	
+					.startArray("dynamic_templates")
+					   .startObject()
+					  		.startObject("notanalyzed")
+					  			.field("match", "*")
+					  			.field("match_mapping_type", "string")
+							   .startObject( "mapping" ).field("type", "string")
+								  .field("index", NOT_ANALYZED_INDEX).endObject()
+						    .endObject()
+					   .endObject()
+				    .endArray()
+
+				.endObject()
+			.endObject();
+	}
+	
 	
 	private static XContentBuilder toJsonFormat( ObjectBucket objectBucket, 
 			Date collectionTime,
@@ -714,6 +930,11 @@ public class ElasticBillingDAO implements BillingDAO {
 
 	private Long purgeIndex(Date thresholdDate, String indexName, String indexType) {
 		
+		if( partitionedIndices != null && partitionedIndices.isDaily() ) {
+			// whole days of data get dropped at once
+			return partitionedIndices.dropIndicesBefore(indexName, thresholdDate);
+		}
+		
 		Long deletedDocs = 0L;
 		
 		String thresholdDateString = OLD_DATA_DATE_FORMAT.format(thresholdDate);
@@ -746,7 +967,7 @@ public class ElasticBillingDAO implements BillingDAO {
 				SearchHit searchHit = itr.next();	
 
 				DeleteRequestBuilder deleteRequest = elasticClient.prepareDelete()
-						.setIndex(indexName)
+						.setIndex(searchHit.getIndex())
 						.setType(indexType)
 						.setId(searchHit.getId());
 
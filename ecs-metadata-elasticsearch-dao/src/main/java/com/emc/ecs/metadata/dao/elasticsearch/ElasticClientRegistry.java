@@ -0,0 +1,276 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.Settings.Builder;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Elasticsearch clients shared by the DAOs of a process. 
+ * 
+ * DAOs configured for the same cluster (hosts, port and cluster name) 
+ * share one transport client - or one HTTP client when the REST API 
+ * is used - and the indices of a cluster are only checked and created 
+ * (with their mappings) the first time a DAO uses them.
+ */
+public class ElasticClientRegistry {
+
+	private final static String CLIENT_SNIFFING_CONFIG     = "client.transport.sniff";
+	private final static String CLIENT_CLUSTER_NAME_CONFIG = "cluster.name";
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger LOGGER = LoggerFactory.getLogger(ElasticClientRegistry.class);
+	
+	private final static Map<String, SharedClient> CLIENTS_BY_KEY    = new HashMap<String, SharedClient>();
+	private final static Map<Object, SharedClient> CLIENTS_BY_CLIENT = new IdentityHashMap<Object, SharedClient>();
+	
+	private ElasticClientRegistry() {
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Returns the client of the cluster, connecting to it the first time.
+	 * Each acquired client must be released once the DAO is done with it.
+	 * 
+	 * @param config
+	 * @return TransportClient
+	 */
+	public static synchronized TransportClient acquire( ElasticDAOConfig config ) {
+		
+		String clientKey = getClientKey(config);
+		
+		SharedClient sharedClient = CLIENTS_BY_KEY.get(clientKey);
+		
+		if( sharedClient == null ) {
+			sharedClient = new SharedClient(clientKey, newClient(config));
+			CLIENTS_BY_KEY.put(clientKey, sharedClient);
+			CLIENTS_BY_CLIENT.put(sharedClient.client, sharedClient);
+			LOGGER.info("Connected to Elasticsearch cluster: " + clientKey);
+		}
+		
+		sharedClient.references++;
+		return (TransportClient)sharedClient.client;
+	}
+	
+	/**
+	 * Returns the HTTP client of the cluster, creating it the first time.
+	 * Each acquired client must be released once the DAO is done with it.
+	 * 
+	 * @param config
+	 * @return ElasticHttpClient
+	 */
+	public static synchronized ElasticHttpClient acquireHttp( ElasticDAOConfig config ) {
+		
+		String clientKey = "http:" + getClientKey(config);
+		
+		SharedClient sharedClient = CLIENTS_BY_KEY.get(clientKey);
+		
+		if( PartitionedIndices.isPartitioned(config) || config.getBulkLoadMode() || 
+			config.getIndexChangesOnly() || config.getDocumentEncoding() != XContentType.JSON ||
+			config.getObjectCurrentState() ) {
+			throw new RuntimeException( "Partitioned indices, bulk load mode, indexing changes only, binary encodings and " + 
+										"the object current state index require the transport client" );
+		}
+		
+		if( sharedClient == null ) {
+			ElasticHttpClient httpClient = new ElasticHttpClient( config.getHosts(), config.getPort(), 
+																  config.getHttpConnectionsPerNode(), 
+																  config.getHttpCompression() );
+			sharedClient = new SharedClient(clientKey, httpClient);
+			CLIENTS_BY_KEY.put(clientKey, sharedClient);
+			CLIENTS_BY_CLIENT.put(sharedClient.client, sharedClient);
+			LOGGER.info("Using Elasticsearch REST API of cluster: " + clientKey);
+		}
+		
+		sharedClient.references++;
+		return (ElasticHttpClient)sharedClient.client;
+	}
+	
+	/**
+	 * Closes the client once no DAO uses it anymore
+	 * 
+	 * @param client
+	 */
+	public static synchronized void release( Client client ) {
+		releaseClient(client);
+	}
+	
+	/**
+	 * Closes the HTTP client once no DAO uses it anymore
+	 * 
+	 * @param client
+	 */
+	public static synchronized void release( ElasticHttpClient client ) {
+		releaseClient(client);
+	}
+	
+	/**
+	 * Closes all clients (end of the run)
+	 */
+	public static synchronized void closeAll() {
+		for( SharedClient sharedClient : new ArrayList<SharedClient>(CLIENTS_BY_KEY.values()) ) {
+			close(sharedClient);
+		}
+	}
+	
+	/**
+	 * @param client
+	 * @param indexName
+	 * @return true if the index was already checked and created through that client
+	 */
+	public static boolean isBootstrapped( Object client, String indexName ) {
+		SharedClient sharedClient = getSharedClient(client);
+		return sharedClient != null && sharedClient.bootstrappedIndices.contains(indexName);
+	}
+	
+	/**
+	 * Records that the index exists along with its mapping
+	 * 
+	 * @param client
+	 * @param indexName
+	 */
+	public static void setBootstrapped( Object client, String indexName ) {
+		SharedClient sharedClient = getSharedClient(client);
+		if( sharedClient != null ) {
+			sharedClient.bootstrappedIndices.add(indexName);
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private static synchronized SharedClient getSharedClient( Object client ) {
+		return CLIENTS_BY_CLIENT.get(client);
+	}
+	
+	private static void releaseClient( Object client ) {
+		
+		SharedClient sharedClient = CLIENTS_BY_CLIENT.get(client);
+		
+		if( sharedClient == null ) {
+			closeClient(client);
+			return;
+		}
+		
+		if( --sharedClient.references <= 0 ) {
+			close(sharedClient);
+		}
+	}
+	
+	private static void close( SharedClient sharedClient ) {
+		CLIENTS_BY_KEY.remove(sharedClient.clientKey);
+		CLIENTS_BY_CLIENT.remove(sharedClient.client);
+		closeClient(sharedClient.client);
+	}
+	
+	private static void closeClient( Object client ) {
+		if( client instanceof ElasticHttpClient ) {
+			((ElasticHttpClient)client).close();
+		} else {
+			((Client)client).close();
+		}
+	}
+	
+	private static String getClientKey( ElasticDAOConfig config ) {
+		
+		List<String> hosts = new ArrayList<String>();
+		for( String host : config.getHosts() ) {
+			hosts.add(host.trim());
+		}
+		Collections.sort(hosts);
+		
+		return config.getClusterName() + "@" + hosts + ":" + config.getPort();
+	}
+	
+	private static TransportClient newClient( ElasticDAOConfig config ) {
+		
+		Builder builder = Settings.settingsBuilder();
+		
+		// Check for new hosts within the cluster
+		builder.put(CLIENT_SNIFFING_CONFIG, true);
+		
+		// specify cluster name
+		if( config.getClusterName() != null ) {
+			builder.put(CLIENT_CLUSTER_NAME_CONFIG, config.getClusterName());
+		}
+		
+		// create client
+		TransportClient client = TransportClient.builder().settings(builder.build()).build();
+		
+		try {
+			// add hosts
+			for( String elasticHost : config.getHosts() ) {
+				client.addTransportAddress(
+						new InetSocketTransportAddress(InetAddress.getByName(elasticHost.trim()), config.getPort()));
+			}
+		} catch (UnknownHostException e) {
+			client.close();
+			throw new RuntimeException("Unable to initialize Elasticsearch client " + e.getLocalizedMessage());
+		}
+		
+		return client;
+	}
+	
+	//================================
+	// Client shared by DAOs
+	//================================
+	private static class SharedClient {
+		
+		private final String          clientKey;
+		private final Object          client;
+		private final Set<String>     bootstrappedIndices = Collections.synchronizedSet(new HashSet<String>());
+		private int                   references = 0;
+		
+		private SharedClient( String clientKey, Object client ) {
+			this.clientKey = clientKey;
+			this.client    = client;
+		}
+	}
+}
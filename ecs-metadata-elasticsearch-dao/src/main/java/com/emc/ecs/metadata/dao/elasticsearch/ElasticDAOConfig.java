@@ -27,6 +27,9 @@ SOFTWARE.
 package com.emc.ecs.metadata.dao.elasticsearch;
 
 import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentType;
 
 /**
  * Configuration class holding config parameters
@@ -36,12 +39,41 @@ import java.util.List;
  */
 public class ElasticDAOConfig {
 	
+	/**
+	 * Fields indexed by the object and object version indices
+	 */
+	public enum MappingProfile {
+		// every field searchable and aggregatable
+		standard,
+		// no _all field, fields only displayed are not indexed, 
+		// best_compression codec
+		lean
+	};
+	
 	//==========================
 	// Private members
 	//==========================
 	List<String> hosts;
 	Integer      port;
 	String       clusterName;
+	boolean      indexChangesOnly    = false;
+	boolean      dailyIndices        = false;
+	boolean      namespaceIndices    = false;
+	Map<String, String> namespaceIndexGroups;
+	boolean      bulkLoadMode        = false;
+	String       bulkLoadStateFile   = BulkLoadSettings.DEFAULT_STATE_FILE;
+	int          bulkActions         = BulkIndexer.DEFAULT_MAX_ACTIONS;
+	int          bulkSizeMb          = BulkIndexer.DEFAULT_MAX_SIZE_MB;
+	int          bulkConcurrency     = BulkIndexer.DEFAULT_CONCURRENT_BULKS;
+	long         bulkFlushIntervalMs = BulkIndexer.DEFAULT_FLUSH_INTERVAL_MS;
+	String       deadLetterFile      = DeadLetterFile.DEFAULT_FILE_NAME;
+	XContentType documentEncoding    = XContentType.JSON;
+	boolean      http                = false;
+	int          httpConnectionsPerNode = ElasticHttpClient.DEFAULT_CONNECTIONS_PER_NODE;
+	boolean      httpCompression     = false;
+	MappingProfile mappingProfile    = MappingProfile.standard;
+	int          keyPathDepth        = 0;
+	boolean      objectCurrentState  = false;
 	
 	//==========================
 	// Public Methods
@@ -66,4 +98,185 @@ public class ElasticDAOConfig {
 	public void setClusterName(String clusterName) {
 		this.clusterName = clusterName;
 	}
+	
+	/**
+	 * @return true if management documents are only indexed when they changed
+	 */
+	public boolean getIndexChangesOnly() {
+		return indexChangesOnly;
+	}
+	public void setIndexChangesOnly(boolean indexChangesOnly) {
+		this.indexChangesOnly = indexChangesOnly;
+	}
+	
+	/**
+	 * @return true if documents are written to one index per collection day
+	 */
+	public boolean getDailyIndices() {
+		return dailyIndices;
+	}
+	public void setDailyIndices(boolean dailyIndices) {
+		this.dailyIndices = dailyIndices;
+	}
+	
+	/**
+	 * @return true if documents are written to one index per namespace
+	 */
+	public boolean getNamespaceIndices() {
+		return namespaceIndices;
+	}
+	public void setNamespaceIndices(boolean namespaceIndices) {
+		this.namespaceIndices = namespaceIndices;
+	}
+	
+	/**
+	 * @return group name per namespace, namespaces of a group share their indices
+	 */
+	public Map<String, String> getNamespaceIndexGroups() {
+		return namespaceIndexGroups;
+	}
+	public void setNamespaceIndexGroups(Map<String, String> namespaceIndexGroups) {
+		this.namespaceIndexGroups = namespaceIndexGroups;
+	}
+	
+	/**
+	 * @return true if indices are neither refreshed nor replicated while collecting
+	 */
+	public boolean getBulkLoadMode() {
+		return bulkLoadMode;
+	}
+	public void setBulkLoadMode(boolean bulkLoadMode) {
+		this.bulkLoadMode = bulkLoadMode;
+	}
+	
+	/**
+	 * @return file original index settings are kept in during bulk load mode
+	 */
+	public String getBulkLoadStateFile() {
+		return bulkLoadStateFile;
+	}
+	public void setBulkLoadStateFile(String bulkLoadStateFile) {
+		this.bulkLoadStateFile = bulkLoadStateFile;
+	}
+	
+	/**
+	 * @return maximum number of documents per bulk request
+	 */
+	public int getBulkActions() {
+		return bulkActions;
+	}
+	public void setBulkActions(int bulkActions) {
+		this.bulkActions = bulkActions;
+	}
+	
+	/**
+	 * @return maximum size of a bulk request in MB
+	 */
+	public int getBulkSizeMb() {
+		return bulkSizeMb;
+	}
+	public void setBulkSizeMb(int bulkSizeMb) {
+		this.bulkSizeMb = bulkSizeMb;
+	}
+	
+	/**
+	 * @return number of bulk requests in flight at once
+	 */
+	public int getBulkConcurrency() {
+		return bulkConcurrency;
+	}
+	public void setBulkConcurrency(int bulkConcurrency) {
+		this.bulkConcurrency = bulkConcurrency;
+	}
+	
+	/**
+	 * @return maximum time documents wait before being sent
+	 */
+	public long getBulkFlushIntervalMs() {
+		return bulkFlushIntervalMs;
+	}
+	public void setBulkFlushIntervalMs(long bulkFlushIntervalMs) {
+		this.bulkFlushIntervalMs = bulkFlushIntervalMs;
+	}
+	
+	/**
+	 * @return file documents Elasticsearch permanently refused are written to (null to only log them)
+	 */
+	public String getDeadLetterFile() {
+		return deadLetterFile;
+	}
+	public void setDeadLetterFile(String deadLetterFile) {
+		this.deadLetterFile = deadLetterFile;
+	}
+	
+	/**
+	 * @return encoding of the document sources sent to Elasticsearch (JSON, SMILE or CBOR)
+	 */
+	public XContentType getDocumentEncoding() {
+		return documentEncoding;
+	}
+	public void setDocumentEncoding(XContentType documentEncoding) {
+		this.documentEncoding = documentEncoding;
+	}
+	
+	/**
+	 * @return true if documents are sent through the REST API instead of the transport protocol
+	 */
+	public boolean getHttp() {
+		return http;
+	}
+	public void setHttp(boolean http) {
+		this.http = http;
+	}
+	
+	/**
+	 * @return number of HTTP connections kept open per Elasticsearch node
+	 */
+	public int getHttpConnectionsPerNode() {
+		return httpConnectionsPerNode;
+	}
+	public void setHttpConnectionsPerNode(int httpConnectionsPerNode) {
+		this.httpConnectionsPerNode = httpConnectionsPerNode;
+	}
+	
+	/**
+	 * @return true if HTTP request bodies are gzip compressed (requires http.compression on the nodes)
+	 */
+	public boolean getHttpCompression() {
+		return httpCompression;
+	}
+	public void setHttpCompression(boolean httpCompression) {
+		this.httpCompression = httpCompression;
+	}
+	
+	/**
+	 * @return mapping profile of newly created object and object version indices
+	 */
+	public MappingProfile getMappingProfile() {
+		return mappingProfile;
+	}
+	public void setMappingProfile(MappingProfile mappingProfile) {
+		this.mappingProfile = mappingProfile;
+	}
+	
+	/**
+	 * @return number of key folder levels written to object documents (0 for none)
+	 */
+	public int getKeyPathDepth() {
+		return keyPathDepth;
+	}
+	public void setKeyPathDepth(int keyPathDepth) {
+		this.keyPathDepth = keyPathDepth;
+	}
+	
+	/**
+	 * @return true if objects are upserted into a current state index 
+	 * instead of being indexed again for every collection
+	 */
+	public boolean getObjectCurrentState() {
+		return objectCurrentState;
+	}
+	public void setObjectCurrentState(boolean objectCurrentState) {
+		this.objectCurrentState = objectCurrentState;
+	}
 }
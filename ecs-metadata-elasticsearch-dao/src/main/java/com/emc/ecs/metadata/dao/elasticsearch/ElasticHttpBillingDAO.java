@@ -0,0 +1,235 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.management.entity.BucketBillingInfo;
+import com.emc.ecs.management.entity.NamespaceBillingInfo;
+import com.emc.ecs.management.entity.ObjectBucket;
+import com.emc.ecs.management.entity.ObjectBuckets;
+import com.emc.ecs.metadata.dao.BillingDAO;
+
+
+/**
+ * Billing DAO sending documents through the Elasticsearch REST API.
+ * 
+ * Indices, mappings, document ids and documents are the same as the
+ * ones of the transport DAO ({@link ElasticBillingDAO}). Indexing only 
+ * changed documents, partitioned indices and bulk load mode rely on 
+ * the transport client and are not available through HTTP.
+ */
+public class ElasticHttpBillingDAO implements BillingDAO {
+
+	//========================
+	// Private members
+	//========================
+	private ElasticHttpClient httpClient;
+	private BulkIndexer       bulkIndexer;
+	private static Logger LOGGER = LoggerFactory.getLogger(ElasticHttpBillingDAO.class);
+	
+	//========================
+	// Constructor
+	//========================
+	public ElasticHttpBillingDAO( ElasticDAOConfig config ) {
+		
+		// DAOs of the same cluster share their client
+		httpClient = ElasticClientRegistry.acquireHttp(config);
+		
+		// documents of all collection threads share bulk requests
+		bulkIndexer = BulkIndexer.create(httpClient, config);
+		
+		try {
+			initIndex( ElasticBillingDAO.BILLING_NAMESPACE_INDEX_NAME, ElasticBillingDAO.BILLING_NAMESPACE_INDEX_TYPE, 
+					   ElasticBillingDAO.billingNamespaceMapping() );
+			
+			initIndex( ElasticBillingDAO.BILLING_BUCKET_INDEX_NAME, ElasticBillingDAO.BILLING_BUCKET_INDEX_TYPE, 
+					   ElasticBillingDAO.billingBucketMapping() );
+			
+			initIndex( ElasticBillingDAO.OBJECT_BUCKET_INDEX_NAME, ElasticBillingDAO.OBJECT_BUCKET_INDEX_TYPE, 
+					   ElasticBillingDAO.objectBucketMapping() );
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to create mappings " + e.getLocalizedMessage());
+		}
+	}
+
+	//========================
+	// Public methods
+	//========================
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( NamespaceBillingInfo billingData, Date collectionTime ) {
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
+		// Generate JSON for namespace billing info
+		requests.add( new IndexRequest( ElasticBillingDAO.BILLING_NAMESPACE_INDEX_NAME, 
+										ElasticBillingDAO.BILLING_NAMESPACE_INDEX_TYPE,
+										DocumentIds.namespaceId(billingData.getNamespace(), collectionTime) )
+							.source(ElasticBillingDAO.toJsonFormat(billingData, collectionTime)) );
+		
+		if( billingData.getBucketBillingInfo() != null ) {
+			
+			// Generate JSON for bucket billing info
+			for( BucketBillingInfo bucketBillingInfo : billingData.getBucketBillingInfo() ) {
+				requests.add( new IndexRequest( ElasticBillingDAO.BILLING_BUCKET_INDEX_NAME, 
+												ElasticBillingDAO.BILLING_BUCKET_INDEX_TYPE,
+												DocumentIds.bucketId(bucketBillingInfo.getNamespace(), bucketBillingInfo.getName(), collectionTime) )
+									.source(ElasticBillingDAO.toJsonFormat(bucketBillingInfo, collectionTime)) );
+			}
+		}
+		
+		index(requests, ElasticBillingDAO.BILLING_NAMESPACE_INDEX_NAME);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( ObjectBuckets objectBuckets, Date collectionTime ) {
+		
+		if( objectBuckets == null || 
+			objectBuckets.getObjectBucket() == null ||
+			objectBuckets.getObjectBucket().isEmpty() ) {
+			
+			// nothing to insert
+			return;
+		}
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
+		// Generate JSON for object buckets info
+		for( ObjectBucket objectBucket : objectBuckets.getObjectBucket() ) {
+			requests.add( new IndexRequest( ElasticBillingDAO.OBJECT_BUCKET_INDEX_NAME, 
+											ElasticBillingDAO.OBJECT_BUCKET_INDEX_TYPE,
+											DocumentIds.bucketId(objectBucket.getNamespace(), objectBucket.getName(), collectionTime) )
+								.source(ElasticBillingDAO.toJsonFormat(objectBucket, collectionTime)) );
+		}
+		
+		index(requests, ElasticBillingDAO.OBJECT_BUCKET_INDEX_NAME);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long purgeOldData( ManagementDataType type, Date thresholdDate ) {
+
+		switch(type) {
+		  case billing_bucket:
+			// Purge old Billing Bucket entries
+			return purgeIndex(thresholdDate, ElasticBillingDAO.BILLING_BUCKET_INDEX_NAME, ElasticBillingDAO.BILLING_BUCKET_INDEX_TYPE);
+		  case billing_namespace:
+			// Purge old Billing Namespace entries 
+			return purgeIndex(thresholdDate, ElasticBillingDAO.BILLING_NAMESPACE_INDEX_NAME, ElasticBillingDAO.BILLING_NAMESPACE_INDEX_TYPE);
+		  case object_bucket:
+			// Purge old Object Bucket entries
+			return purgeIndex(thresholdDate, ElasticBillingDAO.OBJECT_BUCKET_INDEX_NAME, ElasticBillingDAO.OBJECT_BUCKET_INDEX_TYPE);
+		  default:
+			return 0L;
+		}
+	}
+	
+	//=======================
+	// Private methods
+	//=======================
+	
+	/**
+	 * Creates an index along with its mapping, once per process and cluster
+	 * 
+	 * @param indexName
+	 * @param indexType
+	 * @param mapping
+	 */
+	private void initIndex( String indexName, String indexType, XContentBuilder mapping ) {
+		
+		if( ElasticClientRegistry.isBootstrapped(httpClient, indexName) ) {
+			return;
+		}
+		
+		httpClient.createIndex(indexName, indexType, mapping);
+		
+		ElasticClientRegistry.setBootstrapped(httpClient, indexName);
+	}
+	
+	/**
+	 * Indexes documents through the bulk indexer and waits until they were sent
+	 * 
+	 * @param requests
+	 * @param indexName
+	 */
+	private void index( List<IndexRequest> requests, String indexName ) {
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(requests);
+		
+		try {
+			submission.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while indexing items in Elasticsearch index: " + indexName);
+		}
+		
+		if( submission.isSuccess() ) {
+			return;
+		}
+		
+		for( BulkItemResponse item : submission.getItems() ) {
+			if( item == null ) {
+				// bulk request itself failed
+				throw new RuntimeException( "Unable to index items in Elasticsearch index: " + indexName + " " + 
+											submission.getFailure().getLocalizedMessage() );
+			}
+		}
+		
+		LOGGER.error( "Failures occured while indexing items in Elasticsearch index: " + indexName + " " + 
+					  submission.getFailure().getLocalizedMessage() );
+	}
+	
+	/**
+	 * Purges documents based on collection dates
+	 * 
+	 * @param thresholdDate
+	 * @param indexName
+	 * @param indexType
+	 * @return Long
+	 */
+	private Long purgeIndex( Date thresholdDate, String indexName, String indexType ) {
+		return httpClient.deleteBefore(indexName, indexType, ElasticBillingDAO.COLLECTION_TIME, thresholdDate);
+	}
+}
@@ -0,0 +1,921 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Asynchronous client of the Elasticsearch REST API, built 
+ * on the Apache HttpAsyncClient.
+ * 
+ * Requests are spread round robin over the configured nodes, each 
+ * node having a pool of keep-alive connections. Requests wait in the 
+ * pool of the node while all its connections are busy, so no thread 
+ * is held while a request is in flight. Responses are handed to the 
+ * listeners on a callback thread, never on an I/O thread.
+ * 
+ * A node which can't be reached is skipped for a while and requests 
+ * which didn't get a response from it are sent to the next node. 
+ * Request bodies are gzip compressed when compression is enabled 
+ * (http.compression has to be enabled on Elasticsearch 2.x nodes).
+ */
+public class ElasticHttpClient implements BulkIndexer.BulkClient {
+
+	public  final static int    DEFAULT_PORT                 = 9200;
+	public  final static int    DEFAULT_CONNECTIONS_PER_NODE = 4;
+	
+	private final static long   DEAD_NODE_RETRY_MS           = 30000L;
+	private final static int    CONNECT_TIMEOUT_MS           = 10000;
+	private final static int    READ_TIMEOUT_MS              = 120000;
+	private final static int    MIN_COMPRESSED_BYTES         = 1024;
+	// largest page a search without scroll may return (index.max_result_window)
+	private final static int    PURGE_BATCH_SIZE             = 10000;
+	private final static String GZIP_ENCODING                = "gzip";
+	private final static String PURGE_DATE_PATTERN           = "yyyy-MM-dd";
+	private final static Charset UTF8                        = Charset.forName("UTF-8");
+	
+	
+	/**
+	 * Response of a request
+	 */
+	public static class Response {
+		
+		private final int    status;
+		private final byte[] body;
+		
+		Response( int status, byte[] body ) {
+			this.status = status;
+			this.body   = body;
+		}
+		
+		public int getStatus() {
+			return status;
+		}
+		
+		public byte[] getBody() {
+			return body;
+		}
+		
+		/**
+		 * @return JSON body as a map
+		 */
+		public Map<String, Object> asMap() {
+			return XContentHelper.convertToMap(new BytesArray(body), false).v2();
+		}
+		
+		@Override
+		public String toString() {
+			return status + " " + new String(body, UTF8);
+		}
+	}
+	
+	/**
+	 * Notified once a request completes
+	 */
+	public interface ResponseListener {
+		
+		/**
+		 * @param response - whatever its status
+		 */
+		public void onResponse( Response response );
+		
+		/**
+		 * @param e - no node could answer the request
+		 */
+		public void onFailure( Throwable e );
+	}
+	
+	/**
+	 * Failure carrying the HTTP status returned by Elasticsearch
+	 */
+	private static class HttpStatusException extends ElasticsearchException {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final RestStatus status;
+		
+		HttpStatusException( String message, int status ) {
+			super(message);
+			this.status = toRestStatus(status);
+		}
+		
+		@Override
+		public RestStatus status() {
+			return status;
+		}
+	}
+	
+	/**
+	 * Elasticsearch node
+	 */
+	private static class Node {
+		
+		private final HttpHost host;
+		private volatile long  deadUntil = 0L;
+		
+		Node( String host, int port ) {
+			this.host = new HttpHost(host, port);
+		}
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger LOGGER = LoggerFactory.getLogger(ElasticHttpClient.class);
+	
+	private final List<Node>                nodes = new ArrayList<Node>();
+	private final boolean                   compression;
+	private final CloseableHttpAsyncClient  httpClient;
+	private final ExecutorService           callbackExecutor;
+	private final AtomicInteger             nextNode = new AtomicInteger(0);
+	private volatile boolean                closed   = false;
+	
+	//================================
+	// Constructor
+	//================================
+	/**
+	 * @param hosts - Elasticsearch nodes
+	 * @param port - HTTP port of the nodes
+	 * @param connectionsPerNode - maximum number of connections per node
+	 * @param compression - true to gzip request bodies
+	 */
+	public ElasticHttpClient( List<String> hosts, int port, int connectionsPerNode, boolean compression ) {
+		
+		for( String host : hosts ) {
+			nodes.add(new Node(host.trim(), port));
+		}
+		this.compression = compression;
+		
+		int maxConnections = Math.max(1, connectionsPerNode);
+		
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(CONNECT_TIMEOUT_MS)
+				.setSocketTimeout(READ_TIMEOUT_MS)
+				.build();
+		IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+				.setTcpNoDelay(true)
+				.setSoKeepAlive(true)
+				.build();
+		
+		this.httpClient = HttpAsyncClients.custom()
+				.setMaxConnPerRoute(maxConnections)
+				.setMaxConnTotal(maxConnections * nodes.size())
+				.setDefaultRequestConfig(requestConfig)
+				.setDefaultIOReactorConfig(ioReactorConfig)
+				.setThreadFactory(newThreadFactory("elastic-http-io"))
+				.disableCookieManagement()
+				.build();
+		this.httpClient.start();
+		
+		this.callbackExecutor = Executors.newCachedThreadPool(newThreadFactory("elastic-http-callback"));
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Sends a request without waiting for its response
+	 * 
+	 * @param method
+	 * @param path - path and query string
+	 * @param body - JSON body (may be null)
+	 * @param listener
+	 */
+	public void performRequest( String method, String path, byte[] body, ResponseListener listener ) {
+		
+		if( closed ) {
+			listener.onFailure(new IllegalStateException("Elasticsearch HTTP client is closed"));
+			return;
+		}
+		
+		boolean compressed = compression && body != null && body.length >= MIN_COMPRESSED_BYTES;
+		
+		try {
+			dispatch( new PendingRequest( method, path, compressed ? gzip(body) : body, compressed, listener ) );
+		} catch (IOException e) {
+			listener.onFailure(e);
+		}
+	}
+	
+	/**
+	 * Sends a request and waits for its response
+	 * 
+	 * @param method
+	 * @param path - path and query string
+	 * @param body - JSON body (may be null)
+	 * @return Response
+	 */
+	public Response performRequest( String method, String path, byte[] body ) {
+		
+		final CountDownLatch              done     = new CountDownLatch(1);
+		final AtomicReference<Response>   response = new AtomicReference<Response>();
+		final AtomicReference<Throwable>  failure  = new AtomicReference<Throwable>();
+		
+		performRequest(method, path, body, new ResponseListener() {
+			@Override
+			public void onResponse(Response result) {
+				response.set(result);
+				done.countDown();
+			}
+			@Override
+			public void onFailure(Throwable e) {
+				failure.set(e);
+				done.countDown();
+			}
+		});
+		
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for Elasticsearch: " + method + " " + path);
+		}
+		
+		if( failure.get() != null ) {
+			throw new RuntimeException( "Unable to send request to Elasticsearch: " + method + " " + path + " " + 
+										failure.get().getLocalizedMessage() );
+		}
+		return response.get();
+	}
+	
+	/**
+	 * Sends a bulk request to the _bulk endpoint. Index, delete and 
+	 * partial document update actions are supported, sources are 
+	 * sent as JSON.
+	 * 
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void bulk( final BulkRequest request, final ActionListener<BulkResponse> listener ) {
+		
+		final long startTime = System.currentTimeMillis();
+		
+		byte[] body;
+		try {
+			body = toBulkBody(request);
+		} catch (IOException | RuntimeException e) {
+			listener.onFailure(e);
+			return;
+		}
+		
+		String path = request.refresh() ? "/_bulk?refresh=true" : "/_bulk";
+		
+		performRequest("POST", path, body, new ResponseListener() {
+			@Override
+			public void onResponse(Response response) {
+				
+				if( response.getStatus() == RestStatus.TOO_MANY_REQUESTS.getStatus() ) {
+					// whole request rejected - retried by the bulk indexer
+					listener.onFailure(new EsRejectedExecutionException(response.toString()));
+					return;
+				}
+				if( response.getStatus() >= 300 ) {
+					listener.onFailure(new HttpStatusException(response.toString(), response.getStatus()));
+					return;
+				}
+				
+				BulkResponse bulkResponse;
+				try {
+					bulkResponse = toBulkResponse(request, response, System.currentTimeMillis() - startTime);
+				} catch (RuntimeException e) {
+					listener.onFailure(e);
+					return;
+				}
+				listener.onResponse(bulkResponse);
+			}
+			
+			@Override
+			public void onFailure(Throwable e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+	
+	/**
+	 * Creates an index with the mapping of its type unless it exists
+	 * 
+	 * @param indexName
+	 * @param indexType
+	 * @param mapping - mapping of the type
+	 * @return true if the index was created
+	 */
+	public boolean createIndex( String indexName, String indexType, XContentBuilder mapping ) {
+		return createIndex(indexName, indexType, Settings.EMPTY, mapping);
+	}
+	
+	/**
+	 * Creates an index with its settings and the mapping of its type unless it exists
+	 * 
+	 * @param indexName
+	 * @param indexType
+	 * @param settings - index settings
+	 * @param mapping - mapping of the type
+	 * @return true if the index was created
+	 */
+	public boolean createIndex( String indexName, String indexType, Settings settings, XContentBuilder mapping ) {
+		
+		if( performRequest("HEAD", "/" + indexName, null).getStatus() == RestStatus.OK.getStatus() ) {
+			// Index already exists no need to re-create it
+			return false;
+		}
+		
+		byte[] body = null;
+		if( !settings.getAsMap().isEmpty() ) {
+			try {
+				XContentBuilder builder = XContentFactory.jsonBuilder().startObject().startObject("settings");
+				for( Map.Entry<String, String> setting : settings.getAsMap().entrySet() ) {
+					builder.field(setting.getKey(), setting.getValue());
+				}
+				body = builder.endObject().endObject().bytes().toBytes();
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to create index " + indexName + " " + e.getLocalizedMessage());
+			}
+		}
+		
+		Response response = performRequest("PUT", "/" + indexName, body);
+		if( response.getStatus() >= 300 ) {
+			throw new RuntimeException("Unable to create index " + indexName + " " + response);
+		}
+		
+		response = performRequest("PUT", "/" + indexName + "/_mapping/" + indexType, mapping.bytes().toBytes());
+		if( response.getStatus() >= 300 ) {
+			throw new RuntimeException("Unable to create mapping of index " + indexName + " " + response);
+		}
+		
+		LOGGER.info("Index Created: " + indexName);
+		return true;
+	}
+	
+	/**
+	 * Deletes documents collected before a date
+	 * 
+	 * @param indexName
+	 * @param indexType
+	 * @param dateField - collection time field
+	 * @param thresholdDate
+	 * @return number of documents deleted
+	 */
+	public long deleteBefore( String indexName, String indexType, String dateField, Date thresholdDate ) {
+		
+		String thresholdDateString = new SimpleDateFormat(PURGE_DATE_PATTERN).format(thresholdDate);
+		long   deletedDocs         = 0L;
+		
+		try {
+			byte[] query = XContentFactory.jsonBuilder()
+					.startObject()
+						.field("size", PURGE_BATCH_SIZE)
+						.field("_source", false)
+						.startObject("query").startObject("bool").startObject("filter")
+							.startObject("range").startObject(dateField)
+								.field("lt", thresholdDateString)
+							.endObject().endObject()
+						.endObject().endObject().endObject()
+					.endObject().bytes().toBytes();
+			
+			while( true ) {
+				Response response = performRequest("POST", "/" + indexName + "/" + indexType + "/_search", query);
+				if( response.getStatus() >= 300 ) {
+					throw new RuntimeException("Unable to search index " + indexName + " " + response);
+				}
+				
+				@SuppressWarnings("unchecked")
+				Map<String, Object> hits = (Map<String, Object>)response.asMap().get("hits");
+				@SuppressWarnings("unchecked")
+				List<Map<String, Object>> hitList = (List<Map<String, Object>>)hits.get("hits");
+				
+				if( hitList.isEmpty() ) {
+					// nothing left to delete
+					return deletedDocs;
+				}
+				
+				LOGGER.info("Found " + hitList.size() + " documents to delete in Elasticsearch index: " + 
+							indexName + " due to " + dateField + " < " + thresholdDateString);
+				
+				BulkRequest bulkRequest = new BulkRequest().refresh(true);
+				for( Map<String, Object> hit : hitList ) {
+					bulkRequest.add( new DeleteRequest( (String)hit.get("_index"), indexType, (String)hit.get("_id") ) );
+				}
+				
+				response = performRequest("POST", "/_bulk?refresh=true", toBulkBody(bulkRequest));
+				if( response.getStatus() >= 300 ) {
+					throw new RuntimeException("Unable to delete documents of index " + indexName + " " + response);
+				}
+				
+				deletedDocs += hitList.size();
+				
+				if( Boolean.TRUE.equals(response.asMap().get("errors")) ) {
+					LOGGER.error( "Failure(s) occured while deleting items in Elasticsearch index: " + 
+								  indexName + " index type: " + indexType );
+					return deletedDocs;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to purge index " + indexName + " " + e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Closes connections, requests still in flight fail
+	 */
+	public void close() {
+		
+		closed = true;
+		
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.error("Error while closing Elasticsearch HTTP client " + e.getLocalizedMessage());
+		}
+		callbackExecutor.shutdown();
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	
+	/**
+	 * Sends the request to the next live node, the request waits 
+	 * in the connection pool of the node while all its connections 
+	 * are busy
+	 * 
+	 * @param request
+	 */
+	private void dispatch( PendingRequest request ) {
+		
+		Node node = nextNode();
+		request.node = node;
+		
+		try {
+			httpClient.execute(node.host, request.toHttpRequest(), request);
+		} catch (RuntimeException e) {
+			// client closed meanwhile
+			complete(request, null, e);
+		}
+	}
+	
+	/**
+	 * @return next node in round robin order, skipping nodes 
+	 * which recently failed unless all of them did
+	 */
+	private Node nextNode() {
+		
+		long now = System.currentTimeMillis();
+		int  start = nextNode.getAndIncrement() & Integer.MAX_VALUE;
+		
+		for( int i = 0; i < nodes.size(); i++ ) {
+			Node node = nodes.get((start + i) % nodes.size());
+			if( node.deadUntil <= now ) {
+				return node;
+			}
+		}
+		return nodes.get(start % nodes.size());
+	}
+	
+	/**
+	 * Sends the request to another node unless all nodes were tried
+	 * 
+	 * @param request
+	 * @param cause
+	 */
+	private void retry( PendingRequest request, Throwable cause ) {
+		
+		request.failedNodes++;
+		
+		if( closed || request.failedNodes >= nodes.size() ) {
+			complete(request, null, cause);
+			return;
+		}
+		
+		LOGGER.info("Sending request " + request.method + " " + request.path + " to another Elasticsearch node - " + 
+					cause.getLocalizedMessage());
+		
+		dispatch(request);
+	}
+	
+	private void complete( final PendingRequest request, final Response response, final Throwable failure ) {
+		
+		Runnable callback = new Runnable() {
+			@Override
+			public void run() {
+				if( failure != null ) {
+					request.listener.onFailure(failure);
+				} else {
+					request.listener.onResponse(response);
+				}
+			}
+		};
+		
+		try {
+			callbackExecutor.execute(callback);
+		} catch (RuntimeException e) {
+			// client closed - notify on the calling thread
+			callback.run();
+		}
+	}
+	
+	/**
+	 * @param httpResponse
+	 * @return response body, decompressed if needed
+	 * @throws IOException
+	 */
+	private static byte[] readBody( HttpResponse httpResponse ) throws IOException {
+		
+		HttpEntity entity = httpResponse.getEntity();
+		byte[]     body   = (entity != null) ? EntityUtils.toByteArray(entity) : null;
+		
+		if( body == null ) {
+			return new byte[0];
+		}
+		
+		Header encoding = httpResponse.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+		if( encoding != null && GZIP_ENCODING.equalsIgnoreCase(encoding.getValue()) ) {
+			body = gunzip(body);
+		}
+		return body;
+	}
+	
+	//================================
+	// Bulk format
+	//================================
+	
+	/**
+	 * @param request
+	 * @return newline delimited actions and JSON sources
+	 * @throws IOException
+	 */
+	static byte[] toBulkBody( BulkRequest request ) throws IOException {
+		
+		ByteArrayOutputStream body = new ByteArrayOutputStream((int)Math.min(Integer.MAX_VALUE, request.estimatedSizeInBytes() + 1024));
+		
+		for( ActionRequest<?> action : request.requests() ) {
+			
+			if( action instanceof IndexRequest ) {
+				IndexRequest indexRequest = (IndexRequest)action;
+				
+				writeAction( body, (indexRequest.opType() == IndexRequest.OpType.CREATE) ? "create" : "index", 
+							 indexRequest.index(), indexRequest.type(), indexRequest.id(), indexRequest.routing() );
+				writeSource(body, indexRequest.source());
+				
+			} else if( action instanceof DeleteRequest ) {
+				DeleteRequest deleteRequest = (DeleteRequest)action;
+				
+				writeAction( body, "delete", deleteRequest.index(), deleteRequest.type(), 
+							 deleteRequest.id(), deleteRequest.routing() );
+				
+			} else if( action instanceof UpdateRequest && ((UpdateRequest)action).doc() != null ) {
+				UpdateRequest updateRequest = (UpdateRequest)action;
+				
+				writeAction( body, "update", updateRequest.index(), updateRequest.type(), 
+							 updateRequest.id(), updateRequest.routing() );
+				writeUpdate(body, updateRequest);
+				
+			} else {
+				// scripted updates aren't sent by any DAO
+				throw new IllegalArgumentException("Unsupported bulk action: " + action.getClass().getSimpleName());
+			}
+		}
+		
+		return body.toByteArray();
+	}
+	
+	private static void writeAction( OutputStream body, String opType, String index, String type, 
+									 String id, String routing ) throws IOException {
+		
+		XContentBuilder action = XContentFactory.jsonBuilder(body)
+				.startObject()
+					.startObject(opType)
+						.field("_index", index)
+						.field("_type", type);
+		if( id != null ) {
+			action.field("_id", id);
+		}
+		if( routing != null ) {
+			action.field("_routing", routing);
+		}
+		action.endObject().endObject().close();
+		
+		body.write('\n');
+	}
+	
+	/**
+	 * Writes the source on a single line
+	 */
+	private static void writeSource( OutputStream body, BytesReference source ) throws IOException {
+		body.write(toJson(source));
+		body.write('\n');
+	}
+	
+	/**
+	 * Writes the partial document and upsert document 
+	 * of an update on a single line
+	 */
+	private static void writeUpdate( OutputStream body, UpdateRequest request ) throws IOException {
+		
+		XContentBuilder update = XContentFactory.jsonBuilder(body)
+				.startObject()
+					.rawField("doc", new BytesArray(toJson(request.doc().source())));
+		if( request.docAsUpsert() ) {
+			update.field("doc_as_upsert", true);
+		}
+		if( request.upsertRequest() != null ) {
+			update.rawField("upsert", new BytesArray(toJson(request.upsertRequest().source())));
+		}
+		update.endObject().close();
+		
+		body.write('\n');
+	}
+	
+	/**
+	 * @param source
+	 * @return JSON source on a single line, binary or 
+	 * pretty printed sources are converted
+	 * @throws IOException
+	 */
+	private static byte[] toJson( BytesReference source ) throws IOException {
+		
+		byte[] bytes = source.toBytes();
+		
+		if( XContentFactory.xContentType(source) != XContentType.JSON || contains(bytes, (byte)'\n') ) {
+			bytes = XContentHelper.convertToJson(source, true, false).getBytes(UTF8);
+		}
+		return bytes;
+	}
+	
+	private static boolean contains( byte[] bytes, byte value ) {
+		for( byte b : bytes ) {
+			if( b == value ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Converts the items of a _bulk response, in the order of the request
+	 * 
+	 * @param request
+	 * @param response
+	 * @param took
+	 * @return BulkResponse
+	 */
+	@SuppressWarnings("unchecked")
+	static BulkResponse toBulkResponse( BulkRequest request, Response response, long took ) {
+		
+		List<Map<String, Object>> items = (List<Map<String, Object>>)response.asMap().get("items");
+		
+		if( items == null || items.size() != request.numberOfActions() ) {
+			throw new IllegalStateException( "Unexpected bulk response for " + request.numberOfActions() + 
+											 " documents: " + response );
+		}
+		
+		BulkItemResponse[] itemResponses = new BulkItemResponse[items.size()];
+		
+		for( int i = 0; i < items.size(); i++ ) {
+			
+			Map.Entry<String, Object> entry = items.get(i).entrySet().iterator().next();
+			String              opType = entry.getKey();
+			Map<String, Object> item   = (Map<String, Object>)entry.getValue();
+			
+			String index   = (String)item.get("_index");
+			String type    = (String)item.get("_type");
+			String id      = (String)item.get("_id");
+			int    status  = ((Number)item.get("status")).intValue();
+			long   version = (item.get("_version") != null) ? ((Number)item.get("_version")).longValue() : 0L;
+			
+			if( item.get("error") != null ) {
+				itemResponses[i] = new BulkItemResponse( i, opType, new BulkItemResponse.Failure( index, type, id, 
+												new HttpStatusException(toErrorMessage(item.get("error")), status) ) );
+			} else if( "delete".equals(opType) ) {
+				itemResponses[i] = new BulkItemResponse( i, opType, 
+												new DeleteResponse(index, type, id, version, status == RestStatus.OK.getStatus()) );
+			} else if( "update".equals(opType) ) {
+				itemResponses[i] = new BulkItemResponse( i, opType, 
+												new UpdateResponse(index, type, id, version, status == RestStatus.CREATED.getStatus()) );
+			} else {
+				itemResponses[i] = new BulkItemResponse( i, opType, 
+												new IndexResponse(index, type, id, version, status == RestStatus.CREATED.getStatus()) );
+			}
+		}
+		
+		return new BulkResponse(itemResponses, took);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static String toErrorMessage( Object error ) {
+		
+		if( error instanceof Map ) {
+			Map<String, Object> errorMap = (Map<String, Object>)error;
+			return errorMap.get("type") + ": " + errorMap.get("reason");
+		}
+		return String.valueOf(error);
+	}
+	
+	private static RestStatus toRestStatus( int status ) {
+		for( RestStatus restStatus : RestStatus.values() ) {
+			if( restStatus.getStatus() == status ) {
+				return restStatus;
+			}
+		}
+		return RestStatus.INTERNAL_SERVER_ERROR;
+	}
+	
+	private static byte[] gzip( byte[] body ) throws IOException {
+		
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+		try( GZIPOutputStream gzipStream = new GZIPOutputStream(compressed) ) {
+			gzipStream.write(body);
+		}
+		return compressed.toByteArray();
+	}
+	
+	private static byte[] gunzip( byte[] body ) throws IOException {
+		
+		ByteArrayOutputStream uncompressed = new ByteArrayOutputStream(body.length * 4);
+		try( InputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(body)) ) {
+			byte[] buffer = new byte[8192];
+			int    read;
+			while( (read = gzipStream.read(buffer)) != -1 ) {
+				uncompressed.write(buffer, 0, read);
+			}
+		}
+		return uncompressed.toByteArray();
+	}
+	
+	private static ThreadFactory newThreadFactory( final String name ) {
+		
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+	
+	//================================
+	// Pending request
+	//================================
+	
+	/**
+	 * Request sent to a node, notified by the I/O thread of the 
+	 * connection once the node answered or the connection failed
+	 */
+	private class PendingRequest implements FutureCallback<HttpResponse> {
+		
+		private final String           method;
+		private final String           path;
+		private final byte[]           body;
+		private final boolean          compressed;
+		private final ResponseListener listener;
+		private volatile Node          node;
+		private int                    failedNodes = 0;
+		
+		PendingRequest( String method, String path, byte[] body, boolean compressed, ResponseListener listener ) {
+			this.method     = method;
+			this.path       = path;
+			this.body       = body;
+			this.compressed = compressed;
+			this.listener   = listener;
+		}
+		
+		/**
+		 * @return new request for each attempt
+		 */
+		HttpRequest toHttpRequest() {
+			
+			HttpRequest httpRequest;
+			
+			if( body != null ) {
+				BasicHttpEntityEnclosingRequest entityRequest = new BasicHttpEntityEnclosingRequest(method, path);
+				ByteArrayEntity entity = new ByteArrayEntity(body, ContentType.APPLICATION_JSON);
+				if( compressed ) {
+					entity.setContentEncoding(GZIP_ENCODING);
+				}
+				entityRequest.setEntity(entity);
+				httpRequest = entityRequest;
+			} else {
+				httpRequest = new BasicHttpRequest(method, path);
+			}
+			httpRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP_ENCODING);
+			
+			return httpRequest;
+		}
+		
+		@Override
+		public void completed( HttpResponse httpResponse ) {
+			
+			node.deadUntil = 0L;
+			
+			try {
+				complete(this, new Response(httpResponse.getStatusLine().getStatusCode(), readBody(httpResponse)), null);
+			} catch (IOException e) {
+				complete(this, null, e);
+			}
+		}
+		
+		@Override
+		public void failed( Exception e ) {
+			
+			if( e instanceof ConnectException || e instanceof ConnectTimeoutException ) {
+				LOGGER.error( "Unable to connect to Elasticsearch node: " + node.host.toHostString() + " " + 
+							  e.getLocalizedMessage() );
+				node.deadUntil = System.currentTimeMillis() + DEAD_NODE_RETRY_MS;
+			}
+			// no response - documents have deterministic ids, sending them again is safe
+			retry(this, e);
+		}
+		
+		@Override
+		public void cancelled() {
+			complete(this, null, new IllegalStateException("Elasticsearch HTTP client is closed"));
+		}
+	}
+}
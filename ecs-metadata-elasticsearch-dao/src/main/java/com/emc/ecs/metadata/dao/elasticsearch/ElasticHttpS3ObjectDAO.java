@@ -0,0 +1,317 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.AsyncObjectDAO;
+import com.emc.ecs.metadata.dao.CompletionHandle;
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.ecs.metadata.dao.ObjectRecord;
+import com.emc.ecs.metadata.dao.ObjectRecords;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticDAOConfig.MappingProfile;
+import com.emc.object.s3.bean.ListObjectsResult;
+import com.emc.object.s3.bean.ListVersionsResult;
+import com.emc.object.s3.bean.QueryObjectsResult;
+
+
+/**
+ * Object DAO sending documents through the Elasticsearch REST API.
+ * 
+ * Indices, mappings, document ids and documents are the same as the
+ * ones of the transport DAO ({@link ElasticS3ObjectDAO}), only the way 
+ * they are sent differs: bulk requests go over a pool of keep-alive 
+ * HTTP connections without holding a thread while in flight.
+ * 
+ * Partitioned indices, bulk load mode and binary document encodings 
+ * rely on the transport client and are not available through HTTP.
+ */
+public class ElasticHttpS3ObjectDAO implements ObjectDAO, AsyncObjectDAO {
+
+	private final static long CLOSE_TIMEOUT_MINUTES = 10L;
+	
+	//=========================
+	// Private members
+	//=========================
+	private ElasticHttpClient httpClient;
+	private BulkIndexer       bulkIndexer;
+	private int               keyPathDepth;
+	private static Logger LOGGER = LoggerFactory.getLogger(ElasticHttpS3ObjectDAO.class);
+	
+	//=========================
+	// Public methods
+	//=========================
+	public ElasticHttpS3ObjectDAO( ElasticDAOConfig config ) {
+		
+		// DAOs of the same cluster share their client
+		httpClient = ElasticClientRegistry.acquireHttp(config);
+		
+		// documents of all collection threads share bulk requests
+		bulkIndexer = BulkIndexer.create(httpClient, config);
+		
+		// folders of object keys written for folder level aggregations
+		keyPathDepth = config.getKeyPathDepth();
+		
+		// fields indexed by newly created object and version indices
+		MappingProfile mappingProfile = config.getMappingProfile();
+		Settings       indexSettings  = ElasticS3ObjectDAO.s3IndexSettings(mappingProfile);
+		
+		try {
+			// init S3 Object Index
+			initIndex( ElasticS3ObjectDAO.S3_OBJECT_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE, 
+					   indexSettings, ElasticS3ObjectDAO.s3ObjectMapping(mappingProfile) );
+			
+			// init S3 Object Version Index
+			initIndex( ElasticS3ObjectDAO.S3_OBJECT_VERSION_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_VERSION_INDEX_TYPE, 
+					   indexSettings, ElasticS3ObjectDAO.s3ObjectVersionMapping(mappingProfile) );
+			
+			// init S3 Object Change Index
+			initIndex( ElasticS3ObjectDAO.S3_OBJECT_CHANGE_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_CHANGE_INDEX_TYPE, 
+					   Settings.EMPTY, ElasticS3ObjectDAO.s3ObjectChangeMapping() );
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to create mappings " + e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( ListObjectsResult listObjectsResult, String namespace, String bucket, Date collectionTime ) {
+		index( ObjectRecords.fromListObjects(listObjectsResult, namespace, bucket, collectionTime), 
+			   ElasticS3ObjectDAO.S3_OBJECT_INDEX_NAME );
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( QueryObjectsResult queryObjectsResult, String namespace, String bucket, Date collectionTime ) {
+		index( ObjectRecords.fromQueryObjects(queryObjectsResult, namespace, bucket, collectionTime), 
+			   ElasticS3ObjectDAO.S3_OBJECT_INDEX_NAME );
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( ListVersionsResult listVersionsResult, String namespace, String bucket, Date collectionTime ) {
+		index( ObjectRecords.fromListVersions(listVersionsResult, namespace, bucket, collectionTime), 
+			   ElasticS3ObjectDAO.S3_OBJECT_VERSION_INDEX_NAME );
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( List<ObjectChange> objectChanges, String namespace, String bucket, Date collectionTime ) {
+		index( ObjectRecords.fromObjectChanges(objectChanges, namespace, bucket, collectionTime), 
+			   ElasticS3ObjectDAO.S3_OBJECT_CHANGE_INDEX_NAME );
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long purgeOldData( ObjectDataType type, Date thresholdDate ) {
+		
+		switch(type) {
+		  case object:
+			// Purge old S3 Objects 
+			return purgeIndex(thresholdDate, ElasticS3ObjectDAO.S3_OBJECT_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE);
+		  case object_versions:
+			// Purge old S3 Object Versions
+			return purgeIndex(thresholdDate, ElasticS3ObjectDAO.S3_OBJECT_VERSION_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_VERSION_INDEX_TYPE);
+		  case object_changes:
+			// Purge old S3 Object change records
+			return purgeIndex(thresholdDate, ElasticS3ObjectDAO.S3_OBJECT_CHANGE_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_CHANGE_INDEX_TYPE);
+		  default:
+			return 0L;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime ) {
+		// objects are indexed for every collection - no current state to maintain
+		return 0L;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletionHandle submit( List<ObjectRecord> objectRecords ) {
+		
+		if( objectRecords == null || objectRecords.isEmpty() ) {
+			// nothing to insert
+			return CompletionHandle.completed();
+		}
+		
+		return bulkIndexer.add(toRequests(objectRecords));
+	}
+	
+	/**
+	 * Sends documents of a dead letter file again
+	 * 
+	 * @param deadLetterFile
+	 * @return number of documents indexed
+	 */
+	public long replayDeadLetters( String deadLetterFile ) {
+		return new DeadLetterFile(deadLetterFile).replay(bulkIndexer);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getAvailableCapacity() {
+		return bulkIndexer.getAvailableCapacity();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletionHandle flush() {
+		return bulkIndexer.flush();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		
+		if( !bulkIndexer.close(CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES) ) {
+			LOGGER.error("Not all documents could be indexed in Elasticsearch");
+		}
+		ElasticClientRegistry.release(httpClient);
+	}
+	
+	//=========================
+	// Private methods
+	//=========================
+	
+	/**
+	 * Creates an index along with its settings and mapping, once per process and cluster
+	 * 
+	 * @param indexName
+	 * @param indexType
+	 * @param settings
+	 * @param mapping
+	 */
+	private void initIndex( String indexName, String indexType, Settings settings, XContentBuilder mapping ) {
+		
+		if( ElasticClientRegistry.isBootstrapped(httpClient, indexName) ) {
+			return;
+		}
+		
+		httpClient.createIndex(indexName, indexType, settings, mapping);
+		
+		ElasticClientRegistry.setBootstrapped(httpClient, indexName);
+	}
+	
+	/**
+	 * Purges documents based on collection dates
+	 * 
+	 * @param thresholdDate
+	 * @param indexName
+	 * @param indexType
+	 * @return Long
+	 */
+	private Long purgeIndex( Date thresholdDate, String indexName, String indexType ) {
+		return httpClient.deleteBefore(indexName, indexType, ElasticS3ObjectDAO.COLLECTION_TIME, thresholdDate);
+	}
+	
+	private List<IndexRequest> toRequests( List<ObjectRecord> objectRecords ) {
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
+		// Generate JSON for object records
+		for( ObjectRecord objectRecord : objectRecords ) {
+			requests.add( new IndexRequest( ElasticS3ObjectDAO.getIndexName(objectRecord.getType()), 
+											ElasticS3ObjectDAO.getIndexType(objectRecord.getType()), 
+											ElasticS3ObjectDAO.getDocumentId(objectRecord) )
+								.source(ElasticS3ObjectDAO.toJsonBytes(objectRecord, keyPathDepth)) );
+		}
+		return requests;
+	}
+	
+	/**
+	 * Indexes documents through the bulk indexer and waits until they were sent
+	 * 
+	 * @param objectRecords
+	 * @param indexName
+	 */
+	private void index( List<ObjectRecord> objectRecords, String indexName ) {
+		
+		if( objectRecords.isEmpty() ) {
+			// nothing to insert
+			return;
+		}
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(toRequests(objectRecords));
+		
+		try {
+			submission.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while indexing items in Elasticsearch index: " + indexName);
+		}
+		
+		if( submission.isSuccess() ) {
+			return;
+		}
+		
+		for( BulkItemResponse item : submission.getItems() ) {
+			if( item == null ) {
+				// bulk request itself failed
+				throw new RuntimeException( "Unable to index items in Elasticsearch index: " + indexName + " " + 
+											submission.getFailure().getLocalizedMessage() );
+			}
+		}
+		
+		LOGGER.error( "Failure(s) occured while indexing items in Elasticsearch index: " + indexName + " " + 
+					  submission.getFailure().getLocalizedMessage() );
+	}
+}
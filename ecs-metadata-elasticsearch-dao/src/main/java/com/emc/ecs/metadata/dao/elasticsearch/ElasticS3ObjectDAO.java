@@ -28,29 +28,34 @@ package com.emc.ecs.metadata.dao.elasticsearch;
 
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
+import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.settings.Settings.Builder;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -59,7 +64,15 @@ import org.elasticsearch.search.SearchHits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.emc.ecs.metadata.dao.AsyncObjectDAO;
+import com.emc.ecs.metadata.dao.CompletionHandle;
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
 import com.emc.ecs.metadata.dao.ObjectDAO;
+import com.emc.ecs.metadata.dao.ObjectRecord;
+import com.emc.ecs.metadata.dao.ObjectRecords;
+import com.emc.ecs.metadata.dao.elasticsearch.ElasticDAOConfig.MappingProfile;
+import com.emc.ecs.metadata.dao.elasticsearch.JsonDocumentWriter.FieldName;
 import com.emc.object.s3.bean.AbstractVersion;
 import com.emc.object.s3.bean.DeleteMarker;
 import com.emc.object.s3.bean.ListObjectsResult;
@@ -71,15 +84,15 @@ import com.emc.object.s3.bean.S3Object;
 import com.emc.object.s3.bean.Version;
 
 
-public class ElasticS3ObjectDAO implements ObjectDAO {
+public class ElasticS3ObjectDAO implements ObjectDAO, AsyncObjectDAO {
 
 	
-	private final static String CLIENT_SNIFFING_CONFIG       = "client.transport.sniff";
-	private final static String CLIENT_CLUSTER_NAME_CONFIG   = "cluster.name";
 	public  final static String S3_OBJECT_INDEX_NAME         = "ecs-s3-object";
 	public  final static String S3_OBJECT_VERSION_INDEX_NAME = "ecs-s3-object-version";
 	public  final static String S3_OBJECT_INDEX_TYPE         = "object-info";
 	public  final static String S3_OBJECT_VERSION_INDEX_TYPE = "object-version-info";
+	public  final static String S3_OBJECT_CHANGE_INDEX_NAME  = "ecs-s3-object-change";
+	public  final static String S3_OBJECT_CHANGE_INDEX_TYPE  = "object-change";
 	public  final static String COLLECTION_TIME			     = "collection_time";
 	public  final static String ANALYZED_TAG                 = "_analyzed";
 	public  final static String NOT_ANALYZED_INDEX           = "not_analyzed";
@@ -99,12 +112,48 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	public  final static String CUSTOM_GID_TAG           = "x-amz-meta-x-emc-posix-group-owner-name";
 	public  final static String CUSTOM_UID_TAG           = "x-amz-meta-x-emc-posix-owner-name";
 	public  final static String CUSTOM_MODIFIED_TIME_TAG = "mtime";
+	public  final static String CHANGE_TYPE_TAG          = "change_type";
+	public  final static String KEY_PATH_TAG             = "key_path_";
+	
+	// deepest folder level written as key_path_<level>
+	public  final static int    MAX_KEY_PATH_DEPTH       = 10;
+	
+	private final static long   CLOSE_TIMEOUT_MINUTES    = 10L;
+	
+	// field names encoded once for the JSON documents written per object
+	private final static FieldName LAST_MODIFIED_FIELD = new FieldName(LAST_MODIFIED_TAG);
+	private final static FieldName SIZE_FIELD          = new FieldName(SIZE_TAG);
+	private final static FieldName KEY_FIELD           = new FieldName(KEY_TAG);
+	private final static FieldName KEY_ANALYZED_FIELD  = new FieldName(KEY_TAG + ANALYZED_TAG);
+	private final static FieldName ETAG_FIELD          = new FieldName(ETAG_TAG);
+	private final static FieldName NAMESPACE_FIELD     = new FieldName(NAMESPACE_TAG);
+	private final static FieldName BUCKET_FIELD        = new FieldName(BUCKET_TAG);
+	private final static FieldName OWNER_ID_FIELD      = new FieldName(OWNER_ID_TAG);
+	private final static FieldName OWNER_NAME_FIELD    = new FieldName(OWNER_NAME_TAG);
+	private final static FieldName VERSION_ID_FIELD    = new FieldName(VERSION_ID_TAG);
+	private final static FieldName IS_LATEST_FIELD     = new FieldName(IS_LATEST_TAG);
+	private final static FieldName CHANGE_TYPE_FIELD   = new FieldName(CHANGE_TYPE_TAG);
+	private final static FieldName COLLECTION_TIME_FIELD = new FieldName(COLLECTION_TIME);
+	private final static FieldName[] KEY_PATH_FIELDS   = new FieldName[MAX_KEY_PATH_DEPTH];
+	
+	static {
+		for( int level = 1; level <= MAX_KEY_PATH_DEPTH; level++ ) {
+			KEY_PATH_FIELDS[level - 1] = new FieldName(KEY_PATH_TAG + level);
+		}
+	}
 	
 	
 	//=========================
 	// Private members
 	//=========================
 	private TransportClient elasticClient;
+	private BulkIndexer     bulkIndexer;
+	private PartitionedIndices partitionedIndices;
+	private BulkLoadSettings   bulkLoadSettings;
+	private XContentType       documentEncoding;
+	private MappingProfile     mappingProfile;
+	private int                keyPathDepth;
+	private ObjectStateIndex   objectStateIndex;
 	private static Logger LOGGER = LoggerFactory.getLogger(ElasticS3ObjectDAO.class);
 	
 	private static final String            OLD_DATA_DATE_PATTERN = "yyyy-MM-dd";
@@ -115,38 +164,66 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	//=========================
 	public ElasticS3ObjectDAO( ElasticDAOConfig config ) {
 		
-		try {
-			
-			Builder builder = Settings.settingsBuilder();
-			
-			// Check for new hosts within the cluster
-			builder.put(CLIENT_SNIFFING_CONFIG, true);
-			
-			// specify cluster name
-			if( config.getClusterName() != null ) {
-				builder.put(CLIENT_CLUSTER_NAME_CONFIG, config.getClusterName());
-			}
-			
-			Settings settings = builder.build();
-			
-			// create client
-			elasticClient = TransportClient.builder().settings(settings).build();
-			
-			// add hosts
-			for( String elasticHost : config.getHosts()) {
-				elasticClient.addTransportAddress(new InetSocketTransportAddress(InetAddress.getByName(elasticHost), config.getPort()));				
-			}
-			
+		// DAOs of the same cluster share their client
+		elasticClient = ElasticClientRegistry.acquire(config);
+		
+		// documents of all collection threads share bulk requests
+		bulkIndexer = BulkIndexer.create(elasticClient, config);
+		
+		// JSON or binary document sources
+		documentEncoding = config.getDocumentEncoding();
+		
+		// fields indexed by newly created object and version indices
+		mappingProfile = config.getMappingProfile();
+		
+		// folders of object keys written for folder level aggregations
+		keyPathDepth = config.getKeyPathDepth();
+		
+		// indices are neither refreshed nor replicated during the run
+		if( config.getBulkLoadMode() ) {
+			bulkLoadSettings = new BulkLoadSettings(elasticClient, config.getBulkLoadStateFile());
+		}
+		
+		if( PartitionedIndices.isPartitioned(config) ) {
+			// partition indices are created when first written to
+			partitionedIndices = new PartitionedIndices(elasticClient, new PartitionedIndices.IndexInitializer() {
+				@Override
+				public void initIndex(String alias, String indexName) {
+					initS3Index(alias, indexName);
+					if( bulkLoadSettings != null ) {
+						bulkLoadSettings.tune(indexName);
+					}
+				}
+			}, config);
+		} else {
 			// init S3 Object Index
-			initS3ObjectIndex();
+			initS3Index(S3_OBJECT_INDEX_NAME, S3_OBJECT_INDEX_NAME);
 			
 			// init S3 Object Version Index
-			initS3ObjectVersionIndex();
+			initS3Index(S3_OBJECT_VERSION_INDEX_NAME, S3_OBJECT_VERSION_INDEX_NAME);
 			
+			// init S3 Object Change Index
+			initS3Index(S3_OBJECT_CHANGE_INDEX_NAME, S3_OBJECT_CHANGE_INDEX_NAME);
 			
-		} catch (UnknownHostException e) {
-			throw new RuntimeException(e.getLocalizedMessage());
-		}				
+			if( bulkLoadSettings != null ) {
+				bulkLoadSettings.tune(S3_OBJECT_INDEX_NAME, S3_OBJECT_VERSION_INDEX_NAME, S3_OBJECT_CHANGE_INDEX_NAME);
+			}
+		}
+		
+		if( config.getObjectCurrentState() ) {
+			// one document per object instead of one per collection
+			try {
+				objectStateIndex = new ObjectStateIndex( elasticClient, s3IndexSettings(mappingProfile), 
+														 s3ObjectMapping(mappingProfile) );
+			} catch (IOException e) {
+				throw new RuntimeException( "Unable to create index " + 
+						ObjectStateIndex.CURRENT_INDEX_NAME +
+						" " + e.getMessage()           );  
+			}
+			if( bulkLoadSettings != null ) {
+				bulkLoadSettings.tune(ObjectStateIndex.CURRENT_INDEX_NAME);
+			}
+		}
 	}
 
 	/**
@@ -163,29 +240,27 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 			return;
 		}
 		
-		BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+		if( objectStateIndex != null ) {
+			// only the current state of objects is kept
+			indexStates( toStateRequests(ObjectRecords.fromListObjects(listObjectsResult, namespace, bucket, collectionTime)) );
+			return;
+		}
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
 		
 		// Generate JSON for object buckets info
 		for( S3Object s3Object : listObjectsResult.getObjects() ) {
-			XContentBuilder s3ObjectBuilder = toJsonFormat(s3Object, namespace, bucket, collectionTime);
+			BytesReference s3ObjectSource = toSource(s3Object, namespace, bucket, collectionTime);
 
 			IndexRequestBuilder request = elasticClient.prepareIndex()
-					.setIndex(S3_OBJECT_INDEX_NAME)
+					.setIndex(getWriteIndex(S3_OBJECT_INDEX_NAME, namespace, collectionTime))
 					.setType(S3_OBJECT_INDEX_TYPE)
-					.setSource(s3ObjectBuilder);
-			requestBuilder.add(request);
+					.setId(DocumentIds.objectId(namespace, bucket, s3Object.getKey(), collectionTime))
+					.setSource(s3ObjectSource);
+			requests.add(request.request());
 		}
 		
-		BulkResponse bulkResponse = requestBuilder.execute().actionGet();
-	    int items = bulkResponse.getItems().length;
-	    
-		LOGGER.info( "Took " + bulkResponse.getTookInMillis() + " ms to index [" + items + "] items in Elasticsearch " + "index: " + 
-					 S3_OBJECT_INDEX_NAME + " index type: " +  S3_OBJECT_INDEX_TYPE ); 
-    
-		if( bulkResponse.hasFailures() ) {
-			LOGGER.error( "Failure(s) occured while items in Elasticsearch " + "index: " + 
-							S3_OBJECT_INDEX_NAME + " index type: " +  S3_OBJECT_INDEX_TYPE );
-		}
+		index(requests, S3_OBJECT_INDEX_NAME);
 	}
 	
 	/**
@@ -203,29 +278,27 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 			return;
 		}
 		
+		if( objectStateIndex != null ) {
+			// only the current state of objects is kept
+			indexStates( toStateRequests(ObjectRecords.fromQueryObjects(queryObjectsResult, namespace, bucketName, collectionTime)) );
+			return;
+		}
 		
-		BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
 		
 		// Generate JSON for object buckets info
 		for( QueryObject queryObject : queryObjectsResult.getObjects() ) {
-			XContentBuilder s3ObjectBuilder = toJsonFormat(queryObject, namespace, bucketName, collectionTime);
+			BytesReference s3ObjectSource = toSource(queryObject, namespace, bucketName, collectionTime);
 
 			IndexRequestBuilder request = elasticClient.prepareIndex()
-					.setIndex(S3_OBJECT_INDEX_NAME)
+					.setIndex(getWriteIndex(S3_OBJECT_INDEX_NAME, namespace, collectionTime))
 					.setType(S3_OBJECT_INDEX_TYPE)
-					.setSource(s3ObjectBuilder);
-			requestBuilder.add(request);
+					.setId(DocumentIds.objectId(namespace, bucketName, queryObject.getObjectName(), collectionTime))
+					.setSource(s3ObjectSource);
+			requests.add(request.request());
 		}
 		
-		BulkResponse bulkResponse = requestBuilder.execute().actionGet();
-	    int items = bulkResponse.getItems().length;
-		LOGGER.info( "Took " + bulkResponse.getTookInMillis() + " ms to index [" + items + "] items in Elasticsearch " + "index: " + 
-				 S3_OBJECT_INDEX_NAME + " index type: " +  S3_OBJECT_INDEX_TYPE ); 
-
-		if( bulkResponse.hasFailures() ) {
-			LOGGER.error( "Failure(s) occured while items in Elasticsearch " + "index: " + 
-						S3_OBJECT_INDEX_NAME + " index type: " +  S3_OBJECT_INDEX_TYPE );
-		}
+		index(requests, S3_OBJECT_INDEX_NAME);
 	}
 	
 	/**
@@ -243,40 +316,66 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 			return;
 		}
 		
-		BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
 		
 		// Generate JSON for object version info
 		for( AbstractVersion abstractVersion : listVersionsResult.getVersions() ) {
 			if(abstractVersion instanceof Version) {
-				XContentBuilder s3ObjectVersionBuilder = toJsonFormat((Version)abstractVersion, namespace, bucketName, collectionTime);
+				BytesReference s3ObjectVersionSource = toSource((Version)abstractVersion, namespace, bucketName, collectionTime);
 				
 				IndexRequestBuilder request = elasticClient.prepareIndex()
-			                .setIndex(S3_OBJECT_VERSION_INDEX_NAME)
+			                .setIndex(getWriteIndex(S3_OBJECT_VERSION_INDEX_NAME, namespace, collectionTime))
 			                .setType(S3_OBJECT_VERSION_INDEX_TYPE)
-			                .setSource(s3ObjectVersionBuilder);
-			    requestBuilder.add(request);
+			                .setId(DocumentIds.versionId(namespace, bucketName, abstractVersion.getKey(), 
+			                							 abstractVersion.getVersionId(), collectionTime))
+			                .setSource(s3ObjectVersionSource);
+			    requests.add(request.request());
 				
 			} else if(abstractVersion instanceof DeleteMarker) {
-				XContentBuilder s3ObjectVersionBuilder = toJsonFormat((DeleteMarker)abstractVersion, namespace, bucketName, collectionTime);
+				BytesReference s3ObjectVersionSource = toSource((DeleteMarker)abstractVersion, namespace, bucketName, collectionTime);
 				
 				IndexRequestBuilder request = elasticClient.prepareIndex()
-		                .setIndex(S3_OBJECT_VERSION_INDEX_NAME)
+		                .setIndex(getWriteIndex(S3_OBJECT_VERSION_INDEX_NAME, namespace, collectionTime))
 		                .setType(S3_OBJECT_VERSION_INDEX_TYPE)
-		                .setSource(s3ObjectVersionBuilder);
-		        requestBuilder.add(request);
+		                .setId(DocumentIds.versionId(namespace, bucketName, abstractVersion.getKey(), 
+		                							 abstractVersion.getVersionId(), collectionTime))
+		                .setSource(s3ObjectVersionSource);
+		        requests.add(request.request());
 			}
 		}
 		
-		BulkResponse bulkResponse = requestBuilder.execute().actionGet();
-	    int items = bulkResponse.getItems().length;
-	    
-		LOGGER.info( "Took " + bulkResponse.getTookInMillis() + " ms to index [" + items + "] items in Elasticsearch " + "index: " + 
-					 S3_OBJECT_VERSION_INDEX_NAME + " index type: " +  S3_OBJECT_VERSION_INDEX_TYPE ); 
+		index(requests, S3_OBJECT_VERSION_INDEX_NAME);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert(List<ObjectChange> objectChanges, String namespace,
+			           String bucketName, Date collectionTime) {
+		
+		if( objectChanges == null ||
+			objectChanges.isEmpty()  ) {
+			
+			// nothing to insert
+			return;
+		}
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		
+		// Generate JSON for object change records
+		for( ObjectChange objectChange : objectChanges ) {
+			BytesReference objectChangeSource = toSource(objectChange, namespace, bucketName, collectionTime);
 
-		if( bulkResponse.hasFailures() ) {
-			LOGGER.error( "Failure(s) occured while items in Elasticsearch " + "index: " + 
-						  S3_OBJECT_VERSION_INDEX_NAME + " index type: " +  S3_OBJECT_VERSION_INDEX_TYPE );
+			IndexRequestBuilder request = elasticClient.prepareIndex()
+					.setIndex(getWriteIndex(S3_OBJECT_CHANGE_INDEX_NAME, namespace, collectionTime))
+					.setType(S3_OBJECT_CHANGE_INDEX_TYPE)
+					.setId(DocumentIds.objectId(namespace, bucketName, objectChange.getKey(), collectionTime))
+					.setSource(objectChangeSource);
+			requests.add(request.request());
 		}
+		
+		index(requests, S3_OBJECT_CHANGE_INDEX_NAME);
 	}
 	
 	/**
@@ -287,16 +386,145 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 			
 		switch(type) {
 		  case object:
-			// Purge old S3 Objects 
-			return purgeIndex(thresholdDate, S3_OBJECT_INDEX_NAME, S3_OBJECT_INDEX_TYPE);
+			// Purge old S3 Objects along with objects deleted before that date
+			return purgeIndex(thresholdDate, S3_OBJECT_INDEX_NAME, S3_OBJECT_INDEX_TYPE) + 
+				   purgeDeletedObjects(thresholdDate);
 		  case object_versions:
 			// Purge old S3 Object Versions
 			return purgeIndex(thresholdDate, S3_OBJECT_VERSION_INDEX_NAME, S3_OBJECT_VERSION_INDEX_TYPE);
+		  case object_changes:
+			// Purge old S3 Object change records
+			return purgeIndex(thresholdDate, S3_OBJECT_CHANGE_INDEX_NAME, S3_OBJECT_CHANGE_INDEX_TYPE);
 		  default:
 			return 0L;
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletionHandle submit( List<ObjectRecord> objectRecords ) {
+		
+		if( objectRecords == null || objectRecords.isEmpty() ) {
+			// nothing to insert
+			return CompletionHandle.completed();
+		}
+		
+		List<ActionRequest<?>> requests     = new ArrayList<ActionRequest<?>>();
+		List<ObjectRecord>     stateRecords = new ArrayList<ObjectRecord>();
+		
+		// Generate JSON for object records
+		for( ObjectRecord objectRecord : objectRecords ) {
+			if( objectStateIndex != null && objectRecord.getType() == ObjectDataType.object ) {
+				// only the current state of objects is kept
+				stateRecords.add(objectRecord);
+				continue;
+			}
+			requests.add(toIndexRequest(objectRecord));
+		}
+		
+		requests.addAll(toStateRequests(stateRecords));
+		
+		return bulkIndexer.add(requests);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long markDeletedObjects( String namespace, String bucketName, Date collectionTime ) {
+		
+		if( objectStateIndex == null ) {
+			// objects are indexed for every collection
+			return 0L;
+		}
+		
+		List<ObjectRecord> deletedRecords = objectStateIndex.markDeleted(namespace, bucketName, collectionTime);
+		
+		if( !deletedRecords.isEmpty() ) {
+			List<IndexRequest> requests = new ArrayList<IndexRequest>();
+			for( ObjectRecord deletedRecord : deletedRecords ) {
+				requests.add(toIndexRequest(deletedRecord));
+			}
+			index(requests, S3_OBJECT_CHANGE_INDEX_NAME);
+		}
+		
+		return Long.valueOf(deletedRecords.size());
+	}
+	
+	/**
+	 * Drops the object, version and change indices of a 
+	 * namespace when indices are partitioned per namespace
+	 * and deletes the current object states of the namespace
+	 * 
+	 * @param namespace
+	 * @return number of documents dropped
+	 */
+	public Long purgeNamespace( String namespace ) {
+		
+		Long deletedDocs = 0L;
+		
+		deletedDocs += PartitionedIndices.dropNamespace(elasticClient, S3_OBJECT_INDEX_NAME, namespace);
+		deletedDocs += PartitionedIndices.dropNamespace(elasticClient, S3_OBJECT_VERSION_INDEX_NAME, namespace);
+		deletedDocs += PartitionedIndices.dropNamespace(elasticClient, S3_OBJECT_CHANGE_INDEX_NAME, namespace);
+		
+		if( elasticClient.admin().indices()
+				.exists(new IndicesExistsRequest(ObjectStateIndex.CURRENT_INDEX_NAME))
+				.actionGet()
+				.isExists() ) {
+			// current index is shared by all namespaces
+			BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
+					.filter(QueryBuilders.termQuery(NAMESPACE_TAG, namespace));
+			
+			deletedDocs += purgeDocuments( boolQuery, ObjectStateIndex.CURRENT_INDEX_NAME, S3_OBJECT_INDEX_TYPE, 
+										   NAMESPACE_TAG + " = " + namespace );
+		}
+		
+		return deletedDocs;
+	}
+	
+	/**
+	 * Sends documents of a dead letter file again
+	 * 
+	 * @param deadLetterFile
+	 * @return number of documents indexed
+	 */
+	public long replayDeadLetters( String deadLetterFile ) {
+		return new DeadLetterFile(deadLetterFile).replay(bulkIndexer);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getAvailableCapacity() {
+		return bulkIndexer.getAvailableCapacity();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CompletionHandle flush() {
+		return bulkIndexer.flush();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		
+		if( !bulkIndexer.close(CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES) ) {
+			LOGGER.error("Not all documents could be indexed in Elasticsearch");
+		}
+		if( bulkLoadSettings != null ) {
+			bulkLoadSettings.restore();
+		}
+		ElasticClientRegistry.release(elasticClient);
+	}
+	
 	/**
 	 * Converts Object data in JSON format for Elasticsearch
 	 * 
@@ -307,7 +535,7 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	 * @return XContentBuilder
 	 */
 	public static XContentBuilder toJsonFormat( S3Object s3Object, String namespace, String bucket, Date collectionTime ) {						
-		return toJsonFormat(s3Object, namespace, bucket,collectionTime, null);
+		return toJsonFormat(s3Object, namespace, bucket,collectionTime, 0, null);
 	}
 	
 	/**
@@ -350,7 +578,20 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	 * @return XContentBuilder
 	 */
 	public static XContentBuilder toJsonFormat( QueryObject s3Object, String namespace, String bucket, Date collectionTime ) {						
-		return toJsonFormat(s3Object, namespace, bucket,collectionTime, null);
+		return toJsonFormat(s3Object, namespace, bucket,collectionTime, 0, null);
+	}
+	
+	/**
+	 * Converts Object change data in JSON format for Elasticsearch
+	 * 
+	 * @param objectChange
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return XContentBuilder
+	 */
+	public static XContentBuilder toJsonFormat( ObjectChange objectChange, String namespace, String bucket, Date collectionTime ) {						
+		return toJsonFormat(objectChange, namespace, bucket,collectionTime, null);
 	}
 	
 	
@@ -358,111 +599,166 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	// Private methods
 	//=======================
 
+	/**
+	 * Creates an index of a data type along with its mapping,
+	 * once per process and cluster
+	 * 
+	 * @param alias
+	 * @param indexName
+	 */
+	private void initS3Index( String alias, String indexName ) {
+		
+		if( ElasticClientRegistry.isBootstrapped(elasticClient, indexName) ) {
+			return;
+		}
+		
+		if( S3_OBJECT_VERSION_INDEX_NAME.equals(alias) ) {
+			initS3ObjectVersionIndex(indexName);
+		} else if( S3_OBJECT_CHANGE_INDEX_NAME.equals(alias) ) {
+			initS3ObjectChangeIndex(indexName);
+		} else {
+			initS3ObjectIndex(indexName);
+		}
+		
+		ElasticClientRegistry.setBootstrapped(elasticClient, indexName);
+	}
+	
+	/**
+	 * @param indexName - index or alias of the data type
+	 * @param namespace
+	 * @param collectionTime
+	 * @return index documents of the namespace collected at that time are written to
+	 */
+	private String getWriteIndex( String indexName, String namespace, Date collectionTime ) {
+		return (partitionedIndices != null) ? 
+				partitionedIndices.getWriteIndex(indexName, namespace, collectionTime) : indexName;
+	}
+	
 	/**
 	 * Init Object index
 	 */
-	private void initS3ObjectIndex() {
+	private void initS3ObjectIndex( String indexName ) {
 
 		if (elasticClient
 				.admin()
 				.indices()
-				.exists(new IndicesExistsRequest(S3_OBJECT_INDEX_NAME))
+				.exists(new IndicesExistsRequest(indexName))
 				.actionGet()
 				.isExists()) {
 			// Index already exists no need to re-create it
 			return;
 		}
 
-		elasticClient.admin().indices().create(new CreateIndexRequest(S3_OBJECT_INDEX_NAME)).actionGet();	
+		elasticClient.admin().indices().create(new CreateIndexRequest(indexName)
+															.settings(s3IndexSettings(mappingProfile))).actionGet();	
 
 		try {
 			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
-					.preparePutMapping(S3_OBJECT_INDEX_NAME)
+					.preparePutMapping(indexName)
 					.setType(S3_OBJECT_INDEX_TYPE)
-					.setSource(XContentFactory.jsonBuilder().prettyPrint()
-					  .startObject()
-						.startObject(S3_OBJECT_INDEX_TYPE)
-						
-							// ========================================
-							// Define how the basic fields are defined
-							// ========================================
-							.startObject("properties")
-							// LAST_MODIFIED_TAG
-							.startObject( LAST_MODIFIED_TAG ).field("type", "date")
-								.field("format", "strict_date_optional_time||epoch_millis").endObject()
-							// SIZE_TAG
-							.startObject( SIZE_TAG ).field("type", "string").field("type", "long").endObject()
-							// KEY_TAG
-							.startObject( KEY_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// KEY_TAG Analyzed
-							.startObject( KEY_TAG + ANALYZED_TAG).field("type", "string")
-								.field("index", ANALYZED_INDEX).endObject()
-							.startObject( ETAG_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()	
-							// NAMESPACE_TAG
-							.startObject( NAMESPACE_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// BUCKET_TAG
-							.startObject( BUCKET_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// OWNER_ID_TAG
-							.startObject( OWNER_ID_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// OWNER_NAME_TAG
-							.startObject( OWNER_NAME_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// COLLECTION_TIME
-							.startObject( COLLECTION_TIME ).field("type", "date")
-								.field("format", "strict_date_optional_time||epoch_millis").endObject() 
-							// CUSTOM_GID_TAG
-							.startObject( CUSTOM_GID_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// CUSTOM_UID_TAG
-							.startObject( CUSTOM_UID_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()	
-						    // CUSTOM_MODIFIED_TIME_TAG
-							.startObject( CUSTOM_MODIFIED_TIME_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()	
-							.endObject()
-							
-							// =================================
-							// Dynamic fields won't be analyzed
-							// =================================
-							.startArray("dynamic_templates")
-							  .startObject()
-								.startObject("notanalyzed")
-									.field("match", "*")
-									.field("match_mapping_type", "string")
-										.startObject( "mapping" ).field("type", "string")
-											.field("index", NOT_ANALYZED_INDEX).endObject()
-								.endObject()
-							  .endObject()
-							 .endArray()
-								
-						.endObject()
-					.endObject()		)
+					.setSource(s3ObjectMapping(mappingProfile))
 				.execute().actionGet();
 
 			if (putMappingResponse.isAcknowledged()) {
-				LOGGER.info("Index Created: " + S3_OBJECT_INDEX_NAME);
+				LOGGER.info("Index Created: " + indexName);
 				
 			} else {
 				LOGGER.error("Index {} did not exist. " + 
 						"While attempting to create the index from stored ElasticSearch " +
-						"Templates we were unable to get an acknowledgement.", S3_OBJECT_INDEX_NAME);
+						"Templates we were unable to get an acknowledgement.", indexName);
 				LOGGER.error("Error Message: {}", putMappingResponse.toString());
-				throw new RuntimeException("Unable to create index " + S3_OBJECT_INDEX_NAME);
+				throw new RuntimeException("Unable to create index " + indexName);
 			}			
 
 		} catch (IOException e) {
 			throw new RuntimeException( "Unable to create index " + 
-					S3_OBJECT_INDEX_NAME +
+					indexName +
 					" " + e.getMessage()           );  
 		}
 	}
 	
-
+	/**
+	 * Mapping of the object type, shared with the HTTP DAO
+	 * 
+	 * @param mappingProfile
+	 * @return XContentBuilder
+	 * @throws IOException
+	 */
+	static XContentBuilder s3ObjectMapping( MappingProfile mappingProfile ) throws IOException {
+		
+		boolean lean = (mappingProfile == MappingProfile.lean);
+		
+		XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint()
+			  .startObject()
+				.startObject(S3_OBJECT_INDEX_TYPE);
+		
+		if( lean ) {
+			// searches name the fields they look into
+			builder.startObject("_all").field("enabled", false).endObject();
+		}
+		
+		// ========================================
+		// Define how the basic fields are defined
+		// ========================================
+		builder.startObject("properties")
+				// LAST_MODIFIED_TAG
+				.startObject( LAST_MODIFIED_TAG ).field("type", "date")
+					.field("format", "strict_date_optional_time||epoch_millis").endObject()
+				// SIZE_TAG
+				.startObject( SIZE_TAG ).field("type", "string").field("type", "long").endObject()
+				// KEY_TAG
+				.startObject( KEY_TAG ).field("type", "string")
+					.field("index", NOT_ANALYZED_INDEX).endObject();
+		// KEY_TAG Analyzed
+		analyzedField(builder, KEY_TAG + ANALYZED_TAG, lean);
+		aggregatedField(builder, ETAG_TAG, lean);
+		// NAMESPACE_TAG
+		groupingField(builder, NAMESPACE_TAG, lean);
+		// BUCKET_TAG
+		groupingField(builder, BUCKET_TAG, lean);
+		// OWNER_ID_TAG
+		notAnalyzedField(builder, OWNER_ID_TAG);
+		// OWNER_NAME_TAG
+		displayedField(builder, OWNER_NAME_TAG, lean);
+		// COLLECTION_TIME
+		builder.startObject( COLLECTION_TIME ).field("type", "date")
+				.field("format", "strict_date_optional_time||epoch_millis").endObject();
+		// CUSTOM_GID_TAG
+		notAnalyzedField(builder, CUSTOM_GID_TAG);
+		// CUSTOM_UID_TAG
+		notAnalyzedField(builder, CUSTOM_UID_TAG);
+		// CUSTOM_MODIFIED_TIME_TAG
+		displayedField(builder, CUSTOM_MODIFIED_TIME_TAG, lean);
+		builder.endObject();
+		
+		// =================================
+		// Dynamic fields won't be analyzed
+		// =================================
+		return notAnalyzedDynamicFields(builder)
+				.endObject()
+			.endObject();
+	}
+	
+	/**
+	 * Settings of the object and object version indices
+	 * 
+	 * @param mappingProfile
+	 * @return Settings - empty for the standard profile
+	 */
+	static Settings s3IndexSettings( MappingProfile mappingProfile ) {
+		
+		if( mappingProfile != MappingProfile.lean ) {
+			return Settings.EMPTY;
+		}
+		
+		return Settings.settingsBuilder()
+				// stored fields compressed with DEFLATE instead of LZ4
+				.put("index.codec", "best_compression")
+				// _all is disabled - searches without a field look into the key
+				.put("index.query.default_field", KEY_TAG + ANALYZED_TAG)
+				.build();
+	}
+	
 	/**
 	 * Converts Object data into JSON format
 	 * 
@@ -470,280 +766,954 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	 * @param namespace
 	 * @param bucket
 	 * @param collectionTime
+	 * @param keyPathDepth - number of key folder levels written
 	 * @param builder
 	 * @return XContentBuilder
 	 */
-	private static XContentBuilder toJsonFormat( S3Object s3Object, 
+	static XContentBuilder toJsonFormat( S3Object s3Object, 
 			String namespace, 
 			String bucket,
 			Date collectionTime,
+			int keyPathDepth,
 			XContentBuilder builder) {
 
 		try {
 			if(builder == null) {
 				builder = XContentFactory.jsonBuilder();
 			}
-
-			// add relevant fileds
-			builder = builder.startObject()	    
-					.field( LAST_MODIFIED_TAG, s3Object.getLastModified() )
-					.field( SIZE_TAG, s3Object.getSize() )
-					.field( KEY_TAG, s3Object.getKey() )
-					.field( KEY_TAG + ANALYZED_TAG, s3Object.getKey() )
-					.field( ETAG_TAG , s3Object.getETag())
-					.field( NAMESPACE_TAG, namespace )
-					.field( BUCKET_TAG, bucket )
-					.field( OWNER_ID_TAG, (s3Object.getOwner() != null && s3Object.getOwner().getId() != null)
-																			? s3Object.getOwner().getId() : null )	
-					.field( OWNER_NAME_TAG, (s3Object.getOwner() != null && s3Object.getOwner().getDisplayName() != null) 
-																			? s3Object.getOwner().getDisplayName() : null )	
-					.field( COLLECTION_TIME, collectionTime )
-					.endObject();
+			objectFields(s3Object, namespace, bucket, collectionTime, keyPathDepth, DocumentFields.of(builder.startObject()));
+			return builder.endObject();
 
 		} catch (IOException e) {
 			throw new RuntimeException(e.getLocalizedMessage());
-		}	
-
-		return builder;
+		}
 	}
 
 	/**
 	 * Init Object version index
 	 */
-	private void initS3ObjectVersionIndex() {
+	private void initS3ObjectVersionIndex( String indexName ) {
 
 		if (elasticClient
 				.admin()
 				.indices()
-				.exists(new IndicesExistsRequest(S3_OBJECT_VERSION_INDEX_NAME))
+				.exists(new IndicesExistsRequest(indexName))
 				.actionGet()
 				.isExists()) {
 			// Index already exists no need to re-create it
 			return;
 		}
 
-		elasticClient.admin().indices().create(new CreateIndexRequest(S3_OBJECT_VERSION_INDEX_NAME)).actionGet();	
+		elasticClient.admin().indices().create(new CreateIndexRequest(indexName)
+															.settings(s3IndexSettings(mappingProfile))).actionGet();	
 
 		try {
 			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
-					.preparePutMapping(S3_OBJECT_VERSION_INDEX_NAME)
+					.preparePutMapping(indexName)
 					.setType(S3_OBJECT_VERSION_INDEX_TYPE)
-					.setSource(XContentFactory.jsonBuilder().prettyPrint()
-					  .startObject()
-						.startObject(S3_OBJECT_VERSION_INDEX_TYPE)
-						
-							// ========================================
-							// Define how the basic fields are defined
-							// ========================================
-							.startObject("properties")
-							// LAST_MODIFIED_TAG
-							.startObject( LAST_MODIFIED_TAG ).field("type", "date")
-								.field("format", "strict_date_optional_time||epoch_millis").endObject()
-							// SIZE_TAG
-							.startObject( SIZE_TAG ).field("type", "string").field("type", "long").endObject()
-							// KEY_TAG
-							.startObject( KEY_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// KEY_TAG Analyzed
-							.startObject( KEY_TAG + ANALYZED_TAG).field("type", "string")
-								.field("index", ANALYZED_INDEX).endObject()
-							.startObject( ETAG_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()	
-							// NAMESPACE_TAG
-							.startObject( NAMESPACE_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// BUCKET_TAG
-							.startObject( BUCKET_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// VERSION_ID_TAG
-							.startObject( VERSION_ID_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()	
-							// IS_LATEST_TAG
-							.startObject( IS_LATEST_TAG ).field("type", "boolean")
-								.field("index", NOT_ANALYZED_INDEX).endObject()		
-							// OWNER_ID_TAG
-							.startObject( OWNER_ID_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// OWNER_NAME_TAG
-							.startObject( OWNER_NAME_TAG ).field("type", "string")
-								.field("index", NOT_ANALYZED_INDEX).endObject()
-							// COLLECTION_TIME
-							.startObject( COLLECTION_TIME ).field("type", "date")
-								.field("format", "strict_date_optional_time||epoch_millis").endObject() 
-							.endObject()
-							
-							// =================================
-							// Dynamic fields won't be analyzed
-							// =================================
-							.startArray("dynamic_templates")
-							  .startObject()
-								.startObject("notanalyzed")
-									.field("match", "*")
-									.field("match_mapping_type", "string")
-										.startObject( "mapping" ).field("type", "string")
-											.field("index", NOT_ANALYZED_INDEX).endObject()
-								.endObject()
-							  .endObject()
-							 .endArray()
-								
-						.endObject()
-					.endObject()		)
+					.setSource(s3ObjectVersionMapping(mappingProfile))
 				.execute().actionGet();
 
 			if (putMappingResponse.isAcknowledged()) {
-				LOGGER.info("Index Created: " + S3_OBJECT_INDEX_NAME);
+				LOGGER.info("Index Created: " + indexName);
 			} else {
 				LOGGER.error("Index {} did not exist. " + 
 						"While attempting to create the index from stored ElasticSearch " +
-						"Templates we were unable to get an acknowledgement.", S3_OBJECT_INDEX_NAME);
+						"Templates we were unable to get an acknowledgement.", indexName);
 				LOGGER.error("Error Message: {}", putMappingResponse.toString());
-				throw new RuntimeException("Unable to create index " + S3_OBJECT_INDEX_NAME);
+				throw new RuntimeException("Unable to create index " + indexName);
 			}			
 
 		} catch (IOException e) {
 			throw new RuntimeException( "Unable to create index " + 
-					S3_OBJECT_INDEX_NAME +
+					indexName +
 					" " + e.getMessage()           );  
 		}
 	}
 	
 	/**
-	 * Converts object version data to json 
+	 * Mapping of the object version type, shared with the HTTP DAO
 	 * 
-	 * @param version
-	 * @param namespace
-	 * @param bucket
-	 * @param collectionTime
-	 * @param builder
+	 * @param mappingProfile
 	 * @return XContentBuilder
+	 * @throws IOException
 	 */
-	private static XContentBuilder toJsonFormat( Version version, 
-												 String   namespace, 
-												 String   bucket,
-												 Date     collectionTime,
-												 XContentBuilder builder) {
-
-		try {
-			if(builder == null) {
-				builder = XContentFactory.jsonBuilder();
-			}
-
-			// add relevant fields
-			builder = builder.startObject()	    
-					.field( LAST_MODIFIED_TAG, version.getLastModified() )
-					.field( SIZE_TAG, version.getSize() )
-					.field( KEY_TAG, version.getKey() )
-					.field( KEY_TAG + ANALYZED_TAG, version.getKey() )
-					.field( ETAG_TAG , version.getETag())
-					.field( NAMESPACE_TAG, namespace )
-					.field( BUCKET_TAG, bucket )
-					.field( VERSION_ID_TAG, version.getVersionId() )
-					.field( IS_LATEST_TAG, version.isLatest())
-					.field( OWNER_ID_TAG, (version.getOwner() != null && version.getOwner().getId() != null)
-																			? version.getOwner().getId() : null )	
-					.field( OWNER_NAME_TAG, (version.getOwner() != null && version.getOwner().getDisplayName() != null) 
-																			? version.getOwner().getDisplayName() : null )	
-					.field( COLLECTION_TIME, collectionTime )
-					.endObject();
-
-		} catch (IOException e) {
-			throw new RuntimeException(e.getLocalizedMessage());
-		}	
-
-		return builder;
+	static XContentBuilder s3ObjectVersionMapping( MappingProfile mappingProfile ) throws IOException {
+		
+		boolean lean = (mappingProfile == MappingProfile.lean);
+		
+		XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint()
+			  .startObject()
+				.startObject(S3_OBJECT_VERSION_INDEX_TYPE);
+		
+		if( lean ) {
+			// searches name the fields they look into
+			builder.startObject("_all").field("enabled", false).endObject();
+		}
+		
+		// ========================================
+		// Define how the basic fields are defined
+		// ========================================
+		builder.startObject("properties")
+				// LAST_MODIFIED_TAG
+				.startObject( LAST_MODIFIED_TAG ).field("type", "date")
+					.field("format", "strict_date_optional_time||epoch_millis").endObject()
+				// SIZE_TAG
+				.startObject( SIZE_TAG ).field("type", "string").field("type", "long").endObject()
+				// KEY_TAG
+				.startObject( KEY_TAG ).field("type", "string")
+					.field("index", NOT_ANALYZED_INDEX).endObject();
+		// KEY_TAG Analyzed
+		analyzedField(builder, KEY_TAG + ANALYZED_TAG, lean);
+		aggregatedField(builder, ETAG_TAG, lean);
+		// NAMESPACE_TAG
+		groupingField(builder, NAMESPACE_TAG, lean);
+		// BUCKET_TAG
+		groupingField(builder, BUCKET_TAG, lean);
+		// VERSION_ID_TAG
+		displayedField(builder, VERSION_ID_TAG, lean);
+		// IS_LATEST_TAG
+		builder.startObject( IS_LATEST_TAG ).field("type", "boolean")
+				.field("index", NOT_ANALYZED_INDEX).endObject();
+		// OWNER_ID_TAG
+		notAnalyzedField(builder, OWNER_ID_TAG);
+		// OWNER_NAME_TAG
+		displayedField(builder, OWNER_NAME_TAG, lean);
+		// COLLECTION_TIME
+		builder.startObject( COLLECTION_TIME ).field("type", "date")
+				.field("format", "strict_date_optional_time||epoch_millis").endObject();
+		builder.endObject();
+		
+		// =================================
+		// Dynamic fields won't be analyzed
+		// =================================
+		return notAnalyzedDynamicFields(builder)
+				.endObject()
+			.endObject();
 	}
 	
+	//=========================
+	// Mapping profile fields
+	//=========================
+	
 	/**
-	 * Converts
-	 * 
-	 * @param deleteMarker
-	 * @param namespace
-	 * @param bucket
-	 * @param collectionTime
-	 * @param builder
-	 * @return XContentBuilder
+	 * Not analyzed string field, searched and aggregated on
 	 */
-	private static XContentBuilder toJsonFormat( DeleteMarker deleteMarker, 
-			String   namespace, 
-			String   bucket,
-			Date     collectionTime,
-			XContentBuilder builder) {
-
-		try {
-			if(builder == null) {
-				builder = XContentFactory.jsonBuilder();
-			}
-
-			// add relevant fields
-			builder = builder.startObject()	    
-					.field( LAST_MODIFIED_TAG, deleteMarker.getLastModified() )
-					.field( KEY_TAG, deleteMarker.getKey() )
-					.field( KEY_TAG + ANALYZED_TAG, deleteMarker.getKey() )	
-					.field( NAMESPACE_TAG, namespace )
-					.field( BUCKET_TAG, bucket )
-					.field( VERSION_ID_TAG, deleteMarker.getVersionId() )
-					.field( IS_LATEST_TAG, deleteMarker.isLatest())
-					.field( OWNER_ID_TAG, (deleteMarker.getOwner() != null && deleteMarker.getOwner().getId() != null)
-							                ? deleteMarker.getOwner().getId() : null )	
-					.field( OWNER_NAME_TAG, (deleteMarker.getOwner() != null && deleteMarker.getOwner().getDisplayName() != null) 
-									          ? deleteMarker.getOwner().getDisplayName() : null )	
-					.field( COLLECTION_TIME, collectionTime )
-					.endObject();
-
-		} catch (IOException e) {
-			throw new RuntimeException(e.getLocalizedMessage());
-		}	
-
-		return builder;
+	private static XContentBuilder notAnalyzedField( XContentBuilder builder, String name ) throws IOException {
+		return builder.startObject( name ).field("type", "string")
+					.field("index", NOT_ANALYZED_INDEX).endObject();
 	}
 	
 	/**
-	 * Converts Query Object data into JSON
-	 * 
-	 * @param queryObject
-	 * @param namespace
-	 * @param bucket
-	 * @param collectionTime
-	 * @param builder
-	 * @return XContentBuilder
+	 * Not analyzed string field dashboards split their data by. 
+	 * Lean: global ordinals are built at refresh time rather than 
+	 * by the first aggregation after it.
 	 */
-	private static XContentBuilder toJsonFormat( QueryObject queryObject, 
-			String namespace, 
-			String bucket,
-			Date collectionTime,
-			XContentBuilder builder) {
-
-		try {
-			if(builder == null) {
-				builder = XContentFactory.jsonBuilder();
-			}
-						
-			// add known basic fields
-			builder = builder.startObject()	    
-					.field( KEY_TAG, queryObject.getObjectName() )
-					.field( KEY_TAG + ANALYZED_TAG, queryObject.getObjectName() )
-					.field( ETAG_TAG , queryObject.getObjectId())
-					.field( NAMESPACE_TAG, namespace )
-					.field( BUCKET_TAG, bucket )
-					.field( COLLECTION_TIME, collectionTime );
-			
-			// Add custom MS Key values as dynamic fields
-			for( QueryMetadata metadata : queryObject.getQueryMds() ) {
-				for( Entry<String, String> entry : metadata.getMdMap().entrySet() ) {
-					builder.field(entry.getKey(), entry.getValue());
-				}
+	private static XContentBuilder groupingField( XContentBuilder builder, String name, boolean lean ) throws IOException {
+		
+		builder.startObject( name ).field("type", "string").field("index", NOT_ANALYZED_INDEX);
+		if( lean ) {
+			builder.startObject("fielddata").field("loading", "eager_global_ordinals").endObject();
+		}
+		return builder.endObject();
+	}
+	
+	/**
+	 * String field aggregated on (e.g. duplicate detection). It stays
+	 * indexed as dashboards filter on the value of an aggregation bucket.
+	 * Lean: no norms as hits aren't ranked on it.
+	 */
+	private static XContentBuilder aggregatedField( XContentBuilder builder, String name, boolean lean ) throws IOException {
+		
+		if( !lean ) {
+			return notAnalyzedField(builder, name);
+		}
+		return builder.startObject( name ).field("type", "string").field("index", NOT_ANALYZED_INDEX)
+					.startObject("norms").field("enabled", false).endObject()
+				.endObject();
+	}
+	
+	/**
+	 * String field only displayed in searches. 
+	 * Lean: kept in the source only.
+	 */
+	private static XContentBuilder displayedField( XContentBuilder builder, String name, boolean lean ) throws IOException {
+		
+		if( !lean ) {
+			return notAnalyzedField(builder, name);
+		}
+		return builder.startObject( name ).field("type", "string")
+					.field("index", "no").field("doc_values", false).endObject();
+	}
+	
+	/**
+	 * Full text field. Lean: no norms as hits aren't ranked by length.
+	 */
+	private static XContentBuilder analyzedField( XContentBuilder builder, String name, boolean lean ) throws IOException {
+		
+		builder.startObject( name ).field("type", "string").field("index", ANALYZED_INDEX);
+		if( lean ) {
+			builder.startObject("norms").field("enabled", false).endObject();
+		}
+		return builder.endObject();
+	}
+	
+	private static XContentBuilder notAnalyzedDynamicFields( XContentBuilder builder ) throws IOException {
+		return builder.startArray("dynamic_templates")
+				  .startObject()
+					.startObject("notanalyzed")
+						.field("match", "*")
+						.field("match_mapping_type", "string")
+							.startObject( "mapping" ).field("type", "string")
+								.field("index", NOT_ANALYZED_INDEX).endObject()
+					.endObject()
+				  .endObject()
+				 .endArray();
+	}
+	
+	/**
+	 * Init Object change index
+	 */
+	private void initS3ObjectChangeIndex( String indexName ) {
+
+		if (elasticClient
+				.admin()
+				.indices()
+				.exists(new IndicesExistsRequest(indexName))
+				.actionGet()
+				.isExists()) {
+			// Index already exists no need to re-create it
+			return;
+		}
+
+		elasticClient.admin().indices().create(new CreateIndexRequest(indexName)).actionGet();	
+
+		try {
+			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
+					.preparePutMapping(indexName)
+					.setType(S3_OBJECT_CHANGE_INDEX_TYPE)
+					.setSource(s3ObjectChangeMapping())
+				.execute().actionGet();
+
+			if (putMappingResponse.isAcknowledged()) {
+				LOGGER.info("Index Created: " + indexName);
+			} else {
+				LOGGER.error("Index {} did not exist. " + 
+						"While attempting to create the index from stored ElasticSearch " +
+						"Templates we were unable to get an acknowledgement.", indexName);
+				LOGGER.error("Error Message: {}", putMappingResponse.toString());
+				throw new RuntimeException("Unable to create index " + indexName);
+			}			
+
+		} catch (IOException e) {
+			throw new RuntimeException( "Unable to create index " + 
+					indexName +
+					" " + e.getMessage()           );  
+		}
+	}
+	
+	/**
+	 * Mapping of the object change type, shared with the HTTP DAO
+	 * 
+	 * @return XContentBuilder
+	 * @throws IOException
+	 */
+	static XContentBuilder s3ObjectChangeMapping() throws IOException {
+		return XContentFactory.jsonBuilder().prettyPrint()
+			  .startObject()
+				.startObject(S3_OBJECT_CHANGE_INDEX_TYPE)
+
+					// ========================================
+					// Define how the basic fields are defined
+					// ========================================
+					.startObject("properties")
+					// CHANGE_TYPE_TAG
+					.startObject( CHANGE_TYPE_TAG ).field("type", "string")
+						.field("index", NOT_ANALYZED_INDEX).endObject()
+					// LAST_MODIFIED_TAG
+					.startObject( LAST_MODIFIED_TAG ).field("type", "date")
+						.field("format", "strict_date_optional_time||epoch_millis").endObject()
+					// SIZE_TAG
+					.startObject( SIZE_TAG ).field("type", "long").endObject()
+					// KEY_TAG
+					.startObject( KEY_TAG ).field("type", "string")
+						.field("index", NOT_ANALYZED_INDEX).endObject()
+					// KEY_TAG Analyzed
+					.startObject( KEY_TAG + ANALYZED_TAG).field("type", "string")
+						.field("index", ANALYZED_INDEX).endObject()
+					.startObject( ETAG_TAG ).field("type", "string")
+						.field("index", NOT_ANALYZED_INDEX).endObject()	
+					// NAMESPACE_TAG
+					.startObject( NAMESPACE_TAG ).field("type", "string")
+						.field("index", NOT_ANALYZED_INDEX).endObject()
+					// BUCKET_TAG
+					.startObject( BUCKET_TAG ).field("type", "string")
+						.field("index", NOT_ANALYZED_INDEX).endObject()
+					// COLLECTION_TIME
+					.startObject( COLLECTION_TIME ).field("type", "date")
+						.field("format", "strict_date_optional_time||epoch_millis").endObject() 
+					.endObject()
+				.endObject()
+			.endObject();
+	}
+	
+	/**
+	 * Converts object version data to json 
+	 * 
+	 * @param version
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @param builder
+	 * @return XContentBuilder
+	 */
+	static XContentBuilder toJsonFormat( Version version, 
+												 String   namespace, 
+												 String   bucket,
+												 Date     collectionTime,
+												 XContentBuilder builder) {
+
+		try {
+			if(builder == null) {
+				builder = XContentFactory.jsonBuilder();
 			}
-			
-			builder.endObject();
+			versionFields(version, namespace, bucket, collectionTime, DocumentFields.of(builder.startObject()));
+			return builder.endObject();
+
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Converts
+	 * 
+	 * @param deleteMarker
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @param builder
+	 * @return XContentBuilder
+	 */
+	static XContentBuilder toJsonFormat( DeleteMarker deleteMarker, 
+			String   namespace, 
+			String   bucket,
+			Date     collectionTime,
+			XContentBuilder builder) {
+
+		try {
+			if(builder == null) {
+				builder = XContentFactory.jsonBuilder();
+			}
+			deleteMarkerFields(deleteMarker, namespace, bucket, collectionTime, DocumentFields.of(builder.startObject()));
+			return builder.endObject();
+
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	/**
+	 * Converts Query Object data into JSON
+	 * 
+	 * @param queryObject
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @param keyPathDepth - number of key folder levels written
+	 * @param builder
+	 * @return XContentBuilder
+	 */
+	static XContentBuilder toJsonFormat( QueryObject queryObject, 
+			String namespace, 
+			String bucket,
+			Date collectionTime,
+			int keyPathDepth,
+			XContentBuilder builder) {
+
+		try {
+			if(builder == null) {
+				builder = XContentFactory.jsonBuilder();
+			}
+			queryObjectFields(queryObject, namespace, bucket, collectionTime, keyPathDepth, DocumentFields.of(builder.startObject()));
+			return builder.endObject();
 
 		} catch (IOException e) {
 			throw new RuntimeException(e.getLocalizedMessage());
-		}	
+		}
+	}
 
-		return builder;
+
+	/**
+	 * Converts Object change data into JSON
+	 * 
+	 * @param objectChange
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @param builder
+	 * @return XContentBuilder
+	 */
+	static XContentBuilder toJsonFormat( ObjectChange objectChange, 
+			String namespace, 
+			String bucket,
+			Date collectionTime,
+			XContentBuilder builder) {
+
+		try {
+			if(builder == null) {
+				builder = XContentFactory.jsonBuilder();
+			}
+			objectChangeFields(objectChange, namespace, bucket, collectionTime, DocumentFields.of(builder.startObject()));
+			return builder.endObject();
+
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
 	}
+	
+	
+	/**
+	 * Converts a normalized object record into JSON. 
+	 * Only fields known for the record are written.
+	 * 
+	 * @param objectRecord
+	 * @return XContentBuilder
+	 */
+	public static XContentBuilder toJsonFormat( ObjectRecord objectRecord ) {
+		return toJsonFormat(objectRecord, 0, null);
+	}
+	
+	static XContentBuilder toJsonFormat( ObjectRecord objectRecord, int keyPathDepth, XContentBuilder builder ) {
 
+		try {
+			if(builder == null) {
+				builder = XContentFactory.jsonBuilder();
+			}
+			objectRecordFields(objectRecord, keyPathDepth, DocumentFields.of(builder.startObject()));
+			return builder.endObject();
 
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	//=======================
+	// JSON fast path
+	//=======================
+	
+	/**
+	 * Writes object data as JSON without an XContentBuilder
+	 * (same document as toJsonFormat)
+	 * 
+	 * @param s3Object
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( S3Object s3Object, String namespace, String bucket, Date collectionTime ) {
+		return toJsonBytes(s3Object, namespace, bucket, collectionTime, 0);
+	}
+	
+	/**
+	 * Writes object data as JSON, along with the folders of its key
+	 * 
+	 * @param s3Object
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @param keyPathDepth - number of key folder levels written
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( S3Object s3Object, String namespace, String bucket, Date collectionTime, int keyPathDepth ) {
+		
+		JsonDocumentWriter writer = JsonDocumentWriter.startDocument();
+		objectFields(s3Object, namespace, bucket, collectionTime, keyPathDepth, DocumentFields.of(writer));
+		return writer.endDocument();
+	}
+	
+	/**
+	 * Writes object version data as JSON without an XContentBuilder
+	 * 
+	 * @param version
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( Version version, String namespace, String bucket, Date collectionTime ) {
+		
+		JsonDocumentWriter writer = JsonDocumentWriter.startDocument();
+		versionFields(version, namespace, bucket, collectionTime, DocumentFields.of(writer));
+		return writer.endDocument();
+	}
+	
+	/**
+	 * Writes delete marker data as JSON without an XContentBuilder
+	 * 
+	 * @param deleteMarker
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( DeleteMarker deleteMarker, String namespace, String bucket, Date collectionTime ) {
+		
+		JsonDocumentWriter writer = JsonDocumentWriter.startDocument();
+		deleteMarkerFields(deleteMarker, namespace, bucket, collectionTime, DocumentFields.of(writer));
+		return writer.endDocument();
+	}
+	
+	/**
+	 * Writes query object data as JSON without an XContentBuilder
+	 * 
+	 * @param queryObject
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( QueryObject queryObject, String namespace, String bucket, Date collectionTime ) {
+		return toJsonBytes(queryObject, namespace, bucket, collectionTime, 0);
+	}
+	
+	/**
+	 * Writes query object data as JSON, along with the folders of its key
+	 * 
+	 * @param queryObject
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @param keyPathDepth - number of key folder levels written
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( QueryObject queryObject, String namespace, String bucket, Date collectionTime, int keyPathDepth ) {
+		
+		JsonDocumentWriter writer = JsonDocumentWriter.startDocument();
+		queryObjectFields(queryObject, namespace, bucket, collectionTime, keyPathDepth, DocumentFields.of(writer));
+		return writer.endDocument();
+	}
+	
+	/**
+	 * Writes object change data as JSON without an XContentBuilder
+	 * 
+	 * @param objectChange
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( ObjectChange objectChange, String namespace, String bucket, Date collectionTime ) {
+		
+		JsonDocumentWriter writer = JsonDocumentWriter.startDocument();
+		objectChangeFields(objectChange, namespace, bucket, collectionTime, DocumentFields.of(writer));
+		return writer.endDocument();
+	}
+	
+	/**
+	 * Writes a normalized object record as JSON without an XContentBuilder.
+	 * Only fields known for the record are written.
+	 * 
+	 * @param objectRecord
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( ObjectRecord objectRecord ) {
+		return toJsonBytes(objectRecord, 0);
+	}
+	
+	/**
+	 * Writes a normalized object record as JSON, along with 
+	 * the folders of its key for current object records
+	 * 
+	 * @param objectRecord
+	 * @param keyPathDepth - number of key folder levels written
+	 * @return document bytes
+	 */
+	public static byte[] toJsonBytes( ObjectRecord objectRecord, int keyPathDepth ) {
+		
+		JsonDocumentWriter writer = JsonDocumentWriter.startDocument();
+		objectRecordFields(objectRecord, keyPathDepth, DocumentFields.of(writer));
+		return writer.endDocument();
+	}
+	
+	//=======================
+	// Document fields
+	//=======================
+	
+	/*
+	 * Fields of each document type, listed once for the 
+	 * XContentBuilder and the JSON fast path
+	 */
+	
+	private static void objectFields( S3Object s3Object, String namespace, String bucket, 
+									  Date collectionTime, int keyPathDepth, DocumentFields fields ) {
+		
+		fields.field( LAST_MODIFIED_FIELD, s3Object.getLastModified() )
+			  .field( SIZE_FIELD, s3Object.getSize() )
+			  .field( KEY_FIELD, s3Object.getKey() )
+			  .field( KEY_ANALYZED_FIELD, s3Object.getKey() )
+			  .field( ETAG_FIELD, s3Object.getETag() )
+			  .field( NAMESPACE_FIELD, namespace )
+			  .field( BUCKET_FIELD, bucket )
+			  .field( OWNER_ID_FIELD, (s3Object.getOwner() != null) ? s3Object.getOwner().getId() : null )
+			  .field( OWNER_NAME_FIELD, (s3Object.getOwner() != null) ? s3Object.getOwner().getDisplayName() : null )
+			  .field( COLLECTION_TIME_FIELD, collectionTime );
+		
+		keyPaths(fields, s3Object.getKey(), keyPathDepth);
+	}
+	
+	private static void versionFields( Version version, String namespace, String bucket, 
+									   Date collectionTime, DocumentFields fields ) {
+		
+		fields.field( LAST_MODIFIED_FIELD, version.getLastModified() )
+			  .field( SIZE_FIELD, version.getSize() )
+			  .field( KEY_FIELD, version.getKey() )
+			  .field( KEY_ANALYZED_FIELD, version.getKey() )
+			  .field( ETAG_FIELD, version.getETag() )
+			  .field( NAMESPACE_FIELD, namespace )
+			  .field( BUCKET_FIELD, bucket )
+			  .field( VERSION_ID_FIELD, version.getVersionId() )
+			  .field( IS_LATEST_FIELD, version.isLatest() )
+			  .field( OWNER_ID_FIELD, (version.getOwner() != null) ? version.getOwner().getId() : null )
+			  .field( OWNER_NAME_FIELD, (version.getOwner() != null) ? version.getOwner().getDisplayName() : null )
+			  .field( COLLECTION_TIME_FIELD, collectionTime );
+	}
+	
+	private static void deleteMarkerFields( DeleteMarker deleteMarker, String namespace, String bucket, 
+											Date collectionTime, DocumentFields fields ) {
+		
+		fields.field( LAST_MODIFIED_FIELD, deleteMarker.getLastModified() )
+			  .field( KEY_FIELD, deleteMarker.getKey() )
+			  .field( KEY_ANALYZED_FIELD, deleteMarker.getKey() )
+			  .field( NAMESPACE_FIELD, namespace )
+			  .field( BUCKET_FIELD, bucket )
+			  .field( VERSION_ID_FIELD, deleteMarker.getVersionId() )
+			  .field( IS_LATEST_FIELD, deleteMarker.isLatest() )
+			  .field( OWNER_ID_FIELD, (deleteMarker.getOwner() != null) ? deleteMarker.getOwner().getId() : null )
+			  .field( OWNER_NAME_FIELD, (deleteMarker.getOwner() != null) ? deleteMarker.getOwner().getDisplayName() : null )
+			  .field( COLLECTION_TIME_FIELD, collectionTime );
+	}
+	
+	private static void queryObjectFields( QueryObject queryObject, String namespace, String bucket, 
+										   Date collectionTime, int keyPathDepth, DocumentFields fields ) {
+		
+		fields.field( KEY_FIELD, queryObject.getObjectName() )
+			  .field( KEY_ANALYZED_FIELD, queryObject.getObjectName() )
+			  .field( ETAG_FIELD, queryObject.getObjectId() )
+			  .field( NAMESPACE_FIELD, namespace )
+			  .field( BUCKET_FIELD, bucket )
+			  .field( COLLECTION_TIME_FIELD, collectionTime );
+		
+		// Add custom MS Key values as dynamic fields
+		for( QueryMetadata metadata : queryObject.getQueryMds() ) {
+			for( Entry<String, String> entry : metadata.getMdMap().entrySet() ) {
+				fields.field(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		keyPaths(fields, queryObject.getObjectName(), keyPathDepth);
+	}
+	
+	private static void objectChangeFields( ObjectChange objectChange, String namespace, String bucket, 
+											Date collectionTime, DocumentFields fields ) {
+		
+		fields.field( CHANGE_TYPE_FIELD, objectChange.getChangeType().name() )
+			  .field( KEY_FIELD, objectChange.getKey() )
+			  .field( KEY_ANALYZED_FIELD, objectChange.getKey() )
+			  .field( ETAG_FIELD, objectChange.getETag() )
+			  .field( SIZE_FIELD, objectChange.getSize() )
+			  .field( LAST_MODIFIED_FIELD, objectChange.getLastModified() )
+			  .field( NAMESPACE_FIELD, namespace )
+			  .field( BUCKET_FIELD, bucket )
+			  .field( COLLECTION_TIME_FIELD, collectionTime );
+	}
+	
+	/**
+	 * Only fields known for the record are written
+	 */
+	private static void objectRecordFields( ObjectRecord objectRecord, int keyPathDepth, DocumentFields fields ) {
+		
+		if( objectRecord.getChangeType() != null ) {
+			fields.field( CHANGE_TYPE_FIELD, objectRecord.getChangeType().name() );
+		}
+		if( objectRecord.getLastModified() != null ) {
+			fields.field( LAST_MODIFIED_FIELD, objectRecord.getLastModified() );
+		}
+		if( objectRecord.getSize() != null ) {
+			fields.field( SIZE_FIELD, objectRecord.getSize() );
+		}
+		fields.field( KEY_FIELD, objectRecord.getKey() )
+			  .field( KEY_ANALYZED_FIELD, objectRecord.getKey() );
+		if( objectRecord.getETag() != null ) {
+			fields.field( ETAG_FIELD, objectRecord.getETag() );
+		}
+		fields.field( NAMESPACE_FIELD, objectRecord.getNamespace() )
+			  .field( BUCKET_FIELD, objectRecord.getBucket() );
+		if( objectRecord.getVersionId() != null ) {
+			fields.field( VERSION_ID_FIELD, objectRecord.getVersionId() );
+		}
+		if( objectRecord.getLatest() != null ) {
+			fields.field( IS_LATEST_FIELD, objectRecord.getLatest() );
+		}
+		if( objectRecord.getOwnerId() != null ) {
+			fields.field( OWNER_ID_FIELD, objectRecord.getOwnerId() );
+		}
+		if( objectRecord.getOwnerName() != null ) {
+			fields.field( OWNER_NAME_FIELD, objectRecord.getOwnerName() );
+		}
+		fields.field( COLLECTION_TIME_FIELD, objectRecord.getCollectionTime() );
+		
+		// Add custom MS Key values as dynamic fields
+		if( objectRecord.getMetadata() != null ) {
+			for( Entry<String, String> entry : objectRecord.getMetadata().entrySet() ) {
+				fields.field(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		if( objectRecord.getType() == ObjectDataType.object ) {
+			keyPaths(fields, objectRecord.getKey(), keyPathDepth);
+		}
+	}
+	
+	/**
+	 * Writes the folders of an object key, one field per level:
+	 * key_path_1 holds "a/" and key_path_2 "a/b/" for key "a/b/c.txt".
+	 * Levels the key doesn't have are left out.
+	 * 
+	 * @param fields
+	 * @param key
+	 * @param keyPathDepth - number of folder levels written
+	 */
+	private static void keyPaths( DocumentFields fields, String key, int keyPathDepth ) {
+		
+		int end = 0;
+		for( int level = 1; level <= keyPathDepth && key != null; level++ ) {
+			end = key.indexOf('/', end) + 1;
+			if( end == 0 ) {
+				break;
+			}
+			fields.field( KEY_PATH_FIELDS[level - 1], key.substring(0, end) );
+		}
+	}
+	
+	//=======================
+	// Document sources
+	//=======================
+	
+	/**
+	 * JSON sources are written by the fast path, binary ones 
+	 * (SMILE, CBOR) by an XContentBuilder of that encoding
+	 */
+	private BytesReference toSource( S3Object s3Object, String namespace, String bucket, Date collectionTime ) {
+		if( documentEncoding == XContentType.JSON ) {
+			return new BytesArray(toJsonBytes(s3Object, namespace, bucket, collectionTime, keyPathDepth));
+		}
+		return toJsonFormat(s3Object, namespace, bucket, collectionTime, keyPathDepth, newSourceBuilder()).bytes();
+	}
+	
+	private BytesReference toSource( Version version, String namespace, String bucket, Date collectionTime ) {
+		if( documentEncoding == XContentType.JSON ) {
+			return new BytesArray(toJsonBytes(version, namespace, bucket, collectionTime));
+		}
+		return toJsonFormat(version, namespace, bucket, collectionTime, newSourceBuilder()).bytes();
+	}
+	
+	private BytesReference toSource( DeleteMarker deleteMarker, String namespace, String bucket, Date collectionTime ) {
+		if( documentEncoding == XContentType.JSON ) {
+			return new BytesArray(toJsonBytes(deleteMarker, namespace, bucket, collectionTime));
+		}
+		return toJsonFormat(deleteMarker, namespace, bucket, collectionTime, newSourceBuilder()).bytes();
+	}
+	
+	private BytesReference toSource( QueryObject queryObject, String namespace, String bucket, Date collectionTime ) {
+		if( documentEncoding == XContentType.JSON ) {
+			return new BytesArray(toJsonBytes(queryObject, namespace, bucket, collectionTime, keyPathDepth));
+		}
+		return toJsonFormat(queryObject, namespace, bucket, collectionTime, keyPathDepth, newSourceBuilder()).bytes();
+	}
+	
+	private BytesReference toSource( ObjectChange objectChange, String namespace, String bucket, Date collectionTime ) {
+		if( documentEncoding == XContentType.JSON ) {
+			return new BytesArray(toJsonBytes(objectChange, namespace, bucket, collectionTime));
+		}
+		return toJsonFormat(objectChange, namespace, bucket, collectionTime, newSourceBuilder()).bytes();
+	}
+	
+	private BytesReference toSource( ObjectRecord objectRecord ) {
+		if( documentEncoding == XContentType.JSON ) {
+			return new BytesArray(toJsonBytes(objectRecord, keyPathDepth));
+		}
+		return toJsonFormat(objectRecord, keyPathDepth, newSourceBuilder()).bytes();
+	}
+	
+	/**
+	 * Current state of an object: object fields, time the object 
+	 * was last seen and time it was first seen for new objects
+	 */
+	private XContentBuilder toStateSource( ObjectRecord objectRecord, boolean firstSeen ) {
+		try {
+			XContentBuilder builder = newSourceBuilder().startObject();
+			objectRecordFields(objectRecord, keyPathDepth, DocumentFields.of(builder));
+			builder.field( ObjectStateIndex.LAST_SEEN_TAG, objectRecord.getCollectionTime() )
+					.field( ObjectStateIndex.DELETED_TAG, false );
+			if( firstSeen ) {
+				builder.field( ObjectStateIndex.FIRST_SEEN_TAG, objectRecord.getCollectionTime() );
+			}
+			return builder.endObject();
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	private XContentBuilder newSourceBuilder() {
+		try {
+			return XContentFactory.contentBuilder(documentEncoding);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		}
+	}
+	
+	static String getDocumentId( ObjectRecord objectRecord ) {
+		if( objectRecord.getType() == ObjectDataType.object_versions ) {
+			return DocumentIds.versionId( objectRecord.getNamespace(), objectRecord.getBucket(), objectRecord.getKey(), 
+										  objectRecord.getVersionId(), objectRecord.getCollectionTime() );
+		}
+		return DocumentIds.objectId( objectRecord.getNamespace(), objectRecord.getBucket(), objectRecord.getKey(), 
+									 objectRecord.getCollectionTime() );
+	}
+	
+	static String getIndexName( ObjectDataType type ) {
+		switch(type) {
+		  case object_versions:
+			return S3_OBJECT_VERSION_INDEX_NAME;
+		  case object_changes:
+			return S3_OBJECT_CHANGE_INDEX_NAME;
+		  default:
+			return S3_OBJECT_INDEX_NAME;
+		}
+	}
+	
+	static String getIndexType( ObjectDataType type ) {
+		switch(type) {
+		  case object_versions:
+			return S3_OBJECT_VERSION_INDEX_TYPE;
+		  case object_changes:
+			return S3_OBJECT_CHANGE_INDEX_TYPE;
+		  default:
+			return S3_OBJECT_INDEX_TYPE;
+		}
+	}
+	
+	private IndexRequest toIndexRequest( ObjectRecord objectRecord ) {
+		return elasticClient.prepareIndex()
+				.setIndex(getWriteIndex(getIndexName(objectRecord.getType()), objectRecord.getNamespace(), 
+										objectRecord.getCollectionTime()))
+				.setType(getIndexType(objectRecord.getType()))
+				.setId(getDocumentId(objectRecord))
+				.setSource(toSource(objectRecord))
+				.request();
+	}
+	
+	/**
+	 * Upserts the current state of objects along with change 
+	 * records of the added and modified ones
+	 * 
+	 * @param objectRecords
+	 * @return update and index requests
+	 */
+	private List<ActionRequest<?>> toStateRequests( List<ObjectRecord> objectRecords ) {
+		
+		List<ActionRequest<?>> requests = new ArrayList<ActionRequest<?>>();
+		
+		if( objectRecords.isEmpty() ) {
+			return requests;
+		}
+		
+		ChangeType[] changes = objectStateIndex.diff(objectRecords);
+		
+		for( int i = 0; i < changes.length; i++ ) {
+			ObjectRecord objectRecord = objectRecords.get(i);
+			
+			XContentBuilder state = (changes[i] != ChangeType.added) ? toStateSource(objectRecord, false) : null;
+			requests.add( ObjectStateIndex.toUpdateRequest(objectRecord, state, toStateSource(objectRecord, true), changes[i]) );
+			
+			if( changes[i] != null ) {
+				requests.add( toIndexRequest(ObjectStateIndex.toChangeRecord(objectRecord, changes[i])) );
+			}
+		}
+		
+		return requests;
+	}
+	
+	/**
+	 * Indexes documents through the bulk indexer and waits until they were sent
+	 * 
+	 * @param requests
+	 * @param indexName
+	 */
+	private void index( List<? extends ActionRequest<?>> requests, String indexName ) {
+		
+		BulkIndexer.Submission submission = send(requests, indexName);
+		
+		if( !submission.isSuccess() ) {
+			LOGGER.error( "Failure(s) occured while indexing items in Elasticsearch index: " + indexName + " " + 
+						  submission.getFailure().getLocalizedMessage() );
+		}
+	}
+	
+	/**
+	 * Upserts object states and waits until they were sent. 
+	 * Any failed state throws: the last seen time of that object
+	 * didn't move forward so the bucket must not be swept for 
+	 * deleted objects.
+	 * 
+	 * @param requests
+	 */
+	private void indexStates( List<? extends ActionRequest<?>> requests ) {
+		
+		BulkIndexer.Submission submission = send(requests, ObjectStateIndex.CURRENT_INDEX_NAME);
+		
+		if( !submission.isSuccess() ) {
+			throw new RuntimeException( "Failure(s) occured while updating object states in Elasticsearch index: " + 
+										ObjectStateIndex.CURRENT_INDEX_NAME + " " + 
+										submission.getFailure().getLocalizedMessage() );
+		}
+	}
+	
+	/**
+	 * Sends documents through the bulk indexer and waits until they were sent
+	 * 
+	 * @param requests
+	 * @param indexName
+	 * @return BulkIndexer.Submission - completed submission
+	 */
+	private BulkIndexer.Submission send( List<? extends ActionRequest<?>> requests, String indexName ) {
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(requests);
+		
+		try {
+			submission.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while indexing items in Elasticsearch index: " + indexName);
+		}
+		
+		if( submission.isSuccess() ) {
+			return submission;
+		}
+		
+		for( BulkItemResponse item : submission.getItems() ) {
+			if( item == null ) {
+				// bulk request itself failed
+				throw new RuntimeException( "Unable to index items in Elasticsearch index: " + indexName + " " + 
+											submission.getFailure().getLocalizedMessage() );
+			}
+		}
+		
+		return submission;
+	}
+	
 	/**
 	 * Purges documents based on collection dates
 	 * 
@@ -754,12 +1724,57 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 	 */
 	private Long purgeIndex(Date thresholdDate, String indexName, String indexType) {
 		
-		Long deletedDocs = 0L;
+		if( partitionedIndices != null && partitionedIndices.isDaily() ) {
+			// whole days of data get dropped at once
+			return partitionedIndices.dropIndicesBefore(indexName, thresholdDate);
+		}
 		
 		String thresholdDateString = OLD_DATA_DATE_FORMAT.format(thresholdDate);
 		QueryBuilder qb = QueryBuilders.rangeQuery(COLLECTION_TIME).lt(thresholdDateString);
 		BoolQueryBuilder boolQuery = QueryBuilders.boolQuery().filter(qb);
 		
+		return purgeDocuments(boolQuery, indexName, indexType, COLLECTION_TIME + " < " + thresholdDateString);
+	}
+	
+	/**
+	 * Purges objects flagged as deleted in the current state 
+	 * index which were last seen before a certain date
+	 * 
+	 * @param thresholdDate
+	 * @return Long
+	 */
+	private Long purgeDeletedObjects( Date thresholdDate ) {
+		
+		if( !elasticClient.admin().indices()
+				.exists(new IndicesExistsRequest(ObjectStateIndex.CURRENT_INDEX_NAME))
+				.actionGet()
+				.isExists() ) {
+			// objects are indexed for every collection
+			return 0L;
+		}
+		
+		String thresholdDateString = OLD_DATA_DATE_FORMAT.format(thresholdDate);
+		BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
+				.filter(QueryBuilders.termQuery(ObjectStateIndex.DELETED_TAG, true))
+				.filter(QueryBuilders.rangeQuery(ObjectStateIndex.LAST_SEEN_TAG).lt(thresholdDateString));
+		
+		return purgeDocuments( boolQuery, ObjectStateIndex.CURRENT_INDEX_NAME, S3_OBJECT_INDEX_TYPE, 
+							   "deleted and " + ObjectStateIndex.LAST_SEEN_TAG + " < " + thresholdDateString );
+	}
+	
+	/**
+	 * Deletes all documents matching a query
+	 * 
+	 * @param boolQuery
+	 * @param indexName
+	 * @param indexType
+	 * @param reason - logged criteria
+	 * @return Long
+	 */
+	private Long purgeDocuments( BoolQueryBuilder boolQuery, String indexName, String indexType, String reason ) {
+		
+		Long deletedDocs = 0L;
+		
 		// Purge 
 		SearchRequestBuilder searchRequestBuilder = elasticClient.prepareSearch(indexName);
 		searchRequestBuilder.setTypes(indexType);
@@ -786,7 +1801,7 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 				SearchHit searchHit = itr.next();	
 
 				DeleteRequest deleteRequest = new DeleteRequest()
-				.index(indexName)
+				.index(searchHit.getIndex())
 				.type(indexType)
 				.id(searchHit.getId());
 
@@ -795,7 +1810,7 @@ public class ElasticS3ObjectDAO implements ObjectDAO {
 
 			if (requestBuilder.numberOfActions() > 0 ) {
 				LOGGER.info("Found " + requestBuilder.numberOfActions() + " documents to delete in Elasticsearch index: " + 
-				        indexName + " due to collection_time < " + thresholdDateString);
+				        indexName + " due to " + reason);
 			} else {
 				// nothing was found no need 
 				// to continue further
@@ -0,0 +1,360 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+
+
+/**
+ * Writes flat JSON documents straight into a reusable per thread 
+ * buffer, without an XContentBuilder per document.
+ * 
+ * Field names are encoded once, dates are formatted like 
+ * XContentBuilder does (yyyy-MM-dd'T'HH:mm:ss.SSS'Z', UTC) with the 
+ * day part cached, and each document ends up in a single byte array 
+ * sized to fit which is handed to the index request as is.
+ */
+public class JsonDocumentWriter {
+
+	private final static Charset UTF8            = Charset.forName("UTF-8");
+	private final static int     INITIAL_CAPACITY = 1024;
+	private final static byte[]  NULL            = "null".getBytes(UTF8);
+	private final static byte[]  TRUE            = "true".getBytes(UTF8);
+	private final static byte[]  FALSE           = "false".getBytes(UTF8);
+	private final static byte[]  HEX_DIGITS      = "0123456789abcdef".getBytes(UTF8);
+	private final static long    MILLIS_PER_DAY  = 24L * 60L * 60L * 1000L;
+	
+	private final static ThreadLocal<JsonDocumentWriter> WRITERS = new ThreadLocal<JsonDocumentWriter>() {
+		@Override
+		protected JsonDocumentWriter initialValue() {
+			return new JsonDocumentWriter();
+		}
+	};
+	
+	/**
+	 * Field name encoded once as "name":
+	 */
+	public static class FieldName {
+		
+		private final String name;
+		private final byte[] bytes;
+		
+		public FieldName( String name ) {
+			JsonDocumentWriter writer = new JsonDocumentWriter();
+			writer.writeString(name);
+			writer.write((byte)':');
+			this.name  = name;
+			this.bytes = writer.toBytes();
+		}
+		
+		public String getName() {
+			return name;
+		}
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private byte[]  buffer = new byte[INITIAL_CAPACITY];
+	private int     length = 0;
+	private boolean firstField;
+	
+	// formatted day of the last written date
+	private long    cachedDay = Long.MIN_VALUE;
+	private byte[]  cachedDayBytes;
+	
+	private JsonDocumentWriter() {
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * Starts a document with the writer of the current thread
+	 * @return JsonDocumentWriter
+	 */
+	public static JsonDocumentWriter startDocument() {
+		JsonDocumentWriter writer = WRITERS.get();
+		writer.length     = 0;
+		writer.firstField = true;
+		writer.write((byte)'{');
+		return writer;
+	}
+	
+	/**
+	 * Ends the document
+	 * @return document bytes
+	 */
+	public byte[] endDocument() {
+		write((byte)'}');
+		return toBytes();
+	}
+	
+	public JsonDocumentWriter field( FieldName name, String value ) {
+		writeName(name);
+		if( value == null ) {
+			write(NULL);
+		} else {
+			writeString(value);
+		}
+		return this;
+	}
+	
+	public JsonDocumentWriter field( String name, String value ) {
+		writeSeparator();
+		writeString(name);
+		write((byte)':');
+		if( value == null ) {
+			write(NULL);
+		} else {
+			writeString(value);
+		}
+		return this;
+	}
+	
+	public JsonDocumentWriter field( FieldName name, Long value ) {
+		writeName(name);
+		if( value == null ) {
+			write(NULL);
+		} else {
+			writeLong(value);
+		}
+		return this;
+	}
+	
+	public JsonDocumentWriter field( FieldName name, Boolean value ) {
+		writeName(name);
+		write( (value == null) ? NULL : (value ? TRUE : FALSE) );
+		return this;
+	}
+	
+	public JsonDocumentWriter field( FieldName name, Date value ) {
+		writeName(name);
+		if( value == null ) {
+			write(NULL);
+		} else {
+			writeDate(value.getTime());
+		}
+		return this;
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private void writeName( FieldName name ) {
+		writeSeparator();
+		write(name.bytes);
+	}
+	
+	private void writeSeparator() {
+		if( firstField ) {
+			firstField = false;
+		} else {
+			write((byte)',');
+		}
+	}
+	
+	private void writeString( String value ) {
+		
+		ensureCapacity(value.length() * 6 + 2);
+		
+		buffer[length++] = '"';
+		
+		for( int i = 0; i < value.length(); i++ ) {
+			char c = value.charAt(i);
+			
+			if( c >= 0x20 && c < 0x80 ) {
+				if( c == '"' || c == '\\' ) {
+					buffer[length++] = '\\';
+				}
+				buffer[length++] = (byte)c;
+			} else if( c < 0x20 ) {
+				writeEscapedControl(c);
+			} else if( c < 0x800 ) {
+				buffer[length++] = (byte)(0xc0 | (c >> 6));
+				buffer[length++] = (byte)(0x80 | (c & 0x3f));
+			} else if( Character.isHighSurrogate(c) && i + 1 < value.length() && 
+					   Character.isLowSurrogate(value.charAt(i + 1)) ) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer[length++] = (byte)(0xf0 | (codePoint >> 18));
+				buffer[length++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[length++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[length++] = (byte)(0x80 | (codePoint & 0x3f));
+			} else if( Character.isSurrogate(c) ) {
+				// unpaired surrogate - not valid UTF-8, escaped like XContentBuilder does
+				writeEscapedUnicode(c);
+			} else {
+				buffer[length++] = (byte)(0xe0 | (c >> 12));
+				buffer[length++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+				buffer[length++] = (byte)(0x80 | (c & 0x3f));
+			}
+		}
+		
+		buffer[length++] = '"';
+	}
+	
+	private void writeEscapedControl( char c ) {
+		switch(c) {
+		  case '\n':
+			buffer[length++] = '\\';
+			buffer[length++] = 'n';
+			break;
+		  case '\r':
+			buffer[length++] = '\\';
+			buffer[length++] = 'r';
+			break;
+		  case '\t':
+			buffer[length++] = '\\';
+			buffer[length++] = 't';
+			break;
+		  default:
+			writeEscapedUnicode(c);
+		}
+	}
+	
+	private void writeEscapedUnicode( char c ) {
+		buffer[length++] = '\\';
+		buffer[length++] = 'u';
+		buffer[length++] = HEX_DIGITS[c >> 12];
+		buffer[length++] = HEX_DIGITS[(c >> 8) & 0xf];
+		buffer[length++] = HEX_DIGITS[(c >> 4) & 0xf];
+		buffer[length++] = HEX_DIGITS[c & 0xf];
+	}
+	
+	private void writeLong( long value ) {
+		
+		if( value == Long.MIN_VALUE ) {
+			write(Long.toString(value).getBytes(UTF8));
+			return;
+		}
+		
+		ensureCapacity(20);
+		
+		if( value < 0 ) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+		
+		int digits = 1;
+		for( long remaining = value / 10; remaining > 0; remaining /= 10 ) {
+			digits++;
+		}
+		
+		for( int i = length + digits - 1; i >= length; i-- ) {
+			buffer[i] = (byte)('0' + (value % 10));
+			value /= 10;
+		}
+		length += digits;
+	}
+	
+	private void writeDate( long millis ) {
+		
+		long day       = floorDiv(millis, MILLIS_PER_DAY);
+		int  timeOfDay = (int)(millis - day * MILLIS_PER_DAY);
+		
+		if( day != cachedDay ) {
+			// days before year 0 or after 9999 are not expected
+			cachedDayBytes = formatDay(day);
+			cachedDay      = day;
+		}
+		
+		ensureCapacity(cachedDayBytes.length + 16);
+		
+		buffer[length++] = '"';
+		System.arraycopy(cachedDayBytes, 0, buffer, length, cachedDayBytes.length);
+		length += cachedDayBytes.length;
+		
+		buffer[length++] = 'T';
+		writeDigits(timeOfDay / 3600000, 2);
+		buffer[length++] = ':';
+		writeDigits((timeOfDay / 60000) % 60, 2);
+		buffer[length++] = ':';
+		writeDigits((timeOfDay / 1000) % 60, 2);
+		buffer[length++] = '.';
+		writeDigits(timeOfDay % 1000, 3);
+		buffer[length++] = 'Z';
+		buffer[length++] = '"';
+	}
+	
+	private void writeDigits( int value, int digits ) {
+		for( int i = length + digits - 1; i >= length; i-- ) {
+			buffer[i] = (byte)('0' + (value % 10));
+			value /= 10;
+		}
+		length += digits;
+	}
+	
+	/**
+	 * Formats the day as yyyy-MM-dd (days since epoch to civil date)
+	 */
+	private static byte[] formatDay( long day ) {
+		
+		long z   = day + 719468;
+		long era = floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp  = (5 * doy + 2) / 153;
+		long d   = doy - (153 * mp + 2) / 5 + 1;
+		long m   = mp < 10 ? mp + 3 : mp - 9;
+		long y   = yoe + era * 400 + (m <= 2 ? 1 : 0);
+		
+		return String.format("%04d-%02d-%02d", y, m, d).getBytes(UTF8);
+	}
+	
+	private static long floorDiv( long x, long y ) {
+		long q = x / y;
+		if( (x % y != 0) && ((x ^ y) < 0) ) {
+			q--;
+		}
+		return q;
+	}
+	
+	private void write( byte b ) {
+		ensureCapacity(1);
+		buffer[length++] = b;
+	}
+	
+	private void write( byte[] bytes ) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+	
+	private void ensureCapacity( int additional ) {
+		if( length + additional > buffer.length ) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+		}
+	}
+	
+	private byte[] toBytes() {
+		return Arrays.copyOf(buffer, length);
+	}
+}
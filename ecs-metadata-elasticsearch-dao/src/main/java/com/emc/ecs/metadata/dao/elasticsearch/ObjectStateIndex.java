@@ -0,0 +1,397 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
+import com.emc.ecs.metadata.dao.ObjectRecord;
+
+
+/**
+ * Keeps one document per object (namespace, bucket, key) holding the
+ * last collected state of the object, instead of a full copy of every
+ * object per collection.
+ * 
+ * Documents are upserted on every collection: first_seen is set when 
+ * the object shows up, last_seen moves forward each time the object 
+ * is collected and objects which aren't listed anymore get flagged as 
+ * deleted. Added, modified and deleted objects are reported as change 
+ * records so only changes have to be kept as history.
+ * 
+ * first_seen is the first sighting of the current incarnation of the 
+ * object: an object flagged as deleted which shows up again is added 
+ * again and its first_seen is reset to that collection.
+ */
+public class ObjectStateIndex {
+
+	public  final static String CURRENT_INDEX_NAME = "ecs-s3-object-current";
+	public  final static String FIRST_SEEN_TAG     = "first_seen";
+	public  final static String LAST_SEEN_TAG      = "last_seen";
+	public  final static String DELETED_TAG        = "deleted";
+	
+	private final static int    SWEEP_BATCH_SIZE   = 5000;
+	
+	// stored fields telling whether an object changed
+	private final static String[] STATE_FIELDS = { ElasticS3ObjectDAO.ETAG_TAG, ElasticS3ObjectDAO.SIZE_TAG,
+												   ElasticS3ObjectDAO.LAST_MODIFIED_TAG, DELETED_TAG };
+	
+	//=========================
+	// Private members
+	//=========================
+	private final static Logger LOGGER = LoggerFactory.getLogger(ObjectStateIndex.class);
+	
+	private final TransportClient elasticClient;
+	
+	//=========================
+	// Constructor
+	//=========================
+	/**
+	 * @param elasticClient
+	 * @param settings - settings of the index if it has to be created
+	 * @param objectMapping - mapping of the object fields
+	 */
+	public ObjectStateIndex( TransportClient elasticClient, Settings settings, XContentBuilder objectMapping ) {
+		this.elasticClient = elasticClient;
+		if( !ElasticClientRegistry.isBootstrapped(elasticClient, CURRENT_INDEX_NAME) ) {
+			initCurrentIndex(settings, objectMapping);
+			ElasticClientRegistry.setBootstrapped(elasticClient, CURRENT_INDEX_NAME);
+		}
+	}
+	
+	//=========================
+	// Public methods
+	//=========================
+	
+	/**
+	 * @param objectRecord
+	 * @return id of the current state document of the object
+	 */
+	public static String getDocumentId( ObjectRecord objectRecord ) {
+		return DocumentIds.currentObjectId( objectRecord.getNamespace(), objectRecord.getBucket(), 
+											objectRecord.getKey() );
+	}
+	
+	/**
+	 * Compares collected objects against their stored state
+	 * 
+	 * @param objectRecords
+	 * @return change per record, null for unchanged objects
+	 */
+	public ChangeType[] diff( List<ObjectRecord> objectRecords ) {
+		
+		ChangeType[] changes = new ChangeType[objectRecords.size()];
+		
+		MultiGetRequestBuilder requestBuilder = elasticClient.prepareMultiGet();
+		for( ObjectRecord objectRecord : objectRecords ) {
+			requestBuilder.add( new MultiGetRequest.Item(CURRENT_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE, 
+														 getDocumentId(objectRecord))
+									.fetchSourceContext(new FetchSourceContext(STATE_FIELDS)) );
+		}
+		
+		MultiGetResponse response = requestBuilder.execute().actionGet();
+		
+		for( int i = 0; i < changes.length; i++ ) {
+			
+			MultiGetItemResponse item = response.getResponses()[i];
+			
+			if( item.isFailed() ) {
+				throw new RuntimeException( "Unable to read object state from Elasticsearch index: " + 
+											CURRENT_INDEX_NAME + " " + item.getFailure().getMessage() );
+			}
+			
+			Map<String, Object> state = item.getResponse().isExists() ? item.getResponse().getSource() : null;
+			
+			if( state == null || Boolean.TRUE.equals(state.get(DELETED_TAG)) ) {
+				changes[i] = ChangeType.added;
+			} else if( isModified(objectRecords.get(i), state) ) {
+				changes[i] = ChangeType.modified;
+			}
+		}
+		
+		return changes;
+	}
+	
+	/**
+	 * Builds the upsert of the current state of an object
+	 * 
+	 * @param objectRecord
+	 * @param state - object fields, last_seen and deleted flag
+	 * @param newState - same as state along with first_seen
+	 * @param change - change found by diff()
+	 * @return UpdateRequest
+	 */
+	public static UpdateRequest toUpdateRequest( ObjectRecord objectRecord, XContentBuilder state, 
+												 XContentBuilder newState, ChangeType change ) {
+		
+		UpdateRequest request = new UpdateRequest( CURRENT_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE, 
+												   getDocumentId(objectRecord) );
+		
+		if( change == ChangeType.added ) {
+			// new or re-created object starts over: the whole document is 
+			// replaced so first_seen of a deleted object showing up again 
+			// is the collection that found it again
+			return request.doc(newState).docAsUpsert(true);
+		}
+		return request.doc(state).upsert(newState);
+	}
+	
+	/**
+	 * @param objectRecord
+	 * @param changeType
+	 * @return change record of an object to be kept as history
+	 */
+	public static ObjectRecord toChangeRecord( ObjectRecord objectRecord, ChangeType changeType ) {
+		
+		ObjectRecord changeRecord = new ObjectRecord( ObjectDataType.object_changes, objectRecord.getNamespace(),
+													  objectRecord.getBucket(), objectRecord.getKey(), 
+													  objectRecord.getCollectionTime() );
+		changeRecord.setChangeType(changeType);
+		changeRecord.setETag(objectRecord.getETag());
+		changeRecord.setSize(objectRecord.getSize());
+		changeRecord.setLastModified(objectRecord.getLastModified());
+		return changeRecord;
+	}
+	
+	/**
+	 * Flags objects of a bucket which weren't collected at the 
+	 * collection time as deleted. All objects of the bucket 
+	 * collected at that time must have been stored.
+	 * 
+	 * @param namespace
+	 * @param bucket
+	 * @param collectionTime
+	 * @return change records of the deleted objects
+	 */
+	public List<ObjectRecord> markDeleted( String namespace, String bucket, Date collectionTime ) {
+		
+		List<ObjectRecord> deletedRecords = new ArrayList<ObjectRecord>();
+		
+		// upserts of the collection have to be searchable
+		elasticClient.admin().indices().prepareRefresh(CURRENT_INDEX_NAME).execute().actionGet();
+		
+		BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
+				.filter(QueryBuilders.termQuery(ElasticS3ObjectDAO.NAMESPACE_TAG, namespace))
+				.filter(QueryBuilders.termQuery(ElasticS3ObjectDAO.BUCKET_TAG, bucket))
+				.filter(QueryBuilders.rangeQuery(LAST_SEEN_TAG).lt(collectionTime.getTime()))
+				.mustNot(QueryBuilders.termQuery(DELETED_TAG, true));
+		
+		SearchResponse searchResponse = elasticClient.prepareSearch(CURRENT_INDEX_NAME)
+				.setTypes(ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE)
+				.setQuery(boolQuery)
+				.setFetchSource(new String[] { ElasticS3ObjectDAO.KEY_TAG, ElasticS3ObjectDAO.ETAG_TAG, 
+											   ElasticS3ObjectDAO.SIZE_TAG, ElasticS3ObjectDAO.LAST_MODIFIED_TAG }, null)
+				.setScroll(new TimeValue(60000))
+				.setSize(SWEEP_BATCH_SIZE)
+				.execute().actionGet();
+		
+		try {
+			while( searchResponse.getHits().getHits().length > 0 ) {
+				
+				BulkRequestBuilder requestBuilder = elasticClient.prepareBulk();
+				List<ObjectRecord> flaggedRecords = new ArrayList<ObjectRecord>();
+				
+				for( SearchHit searchHit : searchResponse.getHits().getHits() ) {
+					requestBuilder.add( elasticClient.prepareUpdate(CURRENT_INDEX_NAME, ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE, 
+																	searchHit.getId())
+							.setDoc( XContentFactory.jsonBuilder()
+									.startObject()
+										.field(DELETED_TAG, true)
+									.endObject() ) );
+					
+					flaggedRecords.add( toDeletedRecord(searchHit.getSource(), namespace, bucket, collectionTime) );
+				}
+				
+				BulkResponse bulkResponse = requestBuilder.execute().actionGet();
+				
+				if( bulkResponse.hasFailures() ) {
+					LOGGER.error( "Failure(s) occured while flagging deleted objects in Elasticsearch index: " + 
+								  CURRENT_INDEX_NAME + " " + bulkResponse.buildFailureMessage() );
+				}
+				
+				// objects still flagged as live are swept again by the next collection
+				BulkItemResponse[] items = bulkResponse.getItems();
+				for( int i = 0; i < items.length; i++ ) {
+					if( !items[i].isFailed() ) {
+						deletedRecords.add(flaggedRecords.get(i));
+					}
+				}
+				
+				searchResponse = elasticClient.prepareSearchScroll(searchResponse.getScrollId())
+						.setScroll(new TimeValue(60000))
+						.execute().actionGet();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e.getLocalizedMessage());
+		} finally {
+			clearScroll(searchResponse.getScrollId());
+		}
+		
+		if( !deletedRecords.isEmpty() ) {
+			LOGGER.info( "Flagged " + deletedRecords.size() + " objects of namespace: " + namespace + 
+						 " bucket: " + bucket + " as deleted in Elasticsearch index: " + CURRENT_INDEX_NAME );
+		}
+		
+		return deletedRecords;
+	}
+	
+	//=========================
+	// Private methods
+	//=========================
+	private void clearScroll( String scrollId ) {
+		if( scrollId == null ) {
+			return;
+		}
+		try {
+			elasticClient.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
+		} catch (RuntimeException e) {
+			// the scroll expires on its own
+			LOGGER.warn("Unable to clear scroll of index: " + CURRENT_INDEX_NAME + " " + e.getLocalizedMessage());
+		}
+	}
+	
+	private static boolean isModified( ObjectRecord objectRecord, Map<String, Object> state ) {
+		
+		Object eTag         = state.get(ElasticS3ObjectDAO.ETAG_TAG);
+		Object size         = state.get(ElasticS3ObjectDAO.SIZE_TAG);
+		Object lastModified = state.get(ElasticS3ObjectDAO.LAST_MODIFIED_TAG);
+		
+		if( (eTag == null) ? objectRecord.getETag() != null : !eTag.equals(objectRecord.getETag()) ) {
+			return true;
+		}
+		if( (size == null) ? objectRecord.getSize() != null : 
+			(objectRecord.getSize() == null || ((Number)size).longValue() != objectRecord.getSize()) ) {
+			return true;
+		}
+		if( (lastModified == null) ? objectRecord.getLastModified() != null :
+			(objectRecord.getLastModified() == null || 
+			 DocumentFingerprintStore.parseTime(lastModified) != objectRecord.getLastModified().getTime()) ) {
+			return true;
+		}
+		return false;
+	}
+	
+	private static ObjectRecord toDeletedRecord( Map<String, Object> state, String namespace, String bucket, Date collectionTime ) {
+		
+		Object key          = state.get(ElasticS3ObjectDAO.KEY_TAG);
+		Object eTag         = state.get(ElasticS3ObjectDAO.ETAG_TAG);
+		Object size         = state.get(ElasticS3ObjectDAO.SIZE_TAG);
+		Object lastModified = state.get(ElasticS3ObjectDAO.LAST_MODIFIED_TAG);
+		
+		ObjectRecord changeRecord = new ObjectRecord( ObjectDataType.object_changes, namespace, bucket, 
+													  (key != null) ? key.toString() : null, collectionTime );
+		changeRecord.setChangeType(ChangeType.deleted);
+		changeRecord.setETag((eTag != null) ? eTag.toString() : null);
+		changeRecord.setSize((size != null) ? ((Number)size).longValue() : null);
+		changeRecord.setLastModified((lastModified != null) ? new Date(DocumentFingerprintStore.parseTime(lastModified)) : null);
+		return changeRecord;
+	}
+	
+	private void initCurrentIndex( Settings settings, XContentBuilder objectMapping ) {
+		
+		if (elasticClient
+				.admin()
+				.indices()
+				.exists(new IndicesExistsRequest(CURRENT_INDEX_NAME))
+				.actionGet()
+				.isExists()) {
+			// Index already exists no need to re-create it
+			return;
+		}
+
+		elasticClient.admin().indices().create(new CreateIndexRequest(CURRENT_INDEX_NAME).settings(settings)).actionGet();	
+		
+		try {
+			PutMappingResponse putMappingResponse = elasticClient.admin().indices()
+			    .preparePutMapping(CURRENT_INDEX_NAME)
+			    .setType(ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE)
+			    .setSource(objectMapping)
+			    .execute().actionGet();
+			
+			// state fields are added to the object fields
+			PutMappingResponse putStateMappingResponse = elasticClient.admin().indices()
+			    .preparePutMapping(CURRENT_INDEX_NAME)
+			    .setType(ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE)
+			    .setSource(XContentFactory.jsonBuilder().prettyPrint()
+			                .startObject()
+			                    .startObject(ElasticS3ObjectDAO.S3_OBJECT_INDEX_TYPE)
+			                        .startObject("properties")
+			                            .startObject( FIRST_SEEN_TAG ).field("type", "date")
+			                            	.field("format", "strict_date_optional_time||epoch_millis").endObject()
+			                            .startObject( LAST_SEEN_TAG ).field("type", "date")
+			                            	.field("format", "strict_date_optional_time||epoch_millis").endObject()
+			                            .startObject( DELETED_TAG ).field("type", "boolean").endObject()
+			                        .endObject()
+			                    .endObject()
+			                .endObject())
+			    .execute().actionGet();
+
+			if (putMappingResponse.isAcknowledged() && putStateMappingResponse.isAcknowledged()) {
+				LOGGER.info("Index Created: " + CURRENT_INDEX_NAME);
+			} else {
+				LOGGER.error("Index {} did not exist. " + 
+						"While attempting to create the index from stored ElasticSearch " +
+						"Templates we were unable to get an acknowledgement.", CURRENT_INDEX_NAME);
+				LOGGER.error("Error Message: {}", putMappingResponse.toString());
+				throw new RuntimeException("Unable to create index " + CURRENT_INDEX_NAME);
+			}
+			
+		} catch (IOException e) {
+			throw new RuntimeException( "Unable to create index " + 
+					CURRENT_INDEX_NAME +
+					" " + e.getMessage()           );  
+		}
+	}
+}
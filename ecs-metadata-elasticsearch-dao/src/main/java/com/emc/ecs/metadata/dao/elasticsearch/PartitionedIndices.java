@@ -0,0 +1,336 @@
+/*
+
+The MIT License (MIT)
+
+Copyright (c) 2016 EMC Corporation
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Partitioned indices: instead of a single index per data type, documents 
+ * are written to one index per collection day (e.g. ecs-s3-object-2016.10.17), 
+ * per namespace (e.g. ecs-s3-object_ns1) or both (e.g. ecs-s3-object_ns1-2016.10.17).
+ * 
+ * Every partition is added to an alias named after the data type 
+ * (e.g. ecs-s3-object) the dashboards query across namespaces. Daily 
+ * indices of a namespace are also added to a namespace alias 
+ * (e.g. ecs-s3-object_ns1) so per namespace queries only touch the 
+ * shards of that namespace.
+ * 
+ * Old data is retired by dropping whole daily indices and a removed 
+ * namespace by dropping its indices, instead of deleting documents 
+ * one by one.
+ */
+public class PartitionedIndices {
+
+	private final static String DAY_PATTERN         = "yyyy.MM.dd";
+	private final static String DAY_REGEX           = "\\d{4}\\.\\d{2}\\.\\d{2}";
+	private final static String NAMESPACE_SEPARATOR = "_";
+	private final static String DAY_SEPARATOR       = "-";
+	
+	/**
+	 * Creates a partition index along with its mapping
+	 */
+	public interface IndexInitializer {
+		public void initIndex( String alias, String indexName );
+	}
+	
+	//================================
+	// Private members
+	//================================
+	private final static Logger LOGGER = LoggerFactory.getLogger(PartitionedIndices.class);
+	
+	private final Client              elasticClient;
+	private final IndexInitializer    indexInitializer;
+	private final boolean             dailyIndices;
+	private final boolean             namespaceIndices;
+	private final Map<String, String> namespaceGroups;
+	private final Set<String>         knownIndices = 
+			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	//================================
+	// Constructor
+	//================================
+	public PartitionedIndices( Client           elasticClient, 
+							   IndexInitializer indexInitializer,
+							   ElasticDAOConfig config            ) {
+		
+		this.elasticClient    = elasticClient;
+		this.indexInitializer = indexInitializer;
+		this.dailyIndices     = config.getDailyIndices();
+		this.namespaceIndices = config.getNamespaceIndices();
+		this.namespaceGroups  = (config.getNamespaceIndexGroups() != null) ? 
+									config.getNamespaceIndexGroups() : new HashMap<String, String>();
+	}
+	
+	//================================
+	// Public methods
+	//================================
+	
+	/**
+	 * @param config
+	 * @return true if the configuration partitions indices
+	 */
+	public static boolean isPartitioned( ElasticDAOConfig config ) {
+		return config.getDailyIndices() || config.getNamespaceIndices();
+	}
+	
+	public boolean isDaily() {
+		return dailyIndices;
+	}
+	
+	/**
+	 * @param alias - name the data type is read through
+	 * @param namespace
+	 * @param collectionTime
+	 * @return name of the index documents of the namespace collected at that time go to
+	 */
+	public String getIndexName( String alias, String namespace, Date collectionTime ) {
+		
+		String indexName = alias;
+		
+		if( namespaceIndices ) {
+			indexName = getNamespaceIndexName(alias, getPartition(namespace));
+		}
+		if( dailyIndices ) {
+			indexName += DAY_SEPARATOR + newDayFormat().format((collectionTime != null) ? collectionTime : new Date());
+		}
+		return indexName;
+	}
+	
+	/**
+	 * Returns the index documents of the namespace collected at that time 
+	 * go to, creating it and adding it to its aliases the first time it is used
+	 * 
+	 * @param alias
+	 * @param namespace
+	 * @param collectionTime
+	 * @return index name
+	 */
+	public String getWriteIndex( String alias, String namespace, Date collectionTime ) {
+		
+		String indexName = getIndexName(alias, namespace, collectionTime);
+		
+		if( knownIndices.contains(indexName) ) {
+			return indexName;
+		}
+		
+		synchronized (this) {
+			if( !knownIndices.contains(indexName) ) {
+				// documents must not reach the index before its mapping exists
+				indexInitializer.initIndex(alias, indexName);
+				addAlias(alias, indexName);
+				if( namespaceIndices && dailyIndices ) {
+					addAlias(getNamespaceIndexName(alias, getPartition(namespace)), indexName);
+				}
+				knownIndices.add(indexName);
+			}
+		}
+		return indexName;
+	}
+	
+	/**
+	 * Drops daily indices whose documents were all collected 
+	 * before the threshold date
+	 * 
+	 * @param alias
+	 * @param thresholdDate
+	 * @return number of documents dropped
+	 */
+	public Long dropIndicesBefore( String alias, Date thresholdDate ) {
+		
+		List<String> oldIndices = getIndicesBefore(alias, thresholdDate, getIndices(alias + "*"));
+		
+		return dropIndices(oldIndices, "collected before " + newDayFormat().format(thresholdDate));
+	}
+	
+	/**
+	 * Drops the indices of a namespace. Namespaces sharing indices
+	 * with other namespaces of a group can't be dropped on their own.
+	 * 
+	 * @param elasticClient
+	 * @param alias
+	 * @param namespace
+	 * @return number of documents dropped
+	 */
+	public static Long dropNamespace( Client elasticClient, String alias, String namespace ) {
+		
+		List<String> namespaceIndices = getNamespaceIndices( alias, namespace, 
+				getIndices(elasticClient, getNamespaceIndexName(alias, namespace) + "*") );
+		
+		if( namespaceIndices.isEmpty() ) {
+			LOGGER.info("No index found for namespace: " + namespace + " in " + alias);
+		}
+		
+		return dropIndices(elasticClient, namespaceIndices, "of namespace " + namespace);
+	}
+	
+	//================================
+	// Package methods
+	//================================
+	
+	/**
+	 * @param alias
+	 * @param thresholdDate
+	 * @param indexNames - indices whose name starts with the alias
+	 * @return daily indices of the alias whose documents were all collected before the threshold date
+	 */
+	static List<String> getIndicesBefore( String alias, Date thresholdDate, List<String> indexNames ) {
+		
+		String thresholdDay = newDayFormat().format(thresholdDate);
+		
+		// other data types share the prefix (ecs-s3-object-version...)
+		Pattern dailyIndexPattern = Pattern.compile( Pattern.quote(alias) + 
+				"(" + NAMESPACE_SEPARATOR + ".+)?" + DAY_SEPARATOR + "(" + DAY_REGEX + ")" );
+		
+		List<String> oldIndices = new ArrayList<String>();
+		
+		for( String indexName : indexNames ) {
+			Matcher matcher = dailyIndexPattern.matcher(indexName);
+			// day suffixes sort chronologically
+			if( matcher.matches() && matcher.group(2).compareTo(thresholdDay) < 0 ) {
+				oldIndices.add(indexName);
+			}
+		}
+		return oldIndices;
+	}
+	
+	/**
+	 * @param alias
+	 * @param namespace
+	 * @param indexNames - indices whose name starts with the namespace index name
+	 * @return indices holding the documents of the namespace only
+	 */
+	static List<String> getNamespaceIndices( String alias, String namespace, List<String> indexNames ) {
+		
+		// other namespaces may share the prefix (ns1 and ns10)
+		Pattern namespaceIndexPattern = Pattern.compile( Pattern.quote(getNamespaceIndexName(alias, namespace)) + 
+				"(" + DAY_SEPARATOR + DAY_REGEX + ")?" );
+		
+		List<String> namespaceIndices = new ArrayList<String>();
+		
+		for( String indexName : indexNames ) {
+			if( namespaceIndexPattern.matcher(indexName).matches() ) {
+				namespaceIndices.add(indexName);
+			}
+		}
+		return namespaceIndices;
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private String getPartition( String namespace ) {
+		String group = namespaceGroups.get(namespace);
+		return (group != null) ? group : namespace;
+	}
+	
+	private static String getNamespaceIndexName( String alias, String partition ) {
+		// index names are lower case without special characters
+		String suffix = (partition != null) ? partition.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_.-]", "-") : "";
+		return alias + NAMESPACE_SEPARATOR + suffix;
+	}
+	
+	private List<String> getIndices( String pattern ) {
+		return getIndices(elasticClient, pattern);
+	}
+	
+	private static List<String> getIndices( Client elasticClient, String pattern ) {
+		
+		List<String> indices = new ArrayList<String>();
+		
+		try {
+			Collections.addAll( indices, 
+					elasticClient.admin().indices().prepareGetIndex().setIndices(pattern).get().getIndices() );
+		} catch (IndexNotFoundException e) {
+			// nothing matches the pattern
+		}
+		return indices;
+	}
+	
+	private Long dropIndices( List<String> indices, String reason ) {
+		
+		Long docs = dropIndices(elasticClient, indices, reason);
+		knownIndices.removeAll(indices);
+		return docs;
+	}
+	
+	private static Long dropIndices( Client elasticClient, List<String> indices, String reason ) {
+		
+		if( indices.isEmpty() ) {
+			return 0L;
+		}
+		
+		String[] indexNames = indices.toArray(new String[indices.size()]);
+		
+		long docs = elasticClient.admin().indices().prepareStats(indexNames).setDocs(true)
+											.get().getPrimaries().getDocs().getCount();
+		
+		elasticClient.admin().indices().prepareDelete(indexNames).get();
+		
+		LOGGER.info("Dropped " + indices.size() + " indices holding " + docs + " documents " + reason + ": " + indices);
+		
+		return docs;
+	}
+	
+	private void addAlias( String alias, String indexName ) {
+		
+		if( alias.equals(indexName) ) {
+			return;
+		}
+		try {
+			elasticClient.admin().indices().prepareAliases().addAlias(indexName, alias).get();
+		} catch (ElasticsearchException e) {
+			// an index created before indices were partitioned holds the name
+			LOGGER.error("Unable to add index " + indexName + " to alias " + alias + 
+						 " (an index may already have that name): " + e.getLocalizedMessage());
+		}
+	}
+	
+	private static SimpleDateFormat newDayFormat() {
+		SimpleDateFormat dayFormat = new SimpleDateFormat(DAY_PATTERN);
+		dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return dayFormat;
+	}
+}
@@ -0,0 +1,346 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Assert;
+
+public class BulkIndexerTest {
+	
+	private static final String INDEX = "ecs-s3-object";
+	private static final String TYPE  = "object";
+	
+	/**
+	 * Bulk client replying right away: documents are rejected (429) a
+	 * given number of times, documents whose id starts with "bad" fail
+	 * with a mapping error and whole bulk requests can be rejected
+	 */
+	private static class FakeBulkClient implements BulkIndexer.BulkClient {
+		
+		private final Map<String, Integer> rejections   = new HashMap<String, Integer>();
+		private final List<List<String>>   bulkIds      = new ArrayList<List<String>>();
+		private final List<Long>           bulkTimes    = new ArrayList<Long>();
+		private int                        bulkFailures = 0;
+		
+		@Override
+		public void bulk( BulkRequest request, ActionListener<BulkResponse> listener ) {
+			
+			List<String> ids = new ArrayList<String>();
+			boolean      failBulk;
+			
+			synchronized (this) {
+				for( ActionRequest<?> action : request.requests() ) {
+					ids.add(((IndexRequest)action).id());
+				}
+				bulkIds.add(ids);
+				bulkTimes.add(System.nanoTime());
+				failBulk = (bulkFailures > 0);
+				if( failBulk ) {
+					bulkFailures--;
+				}
+			}
+			
+			if( failBulk ) {
+				listener.onFailure(new EsRejectedExecutionException("bulk queue full"));
+				return;
+			}
+			
+			BulkItemResponse[] items = new BulkItemResponse[ids.size()];
+			
+			for( int i = 0; i < ids.size(); i++ ) {
+				String id = ids.get(i);
+				
+				if( id.startsWith("bad") ) {
+					items[i] = new BulkItemResponse(i, "index", new BulkItemResponse.Failure(INDEX, TYPE, id,
+														new MapperParsingException("failed to parse [size]")));
+				} else if( reject(id) ) {
+					items[i] = new BulkItemResponse(i, "index", new BulkItemResponse.Failure(INDEX, TYPE, id,
+														new EsRejectedExecutionException("bulk queue full")));
+				} else {
+					items[i] = new BulkItemResponse(i, "index", new IndexResponse(INDEX, TYPE, id, 1L, true));
+				}
+			}
+			listener.onResponse(new BulkResponse(items, 1L));
+		}
+		
+		private synchronized boolean reject( String id ) {
+			Integer remaining = rejections.get(id);
+			if( remaining == null || remaining == 0 ) {
+				return false;
+			}
+			rejections.put(id, remaining - 1);
+			return true;
+		}
+		
+		synchronized List<List<String>> getBulkIds() {
+			return new ArrayList<List<String>>(bulkIds);
+		}
+		
+		synchronized long getMillisBetween( int bulk, int nextBulk ) {
+			return TimeUnit.NANOSECONDS.toMillis(bulkTimes.get(nextBulk) - bulkTimes.get(bulk));
+		}
+	}
+	
+	/**
+	 * Bulk client holding its replies until released
+	 */
+	private static class HeldBulkClient implements BulkIndexer.BulkClient {
+		
+		private final List<BulkRequest>                  requests  = new ArrayList<BulkRequest>();
+		private final List<ActionListener<BulkResponse>> listeners = new ArrayList<ActionListener<BulkResponse>>();
+		
+		@Override
+		public synchronized void bulk( BulkRequest request, ActionListener<BulkResponse> listener ) {
+			requests.add(request);
+			listeners.add(listener);
+		}
+		
+		synchronized int getBulkCount() {
+			return requests.size();
+		}
+		
+		void reply( int bulk ) {
+			
+			BulkRequest                  request;
+			ActionListener<BulkResponse> listener;
+			
+			synchronized (this) {
+				request  = requests.get(bulk);
+				listener = listeners.get(bulk);
+			}
+			
+			BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+			for( int i = 0; i < items.length; i++ ) {
+				String id = ((IndexRequest)request.requests().get(i)).id();
+				items[i] = new BulkItemResponse(i, "index", new IndexResponse(INDEX, TYPE, id, 1L, true));
+			}
+			listener.onResponse(new BulkResponse(items, 1L));
+		}
+	}
+	
+	private FakeBulkClient bulkClient;
+	private File           deadLetters;
+	private BulkIndexer    bulkIndexer;
+	
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		deadLetters = File.createTempFile("dead-letters", ".ndjson");
+		deadLetters.delete();
+		
+		bulkClient  = new FakeBulkClient();
+		// only full bulk requests are sent until the flush interval elapsed
+		bulkIndexer = new BulkIndexer( bulkClient, 100, 10 * 1024L * 1024L, 2, 50L,
+									   BulkIndexer.DEFAULT_TARGET_LATENCY_MS,
+									   new DeadLetterFile(deadLetters.getPath()), XContentType.JSON );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		bulkIndexer.close(10, TimeUnit.SECONDS);
+		deadLetters.delete();
+	}
+	
+	@Test
+	public void testRejectedDocumentsRetriedWithBackoff() throws Exception {
+		
+		bulkClient.rejections.put("a", 2);
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(documents("a", "b", "c"));
+		
+		Assert.assertTrue( "submission not completed", submission.await(10, TimeUnit.SECONDS) );
+		Assert.assertTrue( "submission failed: " + submission.getFailure(), submission.isSuccess() );
+		
+		List<List<String>> bulkIds = bulkClient.getBulkIds();
+		
+		Assert.assertEquals( "bulk requests are not matching", 3, bulkIds.size() );
+		Assert.assertEquals( "first bulk request is not matching", list("a", "b", "c"), bulkIds.get(0) );
+		Assert.assertEquals( "first retry is not matching", list("a"), bulkIds.get(1) );
+		Assert.assertEquals( "second retry is not matching", list("a"), bulkIds.get(2) );
+		
+		// backoff doubles with every attempt
+		Assert.assertTrue( "first retry sent too early", bulkClient.getMillisBetween(0, 1) >= 500L );
+		Assert.assertTrue( "second retry sent too early", bulkClient.getMillisBetween(1, 2) >= 1000L );
+		
+		// responses stay in the order documents were added
+		BulkItemResponse[] items = submission.getItems();
+		Assert.assertEquals( "first item is not matching", "a", items[0].getId() );
+		Assert.assertFalse( "retried item failed", items[0].isFailed() );
+		Assert.assertEquals( "second item is not matching", "b", items[1].getId() );
+		Assert.assertEquals( "third item is not matching", "c", items[2].getId() );
+		
+		Assert.assertFalse( "dead letter file written", deadLetters.exists() );
+	}
+	
+	@Test
+	public void testRejectedBulkRetried() throws Exception {
+		
+		bulkClient.bulkFailures = 1;
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(documents("a", "b"));
+		
+		Assert.assertTrue( "submission not completed", submission.await(10, TimeUnit.SECONDS) );
+		Assert.assertTrue( "submission failed: " + submission.getFailure(), submission.isSuccess() );
+		
+		List<List<String>> bulkIds = bulkClient.getBulkIds();
+		Assert.assertEquals( "bulk requests are not matching", 2, bulkIds.size() );
+		Assert.assertEquals( "retry is not matching", list("a", "b"), bulkIds.get(1) );
+	}
+	
+	@Test
+	public void testFailedDocumentsDeadLetteredBeforeCompletion() throws Exception {
+		
+		bulkClient.rejections.put("a", 1);
+		
+		final BulkIndexer.Submission submission = bulkIndexer.add(documents("a", "bad1", "c", "bad2"));
+		
+		final AtomicInteger  deadLettersOnCompletion = new AtomicInteger(-1);
+		final CountDownLatch completed               = new CountDownLatch(1);
+		submission.onComplete(new Runnable() {
+			@Override
+			public void run() {
+				deadLettersOnCompletion.set(readDeadLetters().size());
+				completed.countDown();
+			}
+		});
+		
+		Assert.assertTrue( "submission not completed", completed.await(10, TimeUnit.SECONDS) );
+		Assert.assertFalse( "submission succeeded", submission.isSuccess() );
+		
+		// completion waits for the retried document
+		Assert.assertEquals( "bulk requests are not matching", 2, bulkClient.getBulkIds().size() );
+		Assert.assertFalse( "retried item failed", submission.getItems()[0].isFailed() );
+		Assert.assertTrue( "item didn't fail", submission.getItems()[1].isFailed() );
+		Assert.assertFalse( "item failed", submission.getItems()[2].isFailed() );
+		
+		Assert.assertEquals( "dead letters not written on completion", 2, deadLettersOnCompletion.get() );
+		
+		List<String> lines = readDeadLetters();
+		Assert.assertTrue( "first dead letter is not matching: " + lines.get(0), lines.get(0).contains("\"id\":\"bad1\"") );
+		Assert.assertTrue( "second dead letter is not matching: " + lines.get(1), lines.get(1).contains("\"id\":\"bad2\"") );
+		Assert.assertTrue( "failure not kept: " + lines.get(0), lines.get(0).contains("failed to parse [size]") );
+	}
+	
+	@Test
+	public void testFullBulksSentRightAway() throws Exception {
+		
+		bulkIndexer.close(10, TimeUnit.SECONDS);
+		bulkIndexer = new BulkIndexer( bulkClient, 100, 10 * 1024L * 1024L, 2, 60000L,
+									   BulkIndexer.DEFAULT_TARGET_LATENCY_MS, null, XContentType.JSON );
+		
+		String[] ids = new String[250];
+		for( int i = 0; i < ids.length; i++ ) {
+			ids[i] = "doc" + i;
+		}
+		
+		BulkIndexer.Submission submission = bulkIndexer.add(documents(ids));
+		
+		Assert.assertEquals( "full bulk requests not sent", 2, bulkClient.getBulkIds().size() );
+		Assert.assertEquals( "bulk request size is not matching", 100, bulkClient.getBulkIds().get(0).size() );
+		Assert.assertFalse( "submission completed", submission.isDone() );
+		
+		Assert.assertTrue( "flush not completed", bulkIndexer.flush().await(10, TimeUnit.SECONDS) );
+		Assert.assertTrue( "submission failed: " + submission.getFailure(), submission.isSuccess() );
+		Assert.assertEquals( "remaining documents not sent", 50, bulkClient.getBulkIds().get(2).size() );
+	}
+	
+	@Test
+	public void testExpiredBulkQueuedWhenNoneCanBeSent() throws Exception {
+		
+		bulkIndexer.close(10, TimeUnit.SECONDS);
+		HeldBulkClient heldClient = new HeldBulkClient();
+		bulkIndexer = new BulkIndexer( heldClient, 100, 10 * 1024L * 1024L, 1, 50L,
+									   BulkIndexer.DEFAULT_TARGET_LATENCY_MS, null, XContentType.JSON );
+		
+		String[] ids = new String[100];
+		for( int i = 0; i < ids.length; i++ ) {
+			ids[i] = "doc" + i;
+		}
+		
+		// full bulk request takes the only slot
+		BulkIndexer.Submission fullSubmission = bulkIndexer.add(documents(ids));
+		Assert.assertEquals( "full bulk request not sent", 1, heldClient.getBulkCount() );
+		
+		BulkIndexer.Submission lateSubmission = bulkIndexer.add(documents("late"));
+		Thread.sleep(500L);
+		
+		Assert.assertEquals( "expired bulk request sent without slot", 1, heldClient.getBulkCount() );
+		Assert.assertFalse( "flush scheduler waits for a slot", isWaitingForSlot("bulk-indexer-flush") );
+		
+		// slot released - queued bulk request is sent right away
+		heldClient.reply(0);
+		Assert.assertTrue( "full submission failed: " + fullSubmission.getFailure(), fullSubmission.isSuccess() );
+		Assert.assertEquals( "queued bulk request not sent", 2, heldClient.getBulkCount() );
+		
+		heldClient.reply(1);
+		Assert.assertTrue( "late submission failed: " + lateSubmission.getFailure(), lateSubmission.isSuccess() );
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private static boolean isWaitingForSlot( String threadName ) {
+		
+		for( Map.Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet() ) {
+			if( !thread.getKey().getName().equals(threadName) ) {
+				continue;
+			}
+			for( StackTraceElement frame : thread.getValue() ) {
+				if( frame.getClassName().startsWith(Semaphore.class.getName()) ) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private static List<IndexRequest> documents( String... ids ) {
+		
+		List<IndexRequest> requests = new ArrayList<IndexRequest>();
+		for( String id : ids ) {
+			requests.add(new IndexRequest(INDEX, TYPE, id).source("{\"size\":1}"));
+		}
+		return requests;
+	}
+	
+	private static List<String> list( String... ids ) {
+		
+		List<String> list = new ArrayList<String>();
+		for( String id : ids ) {
+			list.add(id);
+		}
+		return list;
+	}
+	
+	private List<String> readDeadLetters() {
+		try {
+			return deadLetters.exists() ? Files.readAllLines(deadLetters.toPath(), Charset.forName("UTF-8")) :
+										  new ArrayList<String>();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.support.AbstractClient;
+import org.elasticsearch.client.support.Headers;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+import org.junit.Assert;
+
+public class BulkLoadSettingsTest {
+	
+	private static final String REFRESH_INTERVAL   = "index.refresh_interval";
+	private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+	
+	/**
+	 * Client keeping index settings in memory
+	 */
+	private static class SettingsClient extends AbstractClient {
+		
+		private final Map<String, Settings> indexSettings = new HashMap<String, Settings>();
+		private final List<String>          updates       = new ArrayList<String>();
+		private final List<String>          refreshes     = new ArrayList<String>();
+		
+		SettingsClient( ThreadPool threadPool ) {
+			super(Settings.EMPTY, threadPool, Headers.EMPTY);
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		protected <Request extends ActionRequest, Response extends ActionResponse,
+				   RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder>>
+		void doExecute( Action<Request, Response, RequestBuilder> action, Request request, ActionListener<Response> listener ) {
+			
+			if( request instanceof GetSettingsRequest ) {
+				ImmutableOpenMap.Builder<String, Settings> settings = ImmutableOpenMap.builder();
+				for( String indexName : ((GetSettingsRequest)request).indices() ) {
+					settings.put(indexName, getSettings(indexName));
+				}
+				listener.onResponse((Response)new GetSettingsResponse(settings.build()));
+			} else if( request instanceof UpdateSettingsRequest ) {
+				UpdateSettingsRequest updateRequest = (UpdateSettingsRequest)request;
+				Settings              settings      = getSettings(updateRequest);
+				for( String indexName : updateRequest.indices() ) {
+					indexSettings.put( indexName, Settings.settingsBuilder().put(getSettings(indexName))
+															.put(settings).build() );
+					updates.add( indexName + " " + settings.get(REFRESH_INTERVAL) + " " + settings.get(NUMBER_OF_REPLICAS) );
+				}
+				listener.onResponse(null);
+			} else if( request instanceof RefreshRequest ) {
+				for( String indexName : ((RefreshRequest)request).indices() ) {
+					refreshes.add(indexName);
+				}
+				listener.onResponse(null);
+			} else {
+				listener.onFailure(new UnsupportedOperationException(action.name()));
+			}
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+		private static Settings getSettings( UpdateSettingsRequest request ) {
+			// the getter is package private
+			try {
+				Method settings = UpdateSettingsRequest.class.getDeclaredMethod("settings");
+				settings.setAccessible(true);
+				return (Settings)settings.invoke(request);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		private Settings getSettings( String indexName ) {
+			Settings settings = indexSettings.get(indexName);
+			return (settings != null) ? settings : Settings.EMPTY;
+		}
+	}
+	
+	
+	@Test
+	public void testRestoreStaleSettings() throws Exception {
+		
+		File stateFile = File.createTempFile("bulk-load", ".state");
+		ThreadPool threadPool = new ThreadPool("bulk-load-settings-test");
+		
+		try {
+			// left by a run killed while in bulk load mode
+			Properties staleState = new Properties();
+			staleState.setProperty("ecs-s3-object-2016.10.17." + REFRESH_INTERVAL, "30s");
+			staleState.setProperty("ecs-s3-object-2016.10.17." + NUMBER_OF_REPLICAS, "2");
+			staleState.setProperty("ecs-bucket." + REFRESH_INTERVAL, "5s");
+			try( OutputStream output = new FileOutputStream(stateFile) ) {
+				staleState.store(output, null);
+			}
+			
+			SettingsClient client = new SettingsClient(threadPool);
+			client.indexSettings.put("ecs-s3-object-2016.10.17", bulkSettings());
+			client.indexSettings.put("ecs-bucket", bulkSettings());
+			
+			BulkLoadSettings bulkLoadSettings = new BulkLoadSettings(client, stateFile.getPath());
+			
+			Assert.assertEquals( "restored settings are not matching", 2, client.updates.size() );
+			Assert.assertTrue( "object index not restored: " + client.updates,
+							   client.updates.contains("ecs-s3-object-2016.10.17 30s 2") );
+			Assert.assertTrue( "bucket index not restored: " + client.updates,
+							   client.updates.contains("ecs-bucket 5s null") );
+			Assert.assertEquals( "restored indices not refreshed", 2, client.refreshes.size() );
+			Assert.assertFalse( "state file not deleted", stateFile.exists() );
+			
+			// indices tuned by the run are restored the same way
+			client.updates.clear();
+			client.indexSettings.put( "ecs-billing-bucket", Settings.settingsBuilder().put(NUMBER_OF_REPLICAS, "1").build() );
+			
+			// original settings of an index already in bulk load mode are unknown
+			client.indexSettings.put("ecs-billing-namespace", bulkSettings());
+			
+			bulkLoadSettings.tune("ecs-billing-bucket", "ecs-billing-namespace");
+			
+			Assert.assertEquals( "tuned settings are not matching", "[ecs-billing-bucket -1 0]", client.updates.toString() );
+			
+			Properties state = new Properties();
+			try( InputStream input = new FileInputStream(stateFile) ) {
+				state.load(input);
+			}
+			Assert.assertEquals( "saved refresh interval is not matching", "1s",
+								 state.getProperty("ecs-billing-bucket." + REFRESH_INTERVAL) );
+			Assert.assertEquals( "saved replicas are not matching", "1",
+								 state.getProperty("ecs-billing-bucket." + NUMBER_OF_REPLICAS) );
+			Assert.assertNull( "bulk values saved as original settings",
+							   state.getProperty("ecs-billing-namespace." + REFRESH_INTERVAL) );
+			
+			client.updates.clear();
+			bulkLoadSettings.restore();
+			
+			Assert.assertEquals( "restored settings are not matching", "[ecs-billing-bucket 1s 1]", client.updates.toString() );
+			Assert.assertFalse( "state file not deleted", stateFile.exists() );
+		} finally {
+			stateFile.delete();
+			ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+		}
+	}
+	
+	private static Settings bulkSettings() {
+		return Settings.settingsBuilder().put(REFRESH_INTERVAL, "-1").put(NUMBER_OF_REPLICAS, "0").build();
+	}
+}
@@ -0,0 +1,190 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Assert;
+
+public class DeadLetterFileTest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Bulk client keeping the documents it receives, documents
+	 * whose id starts with "bad" fail with a mapping error
+	 */
+	private static class RecordingBulkClient implements BulkIndexer.BulkClient {
+		
+		private final List<ActionRequest<?>> requests = new ArrayList<ActionRequest<?>>();
+		
+		@Override
+		public synchronized void bulk( BulkRequest request, ActionListener<BulkResponse> listener ) {
+			
+			BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+			
+			for( int i = 0; i < items.length; i++ ) {
+				ActionRequest<?> action = request.requests().get(i);
+				requests.add(action);
+				
+				if( action instanceof UpdateRequest ) {
+					UpdateRequest update = (UpdateRequest)action;
+					items[i] = new BulkItemResponse( i, "update",
+							new UpdateResponse(update.index(), update.type(), update.id(), 1L, true) );
+				} else {
+					IndexRequest index = (IndexRequest)action;
+					if( index.id().startsWith("bad") ) {
+						items[i] = new BulkItemResponse( i, "index", new BulkItemResponse.Failure(index.index(),
+								index.type(), index.id(), new MapperParsingException("failed to parse [size]")) );
+					} else {
+						items[i] = new BulkItemResponse( i, "index",
+								new IndexResponse(index.index(), index.type(), index.id(), 1L, true) );
+					}
+				}
+			}
+			listener.onResponse(new BulkResponse(items, 1L));
+		}
+	}
+	
+	private File                deadLetters;
+	private File                replayFile;
+	private DeadLetterFile      deadLetterFile;
+	private RecordingBulkClient bulkClient;
+	private BulkIndexer         bulkIndexer;
+	
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		deadLetters = File.createTempFile("dead-letters", ".ndjson");
+		deadLetters.delete();
+		replayFile = new File(deadLetters.getPath() + ".replaying");
+		
+		deadLetterFile = new DeadLetterFile(deadLetters.getPath());
+		bulkClient     = new RecordingBulkClient();
+		bulkIndexer    = new BulkIndexer( bulkClient, 100, 10 * 1024L * 1024L, 1, 50L,
+										  BulkIndexer.DEFAULT_TARGET_LATENCY_MS, deadLetterFile, XContentType.JSON );
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		bulkIndexer.close(10, TimeUnit.SECONDS);
+		deadLetters.delete();
+		replayFile.delete();
+	}
+	
+	@Test
+	public void testReplay() throws Exception {
+		
+		Map<String, Object> source = new HashMap<String, Object>();
+		source.put("key", "dir/\u043a\u043b\u044e\u0447\n");
+		source.put("size", 10);
+		
+		List<ActionRequest<?>> requests = new ArrayList<ActionRequest<?>>();
+		requests.add(new IndexRequest("ecs-s3-object", "object", "1").source(source));
+		requests.add(new IndexRequest("ecs-s3-object", "object", "bad2").source("{\"size\":\"x\"}"));
+		
+		List<String> failures = new ArrayList<String>();
+		failures.add("rejected");
+		failures.add("failed to parse [size]");
+		
+		Assert.assertEquals( "documents written are not matching", 2, deadLetterFile.write(requests, failures) );
+		Assert.assertEquals( "lines are not matching", 2, readLines(deadLetters).size() );
+		
+		Assert.assertEquals( "documents indexed are not matching", 1L, deadLetterFile.replay(bulkIndexer) );
+		
+		Assert.assertEquals( "documents replayed are not matching", 2, bulkClient.requests.size() );
+		IndexRequest replayed = (IndexRequest)bulkClient.requests.get(0);
+		Assert.assertEquals( "index is not matching", "ecs-s3-object", replayed.index() );
+		Assert.assertEquals( "type is not matching", "object", replayed.type() );
+		Assert.assertEquals( "id is not matching", "1", replayed.id() );
+		Assert.assertEquals( "source is not matching", source, replayed.sourceAsMap() );
+		
+		// failing again
+		Assert.assertFalse( "replay file not deleted", replayFile.exists() );
+		List<String> lines = readLines(deadLetters);
+		Assert.assertEquals( "documents failing again are not matching", 1, lines.size() );
+		Assert.assertTrue( "document failing again is not matching: " + lines.get(0), lines.get(0).contains("\"id\":\"bad2\"") );
+	}
+	
+	@Test
+	public void testInterruptedReplay() throws Exception {
+		
+		List<String> failures = new ArrayList<String>();
+		failures.add("rejected");
+		
+		List<ActionRequest<?>> requests = new ArrayList<ActionRequest<?>>();
+		requests.add(new IndexRequest("ecs-s3-object", "object", "1").source("{\"size\":1}"));
+		deadLetterFile.write(requests, failures);
+		
+		// replay killed before it completed
+		Assert.assertTrue( "dead letter file not renamed", deadLetters.renameTo(replayFile) );
+		
+		requests.clear();
+		requests.add(new IndexRequest("ecs-s3-object", "object", "2").source("{\"size\":2}"));
+		deadLetterFile.write(requests, failures);
+		
+		Assert.assertEquals( "documents indexed are not matching", 2L, deadLetterFile.replay(bulkIndexer) );
+		Assert.assertEquals( "first document is not matching", "1", ((IndexRequest)bulkClient.requests.get(0)).id() );
+		Assert.assertEquals( "second document is not matching", "2", ((IndexRequest)bulkClient.requests.get(1)).id() );
+		
+		Assert.assertFalse( "replay file not deleted", replayFile.exists() );
+		Assert.assertFalse( "dead letter file not deleted", deadLetters.exists() );
+		Assert.assertEquals( "nothing to replay", 0L, deadLetterFile.replay(bulkIndexer) );
+	}
+	
+	@Test
+	public void testReplayUpdate() throws Exception {
+		
+		Map<String, Object> doc = new HashMap<String, Object>();
+		doc.put("last_seen", 1476662400000L);
+		Map<String, Object> upsert = new HashMap<String, Object>(doc);
+		upsert.put("first_seen", 1476662400000L);
+		
+		List<ActionRequest<?>> requests = new ArrayList<ActionRequest<?>>();
+		requests.add( new UpdateRequest("ecs-s3-object-current", "object", "1").doc(doc).upsert(upsert) );
+		requests.add( new UpdateRequest("ecs-s3-object-current", "object", "2").doc(upsert).docAsUpsert(true) );
+		
+		List<String> failures = new ArrayList<String>();
+		failures.add("rejected");
+		failures.add("rejected");
+		
+		Assert.assertEquals( "documents written are not matching", 2, deadLetterFile.write(requests, failures) );
+		Assert.assertEquals( "documents indexed are not matching", 2L, deadLetterFile.replay(bulkIndexer) );
+		
+		UpdateRequest update = (UpdateRequest)bulkClient.requests.get(0);
+		Assert.assertEquals( "index is not matching", "ecs-s3-object-current", update.index() );
+		Assert.assertEquals( "id is not matching", "1", update.id() );
+		Assert.assertEquals( "doc is not matching", doc, update.doc().sourceAsMap() );
+		Assert.assertEquals( "upsert is not matching", upsert, update.upsertRequest().sourceAsMap() );
+		Assert.assertFalse( "doc as upsert is not matching", update.docAsUpsert() );
+		
+		UpdateRequest docAsUpsert = (UpdateRequest)bulkClient.requests.get(1);
+		Assert.assertEquals( "doc is not matching", upsert, docAsUpsert.doc().sourceAsMap() );
+		Assert.assertNull( "upsert is not matching", docAsUpsert.upsertRequest() );
+		Assert.assertTrue( "doc as upsert is not matching", docAsUpsert.docAsUpsert() );
+	}
+	
+	private static List<String> readLines( File file ) throws Exception {
+		return Files.readAllLines(file.toPath(), UTF8);
+	}
+}
@@ -0,0 +1,88 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+public class DocumentIdsTest {
+	
+	// 2016-10-17T00:00:00Z
+	private static final Date COLLECTION_TIME = new Date(1476662400000L);
+	
+	
+	@Test
+	public void testStableIds() throws Exception {
+		
+		// ids of documents indexed by earlier versions must not change
+		Assert.assertEquals( "object id is not matching", "db86d89fe882ed7a9840a6b94c4b3838", 
+							 DocumentIds.objectId("ns1", "bucket", "dir/key.txt", COLLECTION_TIME) );
+		Assert.assertEquals( "current object id is not matching", "77bf357777b7e81702d969d6b74fea5d", 
+							 DocumentIds.currentObjectId("ns1", "bucket", "dir/key.txt") );
+		Assert.assertEquals( "version id is not matching", "3efb8f95e052f88ce61a0c07dc86ab3a", 
+							 DocumentIds.versionId("ns1", "bucket", "dir/\u043a\u043b\u044e\u0447", "v1", COLLECTION_TIME) );
+		Assert.assertEquals( "namespace id is not matching", "fbaf377c1a0de396123141ca819ead0c", 
+							 DocumentIds.namespaceId("ns1", COLLECTION_TIME) );
+	}
+	
+	@Test
+	public void testSameEntitySameId() throws Exception {
+		
+		Assert.assertEquals( "object ids are not matching", 
+							 DocumentIds.objectId("ns1", "bucket", "key", COLLECTION_TIME),
+							 DocumentIds.objectId("ns1", "bucket", "key", new Date(COLLECTION_TIME.getTime())) );
+		Assert.assertEquals( "bucket ids are not matching", 
+							 DocumentIds.bucketId("ns1", "bucket", COLLECTION_TIME),
+							 DocumentIds.bucketId("ns1", "bucket", new Date(COLLECTION_TIME.getTime())) );
+		
+		String id = DocumentIds.objectId("ns1", "bucket", "key", COLLECTION_TIME);
+		Assert.assertTrue( "id is not lower case hex: " + id, id.matches("[0-9a-f]{32}") );
+	}
+	
+	@Test
+	public void testDistinctIds() throws Exception {
+		
+		Date nextCollection = new Date(COLLECTION_TIME.getTime() + 1L);
+		
+		Set<String> ids = new HashSet<String>();
+		
+		String[] idList = new String[] {
+				DocumentIds.objectId("ns1", "bucket", "key", COLLECTION_TIME),
+				DocumentIds.objectId("ns1", "bucket", "key", nextCollection),
+				DocumentIds.objectId("ns2", "bucket", "key", COLLECTION_TIME),
+				DocumentIds.objectId("ns1", "bucket2", "key", COLLECTION_TIME),
+				DocumentIds.objectId("ns1", "bucket", "key2", COLLECTION_TIME),
+				// part boundaries are kept
+				DocumentIds.objectId("ns1", "bucketk", "ey", COLLECTION_TIME),
+				DocumentIds.objectId("ns1b", "ucket", "key", COLLECTION_TIME),
+				DocumentIds.objectId("ns1", "bucket", "key1", new Date(476662400000L)),
+				DocumentIds.currentObjectId("ns1", "bucket", "key"),
+				DocumentIds.versionId("ns1", "bucket", "key", "v1", COLLECTION_TIME),
+				DocumentIds.versionId("ns1", "bucket", "key", "v2", COLLECTION_TIME),
+				DocumentIds.versionId("ns1", "bucket", "key", null, COLLECTION_TIME),
+				DocumentIds.versionId("ns1", "bucket", "key", "null", COLLECTION_TIME),
+				DocumentIds.bucketId("ns1", "bucket", COLLECTION_TIME),
+				DocumentIds.bucketId("ns1", "bucket", nextCollection),
+				DocumentIds.namespaceId("ns1", COLLECTION_TIME),
+				DocumentIds.namespaceId("ns1", nextCollection)
+		};
+		
+		for( String id : idList ) {
+			Assert.assertTrue( "duplicate id " + id, ids.add(id) );
+		}
+	}
+	
+	@Test
+	public void testCurrentIdIgnoresCollectionTime() throws Exception {
+		
+		// object ids change with every collection, the current id of the object doesn't
+		Assert.assertNotEquals( "object ids of two collections are matching", 
+								DocumentIds.objectId("ns1", "bucket", "key", COLLECTION_TIME),
+								DocumentIds.objectId("ns1", "bucket", "key", new Date(COLLECTION_TIME.getTime() + 1000L)) );
+		Assert.assertNotEquals( "current object id is the id of a collection", 
+								DocumentIds.currentObjectId("ns1", "bucket", "key"),
+								DocumentIds.objectId("ns1", "bucket", "key", COLLECTION_TIME) );
+	}
+}
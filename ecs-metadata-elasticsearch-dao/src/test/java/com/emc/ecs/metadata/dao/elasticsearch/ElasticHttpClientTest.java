@@ -0,0 +1,142 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Test;
+import org.junit.Assert;
+
+public class ElasticHttpClientTest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	
+	@Test
+	public void testBulkBody() throws Exception {
+		
+		Map<String, Object> partialDoc = new HashMap<String, Object>();
+		partialDoc.put("last_seen", "2016-10-17T00:00:00Z");
+		Map<String, Object> upsertDoc = new HashMap<String, Object>();
+		upsertDoc.put("first_seen", "2016-10-17T00:00:00Z");
+		
+		BulkRequest request = new BulkRequest();
+		// pretty printed and binary sources end up on a single line
+		request.add(new IndexRequest("ecs-s3-object", "object", "1").source("{\n  \"key\" : \"a\\nb\"\n}"));
+		request.add(new IndexRequest("ecs-bucket", "bucket", "2").routing("ns1").create(true)
+				.source(XContentFactory.smileBuilder().startObject().field("size", 10).endObject()));
+		request.add(new DeleteRequest("ecs-s3-object", "object", "3"));
+		request.add(new UpdateRequest("ecs-s3-object-current", "object", "4").doc(partialDoc).docAsUpsert(true).upsert(upsertDoc));
+		
+		String   body  = new String(ElasticHttpClient.toBulkBody(request), UTF8);
+		String[] lines = body.split("\n", -1);
+		
+		Assert.assertEquals( "lines are not matching: " + body, 8, lines.length );
+		Assert.assertEquals( "body doesn't end with a newline", "", lines[7] );
+		
+		Assert.assertEquals( "index action is not matching",
+							 "{\"index\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"1\"}}", lines[0] );
+		Assert.assertEquals( "index source is not matching", "a\nb", toMap(lines[1]).get("key") );
+		
+		Assert.assertEquals( "create action is not matching",
+							 "{\"create\":{\"_index\":\"ecs-bucket\",\"_type\":\"bucket\",\"_id\":\"2\",\"_routing\":\"ns1\"}}", lines[2] );
+		Assert.assertEquals( "binary source is not matching", "{\"size\":10}", lines[3] );
+		
+		Assert.assertEquals( "delete action is not matching",
+							 "{\"delete\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"3\"}}", lines[4] );
+		
+		Assert.assertEquals( "update action is not matching",
+							 "{\"update\":{\"_index\":\"ecs-s3-object-current\",\"_type\":\"object\",\"_id\":\"4\"}}", lines[5] );
+		
+		Map<String, Object> update = toMap(lines[6]);
+		Assert.assertEquals( "partial document is not matching", partialDoc, update.get("doc") );
+		Assert.assertEquals( "doc as upsert is not matching", Boolean.TRUE, update.get("doc_as_upsert") );
+		Assert.assertEquals( "upsert document is not matching", upsertDoc, update.get("upsert") );
+	}
+	
+	@Test
+	public void testBulkResponse() throws Exception {
+		
+		BulkRequest request = new BulkRequest();
+		request.add(new IndexRequest("ecs-s3-object", "object", "1").source("{}"));
+		request.add(new UpdateRequest("ecs-s3-object-current", "object", "2").doc("{}").docAsUpsert(true));
+		request.add(new DeleteRequest("ecs-s3-object", "object", "3"));
+		request.add(new IndexRequest("ecs-s3-object", "object", "4").source("{}"));
+		request.add(new IndexRequest("ecs-s3-object", "object", "5").source("{}"));
+		
+		String json = "{\"took\":30,\"errors\":true,\"items\":[" +
+				"{\"index\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"1\",\"_version\":1,\"status\":201}}," +
+				"{\"update\":{\"_index\":\"ecs-s3-object-current\",\"_type\":\"object\",\"_id\":\"2\",\"_version\":3,\"status\":200}}," +
+				"{\"delete\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"3\",\"_version\":2,\"status\":404}}," +
+				"{\"index\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"4\",\"status\":429," +
+					"\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\"}}}," +
+				"{\"index\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"5\",\"status\":400," +
+					"\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse [size]\"}}}]}";
+		
+		BulkResponse bulkResponse = ElasticHttpClient.toBulkResponse( request,
+											new ElasticHttpClient.Response(200, json.getBytes(UTF8)), 30L );
+		BulkItemResponse[] items = bulkResponse.getItems();
+		
+		Assert.assertEquals( "items are not matching", 5, items.length );
+		Assert.assertTrue( "bulk response has no failure", bulkResponse.hasFailures() );
+		
+		Assert.assertEquals( "index item id is not matching", "1", items[0].getId() );
+		Assert.assertTrue( "index document not created", ((IndexResponse)items[0].getResponse()).isCreated() );
+		
+		Assert.assertEquals( "update item type is not matching", "update", items[1].getOpType() );
+		Assert.assertFalse( "update created a document", ((UpdateResponse)items[1].getResponse()).isCreated() );
+		Assert.assertEquals( "update version is not matching", 3L, items[1].getVersion() );
+		
+		Assert.assertFalse( "delete found a document", ((DeleteResponse)items[2].getResponse()).isFound() );
+		
+		Assert.assertTrue( "rejected item didn't fail", items[3].isFailed() );
+		Assert.assertEquals( "rejected item status is not matching", RestStatus.TOO_MANY_REQUESTS, items[3].getFailure().getStatus() );
+		
+		Assert.assertTrue( "invalid item didn't fail", items[4].isFailed() );
+		Assert.assertEquals( "invalid item status is not matching", RestStatus.BAD_REQUEST, items[4].getFailure().getStatus() );
+		Assert.assertTrue( "failure message is not matching: " + items[4].getFailureMessage(),
+						   items[4].getFailureMessage().contains("mapper_parsing_exception: failed to parse [size]") );
+	}
+	
+	@Test
+	public void testBulkResponseItemCountMismatch() throws Exception {
+		
+		BulkRequest request = new BulkRequest();
+		request.add(new IndexRequest("ecs-s3-object", "object", "1").source("{}"));
+		request.add(new IndexRequest("ecs-s3-object", "object", "2").source("{}"));
+		
+		String json = "{\"took\":30,\"errors\":false,\"items\":[" +
+				"{\"index\":{\"_index\":\"ecs-s3-object\",\"_type\":\"object\",\"_id\":\"1\",\"_version\":1,\"status\":201}}]}";
+		
+		try {
+			ElasticHttpClient.toBulkResponse(request, new ElasticHttpClient.Response(200, json.getBytes(UTF8)), 30L);
+			Assert.fail("response with missing items accepted");
+		} catch (IllegalStateException e) {
+			// documents can't be matched to their item
+		}
+		
+		try {
+			ElasticHttpClient.toBulkResponse( request, new ElasticHttpClient.Response(200, "{\"error\":\"x\"}".getBytes(UTF8)), 30L );
+			Assert.fail("response without items accepted");
+		} catch (IllegalStateException e) {
+			// not a bulk response
+		}
+	}
+	
+	private static Map<String, Object> toMap( String json ) {
+		return XContentHelper.convertToMap(new BytesArray(json), false).v2();
+	}
+}
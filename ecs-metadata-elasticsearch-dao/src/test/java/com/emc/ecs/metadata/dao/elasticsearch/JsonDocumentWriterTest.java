@@ -0,0 +1,230 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+import org.junit.Assert;
+
+import com.emc.ecs.metadata.dao.ObjectChange;
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
+import com.emc.ecs.metadata.dao.ObjectRecord;
+import com.emc.object.s3.bean.CanonicalUser;
+import com.emc.object.s3.bean.DeleteMarker;
+import com.emc.object.s3.bean.QueryMetadata;
+import com.emc.object.s3.bean.QueryMetadataType;
+import com.emc.object.s3.bean.QueryObject;
+import com.emc.object.s3.bean.S3Object;
+import com.emc.object.s3.bean.Version;
+
+public class JsonDocumentWriterTest {
+	
+	private static final int KEY_PATH_DEPTH = 3;
+	
+	// keys and metadata names the fast path has to encode like XContentBuilder
+	private static final List<String> KEYS = Arrays.asList(
+			"dir/sub/key.txt",
+			"quote\"back\\slash/key",
+			"d\u00e9j\u00e0/\u65e5\u672c\u8a9e/\u00fc.txt",
+			"tab\tnew\nline\rreturn\u0001\u001f\u007f/key",
+			"emoji/\ud83d\ude00/\ud801\udc37",
+			// unpaired surrogates
+			"bad\ud83d/key\udc37",
+			"" );
+	
+	private static final List<Date> DATES = Arrays.asList(
+			utc(2016, 10, 17, 0, 0, 0, 0),
+			// before 1970
+			new Date(-1L),
+			utc(1969, 7, 20, 20, 17, 40, 5),
+			utc(1900, 3, 1, 0, 0, 0, 0),
+			// leap days
+			utc(2016, 2, 29, 23, 59, 59, 999),
+			utc(2000, 2, 29, 12, 0, 0, 0),
+			utc(1600, 2, 29, 1, 2, 3, 4) );
+	
+	
+	@Test
+	public void testObjectDocuments() throws Exception {
+		
+		for( String key : KEYS ) {
+			for( Date date : DATES ) {
+				S3Object s3Object = new S3Object();
+				s3Object.setKey(key);
+				s3Object.setLastModified(date);
+				s3Object.setSize(1234L);
+				s3Object.setETag("etag-" + key);
+				s3Object.setOwner(new CanonicalUser("owner-id", key));
+				
+				assertSameDocument( "object " + key + " " + date.getTime(),
+									ElasticS3ObjectDAO.toJsonFormat(s3Object, "ns1", "bucket", date, KEY_PATH_DEPTH, null),
+									ElasticS3ObjectDAO.toJsonBytes(s3Object, "ns1", "bucket", date, KEY_PATH_DEPTH) );
+			}
+		}
+		
+		// no owner, size or dates
+		S3Object s3Object = new S3Object();
+		s3Object.setKey("key");
+		
+		assertSameDocument( "object without owner",
+							ElasticS3ObjectDAO.toJsonFormat(s3Object, "ns1", "bucket", null, KEY_PATH_DEPTH, null),
+							ElasticS3ObjectDAO.toJsonBytes(s3Object, "ns1", "bucket", null, KEY_PATH_DEPTH) );
+		
+		// owner without id and display name
+		s3Object.setOwner(new CanonicalUser());
+		
+		assertSameDocument( "object with empty owner",
+							ElasticS3ObjectDAO.toJsonFormat(s3Object, "ns1", "bucket", null, 0, null),
+							ElasticS3ObjectDAO.toJsonBytes(s3Object, "ns1", "bucket", null, 0) );
+	}
+	
+	@Test
+	public void testVersionDocuments() throws Exception {
+		
+		for( String key : KEYS ) {
+			for( Date date : DATES ) {
+				Version version = new Version();
+				version.setKey(key);
+				version.setVersionId("v-" + key);
+				version.setLatest(Boolean.TRUE);
+				version.setLastModified(date);
+				version.setSize(0L);
+				version.setETag("etag");
+				version.setOwner(new CanonicalUser(key, null));
+				
+				assertSameDocument( "version " + key + " " + date.getTime(),
+									ElasticS3ObjectDAO.toJsonFormat(version, "ns1", "bucket", date, null),
+									ElasticS3ObjectDAO.toJsonBytes(version, "ns1", "bucket", date) );
+				
+				DeleteMarker deleteMarker = new DeleteMarker();
+				deleteMarker.setKey(key);
+				deleteMarker.setVersionId("v-" + key);
+				deleteMarker.setLatest(Boolean.FALSE);
+				deleteMarker.setLastModified(date);
+				
+				assertSameDocument( "delete marker " + key + " " + date.getTime(),
+									ElasticS3ObjectDAO.toJsonFormat(deleteMarker, "ns1", "bucket", date, null),
+									ElasticS3ObjectDAO.toJsonBytes(deleteMarker, "ns1", "bucket", date) );
+			}
+		}
+	}
+	
+	@Test
+	public void testQueryObjectDocuments() throws Exception {
+		
+		for( String key : KEYS ) {
+			Map<String, String> mdMap = new LinkedHashMap<String, String>();
+			mdMap.put("x-amz-meta-" + key, key);
+			mdMap.put("createtime", "1476662400000");
+			
+			QueryMetadata metadata = new QueryMetadata();
+			metadata.setType(QueryMetadataType.USERMD);
+			metadata.setMdMap(mdMap);
+			
+			List<QueryMetadata> queryMds = new ArrayList<QueryMetadata>();
+			queryMds.add(metadata);
+			
+			QueryObject queryObject = new QueryObject();
+			queryObject.setObjectName(key);
+			queryObject.setObjectId("id-" + key);
+			queryObject.setQueryMds(queryMds);
+			
+			for( Date date : DATES ) {
+				assertSameDocument( "query object " + key + " " + date.getTime(),
+									ElasticS3ObjectDAO.toJsonFormat(queryObject, "ns1", "bucket", date, KEY_PATH_DEPTH, null),
+									ElasticS3ObjectDAO.toJsonBytes(queryObject, "ns1", "bucket", date, KEY_PATH_DEPTH) );
+			}
+		}
+	}
+	
+	@Test
+	public void testObjectChangeDocuments() throws Exception {
+		
+		for( String key : KEYS ) {
+			for( Date date : DATES ) {
+				ObjectChange objectChange = new ObjectChange(ChangeType.modified, key, "etag", 42L, date);
+				
+				assertSameDocument( "object change " + key + " " + date.getTime(),
+									ElasticS3ObjectDAO.toJsonFormat(objectChange, "ns1", "bucket", date, null),
+									ElasticS3ObjectDAO.toJsonBytes(objectChange, "ns1", "bucket", date) );
+			}
+		}
+		
+		// deleted objects have no size or modification time
+		ObjectChange objectChange = new ObjectChange(ChangeType.deleted, "key", null, null, null);
+		
+		assertSameDocument( "deleted object change",
+							ElasticS3ObjectDAO.toJsonFormat(objectChange, "ns1", "bucket", DATES.get(0), null),
+							ElasticS3ObjectDAO.toJsonBytes(objectChange, "ns1", "bucket", DATES.get(0)) );
+	}
+	
+	@Test
+	public void testObjectRecordDocuments() throws Exception {
+		
+		for( ObjectDataType type : ObjectDataType.values() ) {
+			for( String key : KEYS ) {
+				for( Date date : DATES ) {
+					Map<String, String> metadata = new LinkedHashMap<String, String>();
+					metadata.put("x-amz-meta-" + key, key);
+					
+					ObjectRecord objectRecord = new ObjectRecord(type, "ns1", "bucket", key, date);
+					objectRecord.setLastModified(date);
+					objectRecord.setSize(-1L);
+					objectRecord.setETag("etag");
+					objectRecord.setOwnerId(key);
+					objectRecord.setVersionId("v1");
+					objectRecord.setLatest(Boolean.TRUE);
+					objectRecord.setChangeType(ChangeType.added);
+					objectRecord.setMetadata(metadata);
+					
+					assertSameDocument( type + " record " + key + " " + date.getTime(),
+										ElasticS3ObjectDAO.toJsonFormat(objectRecord, KEY_PATH_DEPTH, null),
+										ElasticS3ObjectDAO.toJsonBytes(objectRecord, KEY_PATH_DEPTH) );
+				}
+			}
+			
+			// only known fields are written
+			ObjectRecord objectRecord = new ObjectRecord(type, "ns1", "bucket", "key", null);
+			
+			assertSameDocument( type + " record without fields",
+								ElasticS3ObjectDAO.toJsonFormat(objectRecord, KEY_PATH_DEPTH, null),
+								ElasticS3ObjectDAO.toJsonBytes(objectRecord, KEY_PATH_DEPTH) );
+		}
+	}
+	
+	//================================
+	// Private methods
+	//================================
+	private static void assertSameDocument( String message, XContentBuilder builder, byte[] bytes ) {
+		
+		Map<String, Object> expected = XContentHelper.convertToMap(builder.bytes(), true).v2();
+		Map<String, Object> actual   = XContentHelper.convertToMap(new BytesArray(bytes), true).v2();
+		
+		Assert.assertEquals( message + " - document is not matching", expected, actual );
+		Assert.assertEquals( message + " - field order is not matching",
+							 new ArrayList<String>(expected.keySet()), new ArrayList<String>(actual.keySet()) );
+	}
+	
+	/**
+	 * @return UTC date of the proleptic Gregorian calendar, like Joda's ISO chronology
+	 */
+	private static Date utc( int year, int month, int day, int hour, int minute, int second, int millis ) {
+		
+		GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		calendar.set(GregorianCalendar.MILLISECOND, millis);
+		return calendar.getTime();
+	}
+}
@@ -0,0 +1,79 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.util.Date;
+
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.Assert;
+
+import com.emc.ecs.metadata.dao.ObjectChange.ChangeType;
+import com.emc.ecs.metadata.dao.ObjectDAO.ObjectDataType;
+import com.emc.ecs.metadata.dao.ObjectRecord;
+
+public class ObjectStateIndexTest {
+	
+	// 2016-10-17T00:00:00Z
+	private static final Date COLLECTION_TIME = new Date(1476662400000L);
+	
+	
+	@Test
+	public void testUpdateRequest() throws Exception {
+		
+		ObjectRecord objectRecord = objectRecord();
+		
+		UpdateRequest added = ObjectStateIndex.toUpdateRequest( objectRecord, state(false), state(true), ChangeType.added );
+		
+		Assert.assertEquals( "index is not matching", ObjectStateIndex.CURRENT_INDEX_NAME, added.index() );
+		Assert.assertEquals( "id is not matching", DocumentIds.currentObjectId("ns1", "bucket", "dir/key.txt"), added.id() );
+		// new objects start over
+		Assert.assertTrue( "added object not upserted", added.docAsUpsert() );
+		Assert.assertNotNull( "first seen not written", added.doc().sourceAsMap().get(ObjectStateIndex.FIRST_SEEN_TAG) );
+		
+		UpdateRequest modified = ObjectStateIndex.toUpdateRequest( objectRecord, state(false), state(true), ChangeType.modified );
+		
+		Assert.assertFalse( "modified object upserted", modified.docAsUpsert() );
+		Assert.assertNull( "first seen overwritten", modified.doc().sourceAsMap().get(ObjectStateIndex.FIRST_SEEN_TAG) );
+		Assert.assertNotNull( "first seen not upserted", modified.upsertRequest().sourceAsMap().get(ObjectStateIndex.FIRST_SEEN_TAG) );
+		
+		UpdateRequest unchanged = ObjectStateIndex.toUpdateRequest( objectRecord, state(false), state(true), null );
+		
+		Assert.assertFalse( "unchanged object upserted", unchanged.docAsUpsert() );
+		Assert.assertEquals( "last seen not updated", COLLECTION_TIME.getTime(),
+							 unchanged.doc().sourceAsMap().get(ObjectStateIndex.LAST_SEEN_TAG) );
+	}
+	
+	@Test
+	public void testChangeRecord() throws Exception {
+		
+		ObjectRecord changeRecord = ObjectStateIndex.toChangeRecord(objectRecord(), ChangeType.modified);
+		
+		Assert.assertEquals( "data type is not matching", ObjectDataType.object_changes, changeRecord.getType() );
+		Assert.assertEquals( "change is not matching", ChangeType.modified, changeRecord.getChangeType() );
+		Assert.assertEquals( "key is not matching", "dir/key.txt", changeRecord.getKey() );
+		Assert.assertEquals( "etag is not matching", "etag1", changeRecord.getETag() );
+		Assert.assertEquals( "size is not matching", Long.valueOf(10L), changeRecord.getSize() );
+		Assert.assertEquals( "collection time is not matching", COLLECTION_TIME, changeRecord.getCollectionTime() );
+	}
+	
+	private static ObjectRecord objectRecord() {
+		
+		ObjectRecord objectRecord = new ObjectRecord( ObjectDataType.object, "ns1", "bucket", "dir/key.txt", COLLECTION_TIME );
+		objectRecord.setETag("etag1");
+		objectRecord.setSize(10L);
+		objectRecord.setLastModified(new Date(COLLECTION_TIME.getTime() - 1000L));
+		return objectRecord;
+	}
+	
+	private static XContentBuilder state( boolean firstSeen ) throws Exception {
+		
+		XContentBuilder state = XContentFactory.jsonBuilder().startObject()
+				.field(ObjectStateIndex.LAST_SEEN_TAG, COLLECTION_TIME.getTime())
+				.field(ObjectStateIndex.DELETED_TAG, false);
+		if( firstSeen ) {
+			state.field(ObjectStateIndex.FIRST_SEEN_TAG, COLLECTION_TIME.getTime());
+		}
+		return state.endObject();
+	}
+}
@@ -0,0 +1,68 @@
+package com.emc.ecs.metadata.dao.elasticsearch;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+public class PartitionedIndicesTest {
+	
+	// 2016-10-17T23:59:59Z
+	private static final Date THRESHOLD_DATE = new Date(1476748799000L);
+	
+	// what ecs-s3-object* matches
+	private static final List<String> OBJECT_INDICES = Arrays.asList(
+			"ecs-s3-object",
+			"ecs-s3-object-2016.10.16",
+			"ecs-s3-object-2016.10.17",
+			"ecs-s3-object-2016.10.18",
+			"ecs-s3-object_ns1-2016.10.16",
+			"ecs-s3-object_ns1-2016.10.18",
+			"ecs-s3-object_ns1",
+			"ecs-s3-object_ns10-2016.10.16",
+			"ecs-s3-object-version-2016.10.16",
+			"ecs-s3-object-version_ns1-2016.10.16",
+			"ecs-s3-object-current",
+			"ecs-s3-object-change-2016.10.16",
+			"ecs-s3-object-2016.10.16-restored" );
+	
+	
+	@Test
+	public void testIndicesBefore() throws Exception {
+		
+		Assert.assertEquals( "old indices are not matching",
+							 Arrays.asList("ecs-s3-object-2016.10.16", "ecs-s3-object_ns1-2016.10.16",
+										   "ecs-s3-object_ns10-2016.10.16"),
+							 PartitionedIndices.getIndicesBefore("ecs-s3-object", THRESHOLD_DATE, OBJECT_INDICES) );
+		
+		Assert.assertEquals( "old version indices are not matching",
+							 Arrays.asList("ecs-s3-object-version-2016.10.16", "ecs-s3-object-version_ns1-2016.10.16"),
+							 PartitionedIndices.getIndicesBefore("ecs-s3-object-version", THRESHOLD_DATE, OBJECT_INDICES) );
+		
+		// days are UTC days
+		Assert.assertEquals( "old indices are not matching",
+							 Arrays.asList("ecs-s3-object-2016.10.16", "ecs-s3-object-2016.10.17"),
+							 PartitionedIndices.getIndicesBefore( "ecs-s3-object", new Date(THRESHOLD_DATE.getTime() + 1000L),
+									 Arrays.asList("ecs-s3-object-2016.10.16", "ecs-s3-object-2016.10.17", "ecs-s3-object-2016.10.18") ) );
+	}
+	
+	@Test
+	public void testNamespaceIndices() throws Exception {
+		
+		Assert.assertEquals( "namespace indices are not matching",
+							 Arrays.asList("ecs-s3-object_ns1-2016.10.16", "ecs-s3-object_ns1-2016.10.18", "ecs-s3-object_ns1"),
+							 PartitionedIndices.getNamespaceIndices("ecs-s3-object", "ns1", OBJECT_INDICES) );
+		
+		Assert.assertEquals( "version namespace indices are not matching",
+							 Arrays.asList("ecs-s3-object-version_ns1-2016.10.16"),
+							 PartitionedIndices.getNamespaceIndices("ecs-s3-object-version", "ns1", OBJECT_INDICES) );
+		
+		// namespace names are cleaned up like index names
+		Assert.assertEquals( "namespace indices are not matching",
+							 Arrays.asList("ecs-bucket_my-ns-2016.10.16"),
+							 PartitionedIndices.getNamespaceIndices( "ecs-bucket", "My NS",
+									 Arrays.asList("ecs-bucket_my-ns-2016.10.16", "ecs-bucket_my-ns2") ) );
+	}
+}
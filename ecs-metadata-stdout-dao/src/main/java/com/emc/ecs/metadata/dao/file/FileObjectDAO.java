@@ -29,6 +29,9 @@ package com.emc.ecs.metadata.dao.file;
 
 
 import java.util.Date;
+import java.util.List;
+
+import com.emc.ecs.metadata.dao.ObjectChange;
 import com.emc.ecs.metadata.dao.ObjectDAO;
 import com.emc.object.s3.bean.ListObjectsResult;
 import com.emc.object.s3.bean.ListVersionsResult;
@@ -102,6 +105,21 @@ public class FileObjectDAO implements ObjectDAO {
 		return;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void insert( List<ObjectChange> objectChanges, String namespace,
+						String bucketName, Date collectionTime) {
+		
+		//		for( ObjectChange objectChange : objectChanges ) {
+		//			System.out.println(objectChange.getChangeType() + " namespace: " + namespace + 
+		//							   " bucket: " + bucketName + " key: " + objectChange.getKey());
+		//		}
+		
+		return;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -110,5 +128,14 @@ public class FileObjectDAO implements ObjectDAO {
 		// doing nothing
 		return 0L;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Long markDeletedObjects(String namespace, String bucketName, Date collectionTime) {
+		// doing nothing
+		return 0L;
+	}
 
 }
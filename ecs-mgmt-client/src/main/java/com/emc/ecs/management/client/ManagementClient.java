@@ -159,6 +159,12 @@ public class ManagementClient {
 																				namespaceRequest.getNextMarker());			
 		}
 		
+		// add limit
+		if(namespaceRequest.getLimit() != null) {
+			getNamespaceBillingResource = getNamespaceBillingResource.queryParam(REST_LIMIT_PARAMETER, 
+																				String.valueOf(namespaceRequest.getLimit()));			
+		}
+		
 		try {
 			
 			namespaceBillingResponse = getNamespaceBillingResource.header(X_SDS_AUTH_TOKEN, authToken)
@@ -182,6 +188,11 @@ public class ManagementClient {
 																						namespaceRequest.getNextMarker());			
 				}
 				
+				if(namespaceRequest.getLimit() != null) {
+					getNamespaceBillingResource = getNamespaceBillingResource.queryParam(REST_LIMIT_PARAMETER, 
+																						String.valueOf(namespaceRequest.getLimit()));			
+				}
+				
 				namespaceBillingResponse = getNamespaceBillingResource.header(X_SDS_AUTH_TOKEN, authToken)
 																		.get(NamespaceBillingInfo.class);
 			}
@@ -215,6 +226,12 @@ public class ManagementClient {
 																						namespaceRequest.getNextMarker());			
 		}
 		
+		// add limit
+		if(namespaceRequest.getLimit() != null) {
+			getNamespaceBucketInfoResource = getNamespaceBucketInfoResource.queryParam(REST_LIMIT_PARAMETER, 
+																						String.valueOf(namespaceRequest.getLimit()));			
+		}
+		
 		ObjectBuckets namespaceBucketInfoResponse = 
 				getNamespaceBucketInfoResource.header(X_SDS_AUTH_TOKEN, authToken).get(ObjectBuckets.class);
 						
@@ -421,7 +438,7 @@ public class ManagementClient {
 	 */
 	private Client createMgmtClient( List<String> ipAddresses ) {
 		
-		String[] ips = (String[])ipAddresses.toArray();
+		String[] ips = ipAddresses.toArray(new String[ipAddresses.size()]);
 	    SmartConfig smartConfig = new SmartConfig(ips);
 	    
 	    
@@ -30,6 +30,7 @@ package com.emc.ecs.management.entity;
 public class NamespaceRequest {
 	private String nextMarker;	
     private String name;
+    private Integer limit;
                
     public String getNextMarker() {
         return nextMarker;
@@ -46,5 +47,13 @@ public class NamespaceRequest {
     public void setName(String name) {
         this.name = name;
     }
+    
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
    
 }